@@ -0,0 +1,25 @@
+#!/bin/bash
+
+# Runs benchmarks and stores their results in JSON format into results directory.
+# Arguments are passed to JMH, e.g. ./bin/run.sh MessageParserBenchmark -f 2
+# With BASELINE=1, the results are stored as new baseline into baseline directory,
+# which is kept under version control. Paths and versions of the JVM are removed
+# from the baseline, see baseline/README.md.
+#
+# Build the benchmarks first: mvn clean package
+
+cd "$(dirname "$0")/.."
+
+if [ "$BASELINE" = "1" ]; then
+	RESULT_FILE=baseline/jmh-baseline.json
+else
+	RESULT_FILE=results/jmh-$(date +%Y%m%d-%H%M%S).json
+fi
+mkdir -p "$(dirname "$RESULT_FILE")"
+
+java -jar target/benchmarks.jar -rf json -rff "$RESULT_FILE" "$@"
+
+if [ "$BASELINE" = "1" ] && [ -f "$RESULT_FILE" ]; then
+	sed -i -e '/^ *"jvm" : /d' -e '/^ *"jdkVersion" : /d' -e '/^ *"vmVersion" : /d' \
+		-e '/^ *"jvmArgs" : \[/,/^ *\],/d' "$RESULT_FILE"
+fi
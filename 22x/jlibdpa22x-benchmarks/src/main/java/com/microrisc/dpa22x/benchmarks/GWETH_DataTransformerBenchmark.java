@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.benchmarks;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.byteaccess.network.udp.GWETH_DataTransformer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of encoding and decoding of GW-ETH messages, including 
+ * CRC calculation and its checking.
+ * 
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GWETH_DataTransformerBenchmark {
+    
+    @Param({ "0", "16", "56" })
+    int dataLength;
+    
+    // request to encode
+    private short[] request;
+    
+    // GW-ETH message to decode
+    private short[] message;
+    
+    
+    @Setup
+    public void setup() {
+        request = Messages.request(1, ProtocolProperties.PNUM_Properties.RAM, 0x01, dataLength);
+        message = GWETH_DataTransformer.transformRequestData(request);
+    }
+    
+    @Benchmark
+    public short[] encode() {
+        return GWETH_DataTransformer.transformRequestData(request);
+    }
+    
+    @Benchmark
+    public short[] decode() {
+        return GWETH_DataTransformer.getDataFromMessage(message);
+    }
+}
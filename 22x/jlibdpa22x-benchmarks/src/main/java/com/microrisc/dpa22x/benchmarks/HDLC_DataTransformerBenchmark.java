@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.benchmarks;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.hdlcframing.v2.HDLC_DataTransformer;
+import com.microrisc.hdlcframing.v2.HDLC_FormatException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of HDLC framing and deframing, as used by serial network layer.
+ * 
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HDLC_DataTransformerBenchmark {
+    
+    @Param({ "0", "16", "54" })
+    int dataLength;
+    
+    // data to frame
+    private short[] data;
+    
+    // frame to deframe
+    private short[] frame;
+    
+    
+    @Setup
+    public void setup() {
+        data = Messages.response(1, ProtocolProperties.PNUM_Properties.RAM, 0x00, dataLength);
+        frame = HDLC_DataTransformer.transformToHLDCFormat(data);
+    }
+    
+    @Benchmark
+    public short[] frame() {
+        return HDLC_DataTransformer.transformToHLDCFormat(data);
+    }
+    
+    @Benchmark
+    public short[] deframe() throws HDLC_FormatException {
+        return HDLC_DataTransformer.getDataFromFrame(frame);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.benchmarks;
+
+import com.microrisc.dpa22x.DPA_Message;
+import com.microrisc.dpa22x.MessageParser;
+import com.microrisc.dpa22x.MessageParserException;
+import com.microrisc.dpa22x.MessageType;
+import com.microrisc.dpa22x.ProtocolProperties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of parsing of messages comming from network.
+ * 
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MessageParserBenchmark {
+    
+    /**
+     * Confirmation to parse.
+     */
+    @State(Scope.Thread)
+    public static class ConfirmationData {
+        short[] confirmation;
+        
+        @Setup
+        public void setup() {
+            confirmation = Messages.confirmation(1, 2, 8, 2);
+        }
+    }
+    
+    /**
+     * Responses to parse - with various lengths of PData.
+     */
+    @State(Scope.Thread)
+    public static class ResponseData {
+        @Param({ "0", "16", "54" })
+        int dataLength;
+        
+        short[] response;
+        
+        @Setup
+        public void setup() {
+            response = Messages.response(
+                    1, ProtocolProperties.PNUM_Properties.RAM, 0x00, dataLength
+            );
+        }
+    }
+    
+    
+    @Benchmark
+    public DPA_Message parseConfirmation(ConfirmationData data) 
+            throws MessageParserException {
+        return MessageParser.parse(data.confirmation);
+    }
+    
+    @Benchmark
+    public DPA_Message parseResponse(ResponseData data) throws MessageParserException {
+        return MessageParser.parse(data.response);
+    }
+    
+    @Benchmark
+    public MessageType getMessageTypeOfConfirmation(ConfirmationData data) {
+        return ProtocolProperties.getMessageType(data.confirmation);
+    }
+    
+    @Benchmark
+    public MessageType getMessageTypeOfResponse(ResponseData data) {
+        return ProtocolProperties.getMessageType(data.response);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.benchmarks;
+
+import com.microrisc.dpa22x.DPA_ResponseCode;
+import com.microrisc.dpa22x.ProtocolProperties;
+
+/**
+ * Creation of DPA messages used as inputs of benchmarks.
+ * 
+ * @author agent
+ */
+final class Messages {
+    
+    // fills foursome of specified message
+    private static void fillFoursome(short[] message, int nadr, int pnum, int pcmd) {
+        message[ProtocolProperties.NADR_START] = (short)(nadr & 0xFF);
+        message[ProtocolProperties.NADR_START + 1] = 0;
+        message[ProtocolProperties.PNUM_POS] = (short)pnum;
+        message[ProtocolProperties.PCMD_POS] = (short)pcmd;
+        message[ProtocolProperties.HWPID_START] = 0xFF;
+        message[ProtocolProperties.HWPID_START + 1] = 0xFF;
+    }
+    
+    /**
+     * Returns request with specified foursome and PData of specified length.
+     */
+    static short[] request(int nadr, int pnum, int pcmd, int dataLength) {
+        short[] request = new short[ProtocolProperties.PDATA_START_POS + dataLength];
+        fillFoursome(request, nadr, pnum, pcmd);
+        for ( int i = 0; i < dataLength; i++ ) {
+            request[ProtocolProperties.PDATA_START_POS + i] = (short)(i & 0xFF);
+        }
+        return request;
+    }
+    
+    /**
+     * Returns confirmation with specified routing parameters.
+     */
+    static short[] confirmation(int nadr, int hops, int timeslotLength, int hopsResponse) {
+        short[] confirmation = new short[ProtocolProperties.CONFIRMATION_LENGTH];
+        fillFoursome(confirmation, nadr, 0x06, 0x03);
+        confirmation[ProtocolProperties.RESPONSE_CODE_POS] 
+                = (short)DPA_ResponseCode.CONFIRMATION.getIntValue();
+        confirmation[ProtocolProperties.DPA_VALUE_POS] = 0x40;
+        confirmation[ProtocolProperties.HOPS_POS] = (short)hops;
+        confirmation[ProtocolProperties.TIMESLOT_LENGTH_POS] = (short)timeslotLength;
+        confirmation[ProtocolProperties.HOPS_RESPONSE_POS] = (short)hopsResponse;
+        return confirmation;
+    }
+    
+    /**
+     * Returns successful response with PData of specified length.
+     */
+    static short[] response(int nadr, int pnum, int pcmd, int dataLength) {
+        short[] response = new short[ProtocolProperties.DPA_VALUE_POS + 1 + dataLength];
+        fillFoursome(response, nadr, pnum, pcmd | 0x80);
+        response[ProtocolProperties.RESPONSE_CODE_POS] 
+                = (short)DPA_ResponseCode.NO_ERROR.getIntValue();
+        response[ProtocolProperties.DPA_VALUE_POS] = 0x40;
+        for ( int i = 0; i < dataLength; i++ ) {
+            response[ProtocolProperties.DPA_VALUE_POS + 1 + i] = (short)(i & 0xFF);
+        }
+        return response;
+    }
+    
+    private Messages() {
+    }
+}
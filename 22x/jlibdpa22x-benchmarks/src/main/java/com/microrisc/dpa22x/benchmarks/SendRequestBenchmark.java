@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.benchmarks;
+
+import com.microrisc.dpa22x.DCTR;
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.RF_Mode;
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorException;
+import com.microrisc.dpa22x.byteaccess.accessors.StandardByteAccessor;
+import com.microrisc.dpa22x.byteaccess.network.simulation.SimulatedNetwork;
+import com.microrisc.dpa22x.byteaccess.network.simulation.SimulatedNetworkLayer;
+import com.microrisc.dpa22x.peripherals.LEDR;
+import com.microrisc.dpa22x.timing.VirtualClock;
+import com.microrisc.dpa22x.timing.WaitingTimeCounter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end benchmark of sending of requests by standard byte accessor.
+ * <p>
+ * The accessor is connected to simulated network running in virtual time, so
+ * the measured time is time spent by processing in the library and 
+ * in the simulator - not time of waiting for routing in the network.
+ * 
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SendRequestBenchmark {
+    
+    /** Address of request's addressee: coordinator or node. */
+    @Param({ "0", "1" })
+    int nadr;
+    
+    // accessor
+    private StandardByteAccessor accessor;
+    
+    // request to send
+    private short[] request;
+    
+    
+    @Setup
+    public void setup() throws ByteAccessorException {
+        VirtualClock clock = new VirtualClock();
+        SimulatedNetwork network = SimulatedNetwork.create(
+                1, 1, new SimulatedNetwork.Settings.Builder().rfMode(RF_Mode.STD).build(), clock
+        );
+        WaitingTimeCounter counter = new WaitingTimeCounter(
+                RF_Mode.STD, DCTR.DCTR_7xD, 
+                WaitingTimeCounter.TIME_TO_WAIT_FOR_CONFIRMATION_DEFAULT, clock
+        );
+        accessor = new StandardByteAccessor(new SimulatedNetworkLayer(network), counter);
+        accessor.start();
+        
+        request = Messages.request(
+                nadr, ProtocolProperties.PNUM_Properties.LEDR, 
+                LEDR.Command.PULSE.asByteValue(), 0
+        );
+    }
+    
+    @TearDown
+    public void tearDown() {
+        accessor.terminateAndRelease();
+    }
+    
+    @Benchmark
+    public RequestResult sendRequest() {
+        return accessor.sendRequest(request);
+    }
+}
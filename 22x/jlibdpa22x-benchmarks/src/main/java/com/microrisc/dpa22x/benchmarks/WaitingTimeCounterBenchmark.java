@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.benchmarks;
+
+import com.microrisc.dpa22x.DCTR;
+import com.microrisc.dpa22x.DPA_Confirmation;
+import com.microrisc.dpa22x.MessageParser;
+import com.microrisc.dpa22x.MessageParserException;
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.RF_Mode;
+import com.microrisc.dpa22x.timing.WaitingTimeCounter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of calculations of waiting times.
+ * 
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class WaitingTimeCounterBenchmark {
+    
+    @Param({ "STD", "LP" })
+    RF_Mode rfMode;
+    
+    // counter
+    private WaitingTimeCounter counter;
+    
+    // request to count waiting times for
+    private short[] request;
+    
+    // confirmation on the request
+    private DPA_Confirmation confirmation;
+    
+    // time of confirmation reception
+    private long confirmationRecvTime;
+    
+    
+    @Setup
+    public void setup() throws MessageParserException {
+        counter = new WaitingTimeCounter(
+                rfMode, DCTR.DCTR_7xD, WaitingTimeCounter.TIME_TO_WAIT_FOR_CONFIRMATION_DEFAULT
+        );
+        request = Messages.request(1, ProtocolProperties.PNUM_Properties.RAM, 0x00, 1);
+        
+        int timeslotLength = ( rfMode == RF_Mode.LP )? 10 : 4;
+        confirmation = (DPA_Confirmation) MessageParser.parse(
+                Messages.confirmation(1, 3, timeslotLength, 3)
+        );
+        confirmationRecvTime = counter.getClock().currentTimeMillis();
+    }
+    
+    @Benchmark
+    public long getTimeToWaitForConfirmation() {
+        return counter.getTimeToWaitForConfirmation(request);
+    }
+    
+    @Benchmark
+    public long getTimeToWaitForResponse() {
+        return counter.getTimeToWaitForResponse(request, confirmation, null);
+    }
+    
+    @Benchmark
+    public long getTimeToWaitToFinishIqmeshRouting() {
+        return counter.getTimeToWaitToFinishIqmeshRouting(confirmation, 16, confirmationRecvTime);
+    }
+    
+    @Benchmark
+    public int getTimeslotLength() {
+        return WaitingTimeCounter.getTimeslotLength(16, rfMode, DCTR.DCTR_7xD);
+    }
+}
@@ -127,7 +127,7 @@ public final class MessageParser {
             pData = new short[0];
         } else {
             pData = new short[responseData.length - ProtocolProperties.DPA_VALUE_POS - 1];
-            System.arraycopy(responseData, ProtocolProperties.PDATA_START_POS, pData, 0, pData.length);
+            System.arraycopy(responseData, ProtocolProperties.DPA_VALUE_POS + 1, pData, 0, pData.length);
         }
         
         return new DPA_Response(
@@ -76,8 +76,8 @@ public final class ProtocolProperties {
     
     
     // RESPONSE
-    /** Maximal length of response. */
-    public static final int RESPONSE_MAX_LENGTH = PDATA_START_POS + PDATA_MAX_LENGTH;
+    /** Maximal length of response - response code and DPA value precede PData. */
+    public static final int RESPONSE_MAX_LENGTH = DPA_VALUE_POS + 1 + PDATA_MAX_LENGTH;
     
     
     /**
@@ -17,26 +17,55 @@ package com.microrisc.dpa22x.byteaccess;
 
 import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessor;
 import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorControlInterface;
-import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorException;
 import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorFactory;
 import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorFactoryException;
 import com.microrisc.dpa22x.byteaccess.accessors.StandardByteAccessorFactory;
 import java.lang.reflect.Constructor;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Main object to use for access to functionality of the library.
+ * <p>
+ * Keeps registry of named byte accessors - one for each connected IQRF network.
+ * Names of the accessors are listed in the <b>accessors</b> configuration
+ * item and configuration of each accessor is taken from the items prefixed 
+ * with <b>accessor.&lt;name&gt;.</b> - the same items as used for single 
+ * accessor. If the <b>accessors</b> item is not present, the whole
+ * configuration is used for one accessor named {@link #DEFAULT_ACCESSOR_NAME}.
+ * <p>
+ * Accessors are started and terminated in parallel.
  * 
  * @author Michal Konopa
  */
 public final class JByteAccess {
     
-    // byte accessor to use in user code
-    private static ByteAccessor controlledByteAccessor;
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(JByteAccess.class);
+    
+    /** Name of the accessor, if no accessor names are configured. */
+    public static final String DEFAULT_ACCESSOR_NAME = "default";
+    
+    // key of metrics name in configuration of an accessor
+    private static final String METRICS_NAME_KEY = "byteAccessor.metrics.name";
+    
+    // byte accessors to use in user code - in the order of configuration
+    private static Map<String, ByteAccessor> controlledByteAccessors 
+            = Collections.emptyMap();
     
     // creates and returns byte accessor
     private static ByteAccessor createByteAccessor(Configuration configuration) 
@@ -72,10 +101,135 @@ public final class JByteAccess {
         }
     }
     
-    // terminates and releases byte accessor
-    private static void terminateAndReleaseByteAccessor() {
-        if ( controlledByteAccessor != null ) {
-            ((ByteAccessorControlInterface) controlledByteAccessor).terminateAndRelease();
+    // creates and returns byte accessors according to specified configuration,
+    // in the case of an error already created accessors are released
+    private static Map<String, ByteAccessor> createByteAccessors(Configuration configuration) 
+            throws JByteAccessException 
+    {
+        Map<String, ByteAccessor> byteAccessors = new LinkedHashMap<>();
+        
+        String[] accessorNames = configuration.getStringArray("accessors");
+        if ( accessorNames.length == 0 ) {
+            byteAccessors.put(DEFAULT_ACCESSOR_NAME, createByteAccessor(configuration));
+            return byteAccessors;
+        }
+        
+        try {
+            for ( String accessorName : accessorNames ) {
+                if ( accessorName.isEmpty() || byteAccessors.containsKey(accessorName) ) {
+                    throw new JByteAccessException("Invalid or duplicate accessor name: " + accessorName);
+                }
+                
+                Configuration accessorConfiguration = configuration.subset("accessor." + accessorName);
+                
+                // metrics of each accessor are registered under its name by default
+                if ( !accessorConfiguration.containsKey(METRICS_NAME_KEY) ) {
+                    accessorConfiguration.setProperty(METRICS_NAME_KEY, accessorName);
+                }
+                
+                byteAccessors.put(accessorName, createByteAccessor(accessorConfiguration));
+            }
+        } catch ( JByteAccessException | RuntimeException ex ) {
+            terminateAndReleaseByteAccessors(byteAccessors);
+            throw ex;
+        }
+        return byteAccessors;
+    }
+    
+    // runs specified tasks in parallel and returns their results
+    private static <T> List<Future<T>> runInParallel(List<Callable<T>> tasks) 
+            throws InterruptedException 
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            return executor.invokeAll(tasks);
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    // terminates and releases specified byte accessors in parallel
+    private static void terminateAndReleaseByteAccessors(Map<String, ByteAccessor> byteAccessors) {
+        if ( byteAccessors.isEmpty() ) {
+            return;
+        }
+        
+        List<Callable<Void>> terminationTasks = new ArrayList<>();
+        for ( final Map.Entry<String, ByteAccessor> entry : byteAccessors.entrySet() ) {
+            terminationTasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    ((ByteAccessorControlInterface) entry.getValue()).terminateAndRelease();
+                    logger.info("Byte accessor {} terminated", entry.getKey());
+                    return null;
+                }
+            });
+        }
+        
+        try {
+            for ( Future<Void> result : runInParallel(terminationTasks) ) {
+                try {
+                    result.get();
+                } catch ( ExecutionException ex ) {
+                    logger.error("Error while terminating byte accessor: ", ex.getCause());
+                }
+            }
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            logger.warn("Termination of byte accessors interrupted");
+        }
+    }
+    
+    // starts specified byte accessors in parallel, in the case of an error
+    // all the accessors are terminated - also the ones, which failed to start
+    // and which may hold some resources
+    private static void startByteAccessors(Map<String, ByteAccessor> byteAccessors) 
+            throws JByteAccessException 
+    {
+        final List<String> accessorNames = new ArrayList<>(byteAccessors.keySet());
+        List<Callable<Void>> startTasks = new ArrayList<>();
+        for ( final Map.Entry<String, ByteAccessor> entry : byteAccessors.entrySet() ) {
+            startTasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    ((ByteAccessorControlInterface) entry.getValue()).start();
+                    logger.info("Byte accessor {} started", entry.getKey());
+                    return null;
+                }
+            });
+        }
+        
+        List<Future<Void>> results = null;
+        try {
+            results = runInParallel(startTasks);
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            terminateAndReleaseByteAccessors(byteAccessors);
+            throw new JByteAccessException("Start of byte accessors interrupted.", ex);
+        }
+        
+        JByteAccessException startException = null;
+        for ( int i = 0; i < results.size(); i++ ) {
+            String accessorName = accessorNames.get(i);
+            try {
+                results.get(i).get();
+            } catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+                terminateAndReleaseByteAccessors(byteAccessors);
+                throw new JByteAccessException("Start of byte accessors interrupted.", ex);
+            } catch ( ExecutionException ex ) {
+                if ( startException == null ) {
+                    startException = new JByteAccessException(
+                            "Error while starting byte accessor " + accessorName + ": " 
+                            + ex.getCause(), ex.getCause()
+                    );
+                }
+            }
+        }
+        
+        if ( startException != null ) {
+            terminateAndReleaseByteAccessors(byteAccessors);
+            throw startException;
         }
     }
     
@@ -96,28 +250,61 @@ public final class JByteAccess {
             throw new JByteAccessException("Error in reading configuration file: " + ex);
         }
         
-        controlledByteAccessor = createByteAccessor(configuration);
+        init(configuration);
+    }
+    
+    /**
+     * Initializes library according to specified configuration.
+     * 
+     * @param configuration configuration of the library
+     * @throws com.microrisc.dpa22x.byteaccess.JByteAccessException if some error occured
+     *         during initialization process
+     */
+    public static synchronized void init(Configuration configuration) throws JByteAccessException {
+        if ( !controlledByteAccessors.isEmpty() ) {
+            throw new JByteAccessException("Library already initialized.");
+        }
         
-        // starting byte accessor
-        try {
-            ((ByteAccessorControlInterface) controlledByteAccessor).start();
-        } catch ( ByteAccessorException ex ) {
-            throw new JByteAccessException("Error while starting byte accessor: " +ex );
+        Map<String, ByteAccessor> byteAccessors = createByteAccessors(configuration);
+        startByteAccessors(byteAccessors);
+        controlledByteAccessors = Collections.unmodifiableMap(byteAccessors);
+    }
+    
+    /**
+     * Returns byte accessor. If more accessors are configured, the first one 
+     * is returned.
+     * @return byte accessor <br>
+     *         {@code null}, if the library is not initialized
+     */
+    public static synchronized ByteAccessor getAccessor() {
+        if ( controlledByteAccessors.isEmpty() ) {
+            return null;
         }
+        return controlledByteAccessors.values().iterator().next();
+    }
+    
+    /**
+     * Returns byte accessor of specified name.
+     * @param name name of the accessor
+     * @return byte accessor <br>
+     *         {@code null}, if there is no accessor of specified name
+     */
+    public static synchronized ByteAccessor getAccessor(String name) {
+        return controlledByteAccessors.get(name);
     }
     
     /**
-     * Returns byte accessor.
-     * @return byte accessor
+     * @return names of all byte accessors - in the order of configuration
      */
-    public static ByteAccessor getAccessor() {
-        return controlledByteAccessor;
+    public static synchronized Set<String> getAccessorNames() {
+        return controlledByteAccessors.keySet();
     }
     
     /**
      * Terminates the library and releases used resources.
      */
-    public static void terminateAndRelease() { 
-        terminateAndReleaseByteAccessor();
+    public static synchronized void terminateAndRelease() { 
+        terminateAndReleaseByteAccessors(controlledByteAccessors);
+        controlledByteAccessors = Collections.emptyMap();
     }
 }
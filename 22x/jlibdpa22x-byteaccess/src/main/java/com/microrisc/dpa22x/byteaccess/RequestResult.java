@@ -80,4 +80,25 @@ public final class RequestResult {
     public ProcessingInfo getProcessingInfo() {
         return procInfo;
     }
+    
+    /**
+     * Returns copy of specified result, whose response has its own arrays. 
+     * The copy can be passed to another receiver of the result, which may 
+     * modify the data of the response.
+     * @param result result to copy
+     * @return copy of {@code result}
+     */
+    public static RequestResult copyOf(RequestResult result) {
+        DPA_Response response = result.response;
+        if ( response == null ) {
+            return new RequestResult(result.status, null, result.procInfo);
+        }
+        
+        DPA_Response responseCopy = new DPA_Response(
+                response.getNadr().clone(), response.getPnum(), response.getPcmd(), 
+                response.getHwpid().clone(), response.getResponseCode(), 
+                response.getDpaValue(), response.getData().clone()
+        );
+        return new RequestResult(result.status, responseCopy, result.procInfo);
+    }
 }
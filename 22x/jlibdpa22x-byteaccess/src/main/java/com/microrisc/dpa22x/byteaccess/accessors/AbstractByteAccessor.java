@@ -16,6 +16,7 @@
 package com.microrisc.dpa22x.byteaccess.accessors;
 
 import com.microrisc.dpa22x.byteaccess.network.NetworkLayer;
+import com.microrisc.dpa22x.timing.Clock;
 import com.microrisc.dpa22x.timing.WaitingTimeCounter;
 
 /**
@@ -34,6 +35,9 @@ public abstract class AbstractByteAccessor implements ByteAccessor {
     /** Waiting time counter to use for calculating waiting times of messages. */
     protected WaitingTimeCounter waitingTimeCounter = null;
     
+    /** Clock to take time from and to wait on - the clock of waiting time counter. */
+    protected Clock clock = null;
+    
     
     private NetworkLayer checkNetworkLayer(NetworkLayer networkLayer) {
         if ( networkLayer == null ) {
@@ -77,6 +81,21 @@ public abstract class AbstractByteAccessor implements ByteAccessor {
     ) {
         this.networkLayer = checkNetworkLayer(networkLayer);
         this.waitingTimeCounter = checkWaitingTimeCounter(waitingTimeCounter);
+        this.clock = waitingTimeCounter.getClock();
+    }
+    
+    /**
+     * @return network layer used by this accessor
+     */
+    public NetworkLayer getNetworkLayer() {
+        return networkLayer;
+    }
+    
+    /**
+     * @return waiting time counter used by this accessor
+     */
+    public WaitingTimeCounter getWaitingTimeCounter() {
+        return waitingTimeCounter;
     }
     
     /**
@@ -34,6 +34,9 @@ public interface ByteAccessor {
      * It will wait at maximum {@code waitingTimeout} ms for result to come in. 
      * If no result cames in until specified timeout elapses, the return value will
      * contain appropriate error description.
+     * <p>
+     * Broadcast requests are not responded, so they are completed by reception
+     * of their confirmation and the result contains no response.
      * 
      * @param request request to send
      * @param waitingTimeout maximum time to wait for result
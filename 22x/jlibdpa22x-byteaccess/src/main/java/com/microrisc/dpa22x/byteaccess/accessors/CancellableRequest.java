@@ -0,0 +1,281 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.accessors;
+
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Request sent by {@link StandardByteAccessor}, which can be cancelled and 
+ * which has an absolute deadline.
+ * <p>
+ * Request cancelled or with passed deadline, which waits for its turn, is 
+ * dropped without being sent into the network. Request, which is already 
+ * in flight, is abandoned - the accessor stops waiting for its response and
+ * ignores its late confirmation and response.
+ * 
+ * @author agent
+ */
+public final class CancellableRequest implements Future<RequestResult> {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(CancellableRequest.class);
+    
+    /** Indicates, that deadline is not limited. */
+    public static final long DEADLINE_NOT_LIMITED = -1;
+    
+    
+    // request
+    private final short[] request;
+    
+    // waiting timeout
+    private final long waitingTimeout;
+    
+    // deadline [in ms since epoch], or DEADLINE_NOT_LIMITED
+    private final long deadline;
+    
+    // counts down, when the request is finished
+    private final CountDownLatch finished = new CountDownLatch(1);
+    
+    // final result
+    private RequestResult result = null;
+    
+    // indicates, whether the request was cancelled
+    private boolean cancelled = false;
+    
+    // indicates, whether the request was sent into the network
+    private boolean sent = false;
+    
+    // called after cancellation
+    private Runnable cancelListener = null;
+    
+    // called after the request is finished
+    private final List<Runnable> completionListeners = new ArrayList<>();
+    
+    
+    static long checkDeadline(long deadline) {
+        if ( deadline < 0 && deadline != DEADLINE_NOT_LIMITED ) {
+            throw new IllegalArgumentException("Invalid deadline: " + deadline);
+        }
+        return deadline;
+    }
+    
+    /**
+     * Creates new cancellable request.
+     * 
+     * @param request request to send
+     * @param waitingTimeout maximum time to wait for result of long lasting 
+     *        operations
+     * @param deadline deadline [in ms since epoch], or {@link #DEADLINE_NOT_LIMITED}
+     */
+    CancellableRequest(short[] request, long waitingTimeout, long deadline) {
+        this.request = request;
+        this.waitingTimeout = waitingTimeout;
+        this.deadline = checkDeadline(deadline);
+    }
+    
+    // sets listener, which is called after cancellation
+    synchronized void setCancelListener(Runnable cancelListener) {
+        this.cancelListener = cancelListener;
+    }
+    
+    // marks the request as sent, returns false if the request is already finished
+    synchronized boolean markSent() {
+        if ( finished.getCount() == 0 ) {
+            return false;
+        }
+        sent = true;
+        return true;
+    }
+    
+    // sets final result, returns false if the request was already finished
+    boolean finish(RequestResult result) {
+        List<Runnable> listeners;
+        synchronized ( this ) {
+            if ( finished.getCount() == 0 ) {
+                return false;
+            }
+            this.result = result;
+            finished.countDown();
+            listeners = new ArrayList<>(completionListeners);
+            completionListeners.clear();
+        }
+        callCompletionListeners(listeners);
+        return true;
+    }
+    
+    private static void callCompletionListeners(List<Runnable> listeners) {
+        for ( Runnable listener : listeners ) {
+            try {
+                listener.run();
+            } catch ( RuntimeException ex ) {
+                logger.error("Error in completion listener", ex);
+            }
+        }
+    }
+    
+    /**
+     * Adds listener, which is called, when the request is finished or 
+     * cancelled. The listener is called by the thread, which has finished 
+     * the request - usually the thread of the accessor - so it must not block. 
+     * If the request is already finished, the listener is called immediately
+     * by the calling thread.
+     * 
+     * @param listener listener to add
+     */
+    public void addCompletionListener(Runnable listener) {
+        if ( listener == null ) {
+            throw new IllegalArgumentException("Listener cannot be null.");
+        }
+        synchronized ( this ) {
+            if ( finished.getCount() != 0 ) {
+                completionListeners.add(listener);
+                return;
+            }
+        }
+        callCompletionListeners(Collections.singletonList(listener));
+    }
+    
+    /**
+     * @return the request
+     */
+    public short[] getRequest() {
+        return request;
+    }
+    
+    /**
+     * @return maximum time to wait for result of long lasting operations
+     */
+    public long getWaitingTimeout() {
+        return waitingTimeout;
+    }
+    
+    /**
+     * @return deadline [in ms since epoch], or {@link #DEADLINE_NOT_LIMITED}
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+    
+    /**
+     * Indicates, whether the deadline has passed at specified time.
+     * 
+     * @param now current time [in ms since epoch]
+     * @return {@code true} if the deadline has passed <br>
+     *         {@code false} otherwise
+     */
+    public boolean isDeadlinePassed(long now) {
+        return ( deadline != DEADLINE_NOT_LIMITED && now >= deadline );
+    }
+    
+    /**
+     * @return {@code true} if processing of the request has started, so that
+     *         the request may have been sent into the network <br>
+     *         {@code false} otherwise
+     */
+    public synchronized boolean isSent() {
+        return sent;
+    }
+    
+    /**
+     * Cancels the request. The same as {@code cancel(true)}.
+     * 
+     * @return {@code false} if the request was already finished <br>
+     *         {@code true} otherwise
+     */
+    public boolean cancel() {
+        return cancel(true);
+    }
+    
+    /**
+     * Cancels the request. Request waiting for its turn is not sent, 
+     * request in flight is abandoned regardless of {@code mayInterruptIfRunning}.
+     * 
+     * @param mayInterruptIfRunning not used
+     * @return {@code false} if the request was already finished <br>
+     *         {@code true} otherwise
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        Runnable listener;
+        List<Runnable> listeners;
+        synchronized ( this ) {
+            if ( finished.getCount() == 0 ) {
+                return false;
+            }
+            cancelled = true;
+            finished.countDown();
+            listener = cancelListener;
+            listeners = new ArrayList<>(completionListeners);
+            completionListeners.clear();
+        }
+        if ( listener != null ) {
+            listener.run();
+        }
+        callCompletionListeners(listeners);
+        return true;
+    }
+    
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+    
+    @Override
+    public boolean isDone() {
+        return ( finished.getCount() == 0 );
+    }
+    
+    /**
+     * Waits for final result of the request.
+     * 
+     * @return final result of the request
+     * @throws CancellationException if the request was cancelled
+     * @throws InterruptedException if waiting was interrupted
+     */
+    @Override
+    public RequestResult get() throws InterruptedException {
+        finished.await();
+        return getResult();
+    }
+    
+    @Override
+    public RequestResult get(long timeout, TimeUnit unit) 
+            throws InterruptedException, TimeoutException 
+    {
+        if ( !finished.await(timeout, unit) ) {
+            throw new TimeoutException("Request not finished.");
+        }
+        return getResult();
+    }
+    
+    // returns result of finished request
+    private synchronized RequestResult getResult() {
+        if ( cancelled ) {
+            throw new CancellationException("Request cancelled.");
+        }
+        return result;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.accessors;
+
+/**
+ * Listener of progress of long lasting operations, which are processed
+ * by {@link StandardByteAccessor} in the background.
+ * 
+ * @author agent
+ */
+public interface LongLastingOperationListener {
+    
+    /**
+     * Called, when an operation is queued, periodically while it runs and 
+     * once, when it is finished. The method is called from a thread of 
+     * the accessor and should return quickly.
+     * 
+     * @param progress progress of the operation
+     */
+    void onProgress(LongLastingOperationProgress progress);
+}
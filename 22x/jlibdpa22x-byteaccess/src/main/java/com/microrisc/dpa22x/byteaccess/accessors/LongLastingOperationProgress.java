@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.accessors;
+
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+
+/**
+ * Progress of long lasting operation - bonding of a node or discovery 
+ * of the network.
+ * 
+ * @author agent
+ */
+public final class LongLastingOperationProgress {
+    
+    /**
+     * State of the operation.
+     */
+    public static enum State {
+        /** Operation waits for its turn to be sent. */
+        QUEUED,
+        
+        /** Operation was sent and its result is awaited. */
+        RUNNING,
+        
+        /** Operation is finished. */
+        FINISHED
+    }
+    
+    
+    // handle of the operation
+    private final CancellableRequest operation;
+    
+    // state
+    private final State state;
+    
+    // time elapsed since the operation was sent
+    private final long elapsedTime;
+    
+    // final result
+    private final RequestResult result;
+    
+    
+    /**
+     * Creates new progress of an operation.
+     * 
+     * @param operation handle of the operation
+     * @param state state of the operation
+     * @param elapsedTime time elapsed since the operation was sent [in ms], 
+     *        0 if the operation was not sent
+     * @param result final result of the operation, {@code null} if the operation
+     *        is not finished
+     */
+    public LongLastingOperationProgress(
+            CancellableRequest operation, State state, long elapsedTime, RequestResult result
+    ) {
+        this.operation = operation;
+        this.state = state;
+        this.elapsedTime = elapsedTime;
+        this.result = result;
+    }
+    
+    /**
+     * @return handle of the operation
+     */
+    public CancellableRequest getOperation() {
+        return operation;
+    }
+    
+    /**
+     * @return state of the operation
+     */
+    public State getState() {
+        return state;
+    }
+    
+    /**
+     * @return time elapsed since the operation was sent [in ms], 0 if 
+     *         the operation was not sent
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+    
+    /**
+     * @return final result of the operation, {@code null} if the operation 
+     *         is not finished
+     */
+    public RequestResult getResult() {
+        return result;
+    }
+    
+    @Override
+    public String toString() {
+        return "{state=" + state + ", elapsedTime=" + elapsedTime 
+                + ( (result != null)? ", result=" + result.getStatus() : "" ) + "}";
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.accessors;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Circuit breaker of requests to nodes, which do not respond.
+ * <p>
+ * Each node address is in one of the {@link State states}. Node in the 
+ * {@link State#CLOSED} state is accessed normally. After specified number 
+ * of consecutive failures, i.e. timeouts of responses, the node gets into the 
+ * {@link State#OPEN} state and requests to it fail fast, without being sent 
+ * into the network. After the open timeout elapses, the node is probed by 
+ * the next request to it, or by a low priority request, which is sent, when
+ * the accessor is idle - whichever comes first. During the probe, the node 
+ * is in the {@link State#HALF_OPEN} state. If the probe succeeds, the node is 
+ * closed again, otherwise it is opened with doubled open timeout, up to the 
+ * maximal one.
+ * <p>
+ * The probe is identified by the instance of its request, so that only 
+ * its result changes the state of half-open node. Results of other requests,
+ * which were let through before the node was opened, are ignored in the open
+ * and half-open states - except of response of the node, which always closes
+ * the node.
+ * <p>
+ * States are kept in arrays indexed by node address. Only 
+ * addresses of IQMESH nodes are subject to breaking.
+ * 
+ * @author agent
+ */
+public final class NodeCircuitBreaker {
+    
+    /** States of a node. */
+    public static enum State {
+        
+        /** Requests are sent normally. */
+        CLOSED,
+        
+        /** Requests fail fast. */
+        OPEN,
+        
+        /** Probe request is in progress, other requests fail fast. */
+        HALF_OPEN
+    }
+    
+    /** Default number of consecutive failures, which opens the node. */
+    public static final int FAILURE_THRESHOLD_DEFAULT = 3;
+    
+    /** Default open timeout [in ms]. */
+    public static final long OPEN_TIMEOUT_DEFAULT = 30000;
+    
+    /** Default maximal open timeout [in ms]. */
+    public static final long MAX_OPEN_TIMEOUT_DEFAULT = 300000;
+    
+    // number of node addresses
+    private static final int ADDRESSES_NUM = ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX + 1;
+    
+    
+    // number of consecutive failures, which opens the node
+    private final int failureThreshold;
+    
+    // open timeout
+    private final long openTimeout;
+    
+    // maximal open timeout
+    private final long maxOpenTimeout;
+    
+    // states of nodes - ordinals of State
+    private final byte[] states = new byte[ADDRESSES_NUM];
+    
+    // numbers of consecutive failures
+    private final int[] failuresNums = new int[ADDRESSES_NUM];
+    
+    // current open timeouts
+    private final long[] openTimeouts = new long[ADDRESSES_NUM];
+    
+    // times, when open nodes can be probed
+    private final long[] probeTimes = new long[ADDRESSES_NUM];
+    
+    // requests of probes of half-open nodes
+    private final Object[] probeRequests = new Object[ADDRESSES_NUM];
+    
+    
+    private static int checkFailureThreshold(int failureThreshold) {
+        if ( failureThreshold <= 0 ) {
+            throw new IllegalArgumentException("Failure threshold must be positive.");
+        }
+        return failureThreshold;
+    }
+    
+    private static long checkOpenTimeout(long openTimeout) {
+        if ( openTimeout < 0 ) {
+            throw new IllegalArgumentException("Open timeout cannot be negative.");
+        }
+        return openTimeout;
+    }
+    
+    // indicates, whether the address is subject to breaking
+    private static boolean isNodeAddress(int nadr) {
+        return ( nadr >= ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MIN 
+                && nadr <= ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX 
+        );
+    }
+    
+    // opens specified node
+    private void open(int nadr, long openTimeout, long now) {
+        states[nadr] = (byte) State.OPEN.ordinal();
+        openTimeouts[nadr] = openTimeout;
+        probeTimes[nadr] = now + openTimeout;
+        probeRequests[nadr] = null;
+    }
+    
+    // indicates, whether specified request is the probe of specified half-open node
+    private boolean isProbe(int nadr, Object request) {
+        return ( states[nadr] == State.HALF_OPEN.ordinal() && probeRequests[nadr] == request );
+    }
+    
+    
+    /**
+     * Creates new circuit breaker.
+     * 
+     * @param failureThreshold number of consecutive failures, which opens a node
+     * @param openTimeout time [in ms], after which an open node is probed
+     * @param maxOpenTimeout maximal open timeout [in ms]
+     */
+    public NodeCircuitBreaker(int failureThreshold, long openTimeout, long maxOpenTimeout) {
+        this.failureThreshold = checkFailureThreshold(failureThreshold);
+        this.openTimeout = checkOpenTimeout(openTimeout);
+        if ( maxOpenTimeout < openTimeout ) {
+            throw new IllegalArgumentException(
+                    "Maximal open timeout cannot be less then the open timeout."
+            );
+        }
+        this.maxOpenTimeout = maxOpenTimeout;
+    }
+    
+    /**
+     * Creates new circuit breaker with default settings.
+     */
+    public NodeCircuitBreaker() {
+        this(FAILURE_THRESHOLD_DEFAULT, OPEN_TIMEOUT_DEFAULT, MAX_OPEN_TIMEOUT_DEFAULT);
+    }
+    
+    /**
+     * Indicates, whether specified request to specified node can be sent. 
+     * If the node is open and its open timeout has elapsed, the request 
+     * becomes the probe and the node gets half-open. 
+     * 
+     * @param nadr address of the node
+     * @param request request to the node - its instance identifies the probe
+     * @param now current time [in ms]
+     * @return {@code true} if the request can be sent <br>
+     *         {@code false} if the request should fail fast
+     */
+    public synchronized boolean isRequestAllowed(int nadr, Object request, long now) {
+        if ( !isNodeAddress(nadr) || states[nadr] == State.CLOSED.ordinal() ) {
+            return true;
+        }
+        return startProbe(nadr, request, now);
+    }
+    
+    /**
+     * Makes specified node half-open with specified request as the probe, 
+     * if the node is open and its open timeout has elapsed.
+     * 
+     * @param nadr address of the node
+     * @param request request of the probe - its instance identifies the probe
+     * @param now current time [in ms]
+     * @return {@code true} if the node got half-open and the probe can be sent <br>
+     *         {@code false} otherwise
+     */
+    public synchronized boolean startProbe(int nadr, Object request, long now) {
+        if ( !isNodeAddress(nadr) || states[nadr] != State.OPEN.ordinal() 
+                || now < probeTimes[nadr] 
+        ) {
+            return false;
+        }
+        states[nadr] = (byte) State.HALF_OPEN.ordinal();
+        probeRequests[nadr] = request;
+        return true;
+    }
+    
+    /**
+     * Returns addresses of open nodes, whose open timeout has elapsed.
+     * 
+     * @param now current time [in ms]
+     * @return addresses of nodes to probe
+     */
+    public synchronized List<Integer> getNodesToProbe(long now) {
+        List<Integer> nodes = new ArrayList<>();
+        for ( int nadr = 0; nadr < ADDRESSES_NUM; nadr++ ) {
+            if ( states[nadr] == State.OPEN.ordinal() && now >= probeTimes[nadr] ) {
+                nodes.add(nadr);
+            }
+        }
+        return nodes;
+    }
+    
+    /**
+     * Records response of specified node. The node gets closed.
+     * 
+     * @param nadr address of the node
+     */
+    public synchronized void recordSuccess(int nadr) {
+        if ( !isNodeAddress(nadr) ) {
+            return;
+        }
+        states[nadr] = (byte) State.CLOSED.ordinal();
+        failuresNums[nadr] = 0;
+        openTimeouts[nadr] = 0;
+        probeRequests[nadr] = null;
+    }
+    
+    /**
+     * Records failure of specified request to specified node, i.e. missing 
+     * response. Failure of the probe opens the node with doubled open timeout.
+     * Failures of other requests are counted only if the node is closed.
+     * 
+     * @param nadr address of the node
+     * @param request failed request
+     * @param now current time [in ms]
+     */
+    public synchronized void recordFailure(int nadr, Object request, long now) {
+        if ( !isNodeAddress(nadr) ) {
+            return;
+        }
+        
+        if ( isProbe(nadr, request) ) {
+            open(nadr, Math.min(2 * openTimeouts[nadr], maxOpenTimeout), now);
+            return;
+        }
+        
+        if ( states[nadr] == State.CLOSED.ordinal() && ++failuresNums[nadr] >= failureThreshold ) {
+            open(nadr, openTimeout, now);
+        }
+    }
+    
+    /**
+     * Finishes specified request to specified node. If the request is the 
+     * probe, which has ended neither by success nor by failure of the node, 
+     * the node is opened again with unchanged open timeout.
+     * 
+     * @param nadr address of the node
+     * @param request finished request
+     * @param now current time [in ms]
+     */
+    public synchronized void requestFinished(int nadr, Object request, long now) {
+        if ( isNodeAddress(nadr) && isProbe(nadr, request) ) {
+            open(nadr, openTimeouts[nadr], now);
+        }
+    }
+    
+    /**
+     * Returns state of specified node.
+     * 
+     * @param nadr address of the node
+     * @return state of the node
+     */
+    public synchronized State getState(int nadr) {
+        if ( !isNodeAddress(nadr) ) {
+            return State.CLOSED;
+        }
+        return State.values()[states[nadr]];
+    }
+    
+    /**
+     * @return addresses of nodes, which are not closed
+     */
+    public synchronized List<Integer> getUnavailableNodes() {
+        List<Integer> nodes = new ArrayList<>();
+        for ( int nadr = 0; nadr < ADDRESSES_NUM; nadr++ ) {
+            if ( states[nadr] != State.CLOSED.ordinal() ) {
+                nodes.add(nadr);
+            }
+        }
+        return nodes;
+    }
+    
+    /**
+     * Closes all nodes.
+     */
+    public synchronized void reset() {
+        for ( int nadr = 0; nadr < ADDRESSES_NUM; nadr++ ) {
+            recordSuccess(nadr);
+        }
+    }
+}
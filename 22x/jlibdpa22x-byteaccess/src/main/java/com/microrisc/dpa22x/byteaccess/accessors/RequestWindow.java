@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.accessors;
+
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import java.util.LinkedList;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Window of requests sent through {@link StandardByteAccessor}. Up to 
+ * specified number of requests is queued in the accessor at once, so that 
+ * the next request is sent right after the previous one is finished, without
+ * a round trip through the caller. Results are taken in the order of sending.
+ * <p>
+ * Each request is tagged by an item of the caller, which is returned together
+ * with its result. Requests added to the window wait, until there is a free
+ * place in the window. The window is not thread safe - it is supposed to be 
+ * used by one thread.
+ * 
+ * @author agent
+ * @param <T> type of items, which tag the requests
+ */
+public final class RequestWindow<T> {
+    
+    /** Default number of requests queued in the accessor at once. */
+    public static final int DEPTH_DEFAULT = 4;
+    
+    
+    /**
+     * Finished request of the window.
+     * 
+     * @param <T> type of item, which tags the request
+     */
+    public static final class Completion<T> {
+        
+        private final T item;
+        private final RequestResult result;
+        
+        private Completion(T item, RequestResult result) {
+            this.item = item;
+            this.result = result;
+        }
+
+        /**
+         * @return item, which tags the request
+         */
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * @return result of the request
+         */
+        public RequestResult getResult() {
+            return result;
+        }
+    }
+    
+    
+    // request in the window
+    private static final class Slot<T> {
+        
+        final T item;
+        final short[] request;
+        
+        // request queued in the accessor, or null if not sent yet
+        CancellableRequest sentRequest = null;
+        
+        Slot(T item, short[] request) {
+            this.item = item;
+            this.request = request;
+        }
+    }
+    
+    
+    // accessor to send requests by
+    private final StandardByteAccessor accessor;
+    
+    // number of requests queued at once
+    private final int depth;
+    
+    // requests waiting for a place in the window
+    private final LinkedList<Slot<T>> waitingSlots = new LinkedList<>();
+    
+    // requests queued in the accessor, in the order of sending
+    private final LinkedList<Slot<T>> sentSlots = new LinkedList<>();
+    
+    
+    private static StandardByteAccessor checkAccessor(StandardByteAccessor accessor) {
+        if ( accessor == null ) {
+            throw new IllegalArgumentException("Accessor cannot be null.");
+        }
+        return accessor;
+    }
+    
+    private static int checkDepth(int depth) {
+        if ( depth <= 0 ) {
+            throw new IllegalArgumentException("Window depth must be positive.");
+        }
+        return depth;
+    }
+    
+    private static void checkRequest(short[] request) {
+        if ( request == null ) {
+            throw new IllegalArgumentException("Request cannot be null.");
+        }
+    }
+    
+    /**
+     * Creates new window.
+     * 
+     * @param accessor accessor to send requests by
+     * @param depth number of requests queued in the accessor at once
+     */
+    public RequestWindow(StandardByteAccessor accessor, int depth) {
+        this.accessor = checkAccessor(accessor);
+        this.depth = checkDepth(depth);
+    }
+    
+    /**
+     * Adds specified request at the end of the requests waiting for sending.
+     * 
+     * @param item item, which tags the request
+     * @param request request to send
+     */
+    public void add(T item, short[] request) {
+        checkRequest(request);
+        waitingSlots.addLast(new Slot<>(item, request));
+    }
+    
+    /**
+     * Adds specified request at the start of the requests waiting for sending.
+     * It is sent before all other waiting requests - used to repeat a request.
+     * 
+     * @param item item, which tags the request
+     * @param request request to send
+     */
+    public void addFirst(T item, short[] request) {
+        checkRequest(request);
+        waitingSlots.addFirst(new Slot<>(item, request));
+    }
+    
+    /**
+     * @return {@code true} if there is no waiting or sent request
+     */
+    public boolean isEmpty() {
+        return waitingSlots.isEmpty() && sentSlots.isEmpty();
+    }
+    
+    /**
+     * Fills the window by waiting requests and waits for the result of 
+     * the first sent one.
+     * 
+     * @return the first sent request and its result
+     * @throws InterruptedException if interrupted during waiting
+     * @throws CancellationException if the request was cancelled
+     * @throws IllegalStateException if the window is empty
+     */
+    public Completion<T> next() throws InterruptedException {
+        while ( sentSlots.size() < depth && !waitingSlots.isEmpty() ) {
+            Slot<T> slot = waitingSlots.removeFirst();
+            slot.sentRequest = accessor.sendRequestAsync(
+                    slot.request, CancellableRequest.DEADLINE_NOT_LIMITED
+            );
+            sentSlots.addLast(slot);
+        }
+        if ( sentSlots.isEmpty() ) {
+            throw new IllegalStateException("No request in the window.");
+        }
+        
+        // the request stays in the window till it is finished to be cancelled by cancel()
+        Slot<T> slot = sentSlots.getFirst();
+        RequestResult result = slot.sentRequest.get();
+        sentSlots.removeFirst();
+        return new Completion<>(slot.item, result);
+    }
+    
+    /**
+     * Cancels all sent requests and removes all requests from the window.
+     */
+    public void cancel() {
+        for ( Slot<T> slot : sentSlots ) {
+            slot.sentRequest.cancel();
+        }
+        sentSlots.clear();
+        waitingSlots.clear();
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.accessors;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.byteaccess.ProcessingInfo;
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.byteaccess.errors.LibraryInternalError;
+import com.microrisc.dpa22x.byteaccess.errors.NetworkInternalError;
+import com.microrisc.dpa22x.byteaccess.metrics.AccessorMetrics;
+import com.microrisc.dpa22x.byteaccess.validation.RequestClassifier;
+import com.microrisc.dpa22x.timing.Clock;
+import com.microrisc.dpa22x.timing.SystemClock;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Byte accessor, which collapses identical reads into one request.
+ * <p>
+ * Read request identical to other request, which is queued or in flight
+ * in the underlying accessor, is not sent and gets the result of the other
+ * request. Each of the senders gets its own copy of the response. Reads are
+ * recognized by {@link RequestClassifier}, broadcasts are never collapsed.
+ * <p>
+ * If the underlying accessor is {@link AbstractByteAccessor} or decorates one,
+ * the clock of its waiting time counter is used to wait for results of 
+ * identical requests.
+ * 
+ * @author agent
+ */
+public final class SingleFlightByteAccessor
+implements ByteAccessorDecorator, ByteAccessorControlInterface {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlightByteAccessor.class);
+    
+    
+    // request, whose result is shared by all senders of identical requests
+    private static final class InFlightRequest {
+        
+        // result, null till the request is finished
+        private RequestResult result = null;
+        
+        synchronized void complete(RequestResult result) {
+            this.result = result;
+            notifyAll();
+        }
+        
+        // waits for the result at maximum for specified waiting timeout
+        synchronized RequestResult awaitResult(Clock clock, long waitingTimeout) {
+            long startTime = clock.currentTimeMillis();
+            while ( result == null ) {
+                long timeToWait = 0;
+                if ( waitingTimeout != ByteAccessor.WAITING_TIMEOUT_NOT_LIMITED ) {
+                    timeToWait = waitingTimeout - (clock.currentTimeMillis() - startTime);
+                    if ( timeToWait <= 0 ) {
+                        logger.warn("Waiting for result of identical request timeouted");
+                        return new RequestResult(
+                                RequestResult.Status.ERROR, null,
+                                new ProcessingInfo( new NetworkInternalError(
+                                        "Waiting for result of identical request timeouted.")
+                                )
+                        );
+                    }
+                }
+                
+                try {
+                    clock.waitOn(this, timeToWait);
+                } catch ( InterruptedException ex ) {
+                    logger.warn("Waiting for result of identical request interrupted");
+                    Thread.currentThread().interrupt();
+                    return new RequestResult(
+                            RequestResult.Status.ERROR, null,
+                            new ProcessingInfo( new LibraryInternalError(ex) )
+                    );
+                }
+            }
+            return RequestResult.copyOf(result);
+        }
+    }
+    
+    
+    // underlying accessor
+    private final ByteAccessor accessor;
+    
+    // classifier of reads
+    private final RequestClassifier requestClassifier;
+    
+    // metrics to record collapsed requests into, null means no recording
+    private final AccessorMetrics metrics;
+    
+    // clock to wait for results of identical requests by
+    private final Clock clock;
+    
+    // requests queued or in flight, keyed by their content
+    private final ConcurrentHashMap<String, InFlightRequest> inFlightRequests
+            = new ConcurrentHashMap<>();
+    
+    // default waiting timeout
+    private volatile long defaultWaitingTimeout = ByteAccessor.WAITING_TIMEOUT_NOT_LIMITED;
+    
+    
+    private static ByteAccessor checkAccessor(ByteAccessor accessor) {
+        if ( accessor == null ) {
+            throw new IllegalArgumentException("Accessor cannot be null.");
+        }
+        return accessor;
+    }
+    
+    private static RequestClassifier checkRequestClassifier(RequestClassifier requestClassifier) {
+        if ( requestClassifier == null ) {
+            throw new IllegalArgumentException("Request classifier cannot be null.");
+        }
+        return requestClassifier;
+    }
+    
+    // returns clock of the innermost accessor or system clock
+    private static Clock getClock(ByteAccessor accessor) {
+        while ( accessor instanceof ByteAccessorDecorator ) {
+            accessor = ((ByteAccessorDecorator) accessor).getAccessor();
+        }
+        return ( accessor instanceof AbstractByteAccessor )?
+                ((AbstractByteAccessor) accessor).getWaitingTimeCounter().getClock()
+                : SystemClock.INSTANCE;
+    }
+    
+    // indicates, whether specified request can share result of identical request
+    private boolean isDeduplicable(short[] request) {
+        return ( request[ProtocolProperties.NADR_START]
+                    != ProtocolProperties.NADR_Properties.IQMESH_BROADCAST_ADDRESS
+                && requestClassifier.isRead(request)
+        );
+    }
+    
+    
+    /**
+     * Creates new single flight accessor.
+     * 
+     * @param accessor underlying accessor
+     * @param requestClassifier classifier of reads
+     * @param metrics metrics to record collapsed requests into,
+     *        {@code null} means no recording
+     */
+    public SingleFlightByteAccessor(
+            ByteAccessor accessor, RequestClassifier requestClassifier, AccessorMetrics metrics
+    ) {
+        this.accessor = checkAccessor(accessor);
+        this.requestClassifier = checkRequestClassifier(requestClassifier);
+        this.metrics = metrics;
+        this.clock = getClock(accessor);
+        logger.debug("Single flight byte accessor created");
+    }
+    
+    /**
+     * Creates new single flight accessor, which recognizes reads by
+     * {@link RequestClassifier#DEFAULT default classifier} and records
+     * collapsed requests into metrics of specified accessor.
+     * 
+     * @param accessor underlying accessor
+     */
+    public SingleFlightByteAccessor(StandardByteAccessor accessor) {
+        this(accessor, RequestClassifier.DEFAULT, ( accessor != null )? accessor.getMetrics() : null);
+    }
+    
+    @Override
+    public ByteAccessor getAccessor() {
+        return accessor;
+    }
+    
+    @Override
+    public void start() throws ByteAccessorException {
+        if ( accessor instanceof ByteAccessorControlInterface ) {
+            ((ByteAccessorControlInterface) accessor).start();
+        }
+    }
+    
+    @Override
+    public RequestResult sendRequest(short[] request, long waitingTimeout) {
+        if ( !isDeduplicable(request) ) {
+            return accessor.sendRequest(request, waitingTimeout);
+        }
+        
+        // identical request queued or in flight - its result is shared
+        String requestKey = Arrays.toString(request);
+        InFlightRequest newInFlightRequest = new InFlightRequest();
+        InFlightRequest inFlightRequest = inFlightRequests.putIfAbsent(requestKey, newInFlightRequest);
+        if ( inFlightRequest != null ) {
+            logger.debug("Request joined identical request in flight: {}", requestKey);
+            if ( metrics != null ) {
+                metrics.requestDeduplicated();
+            }
+            return inFlightRequest.awaitResult(clock, waitingTimeout);
+        }
+        
+        RequestResult requestResult = null;
+        try {
+            requestResult = accessor.sendRequest(request, waitingTimeout);
+            return requestResult;
+        } finally {
+            inFlightRequests.remove(requestKey);
+            if ( requestResult == null ) {
+                requestResult = new RequestResult(
+                        RequestResult.Status.ERROR, null,
+                        new ProcessingInfo( new LibraryInternalError("Request processing failed.") )
+                );
+            }
+            newInFlightRequest.complete(RequestResult.copyOf(requestResult));
+        }
+    }
+    
+    @Override
+    public RequestResult sendRequest(short[] request) {
+        return sendRequest(request, defaultWaitingTimeout);
+    }
+    
+    @Override
+    public void setDefaultWaitingTimeout(long timeout) {
+        accessor.setDefaultWaitingTimeout(timeout);
+        this.defaultWaitingTimeout = timeout;
+    }
+    
+    @Override
+    public void terminateAndRelease() {
+        if ( accessor instanceof ByteAccessorControlInterface ) {
+            ((ByteAccessorControlInterface) accessor).terminateAndRelease();
+        }
+        logger.info("Single flight byte accessor terminated and released");
+    }
+}
@@ -23,20 +23,49 @@ import com.microrisc.dpa22x.MessageType;
 import com.microrisc.dpa22x.ProtocolProperties;
 import com.microrisc.dpa22x.byteaccess.ProcessingInfo;
 import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.byteaccess.errors.DeadlineExceededError;
 import com.microrisc.dpa22x.byteaccess.errors.DispatchRequestError;
 import com.microrisc.dpa22x.byteaccess.errors.LibraryInternalError;
 import com.microrisc.dpa22x.byteaccess.errors.NetworkInternalError;
+import com.microrisc.dpa22x.byteaccess.errors.NodeUnavailableError;
 import com.microrisc.dpa22x.byteaccess.errors.ReceiveDataError;
+import com.microrisc.dpa22x.byteaccess.errors.RemoteRequestError;
+import com.microrisc.dpa22x.byteaccess.errors.RequestCancelledError;
+import com.microrisc.dpa22x.byteaccess.metrics.AccessorMetrics;
+import com.microrisc.dpa22x.byteaccess.network.AbstractNetworkLayer;
 import com.microrisc.dpa22x.byteaccess.network.NetworkLayer;
 import com.microrisc.dpa22x.byteaccess.network.NetworkLayerException;
-import com.microrisc.dpa22x.byteaccess.network.NetworkLayerListener;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerFailureListener;
+import com.microrisc.dpa22x.byteaccess.topology.NetworkState;
+import com.microrisc.dpa22x.byteaccess.topology.NetworkStateTracker;
 import com.microrisc.dpa22x.peripherals.Coordinator;
+import com.microrisc.dpa22x.peripherals.EEEPROM;
+import com.microrisc.dpa22x.peripherals.EEPROM;
+import com.microrisc.dpa22x.peripherals.FRC;
+import com.microrisc.dpa22x.peripherals.OS;
+import com.microrisc.dpa22x.peripherals.RAM;
+import com.microrisc.dpa22x.timing.Clock;
+import com.microrisc.dpa22x.timing.TimingParams;
 import com.microrisc.dpa22x.timing.TimingParamsStorage;
 import com.microrisc.dpa22x.timing.WaitingTimeCounter;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
+import javax.management.JMException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,7 +76,7 @@ import org.slf4j.LoggerFactory;
  */
 public final class StandardByteAccessor 
 extends AbstractByteAccessor
-implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListener {
+implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerFailureListener {
     
      /** Logger. */
     private static final Logger logger = LoggerFactory.getLogger(StandardByteAccessor.class);
@@ -65,6 +94,15 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
     /** Synchronization object for waiting for responses from the network. */
     private final Object syncResponse = new Object();
     
+    /** Serializes sending of requests - in the order of their arrival. */
+    private final ReentrantLock requestLock = new ReentrantLock(true);
+    
+    // metrics
+    private final AccessorMetrics metrics = new AccessorMetrics();
+    
+    // name, under which the metrics are registered into JMX, null means no registration
+    private final String metricsName;
+    
     
     // confirmation of previous request
     private DPA_Confirmation prevRequestConfirmation = null;
@@ -98,14 +136,23 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
                 throw new ByteAccessorException("Confirmation reception time not set.");
             }
             
+            // broadcast has no response
+            DPA_Response prevResponse = previousRequestResult.getResponse();
             long timeToWait = waitingTimeCounter
                 .getTimeToWaitToFinishIqmeshRouting(
                         prevRequestConfirmation, 
-                        previousRequestResult.getResponse().getData().length, 
+                        ( prevResponse != null )? prevResponse.getData().length : 0, 
                         prevRequestConfirmationRecvTime
                 );
             //System.out.println("Time to wait for routing: " + timeToWait);
-            Thread.sleep(timeToWait);
+            long waitStartTime = clock.nanoTime();
+            clock.sleep(timeToWait);
+            metrics.recordLatency(
+                    AccessorMetrics.Phase.ROUTING_WAIT, 
+                    prevRequestConfirmation.getNadr()[0], 
+                    prevRequestConfirmation.getPnum(), 
+                    clock.nanoTime() - waitStartTime
+            );
         }
         
         // if there was some error, do nothing as it is not avalaible the response
@@ -131,6 +178,303 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
     // storage of timig params
     private TimingParamsStorage timingParamsStorage;
     
+    // synchronizes access to timing params - results of long lasting 
+    // operations are processed concurrently with other requests
+    private final Object syncTimingParams = new Object();
+    
+    private TimingParams getTimingParams(short[] request) {
+        synchronized ( syncTimingParams ) {
+            return timingParamsStorage.getTimingParams(request);
+        }
+    }
+    
+    private void updateTimingParams(short[] request, DPA_Response response) {
+        synchronized ( syncTimingParams ) {
+            timingParamsStorage.update(request, response);
+        }
+    }
+    
+    // tracker of network state, null if no tracking is used
+    private final NetworkStateTracker networkStateTracker;
+    
+    // circuit breaker of requests to nodes, null if no breaking is used
+    private final NodeCircuitBreaker circuitBreaker;
+    
+    // interval of checking of queued requests for cancellation [in ms]
+    private static final long QUEUE_CHECK_INTERVAL = 50;
+    
+    // maximal time to wait for processed request at termination [in ms]
+    private static final long TERMINATION_TIMEOUT = 5000;
+    
+    // requests, which are queued or in flight
+    private final Set<CancellableRequest> pendingRequests 
+            = Collections.newSetFromMap(new ConcurrentHashMap<CancellableRequest, Boolean>());
+    
+    // processes requests sent asynchronously
+    private volatile ExecutorService requestExecutor = null;
+    
+    // indicates, whether the accessor has been terminated
+    private volatile boolean terminated = false;
+    
+    // wakes up waiting for data from network
+    private final Runnable wakeUpListener = new Runnable() {
+        @Override
+        public void run() {
+            synchronized ( syncResponse ) {
+                syncResponse.notifyAll();
+            }
+        }
+    };
+    
+    private static RequestResult createCancelledResult() {
+        return new RequestResult(
+                RequestResult.Status.ERROR, null, 
+                new ProcessingInfo( new RequestCancelledError("Request cancelled.") )
+        );
+    }
+    
+    private static RequestResult createTerminatedResult() {
+        return new RequestResult(
+                RequestResult.Status.ERROR, null, 
+                new ProcessingInfo( new LibraryInternalError("Byte accessor terminated.") )
+        );
+    }
+    
+    // returns result of specified request, if it must be abandoned, or null
+    private RequestResult getAbandonmentResult(CancellableRequest pendingRequest) {
+        if ( pendingRequest.isCancelled() ) {
+            return createCancelledResult();
+        }
+        if ( terminated ) {
+            return createTerminatedResult();
+        }
+        if ( pendingRequest.isDeadlinePassed(clock.currentTimeMillis()) ) {
+            return new RequestResult(
+                    RequestResult.Status.ERROR, null, 
+                    new ProcessingInfo( new DeadlineExceededError("Deadline exceeded.") )
+            );
+        }
+        return null;
+    }
+    
+    // confirmation and response of unfinished request, which can still come
+    private static final class Fence {
+        final int address;
+        final int pnum;
+        final int pcmd;
+        
+        // time, after which no data is expected, TIME_NOT_DEFINED means 
+        // till the response comes
+        final long expiration;
+        
+        Fence(short[] request, long expiration) {
+            this.address = getDeviceAddress(request);
+            this.pnum = request[ProtocolProperties.PNUM_POS];
+            this.pcmd = request[ProtocolProperties.PCMD_POS];
+            this.expiration = expiration;
+        }
+        
+        boolean matches(short[] data) {
+            return ( data.length > ProtocolProperties.PCMD_POS
+                    && getDeviceAddress(data) == address
+                    && data[ProtocolProperties.PNUM_POS] == pnum
+                    && (data[ProtocolProperties.PCMD_POS] & ~RESPONSE_PCMD_MASK) == pcmd
+            );
+        }
+        
+        boolean isExpired(long now) {
+            return ( expiration != TIME_NOT_DEFINED && now >= expiration );
+        }
+    }
+    
+    // failure of a request reported by the network layer
+    private static final class RequestFailure {
+        
+        // matches the failed request
+        final Fence fence;
+        
+        final String description;
+        
+        RequestFailure(short[] requestHeader, String description) {
+            this.fence = new Fence(requestHeader, TIME_NOT_DEFINED);
+            this.description = description;
+        }
+    }
+    
+    // failure reported by the network layer, which is not yet processed 
+    // - guarded by syncResponse
+    private RequestFailure requestFailure = null;
+    
+    // bit of PCMD, which indicates response
+    private static final int RESPONSE_PCMD_MASK = 0x80;
+    
+    // fences of unfinished requests - accessed only by processing of requests
+    private final List<Fence> fences = new LinkedList<>();
+    
+    // returns address of device, which sent or is to receive specified message
+    private static int getDeviceAddress(short[] message) {
+        int address = message[ProtocolProperties.NADR_START] 
+                | (message[ProtocolProperties.NADR_START + 1] << 8);
+        return ( address == ProtocolProperties.NADR_Properties.LOCAL_DEVICE_ADDRESS )?
+                ProtocolProperties.NADR_Properties.IQMESH_COORDINATOR_ADDRESS : address;
+    }
+    
+    // returns number of hops to count time of possible routing of specified request with
+    private int getFenceHops(short[] request) {
+        int address = getDeviceAddress(request);
+        NetworkState state = getNetworkState();
+        if ( state == null ) {
+            return ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX;
+        }
+        if ( address <= ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX 
+                && state.getHops(address) != NetworkState.HOPS_UNKNOWN 
+        ) {
+            return state.getHops(address);
+        }
+        return ( state.getBondedNodesNum() > 0 )? 
+                state.getBondedNodesNum() : ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX;
+    }
+    
+    // sets fence for late confirmation and response of specified unfinished request
+    private void fenceUnfinishedRequest(
+            short[] request, boolean confirmationPending, boolean longLasting, long remainingTime
+    ) {
+        long now = clock.currentTimeMillis();
+        long expiration;
+        if ( longLasting ) {
+            expiration = TIME_NOT_DEFINED;
+        } else if ( confirmationPending ) {
+            expiration = now + Math.max(remainingTime, 0) 
+                    + waitingTimeCounter.getPredictedRoutingTime(request, getFenceHops(request))
+                    + WaitingTimeCounter.LIBRARY_DELAY;
+        } else {
+            expiration = now + Math.max(remainingTime, 0);
+        }
+        
+        if ( expiration == TIME_NOT_DEFINED || expiration > now ) {
+            fences.add(new Fence(request, expiration));
+        }
+    }
+    
+    // indicates, whether specified data belongs to unfinished request; 
+    // removes expired fences and fences of requests, whose response came
+    private boolean isFenced(short[] data) {
+        long now = clock.currentTimeMillis();
+        for ( Iterator<Fence> fenceIter = fences.iterator(); fenceIter.hasNext(); ) {
+            Fence fence = fenceIter.next();
+            if ( fence.isExpired(now) ) {
+                fenceIter.remove();
+                continue;
+            }
+            if ( fence.matches(data) ) {
+                if ( (data[ProtocolProperties.PCMD_POS] & RESPONSE_PCMD_MASK) != 0 ) {
+                    fenceIter.remove();
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // waits till data of unfinished identical request can come, so that 
+    // it is not taken for data of specified request; returns result of 
+    // the request, if it is abandoned meanwhile, or null
+    private RequestResult waitTillFenceOfIdenticalRequestExpires(CancellableRequest pendingRequest) 
+            throws InterruptedException 
+    {
+        short[] request = pendingRequest.getRequest();
+        Fence matchingFence = null;
+        for ( Iterator<Fence> fenceIter = fences.iterator(); fenceIter.hasNext(); ) {
+            Fence fence = fenceIter.next();
+            if ( !fence.matches(request) ) {
+                continue;
+            }
+            fenceIter.remove();
+            matchingFence = fence;
+            
+            // response of long lasting operation cannot be distinguished
+            if ( fence.expiration == TIME_NOT_DEFINED ) {
+                continue;
+            }
+            logger.info("Waiting for data of abandoned identical request");
+            synchronized ( syncResponse ) {
+                long timeToWait = fence.expiration - clock.currentTimeMillis();
+                while ( timeToWait > 0 ) {
+                    RequestResult abandonmentResult = getAbandonmentResult(pendingRequest);
+                    if ( abandonmentResult != null ) {
+                        return abandonmentResult;
+                    }
+                    clock.waitOn(syncResponse, timeToWait);
+                    timeToWait = fence.expiration - clock.currentTimeMillis();
+                }
+            }
+        }
+        
+        if ( matchingFence == null ) {
+            return null;
+        }
+        
+        // data of the identical request, which came in the meantime
+        synchronized ( syncResponse ) {
+            for ( Iterator<short[]> dataIter = dataFromNetwork.iterator(); dataIter.hasNext(); ) {
+                if ( matchingFence.matches(dataIter.next()) ) {
+                    dataIter.remove();
+                    metrics.staleFrameDropped();
+                }
+            }
+        }
+        return null;
+    }
+    
+    // interval of checking for nodes to probe [in ms]
+    private static final long PROBE_INTERVAL = 1000;
+    
+    // sender of probes to open nodes
+    private ScheduledExecutorService prober = null;
+    
+    // creates low priority probe of specified node - read of OS info
+    private static short[] createProbeRequest(int nadr) {
+        return new short[] { 
+            (short)nadr, 0, OS.PNUM, OS.Command.READ.asByteValue(), 0xFF, 0xFF 
+        };
+    }
+    
+    // sends probes to open nodes, whose open timeout has elapsed, if no 
+    // other request is being processed or waits for processing
+    private void probeNodes() {
+        for ( int nadr : circuitBreaker.getNodesToProbe(clock.currentTimeMillis()) ) {
+            if ( !requestLock.tryLock() ) {
+                return;
+            }
+            try {
+                short[] probeRequest = createProbeRequest(nadr);
+                if ( requestLock.hasQueuedThreads() || isHeldBackByOperation(probeRequest) ) {
+                    return;
+                }
+                if ( !circuitBreaker.startProbe(nadr, probeRequest, clock.currentTimeMillis()) ) {
+                    continue;
+                }
+                
+                logger.info("Probing unavailable node {}", nadr);
+                processRequest(new CancellableRequest(
+                        probeRequest, ByteAccessor.WAITING_TIMEOUT_NOT_LIMITED, 
+                        CancellableRequest.DEADLINE_NOT_LIMITED
+                ));
+                circuitBreaker.requestFinished(nadr, probeRequest, clock.currentTimeMillis());
+                logger.info("Node {} after probe: {}", nadr, circuitBreaker.getState(nadr));
+            } finally {
+                requestLock.unlock();
+            }
+        }
+    }
+    
+    // indicates, if the request is broadcast, which has no response
+    private static boolean isBroadcast(short[] request) {
+        return ( request[ProtocolProperties.NADR_START] 
+                == ProtocolProperties.NADR_Properties.IQMESH_BROADCAST_ADDRESS 
+        );
+    }
+    
     // indicates, if the request denotes long lasting operation
     private static boolean isLongLastingOperation(short[] request) {
         short pnum = ProtocolProperties.getPeripheralNumber(request);
@@ -149,6 +493,357 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
         }
     }
     
+    /**
+     * Indicates, whether specified request is processed by the local device 
+     * without use of the IQMESH network - reads of the coordinator's state 
+     * and memories, results of the last FRC and enumeration. Such requests 
+     * are processed during the rest of IQMESH routing of the previous request.
+     * 
+     * @param request request to check
+     * @return {@code true} if the request does not use the IQMESH network <br>
+     *         {@code false} otherwise
+     */
+    public static boolean isProcessedWithoutNetwork(short[] request) {
+        if ( !ProtocolProperties.isAddresseeLocalDevice(request) ) {
+            return false;
+        }
+        
+        short command = ProtocolProperties.getCommand(request);
+        switch ( ProtocolProperties.getPeripheralNumber(request) ) {
+            case ProtocolProperties.PNUM_Properties.COORDINATOR:
+                return ( command == Coordinator.Command.GET_ADDRESSING_INFO.asByteValue()
+                        || command == Coordinator.Command.GET_DISCOVERED_NODES.asByteValue()
+                        || command == Coordinator.Command.GET_BONDED_NODES.asByteValue()
+                        || command == Coordinator.Command.DISCOVERY_DATA.asByteValue()
+                );
+            case ProtocolProperties.PNUM_Properties.OS:
+                return ( command == OS.Command.READ.asByteValue()
+                        || command == OS.Command.READ_HWP_CONFIGURATION.asByteValue()
+                );
+            case ProtocolProperties.PNUM_Properties.EEPROM:
+                return ( command == EEPROM.Command.READ.asByteValue() );
+            case ProtocolProperties.PNUM_Properties.EEEPROM:
+                return ( command == EEEPROM.Command.READ.asByteValue()
+                        || command == EEEPROM.Command.EXTENDED_READ.asByteValue()
+                );
+            case ProtocolProperties.PNUM_Properties.RAM:
+                return ( command == RAM.Command.READ.asByteValue() );
+            case ProtocolProperties.PNUM_Properties.FRC:
+                return ( command == FRC.Command.EXTRA_RESULT.asByteValue() );
+            case ProtocolProperties.PNUM_Properties.DEVICE_EXPLORATION:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    // indicates, if the request is processed as long lasting operation 
+    // in the background
+    private static boolean isBackgroundOperation(short[] request) {
+        return ( ProtocolProperties.isAddresseeLocalDevice(request) 
+                && isLongLastingOperation(request) 
+        );
+    }
+    
+    // interval of publishing progress of running long lasting operations [in ms]
+    private static final long OPERATION_PROGRESS_INTERVAL = 1000;
+    
+    // long lasting operation processed in the background
+    private static final class Operation {
+        final CancellableRequest handle;
+        final LongLastingOperationListener listener;
+        
+        // matches response of the operation
+        final Fence responseFence;
+        
+        // times of sending [in ms and ns]
+        long sendTime = TIME_NOT_DEFINED;
+        long sendNanoTime = TIME_NOT_DEFINED;
+        
+        // response - guarded by syncResponse
+        short[] response = null;
+        
+        // indicates, that the operation was abandoned - guarded by syncResponse
+        boolean abandoned = false;
+        
+        // time [in ms], till which the operation can still run in the network
+        // after it was abandoned - guarded by syncResponse
+        long holdBackEndTime = TIME_NOT_DEFINED;
+        
+        // failure reported by the network layer - guarded by syncResponse
+        String failure = null;
+        
+        Operation(CancellableRequest handle, LongLastingOperationListener listener) {
+            this.handle = handle;
+            this.listener = listener;
+            this.responseFence = new Fence(handle.getRequest(), TIME_NOT_DEFINED);
+        }
+        
+        boolean isResponse(short[] data) {
+            return ( responseFence.matches(data) 
+                    && (data[ProtocolProperties.PCMD_POS] & RESPONSE_PCMD_MASK) != 0 
+            );
+        }
+    }
+    
+    // processes long lasting operations one after another
+    private volatile ExecutorService operationExecutor = null;
+    
+    // sent operation, whose response is awaited - guarded by syncResponse
+    private Operation awaitedOperation = null;
+    
+    // indicates, whether specified request must wait till running operation 
+    // is finished - only local device can process requests meanwhile; 
+    // abandoned operation can still run in the network, so requests are held 
+    // back till its late response is fenced or its maximal time elapses
+    private boolean isHeldBackByOperation(short[] request) {
+        if ( ProtocolProperties.isAddresseeLocalDevice(request) ) {
+            return false;
+        }
+        synchronized ( syncResponse ) {
+            if ( awaitedOperation == null ) {
+                return false;
+            }
+            if ( !awaitedOperation.abandoned ) {
+                return true;
+            }
+            return ( clock.currentTimeMillis() < awaitedOperation.holdBackEndTime );
+        }
+    }
+    
+    // passes specified data to awaited operation, returns false if the data
+    // does not belong to it
+    private boolean passToAwaitedOperation(short[] data) {
+        if ( awaitedOperation == null || !awaitedOperation.isResponse(data) ) {
+            return false;
+        }
+        
+        if ( awaitedOperation.abandoned ) {
+            logger.info("Late response of abandoned operation dropped: {}", Arrays.toString(data));
+            metrics.staleFrameDropped();
+        } else {
+            awaitedOperation.response = data;
+        }
+        awaitedOperation = null;
+        return true;
+    }
+    
+    private void fireOperationProgress(
+            Operation operation, LongLastingOperationProgress.State state, RequestResult result
+    ) {
+        if ( operation.listener == null ) {
+            return;
+        }
+        
+        long elapsedTime = ( operation.sendTime == TIME_NOT_DEFINED )? 
+                0 : clock.currentTimeMillis() - operation.sendTime;
+        try {
+            operation.listener.onProgress(
+                    new LongLastingOperationProgress(operation.handle, state, elapsedTime, result)
+            );
+        } catch ( RuntimeException ex ) {
+            logger.error("Error in listener of long lasting operation: {}", ex);
+        }
+    }
+    
+    // processes specified long lasting operation
+    private void processOperation(Operation operation) {
+        CancellableRequest handle = operation.handle;
+        try {
+            fireOperationProgress(operation, LongLastingOperationProgress.State.QUEUED, null);
+            
+            RequestResult result = sendOperation(operation);
+            if ( result == null ) {
+                fireOperationProgress(operation, LongLastingOperationProgress.State.RUNNING, null);
+                result = awaitOperationResult(operation);
+                metrics.requestFinished(result);
+            }
+            
+            handle.finish(result);
+            fireOperationProgress(operation, LongLastingOperationProgress.State.FINISHED, result);
+        } finally {
+            pendingRequests.remove(handle);
+        }
+    }
+    
+    // sends specified operation, when no other request is being processed; 
+    // returns null if the operation was sent, or its result otherwise
+    private RequestResult sendOperation(Operation operation) {
+        CancellableRequest handle = operation.handle;
+        short[] request = handle.getRequest();
+        
+        handle.setCancelListener(wakeUpListener);
+        metrics.requestQueued();
+        RequestResult dropResult = acquireRequestLock(handle);
+        if ( dropResult != null ) {
+            logger.info("Operation dropped from queue: {}", dropResult.getProcessingInfo());
+            metrics.requestDropped(dropResult);
+            return dropResult;
+        }
+        
+        RequestResult result = null;
+        try {
+            metrics.requestStarted();
+            logger.debug("sendOperation - start: request={}", Arrays.toString(request));
+            
+            waitTillPreviousIqmeshRoutingIsFinished();
+            cleanUpPreviousRequestData();
+            
+            result = waitTillFenceOfIdenticalRequestExpires(handle);
+            if ( result != null ) {
+                return result;
+            }
+            
+            synchronized ( syncResponse ) {
+                awaitedOperation = operation;
+            }
+            try {
+                networkLayer.sendData(request);
+            } catch ( NetworkLayerException ex ) {
+                logger.error("Error while dispatching operation: {}", ex);
+                synchronized ( syncResponse ) {
+                    awaitedOperation = null;
+                }
+                result = new RequestResult(
+                    RequestResult.Status.ERROR, null, new ProcessingInfo( new DispatchRequestError(ex) )
+                );
+                return result;
+            }
+            
+            operation.sendTime = clock.currentTimeMillis();
+            operation.sendNanoTime = clock.nanoTime();
+            logger.info("Long lasting operation sent: {}", Arrays.toString(request));
+            return null;
+        } catch ( InterruptedException | ByteAccessorException ex ) {
+            logger.error("Error while sending operation: {}", ex);
+            result = new RequestResult(
+                RequestResult.Status.ERROR, null, new ProcessingInfo( new LibraryInternalError(ex) )
+            );
+            return result;
+        } finally {
+            if ( result != null ) {
+                metrics.requestFinished(result);
+            }
+            if ( circuitBreaker != null ) {
+                circuitBreaker.requestFinished(
+                        request[ProtocolProperties.NADR_START], request, clock.currentTimeMillis()
+                );
+            }
+            requestLock.unlock();
+            logger.debug("sendOperation - end");
+        }
+    }
+    
+    // waits for result of specified sent operation and publishes its progress
+    private RequestResult awaitOperationResult(Operation operation) {
+        CancellableRequest handle = operation.handle;
+        short[] request = handle.getRequest();
+        long timeoutTime = ( handle.getWaitingTimeout() == ByteAccessor.WAITING_TIMEOUT_NOT_LIMITED )?
+                TIME_NOT_DEFINED : operation.sendTime + handle.getWaitingTimeout();
+        long nextProgressTime = operation.sendTime + OPERATION_PROGRESS_INTERVAL;
+        
+        while ( true ) {
+            short[] response;
+            RequestResult abandonmentResult = null;
+            
+            synchronized ( syncResponse ) {
+                response = operation.response;
+                if ( response == null && operation.failure != null ) {
+                    logger.info("Operation failed in network layer: {}", operation.failure);
+                    return new RequestResult(
+                            RequestResult.Status.ERROR, null, 
+                            new ProcessingInfo( new RemoteRequestError(operation.failure) )
+                    );
+                }
+                if ( response == null ) {
+                    abandonmentResult = getAbandonmentResult(handle);
+                }
+                
+                long now = clock.currentTimeMillis();
+                if ( response == null && abandonmentResult == null 
+                        && timeoutTime != TIME_NOT_DEFINED && now >= timeoutTime 
+                ) {
+                    logger.warn("Waiting for result of long lasting operation timeouted");
+                    metrics.timeoutOccurred();
+                    abandonmentResult = new RequestResult(
+                            RequestResult.Status.ERROR, null, 
+                            new ProcessingInfo( new NetworkInternalError("Waiting for data timeouted.") )
+                    );
+                }
+                
+                if ( response == null && abandonmentResult == null && now < nextProgressTime ) {
+                    long waitTime = nextProgressTime - now;
+                    if ( timeoutTime != TIME_NOT_DEFINED ) {
+                        waitTime = Math.min(waitTime, timeoutTime - now);
+                    }
+                    if ( handle.getDeadline() != CancellableRequest.DEADLINE_NOT_LIMITED ) {
+                        waitTime = Math.min(waitTime, handle.getDeadline() - now);
+                    }
+                    
+                    try {
+                        clock.waitOn(syncResponse, Math.max(waitTime, 1));
+                    } catch ( InterruptedException ex ) {
+                        logger.warn("Waiting for result of long lasting operation interrupted");
+                        Thread.currentThread().interrupt();
+                        abandonmentResult = new RequestResult(
+                                RequestResult.Status.ERROR, null, 
+                                new ProcessingInfo( new ReceiveDataError("Waiting for data interrupted.") )
+                        );
+                    }
+                }
+                
+                // response can still come - it must not be taken for data of other request
+                if ( abandonmentResult != null ) {
+                    logger.info("Operation abandoned: {}", abandonmentResult.getProcessingInfo());
+                    if ( awaitedOperation == operation ) {
+                        operation.abandoned = true;
+                        operation.holdBackEndTime = operation.sendTime 
+                                + waitingTimeCounter.getMaxTimeOfLongLastingOperation(request);
+                    }
+                    return abandonmentResult;
+                }
+            }
+            
+            if ( response != null ) {
+                return createOperationResult(operation, response);
+            }
+            
+            if ( clock.currentTimeMillis() >= nextProgressTime ) {
+                fireOperationProgress(operation, LongLastingOperationProgress.State.RUNNING, null);
+                nextProgressTime += OPERATION_PROGRESS_INTERVAL;
+            }
+        }
+    }
+    
+    // creates result of specified operation from its response
+    private RequestResult createOperationResult(Operation operation, short[] data) {
+        short[] request = operation.handle.getRequest();
+        
+        DPA_Response response = null;
+        try {
+            response = (DPA_Response) MessageParser.parse(data);
+        } catch ( Exception ex ) {
+            logger.error("Error in parsing response: {}. Data: {}", ex, Arrays.toString(data));
+            return new RequestResult(
+                RequestResult.Status.ERROR, null, new ProcessingInfo( new ReceiveDataError(ex) ) 
+            );
+        }
+        
+        logger.info("Response of long lasting operation received: {}", response);
+        metrics.recordLatency(
+                AccessorMetrics.Phase.RESPONSE, request[ProtocolProperties.NADR_START], 
+                request[ProtocolProperties.PNUM_POS], clock.nanoTime() - operation.sendNanoTime
+        );
+        
+        updateTimingParams(request, response);
+        if ( networkStateTracker != null ) {
+            networkStateTracker.update(request, null, response);
+        }
+        return new RequestResult(
+                RequestResult.Status.SUCCESSFULLY_COMPLETED, response, new ProcessingInfo()
+        );
+    }
+    
     
     /**
      * Creates Standard Byte Accessor object.
@@ -161,8 +856,36 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
     public StandardByteAccessor(
             NetworkLayer networkLayer, WaitingTimeCounter waitingTimeCounter
     ) throws ByteAccessorException 
+    {
+        this(networkLayer, waitingTimeCounter, null, null, null);
+    }
+    
+    /**
+     * Creates Standard Byte Accessor object. Used by 
+     * {@link StandardByteAccessorFactory}, which creates the items 
+     * according to configuration.
+     *
+     * @param networkLayer network layer to use
+     * @param waitingTimeCounter reference to waiting time counter
+     * @param metricsName name, under which the metrics are registered into JMX 
+     *        at start, {@code null} means no registration
+     * @param networkStateTracker tracker of network state, which is started 
+     *        together with the accessor, {@code null} means no tracking
+     * @param circuitBreaker circuit breaker of requests to nodes, 
+     *        {@code null} means no breaking
+     * @throws com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorException
+     *         if some exception has occurred during creation
+     */
+    StandardByteAccessor(
+            NetworkLayer networkLayer, WaitingTimeCounter waitingTimeCounter,
+            String metricsName, NetworkStateTracker networkStateTracker,
+            NodeCircuitBreaker circuitBreaker
+    ) throws ByteAccessorException 
     {
         super(networkLayer, waitingTimeCounter);
+        this.metricsName = metricsName;
+        this.networkStateTracker = networkStateTracker;
+        this.circuitBreaker = circuitBreaker;
         this.dataFromNetwork = new ConcurrentLinkedQueue<>();
         this.timingParamsStorage = new TimingParamsStorage();
         
@@ -181,28 +904,404 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
         
         networkLayer.registerListener(this);
         
+        requestExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "byte-accessor-requests");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        operationExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "byte-accessor-operations");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        
+        if ( networkStateTracker != null ) {
+            networkStateTracker.start(this);
+            timingParamsStorage.setFRC_TimingParams(
+                    networkStateTracker.getState().getFRC_TimingParams()
+            );
+        }
+        
+        if ( circuitBreaker != null ) {
+            prober = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "node-prober");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            prober.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        probeNodes();
+                    } catch ( RuntimeException ex ) {
+                        logger.error("Error while probing nodes: {}", ex);
+                    }
+                }
+            }, PROBE_INTERVAL, PROBE_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+        
+        if ( metricsName != null ) {
+            try {
+                metrics.registerMBean(metricsName);
+            } catch ( JMException ex ) {
+                logger.warn("Registration of metrics into JMX failed: {}", ex.getMessage());
+            }
+        }
+        
         logger.debug("start - end");
     }
     
+    /**
+     * @return current state of the network or {@code null}, if the state 
+     *         is not tracked
+     */
+    public NetworkState getNetworkState() {
+        return ( networkStateTracker != null )? networkStateTracker.getState() : null;
+    }
+    
+    /**
+     * @return tracker of network state or {@code null}, if the state 
+     *         is not tracked
+     */
+    public NetworkStateTracker getNetworkStateTracker() {
+        return networkStateTracker;
+    }
+    
+    /**
+     * @return circuit breaker of requests to nodes or {@code null}, if no 
+     *         breaking is used
+     */
+    public NodeCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+    
+    /**
+     * @return metrics of this accessor
+     */
+    public AccessorMetrics getMetrics() {
+        return metrics;
+    }
+    
+    // returns result of specified request, if it is rejected without being 
+    // queued, or null
+    private RequestResult getRejectionResult(short[] request) {
+        int nadr = request[ProtocolProperties.NADR_START];
+        if ( circuitBreaker != null 
+                && !circuitBreaker.isRequestAllowed(nadr, request, clock.currentTimeMillis()) 
+        ) {
+            logger.info("Request to unavailable node {} failed fast", nadr);
+            RequestResult requestResult = new RequestResult(
+                    RequestResult.Status.ERROR, null, 
+                    new ProcessingInfo( new NodeUnavailableError("Node unavailable: " + nadr) )
+            );
+            metrics.requestRejected(requestResult);
+            return requestResult;
+        }
+        return null;
+    }
+    
     @Override
     public RequestResult sendRequest(short[] request, long waitingTimeout) {
+        checkWaitingTimeout(waitingTimeout);
+        
+        if ( isBackgroundOperation(request) ) {
+            return awaitOperation(startLongLastingOperation(
+                    request, waitingTimeout, CancellableRequest.DEADLINE_NOT_LIMITED, null
+            ));
+        }
+        
+        RequestResult rejectionResult = getRejectionResult(request);
+        if ( rejectionResult != null ) {
+            return rejectionResult;
+        }
+        
+        return sendRequestExclusively(new CancellableRequest(
+                request, waitingTimeout, CancellableRequest.DEADLINE_NOT_LIMITED
+        ));
+    }
+    
+    /**
+     * Sends specified request asynchronously. The request can be cancelled by
+     * returned handle and it is abandoned, if it is not finished till specified
+     * deadline. Requests sent asynchronously are processed one after another
+     * by a single thread of the accessor, in the same queue as other requests.
+     * 
+     * @param request request to send
+     * @param waitingTimeout maximum time to wait for result of long lasting
+     *        operations
+     * @param deadline deadline of the request [in ms since epoch, according 
+     *        to the clock of waiting time counter], or 
+     *        {@link CancellableRequest#DEADLINE_NOT_LIMITED}
+     * @return handle of the request
+     */
+    public CancellableRequest sendRequestAsync(short[] request, long waitingTimeout, long deadline) {
+        checkWaitingTimeout(waitingTimeout);
+        if ( isBackgroundOperation(request) ) {
+            return startLongLastingOperation(request, waitingTimeout, deadline, null);
+        }
+        final CancellableRequest pendingRequest = new CancellableRequest(request, waitingTimeout, deadline);
+        
+        RequestResult rejectionResult = getRejectionResult(request);
+        if ( rejectionResult != null ) {
+            pendingRequest.finish(rejectionResult);
+            return pendingRequest;
+        }
+        
+        pendingRequests.add(pendingRequest);
+        ExecutorService currRequestExecutor = requestExecutor;
+        try {
+            if ( currRequestExecutor == null ) {
+                throw new RejectedExecutionException("Byte accessor not started.");
+            }
+            currRequestExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    pendingRequest.finish(sendRequestExclusively(pendingRequest));
+                }
+            });
+        } catch ( RejectedExecutionException ex ) {
+            pendingRequests.remove(pendingRequest);
+            if ( circuitBreaker != null ) {
+                circuitBreaker.requestFinished(
+                        request[ProtocolProperties.NADR_START], request, clock.currentTimeMillis()
+                );
+            }
+            pendingRequest.finish(createTerminatedResult());
+        }
+        return pendingRequest;
+    }
+    
+    /**
+     * Same as {@link #sendRequestAsync(short[], long, long) sendRequestAsync} 
+     * method with the difference, that the default waiting timeout will be used.
+     * 
+     * @param request request to send
+     * @param deadline deadline of the request [in ms since epoch], or 
+     *        {@link CancellableRequest#DEADLINE_NOT_LIMITED}
+     * @return handle of the request
+     */
+    public CancellableRequest sendRequestAsync(short[] request, long deadline) {
+        return sendRequestAsync(request, defaultWaitingTimeout, deadline);
+    }
+    
+    /**
+     * Starts specified long lasting operation - bonding of a node or discovery
+     * of the network by the local coordinator. The operation is processed in 
+     * the background, so that requests to the local device can be processed
+     * while the operation runs. Requests to other devices wait till 
+     * the operation is finished. If the operation is cancelled or its waiting
+     * timeout elapses, the requests wait till its late response comes or till
+     * its maximal time estimated by the waiting time counter elapses. 
+     * Operations are processed one after another.
+     * <p>
+     * The same processing is used, if the operation is sent by 
+     * {@link #sendRequest(short[], long) sendRequest} or 
+     * {@link #sendRequestAsync(short[], long, long) sendRequestAsync} methods.
+     * 
+     * @param request request of the operation
+     * @param waitingTimeout maximum time to wait for result of the operation
+     * @param deadline deadline of the operation [in ms since epoch], or 
+     *        {@link CancellableRequest#DEADLINE_NOT_LIMITED}
+     * @param listener listener of progress of the operation, can be {@code null}
+     * @return handle of the operation
+     * @throws IllegalArgumentException if the request is not long lasting 
+     *         operation of the local device
+     */
+    public CancellableRequest startLongLastingOperation(
+            short[] request, long waitingTimeout, long deadline, 
+            LongLastingOperationListener listener
+    ) {
+        checkWaitingTimeout(waitingTimeout);
+        if ( !isBackgroundOperation(request) ) {
+            throw new IllegalArgumentException(
+                    "Not a long lasting operation of the local device: " + Arrays.toString(request)
+            );
+        }
+        
+        CancellableRequest handle = new CancellableRequest(request, waitingTimeout, deadline);
+        RequestResult rejectionResult = getRejectionResult(request);
+        if ( rejectionResult != null ) {
+            handle.finish(rejectionResult);
+            return handle;
+        }
+        
+        final Operation operation = new Operation(handle, listener);
+        pendingRequests.add(handle);
+        ExecutorService currOperationExecutor = operationExecutor;
+        try {
+            if ( currOperationExecutor == null ) {
+                throw new RejectedExecutionException("Byte accessor not started.");
+            }
+            currOperationExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    processOperation(operation);
+                }
+            });
+        } catch ( RejectedExecutionException ex ) {
+            pendingRequests.remove(handle);
+            if ( circuitBreaker != null ) {
+                circuitBreaker.requestFinished(
+                        request[ProtocolProperties.NADR_START], request, clock.currentTimeMillis()
+                );
+            }
+            handle.finish(createTerminatedResult());
+        }
+        return handle;
+    }
+    
+    // waits for result of specified operation
+    private static RequestResult awaitOperation(CancellableRequest handle) {
+        try {
+            return handle.get();
+        } catch ( InterruptedException ex ) {
+            logger.warn("Waiting for result of long lasting operation interrupted");
+            Thread.currentThread().interrupt();
+            handle.cancel();
+            return new RequestResult(
+                    RequestResult.Status.ERROR, null, 
+                    new ProcessingInfo( new ReceiveDataError("Waiting for data interrupted.") )
+            );
+        }
+    }
+    
+    // sends specified request, when no other request is being processed
+    private RequestResult sendRequestExclusively(CancellableRequest pendingRequest) {
+        int nadr = pendingRequest.getRequest()[ProtocolProperties.NADR_START];
+        
+        pendingRequests.add(pendingRequest);
+        pendingRequest.setCancelListener(wakeUpListener);
+        metrics.requestQueued();
+        try {
+            RequestResult dropResult = acquireRequestLock(pendingRequest);
+            if ( dropResult != null ) {
+                logger.info("Request dropped from queue: {}", dropResult.getProcessingInfo());
+                metrics.requestDropped(dropResult);
+                return dropResult;
+            }
+            
+            try {
+                metrics.requestStarted();
+                RequestResult requestResult = processRequest(pendingRequest);
+                metrics.requestFinished(requestResult);
+                return requestResult;
+            } finally {
+                if ( circuitBreaker != null ) {
+                    circuitBreaker.requestFinished(
+                            nadr, pendingRequest.getRequest(), clock.currentTimeMillis()
+                    );
+                }
+                requestLock.unlock();
+            }
+        } finally {
+            pendingRequests.remove(pendingRequest);
+        }
+    }
+    
+    // waits for turn of specified request, returns null if the request may 
+    // be sent, or result of the request, if it is dropped from the queue
+    private RequestResult acquireRequestLock(CancellableRequest pendingRequest) {
+        try {
+            while ( true ) {
+                if ( requestLock.tryLock(QUEUE_CHECK_INTERVAL, TimeUnit.MILLISECONDS) ) {
+                    if ( !isHeldBackByOperation(pendingRequest.getRequest()) ) {
+                        break;
+                    }
+                    requestLock.unlock();
+                    synchronized ( syncResponse ) {
+                        clock.waitOn(syncResponse, QUEUE_CHECK_INTERVAL);
+                    }
+                }
+                
+                RequestResult abandonmentResult = getAbandonmentResult(pendingRequest);
+                if ( abandonmentResult != null ) {
+                    finishDroppedRequest(pendingRequest);
+                    return abandonmentResult;
+                }
+            }
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            finishDroppedRequest(pendingRequest);
+            return new RequestResult(
+                    RequestResult.Status.ERROR, null, 
+                    new ProcessingInfo( new LibraryInternalError("Waiting for turn interrupted.") )
+            );
+        }
+        
+        RequestResult abandonmentResult = getAbandonmentResult(pendingRequest);
+        if ( abandonmentResult == null && !pendingRequest.markSent() ) {
+            abandonmentResult = createCancelledResult();
+        }
+        if ( abandonmentResult != null ) {
+            requestLock.unlock();
+            finishDroppedRequest(pendingRequest);
+            return abandonmentResult;
+        }
+        return null;
+    }
+    
+    // circuit breaker must know about requests, which are not sent
+    private void finishDroppedRequest(CancellableRequest pendingRequest) {
+        if ( circuitBreaker != null ) {
+            short[] request = pendingRequest.getRequest();
+            circuitBreaker.requestFinished(
+                    request[ProtocolProperties.NADR_START], request, clock.currentTimeMillis()
+            );
+        }
+    }
+    
+    // sends specified request and waits for its result
+    private RequestResult processRequest(CancellableRequest pendingRequest) {
+        short[] request = pendingRequest.getRequest();
+        long waitingTimeout = pendingRequest.getWaitingTimeout();
+        
         logger.debug(
                 "sendRequest - start: request={}, waitingTimeout={}",
                 Arrays.toString(request), waitingTimeout
         );
-        checkWaitingTimeout(waitingTimeout);
+        
+        // requests, which do not use the network, are processed during previous 
+        // IQMESH routing, whose rest is waited by the next routed request
+        boolean isRouted = !isProcessedWithoutNetwork(request);
+        if ( isRouted ) {
+            try {
+                waitTillPreviousIqmeshRoutingIsFinished();
+            } catch ( Exception ex ) {
+                logger.error("Error while waiting till previous IQMESH routing is finished: {}", ex);
+                return new RequestResult(
+                    RequestResult.Status.ERROR, null, new ProcessingInfo( new LibraryInternalError(ex) )
+                );
+            }
+
+            // cleaning up previous request data
+            cleanUpPreviousRequestData();
+        }
         
         try {
-            waitTillPreviousIqmeshRoutingIsFinished();
-        } catch ( Exception ex ) {
-            logger.error("Error while waiting till previous IQMESH routing is finished: {}", ex);
+            RequestResult abandonmentResult = waitTillFenceOfIdenticalRequestExpires(pendingRequest);
+            if ( abandonmentResult != null ) {
+                return abandonmentResult;
+            }
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            logger.warn("Waiting for abandoned identical request interrupted");
             return new RequestResult(
                 RequestResult.Status.ERROR, null, new ProcessingInfo( new LibraryInternalError(ex) )
             );
         }
         
-        // cleaning up previous request data
-        cleanUpPreviousRequestData();
+        synchronized ( syncResponse ) {
+            requestFailure = null;
+        }
         
         // sending data into network
         try {
@@ -216,6 +1315,10 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
             );
         }
         
+        long dispatchTime = clock.nanoTime();
+        int nadr = request[ProtocolProperties.NADR_START];
+        int pnum = ProtocolProperties.getPeripheralNumber(request);
+        
         boolean waitForConfirmation = false;
         long timeToWait = 0;
         boolean isLongLastingOperationInProgress = false;
@@ -225,7 +1328,7 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
                 isLongLastingOperationInProgress = true;
             } else {
                 timeToWait = waitingTimeCounter.getTimeToWaitForResponse(
-                    request, null, timingParamsStorage.getTimingParams(request)
+                    request, null, getTimingParams(request)
                 );
             }
         } else {
@@ -240,6 +1343,9 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
         long startTime = 0;
         double timeElapsed = 0.0;
         
+        // start of waiting for response - for metrics
+        long responsePhaseStartTime = dispatchTime;
+        
         // waiting for message from network
         synchronized ( syncResponse ) {
             while ( requestResult == null ) {
@@ -247,7 +1353,7 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
                 boolean continueToWait = false;
                 
                 // waiting until some data has come into or timout has elapsed
-                while ( dataFromNetwork.isEmpty() && !timeoutElapsed ) {
+                while ( dataFromNetwork.isEmpty() && requestFailure == null && !timeoutElapsed ) {
                     if ( !continueToWait ) {
                         if ( isLongLastingOperationInProgress ) {
                             if ( waitingTimeout == ByteAccessor.WAITING_TIMEOUT_NOT_LIMITED ) {
@@ -259,11 +1365,29 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
                     }
                     
                     //System.out.println("Time to wait: " + timeToWait);
-                    startTime = System.nanoTime();
+                    
+                    // cancelled request, passed deadline or termination
+                    requestResult = getAbandonmentResult(pendingRequest);
+                    if ( requestResult != null ) {
+                        logger.info("Request abandoned: {}", requestResult.getProcessingInfo());
+                        break;
+                    }
+                    
+                    long waitTime = timeToWait;
+                    if ( pendingRequest.getDeadline() != CancellableRequest.DEADLINE_NOT_LIMITED ) {
+                        long timeToDeadline = pendingRequest.getDeadline() - clock.currentTimeMillis();
+                        waitTime = ( waitTime <= 0 )? timeToDeadline : Math.min(waitTime, timeToDeadline);
+                        
+                        // zero would mean unlimited waiting
+                        waitTime = Math.max(waitTime, 1);
+                    }
+                    
+                    startTime = clock.nanoTime();
                     try {
-                        syncResponse.wait(timeToWait);
+                        clock.waitOn(syncResponse, waitTime);
                     } catch (InterruptedException ex ) {
                         logger.warn("Waiting for data from network interrupted: {}", ex);
+                        Thread.currentThread().interrupt();
                     
                         requestResult = new RequestResult(
                                 RequestResult.Status.ERROR, null, 
@@ -271,9 +1395,10 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
                                         "Waiting for data interrupted.") 
                                 )
                         );
+                        break;
                     }
                     
-                    timeElapsed = (System.nanoTime() - startTime) * NANOSEC_TO_MILISEC;
+                    timeElapsed = (clock.nanoTime() - startTime) * NANOSEC_TO_MILISEC;
                     //System.out.println("Time elapsed: " + timeElapsed);
                     
                     if ( !isLongLastingOperationInProgress 
@@ -285,6 +1410,12 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
                         // waiting for message timeouted
                         if ( timeToWait <= 0 ) {
                             logger.warn("Waiting for data from network timeouted ");
+                            metrics.timeoutOccurred();
+                            
+                            // confirmed request without response means unavailable node
+                            if ( circuitBreaker != null && confirmation != null ) {
+                                circuitBreaker.recordFailure(nadr, request, clock.currentTimeMillis());
+                            }
 
                             requestResult = new RequestResult(
                                     RequestResult.Status.ERROR, null, 
@@ -299,12 +1430,37 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
                     }
                 }
                 
-                // if timeout has elapsed break and return request result
-                if ( timeoutElapsed ) {
+                // if timeout has elapsed or the request was abandoned, 
+                // break and return request result
+                if ( requestResult != null ) {
+                    fenceUnfinishedRequest(
+                            request, waitForConfirmation, 
+                            isLongLastingOperationInProgress, timeToWait
+                    );
                     break;
                 }
                 
+                if ( dataFromNetwork.isEmpty() ) {
+                    RequestFailure failure = requestFailure;
+                    requestFailure = null;
+                    if ( failure.fence.matches(request) ) {
+                        logger.info("Request failed in network layer: {}", failure.description);
+                        requestResult = new RequestResult(
+                                RequestResult.Status.ERROR, null, 
+                                new ProcessingInfo( new RemoteRequestError(failure.description) )
+                        );
+                        break;
+                    }
+                    logger.info("Failure of other request dropped: {}", failure.description);
+                    continue;
+                }
+                
                 short[] data = dataFromNetwork.poll();
+                if ( isFenced(data) ) {
+                    logger.info("Late data of abandoned request dropped: {}", Arrays.toString(data));
+                    metrics.staleFrameDropped();
+                    continue;
+                }
                     
                 MessageType msgType = null;
                 try {
@@ -341,15 +1497,29 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
 
                             logger.info("Confirmation successfully received: {}", confirmation);
 
-                            confirmationRecvTime = (long)(startTime * NANOSEC_TO_MILISEC) + (long)timeElapsed;
+                            confirmationRecvTime = clock.currentTimeMillis();
+                            
+                            long confirmationTime = clock.nanoTime();
+                            metrics.recordLatency(
+                                    AccessorMetrics.Phase.CONFIRMATION, nadr, pnum, 
+                                    confirmationTime - dispatchTime
+                            );
+                            responsePhaseStartTime = confirmationTime;
 
-                            if ( isLongLastingOperation(request) ) {
+                            if ( isBroadcast(request) ) {
+                                // broadcast is completed, no response will come
+                                requestResult = new RequestResult(
+                                        RequestResult.Status.SUCCESSFULLY_COMPLETED,
+                                        null,
+                                        new ProcessingInfo() 
+                                );
+                            } else if ( isLongLastingOperation(request) ) {
                                 isLongLastingOperationInProgress = true;
                             } else {
                                 timeToWait = waitingTimeCounter
                                         .getTimeToWaitForResponse(
                                                 request, confirmation, 
-                                                timingParamsStorage.getTimingParams(request)
+                                                getTimingParams(request)
                                         );
                             }
                         } else {
@@ -391,12 +1561,25 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
                             }
 
                             logger.info("Response successfully received: {}", response);
+                            
+                            metrics.recordLatency(
+                                    AccessorMetrics.Phase.RESPONSE, nadr, pnum, 
+                                    clock.nanoTime() - responsePhaseStartTime
+                            );
 
                             requestResult = new RequestResult(
                                     RequestResult.Status.SUCCESSFULLY_COMPLETED,
                                     response,
                                     new ProcessingInfo() 
                             );
+                            
+                            updateTimingParams(request, response);
+                            if ( circuitBreaker != null ) {
+                                circuitBreaker.recordSuccess(nadr);
+                            }
+                            if ( networkStateTracker != null ) {
+                                networkStateTracker.update(request, confirmation, response);
+                            }
                         }
                         break;
                     default:
@@ -413,7 +1596,9 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
             }
         }
         
-        updatePreviousRequestData(confirmation, confirmationRecvTime, requestResult);
+        if ( isRouted ) {
+            updatePreviousRequestData(confirmation, confirmationRecvTime, requestResult);
+        }
         
         logger.debug("sendRequest - end");
         return requestResult;
@@ -429,19 +1614,71 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
         logger.debug("onGetMessage - start: data={}", Arrays.toString(data) );
         
         synchronized ( syncResponse ) {
-            dataFromNetwork.add(data);
+            if ( !passToAwaitedOperation(data) ) {
+                dataFromNetwork.add(data);
+            }
             syncResponse.notifyAll();
         }
         
         logger.debug("onGetMessage - end");
     }
     
+    // stops specified executor and waits for its threads to finish
+    private static void shutdownAndAwait(ExecutorService executor) {
+        executor.shutdownNow();
+        try {
+            if ( !executor.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS) ) {
+                logger.warn("Threads of byte accessor not finished at termination");
+            }
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            logger.warn("Waiting for threads of byte accessor interrupted");
+        }
+    }
+    
     @Override
     public void terminateAndRelease() {
         logger.debug("destroy - start: ");
         
-        networkLayer.unregisterListener();
+        // pending requests are abandoned
+        terminated = true;
+        wakeUpListener.run();
+        try {
+            if ( requestLock.tryLock(TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS) ) {
+                requestLock.unlock();
+            } else {
+                logger.warn("Processed request not finished at termination");
+            }
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            logger.warn("Waiting for processed request interrupted");
+        }
+        
+        if ( requestExecutor != null ) {
+            shutdownAndAwait(requestExecutor);
+            requestExecutor = null;
+        }
+        if ( operationExecutor != null ) {
+            shutdownAndAwait(operationExecutor);
+            operationExecutor = null;
+        }
+        for ( CancellableRequest pendingRequest : pendingRequests ) {
+            pendingRequest.finish(createTerminatedResult());
+        }
+        
+        if ( prober != null ) {
+            shutdownAndAwait(prober);
+            prober = null;
+        }
+        
+        if ( networkStateTracker != null ) {
+            networkStateTracker.stop();
+        }
+        
+        AbstractNetworkLayer.unregisterListener(networkLayer, this);
         networkLayer.terminateAndRelease();
+        
+        metrics.unregisterMBean();
 
         dataFromNetwork.clear();
         dataFromNetwork = null;
@@ -457,11 +1694,35 @@ implements ByteAccessorControlInterface, J_AsyncMsgListener, NetworkLayerListene
         logger.debug("onGetData - start: data={}", Arrays.toString(data) );
         
         synchronized ( syncResponse ) {
-            dataFromNetwork.add(data);
+            if ( !passToAwaitedOperation(data) ) {
+                dataFromNetwork.add(data);
+            }
             syncResponse.notifyAll();
         }
         
         logger.debug("onGetData - end");
     }
     
+    @Override
+    public void onRequestFailed(short[] requestHeader, String description) {
+        logger.debug(
+                "onRequestFailed - start: requestHeader={}, description={}", 
+                Arrays.toString(requestHeader), description
+        );
+        
+        synchronized ( syncResponse ) {
+            if ( awaitedOperation != null && awaitedOperation.responseFence.matches(requestHeader) ) {
+                if ( !awaitedOperation.abandoned ) {
+                    awaitedOperation.failure = description;
+                }
+                awaitedOperation = null;
+            } else {
+                requestFailure = new RequestFailure(requestHeader, description);
+            }
+            syncResponse.notifyAll();
+        }
+        
+        logger.debug("onRequestFailed - end");
+    }
+    
 }
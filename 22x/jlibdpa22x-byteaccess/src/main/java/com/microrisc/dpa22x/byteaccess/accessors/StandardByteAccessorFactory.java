@@ -19,17 +19,70 @@ import com.microrisc.dpa22x.DCTR;
 import com.microrisc.dpa22x.RF_Mode;
 import com.microrisc.dpa22x.byteaccess.network.NetworkLayer;
 import com.microrisc.dpa22x.byteaccess.network.NetworkLayerFactory;
+import com.microrisc.dpa22x.byteaccess.topology.CapabilityCheckingByteAccessor;
+import com.microrisc.dpa22x.byteaccess.topology.NetworkStateTracker;
+import com.microrisc.dpa22x.byteaccess.validation.RequestClassifier;
+import com.microrisc.dpa22x.byteaccess.validation.RequestValidator;
+import com.microrisc.dpa22x.byteaccess.validation.ValidatingByteAccessor;
 import com.microrisc.dpa22x.timing.WaitingTimeCounter;
+import java.io.File;
 import java.lang.reflect.Constructor;
 import org.apache.commons.configuration.Configuration;
 
 /**
  * Standard Byte Accessor factory.
+ * <p>
+ * Configuration items: <br>
+ * - <b>byteAccessor.metrics.name</b>: name, under which the accessor's metrics
+ * are registered into JMX. If no such configuration key is found, 
+ * {@link #METRICS_NAME_DEFAULT} is used. Empty value means no registration. <br>
+ * 
+ * - <b>byteAccessor.networkState.file</b>: file, into which the snapshot 
+ * of network state is persisted. If no such configuration key is found, 
+ * the state of network is not tracked. <br>
+ * 
+ * - <b>byteAccessor.networkState.refreshDelay</b>: delay [in ms] of refresh 
+ * of network state after start. If no such configuration key is found, 
+ * {@link NetworkStateTracker#REFRESH_DELAY_DEFAULT} is used. <br>
+ * 
+ * - <b>byteAccessor.networkState.discoverCapabilities</b>: whether refresh
+ * of network state enumerates peripherals of bonded nodes with unknown 
+ * capabilities. If no such configuration key is found, capabilities are 
+ * not discovered. <br>
+ * 
+ * - <b>byteAccessor.networkState.checkCapabilities</b>: whether requests, 
+ * which addressed nodes do not support according to their known 
+ * capabilities, fail without being sent by 
+ * {@link CapabilityCheckingByteAccessor}. If no such configuration key 
+ * is found, capabilities are checked, if the state of network is tracked. <br>
+ * 
+ * - <b>byteAccessor.circuitBreaker.enabled</b>: whether requests to nodes,
+ * which do not respond, fail fast. If no such configuration key is found, 
+ * no circuit breaker is used. <br>
+ * 
+ * - <b>byteAccessor.circuitBreaker.failureThreshold</b>, 
+ * <b>byteAccessor.circuitBreaker.openTimeout</b>, 
+ * <b>byteAccessor.circuitBreaker.maxOpenTimeout</b>: settings of 
+ * {@link NodeCircuitBreaker}. If no such configuration keys are found, 
+ * defaults of the circuit breaker are used. <br>
+ * 
+ * - <b>byteAccessor.validation.enabled</b>: whether requests are checked 
+ * by {@link RequestValidator#DEFAULT default validator} of 
+ * {@link ValidatingByteAccessor} before they are sent.
+ * If no such configuration key is found, requests are checked. <br>
+ * 
+ * - <b>byteAccessor.singleFlight.enabled</b>: whether identical reads, which 
+ * are queued or in flight at the same time, are collapsed into one request
+ * by {@link SingleFlightByteAccessor}. If no such configuration key is found, 
+ * identical reads are not collapsed.
  * 
  * @author Michal Konopa
  */
 public final class StandardByteAccessorFactory implements ByteAccessorFactory {
     
+    /** Default name, under which the accessor's metrics are registered into JMX. */
+    public static final String METRICS_NAME_DEFAULT = "default";
+    
     // creates and returns network layer
     private NetworkLayer createNetworkLayer(Configuration configuration) throws ByteAccessorFactoryException {
         
@@ -129,8 +182,53 @@ public final class StandardByteAccessorFactory implements ByteAccessorFactory {
     }
    
 
-    @Override
-    public ByteAccessor getByteAccessor(Configuration configuration) 
+    /**
+     * Wraps specified accessor into decorators enabled by specified 
+     * configuration - checking of capabilities of devices, validation 
+     * of requests and collapsing of identical reads. Rejected and collapsed requests are recorded into metrics 
+     * of specified standard accessor.
+     * 
+     * @param accessor accessor to wrap
+     * @param standardAccessor standard accessor, which sends requests 
+     *        of {@code accessor}
+     * @param configuration configuration
+     * @return decorated accessor
+     */
+    public static ByteAccessor decorate(
+            ByteAccessor accessor, StandardByteAccessor standardAccessor, 
+            Configuration configuration
+    ) {
+        NetworkStateTracker networkStateTracker = standardAccessor.getNetworkStateTracker();
+        if ( networkStateTracker != null 
+                && configuration.getBoolean("byteAccessor.networkState.checkCapabilities", true)
+        ) {
+            accessor = new CapabilityCheckingByteAccessor(
+                    accessor, networkStateTracker, standardAccessor.getMetrics()
+            );
+        }
+        if ( configuration.getBoolean("byteAccessor.validation.enabled", true) ) {
+            accessor = new ValidatingByteAccessor(
+                    accessor, RequestValidator.DEFAULT, standardAccessor.getMetrics()
+            );
+        }
+        if ( configuration.getBoolean("byteAccessor.singleFlight.enabled", false) ) {
+            accessor = new SingleFlightByteAccessor(
+                    accessor, RequestClassifier.DEFAULT, standardAccessor.getMetrics()
+            );
+        }
+        return accessor;
+    }
+    
+    /**
+     * Creates and returns Standard Byte Accessor according to specified 
+     * configuration. The accessor is not wrapped into any decorators.
+     * 
+     * @param configuration configuration
+     * @return Standard Byte Accessor
+     * @throws ByteAccessorFactoryException if some error occured during 
+     *         creation of the accessor
+     */
+    public StandardByteAccessor getStandardByteAccessor(Configuration configuration) 
             throws ByteAccessorFactoryException 
     {
         // creation of Network Layer
@@ -139,11 +237,86 @@ public final class StandardByteAccessorFactory implements ByteAccessorFactory {
         // creation of Waiting Counter
         WaitingTimeCounter waitingTimeCounter = WaitingTimeCounterFactory.getWaitingTimeCounter(configuration);
         
+        return getStandardByteAccessor(networkLayer, waitingTimeCounter, configuration);
+    }
+    
+    /**
+     * Creates and returns Standard Byte Accessor, which uses specified network
+     * layer and waiting time counter. Other items of the accessor are created
+     * according to specified configuration. The accessor is not wrapped into
+     * any decorators.
+     * 
+     * @param networkLayer network layer to use
+     * @param waitingTimeCounter waiting time counter to use
+     * @param configuration configuration
+     * @return Standard Byte Accessor
+     * @throws ByteAccessorFactoryException if some error occured during 
+     *         creation of the accessor
+     */
+    public static StandardByteAccessor getStandardByteAccessor(
+            NetworkLayer networkLayer, WaitingTimeCounter waitingTimeCounter, 
+            Configuration configuration
+    ) throws ByteAccessorFactoryException 
+    {
+        String metricsName = configuration.getString("byteAccessor.metrics.name", METRICS_NAME_DEFAULT);
+        if ( metricsName.isEmpty() ) {
+            metricsName = null;
+        }
+        
+        NetworkStateTracker networkStateTracker = null;
+        String networkStateFile = configuration.getString("byteAccessor.networkState.file", "");
+        if ( !networkStateFile.isEmpty() ) {
+            networkStateTracker = new NetworkStateTracker(
+                    new File(networkStateFile),
+                    configuration.getLong(
+                        "byteAccessor.networkState.refreshDelay", 
+                        NetworkStateTracker.REFRESH_DELAY_DEFAULT
+                    )
+            );
+            networkStateTracker.setCapabilitiesDiscoveryEnabled(
+                    configuration.getBoolean("byteAccessor.networkState.discoverCapabilities", false)
+            );
+        }
+        
+        NodeCircuitBreaker circuitBreaker = null;
+        if ( configuration.getBoolean("byteAccessor.circuitBreaker.enabled", false) ) {
+            try {
+                circuitBreaker = new NodeCircuitBreaker(
+                        configuration.getInt(
+                            "byteAccessor.circuitBreaker.failureThreshold", 
+                            NodeCircuitBreaker.FAILURE_THRESHOLD_DEFAULT
+                        ),
+                        configuration.getLong(
+                            "byteAccessor.circuitBreaker.openTimeout", 
+                            NodeCircuitBreaker.OPEN_TIMEOUT_DEFAULT
+                        ),
+                        configuration.getLong(
+                            "byteAccessor.circuitBreaker.maxOpenTimeout", 
+                            NodeCircuitBreaker.MAX_OPEN_TIMEOUT_DEFAULT
+                        )
+                );
+            } catch ( IllegalArgumentException ex ) {
+                throw new ByteAccessorFactoryException(ex);
+            }
+        }
+        
         try {
-            return new StandardByteAccessor(networkLayer, waitingTimeCounter);
+            StandardByteAccessor accessor = new StandardByteAccessor(
+                    networkLayer, waitingTimeCounter, metricsName, 
+                    networkStateTracker, circuitBreaker
+            );
+            return accessor;
         } catch ( ByteAccessorException ex ) {
             throw new ByteAccessorFactoryException(ex); 
         }
     }
     
+    @Override
+    public ByteAccessor getByteAccessor(Configuration configuration) 
+            throws ByteAccessorFactoryException 
+    {
+        StandardByteAccessor accessor = getStandardByteAccessor(configuration);
+        return decorate(accessor, accessor, configuration);
+    }
+    
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.backup;
+
+import com.microrisc.dpa22x.byteaccess.JByteAccessException;
+
+/**
+ * Exception thrown, when backup or restore cannot be finished.
+ * 
+ * @author agent
+ */
+public class BackupException extends JByteAccessException {
+    
+    public BackupException(String message) {
+        super(message);
+    }
+    
+    public BackupException(String message, Throwable cause) {
+        super(message, cause);
+    }
+    
+    public BackupException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.backup;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.peripherals.Coordinator;
+
+/**
+ * Device, whose data are backed up and restored block by block - 
+ * peripheral and its commands for reading and writing of the blocks.
+ * <p>
+ * Backup command gets index of the block as its only data and returns 
+ * the block. Index out of the backed up data is answered by 
+ * {@link com.microrisc.dpa22x.DPA_ResponseCode#ERROR_DATA ERROR_DATA}. 
+ * Restore command gets the block as its data, blocks are restored in 
+ * the order of their indexes.
+ * 
+ * @author agent
+ */
+public final class BackupTarget {
+    
+    /** Network info of the coordinator. */
+    public static final BackupTarget COORDINATOR = new BackupTarget(
+            ProtocolProperties.NADR_Properties.IQMESH_COORDINATOR_ADDRESS, 
+            Coordinator.PNUM, 
+            Coordinator.Command.BACKUP.asByteValue(), 
+            Coordinator.Command.RESTORE.asByteValue()
+    );
+    
+    // maximal value of PNUM and PCMD of requests
+    private static final int COMMAND_MAX = 0x7F;
+    
+    
+    // address of the device
+    private final int address;
+    
+    // peripheral
+    private final int pnum;
+    
+    // backup and restore commands
+    private final int backupCommand;
+    private final int restoreCommand;
+    
+    
+    private static int checkAddress(int address) {
+        if ( address < ProtocolProperties.NADR_Properties.IQMESH_COORDINATOR_ADDRESS 
+                || address > ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX 
+        ) {
+            throw new IllegalArgumentException("Invalid address: " + address);
+        }
+        return address;
+    }
+    
+    private static int checkCommand(int command, String name) {
+        if ( command < 0 || command > COMMAND_MAX ) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + command);
+        }
+        return command;
+    }
+    
+    /**
+     * Creates new backup target.
+     * 
+     * @param address address of the device
+     * @param pnum peripheral, which backs up and restores the data
+     * @param backupCommand command, which reads one block
+     * @param restoreCommand command, which writes one block
+     */
+    public BackupTarget(int address, int pnum, int backupCommand, int restoreCommand) {
+        this.address = checkAddress(address);
+        this.pnum = checkCommand(pnum, "PNUM");
+        this.backupCommand = checkCommand(backupCommand, "backup command");
+        this.restoreCommand = checkCommand(restoreCommand, "restore command");
+    }
+    
+    /**
+     * @return address of the device
+     */
+    public int getAddress() {
+        return address;
+    }
+    
+    /**
+     * @return peripheral, which backs up and restores the data
+     */
+    public int getPnum() {
+        return pnum;
+    }
+    
+    /**
+     * @return command, which reads one block
+     */
+    public int getBackupCommand() {
+        return backupCommand;
+    }
+    
+    /**
+     * @return command, which writes one block
+     */
+    public int getRestoreCommand() {
+        return restoreCommand;
+    }
+    
+    // creates request of the target with specified command and data
+    private short[] createRequest(int command, short[] data) {
+        short[] request = new short[ProtocolProperties.PDATA_START_POS + data.length];
+        request[ProtocolProperties.NADR_START] = (short)address;
+        request[ProtocolProperties.PNUM_POS] = (short)pnum;
+        request[ProtocolProperties.PCMD_POS] = (short)command;
+        request[ProtocolProperties.HWPID_START] = 0xFF;
+        request[ProtocolProperties.HWPID_START + 1] = 0xFF;
+        System.arraycopy(data, 0, request, ProtocolProperties.PDATA_START_POS, data.length);
+        return request;
+    }
+    
+    // request for backup of block with specified index
+    short[] createBackupRequest(int index) {
+        return createRequest(backupCommand, new short[] { (short)index });
+    }
+    
+    // request for restore of specified block
+    short[] createRestoreRequest(short[] block) {
+        return createRequest(restoreCommand, block);
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        if ( !(obj instanceof BackupTarget) ) {
+            return false;
+        }
+        BackupTarget target = (BackupTarget) obj;
+        return ( address == target.address && pnum == target.pnum 
+                && backupCommand == target.backupCommand 
+                && restoreCommand == target.restoreCommand
+        );
+    }
+    
+    @Override
+    public int hashCode() {
+        return ((address * 31 + pnum) * 31 + backupCommand) * 31 + restoreCommand;
+    }
+    
+    @Override
+    public String toString() {
+        return "{address=" + address + ", pnum=" + pnum + "}";
+    }
+}
@@ -0,0 +1,605 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.backup;
+
+import com.microrisc.dpa22x.DPA_ResponseCode;
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.byteaccess.accessors.RequestWindow;
+import com.microrisc.dpa22x.byteaccess.accessors.StandardByteAccessor;
+import com.microrisc.dpa22x.byteaccess.transfer.TransferStatistics;
+import com.microrisc.dpa22x.timing.Clock;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Backup and restore of data of the coordinator and other devices, which 
+ * are transferred block by block - see {@link BackupTarget}.
+ * <p>
+ * Block requests are pipelined - several of them are queued in the accessor
+ * at once, so that the next block is requested right after the previous one 
+ * is finished, without a round trip through the caller. Backed up blocks are 
+ * streamed into a file, each of them is a checkpoint - interrupted backup 
+ * into the same file continues with the next block. Restore continues with 
+ * the first target, which was not completely restored. Failed block is 
+ * repeated up to {@link #ATTEMPTS_NUM} times.
+ * <p>
+ * Format of the backup file (big endian): <br>
+ * - magic number {@link #MAGIC} [4 bytes] <br>
+ * - format version {@link #FORMAT_VERSION} [2 bytes] <br>
+ * - records, each starts with its type [1 byte] and target: address [2 bytes], 
+ *   PNUM [1 byte], backup and restore commands [2 bytes] <br>
+ * - block record: index [1 byte], length [1 byte] and data of the block <br>
+ * - end record: number of blocks of the target [2 bytes]
+ * <p>
+ * Progress of restore is kept in a file with {@link #RESTORE_CHECKPOINT_SUFFIX}
+ * appended to the name of the backup file, which contains targets already
+ * restored. The file is deleted, when the restore is finished.
+ * 
+ * @author agent
+ */
+public final class NetworkBackup {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(NetworkBackup.class);
+    
+    /** Magic number - "DPBK". */
+    public static final int MAGIC = 0x4450424B;
+    
+    /** Version of the file format. */
+    public static final int FORMAT_VERSION = 1;
+    
+    /** Suffix of the file with progress of restore. */
+    public static final String RESTORE_CHECKPOINT_SUFFIX = ".restored";
+    
+    /** Default number of block requests queued in the accessor at once. */
+    public static final int PIPELINE_DEPTH_DEFAULT = RequestWindow.DEPTH_DEFAULT;
+    
+    /** Number of attempts to transfer a block. */
+    public static final int ATTEMPTS_NUM = 3;
+    
+    // maximal number of blocks of a target - index has one byte
+    private static final int BLOCKS_MAX = 0x100;
+    
+    // types of records
+    private static final int RECORD_BLOCK = 1;
+    private static final int RECORD_END = 2;
+    
+    // length of file header
+    private static final int HEADER_LENGTH = 6;
+    
+    
+    // backed up data of a target read from the file
+    private static final class TargetData {
+        final List<short[]> blocks = new ArrayList<>();
+        boolean complete = false;
+    }
+    
+    // counter of transferred data
+    private static final class TransferCounter {
+        long blocksNum = 0;
+        long bytesNum = 0;
+        
+        void add(short[] block) {
+            blocksNum++;
+            bytesNum += block.length;
+        }
+    }
+    
+    // content of backup file
+    private static final class BackupContent {
+        final Map<BackupTarget, TargetData> targets = new LinkedHashMap<>();
+        
+        // length of the valid part of the file
+        long validLength = HEADER_LENGTH;
+    }
+    
+    
+    // accessor to send requests by
+    private final StandardByteAccessor accessor;
+    
+    // number of block requests queued at once
+    private final int pipelineDepth;
+    
+    // clock to measure duration of backups and restores by
+    private final Clock clock;
+    
+    
+    private static StandardByteAccessor checkAccessor(StandardByteAccessor accessor) {
+        if ( accessor == null ) {
+            throw new IllegalArgumentException("Accessor cannot be null.");
+        }
+        return accessor;
+    }
+    
+    private static int checkPipelineDepth(int pipelineDepth) {
+        if ( pipelineDepth <= 0 ) {
+            throw new IllegalArgumentException("Pipeline depth must be positive.");
+        }
+        return pipelineDepth;
+    }
+    
+    private static List<BackupTarget> checkTargets(List<BackupTarget> targets) {
+        if ( targets == null || targets.isEmpty() ) {
+            throw new IllegalArgumentException("Targets cannot be null or empty.");
+        }
+        if ( new HashSet<>(targets).size() != targets.size() ) {
+            throw new IllegalArgumentException("Targets cannot repeat.");
+        }
+        return targets;
+    }
+    
+    /**
+     * Creates new backup engine.
+     * 
+     * @param accessor accessor to send requests by
+     * @param pipelineDepth number of block requests queued in the accessor at once
+     */
+    public NetworkBackup(StandardByteAccessor accessor, int pipelineDepth) {
+        this.accessor = checkAccessor(accessor);
+        this.pipelineDepth = checkPipelineDepth(pipelineDepth);
+        this.clock = accessor.getWaitingTimeCounter().getClock();
+    }
+    
+    /**
+     * Creates new backup engine with default pipeline depth.
+     * 
+     * @param accessor accessor to send requests by
+     */
+    public NetworkBackup(StandardByteAccessor accessor) {
+        this(accessor, PIPELINE_DEPTH_DEFAULT);
+    }
+    
+    
+    // FILES
+    
+    private static void writeTarget(DataOutputStream out, int recordType, BackupTarget target) 
+            throws IOException 
+    {
+        out.writeByte(recordType);
+        out.writeShort(target.getAddress());
+        out.writeByte(target.getPnum());
+        out.writeByte(target.getBackupCommand());
+        out.writeByte(target.getRestoreCommand());
+    }
+    
+    private static BackupTarget readTarget(DataInputStream in) throws IOException {
+        int address = in.readUnsignedShort();
+        int pnum = in.readUnsignedByte();
+        int backupCommand = in.readUnsignedByte();
+        int restoreCommand = in.readUnsignedByte();
+        try {
+            return new BackupTarget(address, pnum, backupCommand, restoreCommand);
+        } catch ( IllegalArgumentException ex ) {
+            throw new IOException("Invalid target: " + ex.getMessage());
+        }
+    }
+    
+    private static void writeHeader(File file) throws IOException {
+        try ( DataOutputStream out = new DataOutputStream(new FileOutputStream(file)) ) {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+        }
+    }
+    
+    // reads specified backup file up to its last complete record
+    private static BackupContent readBackup(File file) throws IOException {
+        BackupContent content = new BackupContent();
+        try ( DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file))) 
+        ) {
+            if ( in.readInt() != MAGIC ) {
+                throw new IOException("Not a backup file: " + file);
+            }
+            int version = in.readUnsignedShort();
+            if ( version != FORMAT_VERSION ) {
+                throw new IOException("Unsupported format version: " + version);
+            }
+            
+            long position = HEADER_LENGTH;
+            while ( true ) {
+                int recordType = in.read();
+                if ( recordType < 0 ) {
+                    break;
+                }
+                
+                BackupTarget target;
+                try {
+                    target = readTarget(in);
+                    TargetData targetData = content.targets.get(target);
+                    if ( targetData == null ) {
+                        targetData = new TargetData();
+                        content.targets.put(target, targetData);
+                    }
+                    
+                    switch ( recordType ) {
+                        case RECORD_BLOCK:
+                            int index = in.readUnsignedByte();
+                            short[] block = new short[in.readUnsignedByte()];
+                            for ( int i = 0; i < block.length; i++ ) {
+                                block[i] = (short)in.readUnsignedByte();
+                            }
+                            if ( index != targetData.blocks.size() || targetData.complete ) {
+                                throw new IOException("Unexpected block " + index + " of " + target);
+                            }
+                            targetData.blocks.add(block);
+                            position += 8 + block.length;
+                            break;
+                        case RECORD_END:
+                            int blocksNum = in.readUnsignedShort();
+                            if ( blocksNum != targetData.blocks.size() ) {
+                                throw new IOException("Missing blocks of " + target);
+                            }
+                            targetData.complete = true;
+                            position += 8;
+                            break;
+                        default:
+                            throw new IOException("Unknown type of record: " + recordType);
+                    }
+                } catch ( EOFException ex ) {
+                    // the last record was not completely written
+                    logger.info("Incomplete record at the end of backup file ignored");
+                    break;
+                }
+                content.validLength = position;
+            }
+        }
+        
+        // empty targets of incomplete record
+        for ( Map.Entry<BackupTarget, TargetData> entry : new ArrayList<>(content.targets.entrySet()) ) {
+            if ( entry.getValue().blocks.isEmpty() && !entry.getValue().complete ) {
+                content.targets.remove(entry.getKey());
+            }
+        }
+        return content;
+    }
+    
+    // truncates incomplete record at the end of specified file
+    private static void truncate(File file, long length) throws IOException {
+        try ( RandomAccessFile raf = new RandomAccessFile(file, "rw") ) {
+            if ( raf.length() > length ) {
+                raf.setLength(length);
+            }
+        }
+    }
+    
+    private static File getRestoreCheckpointFile(File file) {
+        return new File(file.getPath() + RESTORE_CHECKPOINT_SUFFIX);
+    }
+    
+    // reads targets already restored from specified checkpoint file
+    private static Set<BackupTarget> readRestoredTargets(File checkpointFile) throws IOException {
+        Set<BackupTarget> restoredTargets = new HashSet<>();
+        if ( !checkpointFile.exists() ) {
+            return restoredTargets;
+        }
+        
+        try ( DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(checkpointFile))) 
+        ) {
+            while ( in.read() == RECORD_END ) {
+                try {
+                    restoredTargets.add(readTarget(in));
+                } catch ( EOFException ex ) {
+                    break;
+                }
+            }
+        }
+        return restoredTargets;
+    }
+    
+    
+    // TRANSFER
+    
+    // waits for the next finished request of specified window
+    private static RequestWindow.Completion<Integer> awaitNext(RequestWindow<Integer> window) 
+            throws BackupException 
+    {
+        try {
+            return window.next();
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw new BackupException("Transfer interrupted.", ex);
+        } catch ( CancellationException ex ) {
+            throw new BackupException("Transfer cancelled.", ex);
+        }
+    }
+    
+    // returns response code of specified result, or null if there is no response
+    private static DPA_ResponseCode getResponseCode(RequestResult result) {
+        if ( result.getStatus() != RequestResult.Status.SUCCESSFULLY_COMPLETED ) {
+            return null;
+        }
+        return result.getResponse().getResponseCode();
+    }
+    
+    private static String describeFailure(RequestResult result) {
+        DPA_ResponseCode responseCode = getResponseCode(result);
+        return ( responseCode != null )? 
+                responseCode.toString() : result.getProcessingInfo().toString();
+    }
+    
+    // adds requests for blocks of specified target starting with specified index
+    private static void addBackupRequests(
+            RequestWindow<Integer> window, BackupTarget target, int firstIndex
+    ) {
+        for ( int index = firstIndex; index < BLOCKS_MAX; index++ ) {
+            window.add(index, target.createBackupRequest(index));
+        }
+    }
+    
+    // backs up blocks of specified target starting with specified index
+    private void backupTarget(
+            BackupTarget target, int firstIndex, DataOutputStream out, TransferCounter counter
+    ) throws BackupException, IOException 
+    {
+        RequestWindow<Integer> window = new RequestWindow<>(accessor, pipelineDepth);
+        addBackupRequests(window, target, firstIndex);
+        int attemptsNum = 0;
+        try {
+            while ( true ) {
+                if ( window.isEmpty() ) {
+                    throw new BackupException("Too many blocks of " + target);
+                }
+                
+                RequestWindow.Completion<Integer> completion = awaitNext(window);
+                int index = completion.getItem();
+                RequestResult result = completion.getResult();
+                DPA_ResponseCode responseCode = getResponseCode(result);
+                if ( responseCode == DPA_ResponseCode.NO_ERROR ) {
+                    short[] block = result.getResponse().getData();
+                    writeTarget(out, RECORD_BLOCK, target);
+                    out.writeByte(index);
+                    out.writeByte(block.length);
+                    for ( short item : block ) {
+                        out.writeByte(item);
+                    }
+                    out.flush();
+                    counter.add(block);
+                    
+                    attemptsNum = 0;
+                    continue;
+                }
+                
+                // index out of the data
+                if ( responseCode == DPA_ResponseCode.ERROR_DATA ) {
+                    writeTarget(out, RECORD_END, target);
+                    out.writeShort(index);
+                    out.flush();
+                    return;
+                }
+                
+                // the block and all blocks after it are requested again
+                window.cancel();
+                if ( ++attemptsNum >= ATTEMPTS_NUM ) {
+                    throw new BackupException(
+                            "Backup of block " + index + " of " + target + " failed: " 
+                            + describeFailure(result)
+                    );
+                }
+                logger.warn("Backup of block {} of {} failed: {}", index, target, describeFailure(result));
+                addBackupRequests(window, target, index);
+            }
+        } finally {
+            window.cancel();
+        }
+    }
+    
+    // restores specified blocks of specified target
+    private void restoreTarget(BackupTarget target, List<short[]> blocks) throws BackupException {
+        RequestWindow<Integer> window = new RequestWindow<>(accessor, pipelineDepth);
+        try {
+            for ( int attemptsNum = 1; ; attemptsNum++ ) {
+                for ( int i = 0; i < blocks.size(); i++ ) {
+                    window.add(i, target.createRestoreRequest(blocks.get(i)));
+                }
+                
+                int index = 0;
+                RequestResult failedResult = null;
+                while ( !window.isEmpty() ) {
+                    RequestWindow.Completion<Integer> completion = awaitNext(window);
+                    if ( getResponseCode(completion.getResult()) != DPA_ResponseCode.NO_ERROR ) {
+                        index = completion.getItem();
+                        failedResult = completion.getResult();
+                        break;
+                    }
+                }
+                if ( failedResult == null ) {
+                    return;
+                }
+                
+                // blocks are restored in order - the restore starts again
+                window.cancel();
+                if ( attemptsNum >= ATTEMPTS_NUM ) {
+                    throw new BackupException(
+                            "Restore of block " + index + " of " + target + " failed: " 
+                            + describeFailure(failedResult)
+                    );
+                }
+                logger.warn(
+                        "Restore of block {} of {} failed, restarting: {}", 
+                        index, target, describeFailure(failedResult)
+                );
+            }
+        } finally {
+            window.cancel();
+        }
+    }
+    
+    private long getElapsedTime(long startTime) {
+        return (clock.nanoTime() - startTime) / 1000000;
+    }
+    
+    /**
+     * Backs up data of specified targets into specified file. If the file
+     * contains data of previous interrupted backup, the backup continues 
+     * with the first block, which is not in the file.
+     * 
+     * @param targets targets to back up
+     * @param file file to back up into
+     * @return statistics of the backup
+     * @throws BackupException if the backup failed - blocks backed up so far
+     *         remain in the file
+     */
+    public TransferStatistics backup(List<BackupTarget> targets, File file) throws BackupException {
+        checkTargets(targets);
+        logger.debug("backup - start: targets={}, file={}", targets, file);
+        
+        long startTime = clock.nanoTime();
+        int targetsNum = 0;
+        TransferCounter counter = new TransferCounter();
+        
+        try {
+            BackupContent content;
+            if ( file.exists() && file.length() > 0 ) {
+                content = readBackup(file);
+                truncate(file, content.validLength);
+                logger.info("Backup resumed: {}", file);
+            } else {
+                content = new BackupContent();
+                writeHeader(file);
+            }
+            
+            FileOutputStream fileOut = new FileOutputStream(file, true);
+            try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut)) ) {
+                for ( BackupTarget target : targets ) {
+                    TargetData targetData = content.targets.get(target);
+                    if ( targetData != null && targetData.complete ) {
+                        continue;
+                    }
+                    int firstIndex = ( targetData != null )? targetData.blocks.size() : 0;
+                    
+                    long targetStartTime = clock.nanoTime();
+                    long prevBlocksNum = counter.blocksNum;
+                    backupTarget(target, firstIndex, out, counter);
+                    fileOut.getChannel().force(false);
+                    
+                    targetsNum++;
+                    logger.info(
+                            "Target {} backed up: {} blocks in {} ms", 
+                            target, counter.blocksNum - prevBlocksNum, getElapsedTime(targetStartTime)
+                    );
+                }
+            }
+        } catch ( IOException ex ) {
+            throw new BackupException(ex);
+        }
+        
+        TransferStatistics statistics = new TransferStatistics(
+                targetsNum, counter.blocksNum, counter.bytesNum, getElapsedTime(startTime)
+        );
+        logger.info("Backup finished: {}", statistics);
+        logger.debug("backup - end");
+        return statistics;
+    }
+    
+    /**
+     * Same as {@link #backup(List, File) backup} method for single target.
+     * 
+     * @param target target to back up
+     * @param file file to back up into
+     * @return statistics of the backup
+     * @throws BackupException if the backup failed
+     */
+    public TransferStatistics backup(BackupTarget target, File file) throws BackupException {
+        return backup(Arrays.asList(target), file);
+    }
+    
+    /**
+     * Restores all completely backed up targets from specified file. Targets
+     * restored by previous interrupted restore are skipped. 
+     * 
+     * @param file backup file
+     * @return statistics of the restore
+     * @throws BackupException if the file cannot be read or the restore failed
+     */
+    public TransferStatistics restore(File file) throws BackupException {
+        logger.debug("restore - start: file={}", file);
+        
+        long startTime = clock.nanoTime();
+        int targetsNum = 0;
+        TransferCounter counter = new TransferCounter();
+        
+        File checkpointFile = getRestoreCheckpointFile(file);
+        try {
+            BackupContent content = readBackup(file);
+            Set<BackupTarget> restoredTargets = readRestoredTargets(checkpointFile);
+            if ( !restoredTargets.isEmpty() ) {
+                logger.info("Restore resumed, {} targets already restored", restoredTargets.size());
+            }
+            
+            try ( DataOutputStream checkpointOut = new DataOutputStream(
+                    new FileOutputStream(checkpointFile, true)) 
+            ) {
+                for ( Map.Entry<BackupTarget, TargetData> entry : content.targets.entrySet() ) {
+                    BackupTarget target = entry.getKey();
+                    TargetData targetData = entry.getValue();
+                    if ( !targetData.complete ) {
+                        logger.warn("Target {} not completely backed up, skipped", target);
+                        continue;
+                    }
+                    if ( restoredTargets.contains(target) ) {
+                        continue;
+                    }
+                    
+                    long targetStartTime = clock.nanoTime();
+                    restoreTarget(target, targetData.blocks);
+                    writeTarget(checkpointOut, RECORD_END, target);
+                    checkpointOut.flush();
+                    
+                    targetsNum++;
+                    for ( short[] block : targetData.blocks ) {
+                        counter.add(block);
+                    }
+                    logger.info(
+                            "Target {} restored: {} blocks in {} ms", 
+                            target, targetData.blocks.size(), getElapsedTime(targetStartTime)
+                    );
+                }
+            }
+        } catch ( IOException ex ) {
+            throw new BackupException(ex);
+        }
+        
+        if ( !checkpointFile.delete() ) {
+            logger.warn("Restore checkpoint file could not be deleted: {}", checkpointFile);
+        }
+        
+        TransferStatistics statistics = new TransferStatistics(
+                targetsNum, counter.blocksNum, counter.bytesNum, getElapsedTime(startTime)
+        );
+        logger.info("Restore finished: {}", statistics);
+        logger.debug("restore - end");
+        return statistics;
+    }
+}
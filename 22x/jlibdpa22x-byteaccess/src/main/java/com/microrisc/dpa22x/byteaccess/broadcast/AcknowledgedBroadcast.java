@@ -0,0 +1,348 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.broadcast;
+
+import com.microrisc.dpa22x.DPA_Response;
+import com.microrisc.dpa22x.DPA_ResponseCode;
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessor;
+import com.microrisc.dpa22x.peripherals.Coordinator;
+import com.microrisc.dpa22x.peripherals.FRC;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Broadcast, whose delivery is acknowledged by each node.
+ * <p>
+ * The request is sent embedded in FRC acknowledged broadcast, so all nodes
+ * execute it at once and each of them reports in the same FRC, whether 
+ * the execution succeeded. Nodes, which did not acknowledge the execution,
+ * can be retried by unicast requests. So the request is delivered 
+ * with certainty in about two round trips instead of one round trip per node.
+ * <p>
+ * The request is embedded in FRC user data, so its length is limited - 
+ * see {@link #REQUEST_MAX_LENGTH} and {@link #SELECTIVE_REQUEST_MAX_LENGTH}.
+ * 
+ * @author agent
+ */
+public final class AcknowledgedBroadcast {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(AcknowledgedBroadcast.class);
+    
+    // maximal length of FRC user data
+    private static final int USER_DATA_MAX_LENGTH = 30;
+    
+    // maximal length of FRC user data of selective FRC
+    private static final int SELECTIVE_USER_DATA_MAX_LENGTH = ProtocolProperties.PDATA_MAX_LENGTH 
+            - 1 - FRC.SELECTED_NODES_LENGTH;
+    
+    /** 
+     * Maximal length of request broadcast to all bonded nodes. NADR is not 
+     * embedded, length of the embedded request takes one byte.
+     */
+    public static final int REQUEST_MAX_LENGTH = USER_DATA_MAX_LENGTH + 1;
+    
+    /** Maximal length of request broadcast to selected nodes. */
+    public static final int SELECTIVE_REQUEST_MAX_LENGTH = SELECTIVE_USER_DATA_MAX_LENGTH + 1;
+    
+    // position of bits 1 in FRC data
+    private static final int FRC_BIT_1_POS = 32;
+    
+    // maximal FRC status, which means successfully sent FRC
+    private static final int FRC_STATUS_NODES_MAX = 0xEF;
+    
+    
+    // accessor to send requests by
+    private final ByteAccessor accessor;
+    
+    
+    // counter of requests sent during one broadcast
+    private static final class RequestCounter {
+        int requestsNum = 0;
+    }
+    
+    
+    private static ByteAccessor checkAccessor(ByteAccessor accessor) {
+        if ( accessor == null ) {
+            throw new IllegalArgumentException("Accessor cannot be null.");
+        }
+        return accessor;
+    }
+    
+    private static void checkRequest(short[] request, int maxLength) {
+        if ( request == null || request.length < ProtocolProperties.PDATA_START_POS ) {
+            throw new IllegalArgumentException("Invalid request: " + Arrays.toString(request));
+        }
+        if ( request[ProtocolProperties.NADR_START] 
+                != ProtocolProperties.NADR_Properties.IQMESH_BROADCAST_ADDRESS 
+        ) {
+            throw new IllegalArgumentException("Request must be addressed to broadcast address.");
+        }
+        if ( request.length > maxLength ) {
+            throw new IllegalArgumentException(
+                    "Request too long to be embedded into FRC: " + request.length 
+                    + ", maximum: " + maxLength
+            );
+        }
+    }
+    
+    private static void checkNodes(Set<Integer> nodes) {
+        if ( nodes == null || nodes.isEmpty() ) {
+            throw new IllegalArgumentException("Nodes cannot be null or empty.");
+        }
+        for ( int nadr : nodes ) {
+            if ( nadr < ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MIN 
+                    || nadr > ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX 
+            ) {
+                throw new IllegalArgumentException("Invalid node address: " + nadr);
+            }
+        }
+    }
+    
+    /**
+     * Creates new acknowledged broadcast, which sends requests by specified 
+     * accessor.
+     * 
+     * @param accessor accessor to send requests by
+     */
+    public AcknowledgedBroadcast(ByteAccessor accessor) {
+        this.accessor = checkAccessor(accessor);
+    }
+    
+    
+    // indicates, whether specified result is successful result with no error
+    static boolean isSuccessful(RequestResult result) {
+        if ( result.getStatus() != RequestResult.Status.SUCCESSFULLY_COMPLETED ) {
+            return false;
+        }
+        DPA_Response response = result.getResponse();
+        return ( response == null || response.getResponseCode() == DPA_ResponseCode.NO_ERROR );
+    }
+    
+    private static short[] createCoordinatorRequest(int pnum, int pcmd, short... pData) {
+        short[] request = new short[ProtocolProperties.PDATA_START_POS + pData.length];
+        request[ProtocolProperties.NADR_START] = ProtocolProperties.NADR_Properties.IQMESH_COORDINATOR_ADDRESS;
+        request[ProtocolProperties.PNUM_POS] = (short)pnum;
+        request[ProtocolProperties.PCMD_POS] = (short)pcmd;
+        request[ProtocolProperties.HWPID_START] = 0xFF;
+        request[ProtocolProperties.HWPID_START + 1] = 0xFF;
+        System.arraycopy(pData, 0, request, ProtocolProperties.PDATA_START_POS, pData.length);
+        return request;
+    }
+    
+    // sends specified request to coordinator and returns data of its response
+    private short[] sendToCoordinator(short[] request, RequestCounter counter) 
+            throws BroadcastException 
+    {
+        counter.requestsNum++;
+        RequestResult result = accessor.sendRequest(request);
+        if ( !isSuccessful(result) ) {
+            String failure = ( result.getStatus() == RequestResult.Status.SUCCESSFULLY_COMPLETED )?
+                    result.getResponse().getResponseCode().toString()
+                    : result.getProcessingInfo().toString();
+            throw new BroadcastException(
+                    "Request " + Arrays.toString(request) + " failed: " + failure
+            );
+        }
+        return result.getResponse().getData();
+    }
+    
+    private Set<Integer> getBondedNodes(RequestCounter counter) throws BroadcastException {
+        short[] bitmap = sendToCoordinator(createCoordinatorRequest(
+                Coordinator.PNUM, Coordinator.Command.GET_BONDED_NODES.asByteValue()
+        ), counter);
+        
+        Set<Integer> nodes = new TreeSet<>();
+        for ( int nadr = ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MIN; 
+                nadr <= ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX 
+                    && nadr / 8 < bitmap.length; 
+                nadr++ 
+        ) {
+            if ( ((bitmap[nadr / 8] >> (nadr % 8)) & 1) == 1 ) {
+                nodes.add(nadr);
+            }
+        }
+        return nodes;
+    }
+    
+    // returns FRC results of specified nodes - bit 0 is set if the node 
+    // received FRC, bit 1 is set if it executed the embedded request
+    private Map<Integer, Integer> sendFrc(
+            short[] request, Set<Integer> nodes, boolean isSelective, RequestCounter counter
+    ) throws BroadcastException {
+        // embedded request - length, PNUM, PCMD, HWPID and PData
+        short[] embeddedRequest = Arrays.copyOfRange(
+                request, ProtocolProperties.PNUM_POS - 1, request.length
+        );
+        embeddedRequest[0] = (short)embeddedRequest.length;
+        
+        int userDataPos = isSelective? 1 + FRC.SELECTED_NODES_LENGTH : 1;
+        short[] pData = new short[userDataPos + embeddedRequest.length];
+        pData[0] = FRC.ACKNOWLEDGED_BROADCAST_BITS;
+        if ( isSelective ) {
+            for ( int nadr : nodes ) {
+                pData[1 + nadr / 8] |= 1 << (nadr % 8);
+            }
+        }
+        System.arraycopy(embeddedRequest, 0, pData, userDataPos, embeddedRequest.length);
+        
+        short[] responseData = sendToCoordinator(createCoordinatorRequest(
+                FRC.PNUM, 
+                isSelective? FRC.Command.SEND_SELECTIVE.asByteValue() : FRC.Command.SEND.asByteValue(), 
+                pData
+        ), counter);
+        if ( responseData.length == 0 || responseData[0] > FRC_STATUS_NODES_MAX ) {
+            throw new BroadcastException(
+                    "FRC failed, status: " + (( responseData.length > 0 )? responseData[0] : "none")
+            );
+        }
+        
+        // results of selective FRC are stored in the order of the selected 
+        // nodes starting at index 1, otherwise at indexes equal to addresses
+        int maxIndex = isSelective? nodes.size() : Collections.max(nodes);
+        short[] frcData = Arrays.copyOfRange(responseData, 1, responseData.length);
+        if ( FRC_BIT_1_POS + maxIndex / 8 >= frcData.length ) {
+            short[] extraResult = sendToCoordinator(createCoordinatorRequest(
+                    FRC.PNUM, FRC.Command.EXTRA_RESULT.asByteValue()
+            ), counter);
+            frcData = Arrays.copyOf(frcData, frcData.length + extraResult.length);
+            System.arraycopy(
+                    extraResult, 0, frcData, frcData.length - extraResult.length, extraResult.length
+            );
+        }
+        
+        Map<Integer, Integer> results = new HashMap<>();
+        int index = 0;
+        for ( int nadr : nodes ) {
+            index = isSelective? index + 1 : nadr;
+            int bit0 = (frcData[index / 8] >> (index % 8)) & 1;
+            int bit1 = (frcData[FRC_BIT_1_POS + index / 8] >> (index % 8)) & 1;
+            results.put(nadr, bit0 | (bit1 << 1));
+        }
+        return results;
+    }
+    
+    // sends specified request to specified nodes
+    private AcknowledgedBroadcastResult send(
+            short[] request, Set<Integer> nodes, boolean isSelective, boolean retry
+    ) throws BroadcastException 
+    {
+        logger.debug(
+                "send - start: request={}, nodes={}, retry={}", 
+                Arrays.toString(request), nodes, retry
+        );
+        
+        RequestCounter counter = new RequestCounter();
+        if ( !isSelective ) {
+            nodes = getBondedNodes(counter);
+        }
+        
+        Set<Integer> acknowledgedNodes = new TreeSet<>();
+        Set<Integer> rejectingNodes = new TreeSet<>();
+        Map<Integer, RequestResult> retryResults = new HashMap<>();
+        if ( nodes.isEmpty() ) {
+            logger.debug("send - end: no bonded nodes");
+            return new AcknowledgedBroadcastResult(
+                    nodes, acknowledgedNodes, rejectingNodes, retryResults, counter.requestsNum
+            );
+        }
+        
+        for ( Map.Entry<Integer, Integer> entry : sendFrc(request, nodes, isSelective, counter).entrySet() ) {
+            if ( entry.getValue() == 0b11 ) {
+                acknowledgedNodes.add(entry.getKey());
+            } else if ( entry.getValue() == 0b01 ) {
+                rejectingNodes.add(entry.getKey());
+            }
+        }
+        
+        if ( retry ) {
+            for ( int nadr : nodes ) {
+                if ( acknowledgedNodes.contains(nadr) ) {
+                    continue;
+                }
+                short[] unicastRequest = request.clone();
+                unicastRequest[ProtocolProperties.NADR_START] = (short)nadr;
+                unicastRequest[ProtocolProperties.NADR_START + 1] = 0;
+                counter.requestsNum++;
+                retryResults.put(nadr, accessor.sendRequest(unicastRequest));
+            }
+        }
+        
+        AcknowledgedBroadcastResult result = new AcknowledgedBroadcastResult(
+                nodes, acknowledgedNodes, rejectingNodes, retryResults, counter.requestsNum
+        );
+        logger.info("Acknowledged broadcast sent: {}", result);
+        logger.debug("send - end");
+        return result;
+    }
+    
+    /**
+     * Sends specified request to all bonded nodes and retries it by unicast 
+     * requests to the nodes, which did not acknowledge its execution.
+     * 
+     * @param request request addressed to broadcast address, at maximum 
+     *        {@link #REQUEST_MAX_LENGTH} bytes long
+     * @return delivery state of the request in each bonded node
+     * @throws BroadcastException if FRC could not be sent
+     */
+    public AcknowledgedBroadcastResult send(short[] request) throws BroadcastException {
+        return send(request, true);
+    }
+    
+    /**
+     * Sends specified request to all bonded nodes.
+     * 
+     * @param request request addressed to broadcast address, at maximum 
+     *        {@link #REQUEST_MAX_LENGTH} bytes long
+     * @param retry if {@code true}, the request is retried by unicast requests
+     *        to the nodes, which did not acknowledge its execution
+     * @return delivery state of the request in each bonded node
+     * @throws BroadcastException if FRC could not be sent
+     */
+    public AcknowledgedBroadcastResult send(short[] request, boolean retry) 
+            throws BroadcastException 
+    {
+        checkRequest(request, REQUEST_MAX_LENGTH);
+        return send(request, null, false, retry);
+    }
+    
+    /**
+     * Sends specified request to specified nodes only.
+     * 
+     * @param request request addressed to broadcast address, at maximum 
+     *        {@link #SELECTIVE_REQUEST_MAX_LENGTH} bytes long
+     * @param nodes addresses of nodes to send the request to
+     * @param retry if {@code true}, the request is retried by unicast requests
+     *        to the nodes, which did not acknowledge its execution
+     * @return delivery state of the request in each of the nodes
+     * @throws BroadcastException if FRC could not be sent
+     */
+    public AcknowledgedBroadcastResult send(short[] request, Set<Integer> nodes, boolean retry) 
+            throws BroadcastException 
+    {
+        checkRequest(request, SELECTIVE_REQUEST_MAX_LENGTH);
+        checkNodes(nodes);
+        return send(request, new TreeSet<>(nodes), true, retry);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.broadcast;
+
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Result of acknowledged broadcast - delivery state of each addressed node.
+ * 
+ * @author agent
+ */
+public final class AcknowledgedBroadcastResult {
+    
+    // addressed nodes
+    private final Set<Integer> nodes;
+    
+    // nodes, which acknowledged successful execution in FRC
+    private final Set<Integer> acknowledgedNodes;
+    
+    // nodes, which received FRC, but the execution failed
+    private final Set<Integer> rejectingNodes;
+    
+    // results of unicast retries
+    private final Map<Integer, RequestResult> retryResults;
+    
+    // number of sent requests
+    private final int requestsNum;
+    
+    
+    /**
+     * Creates new result.
+     * 
+     * @param nodes addressed nodes
+     * @param acknowledgedNodes nodes, which acknowledged successful execution in FRC
+     * @param rejectingNodes nodes, which received FRC, but the execution failed
+     * @param retryResults results of unicast retries keyed by nodes
+     * @param requestsNum number of sent requests
+     */
+    public AcknowledgedBroadcastResult(
+            Set<Integer> nodes, Set<Integer> acknowledgedNodes, Set<Integer> rejectingNodes,
+            Map<Integer, RequestResult> retryResults, int requestsNum
+    ) {
+        this.nodes = Collections.unmodifiableSet(new TreeSet<>(nodes));
+        this.acknowledgedNodes = Collections.unmodifiableSet(new TreeSet<>(acknowledgedNodes));
+        this.rejectingNodes = Collections.unmodifiableSet(new TreeSet<>(rejectingNodes));
+        this.retryResults = Collections.unmodifiableMap(new TreeMap<>(retryResults));
+        this.requestsNum = requestsNum;
+    }
+    
+    /**
+     * @return addressed nodes
+     */
+    public Set<Integer> getNodes() {
+        return nodes;
+    }
+    
+    /**
+     * @return nodes, which acknowledged successful execution of the request in FRC
+     */
+    public Set<Integer> getAcknowledgedNodes() {
+        return acknowledgedNodes;
+    }
+    
+    /**
+     * @return nodes, which received FRC, but the execution of the request 
+     *         failed in them
+     */
+    public Set<Integer> getRejectingNodes() {
+        return rejectingNodes;
+    }
+    
+    /**
+     * @return nodes, which did not answer FRC
+     */
+    public Set<Integer> getUnreachableNodes() {
+        Set<Integer> unreachableNodes = new TreeSet<>(nodes);
+        unreachableNodes.removeAll(acknowledgedNodes);
+        unreachableNodes.removeAll(rejectingNodes);
+        return unreachableNodes;
+    }
+    
+    /**
+     * @return results of unicast retries of the request keyed by nodes,
+     *         empty if retries were not enabled
+     */
+    public Map<Integer, RequestResult> getRetryResults() {
+        return retryResults;
+    }
+    
+    /**
+     * @return nodes, which executed the request - acknowledged in FRC or 
+     *         successfully retried
+     */
+    public Set<Integer> getSucceededNodes() {
+        Set<Integer> succeededNodes = new TreeSet<>(acknowledgedNodes);
+        for ( Map.Entry<Integer, RequestResult> entry : retryResults.entrySet() ) {
+            if ( AcknowledgedBroadcast.isSuccessful(entry.getValue()) ) {
+                succeededNodes.add(entry.getKey());
+            }
+        }
+        return succeededNodes;
+    }
+    
+    /**
+     * @return nodes, which did not execute the request
+     */
+    public Set<Integer> getFailedNodes() {
+        Set<Integer> failedNodes = new TreeSet<>(nodes);
+        failedNodes.removeAll(getSucceededNodes());
+        return failedNodes;
+    }
+    
+    /**
+     * @return number of sent requests - FRC and unicast retries
+     */
+    public int getRequestsNum() {
+        return requestsNum;
+    }
+    
+    @Override
+    public String toString() {
+        return "{"
+                + "nodes=" + nodes.size()
+                + ", acknowledged=" + acknowledgedNodes.size()
+                + ", retried=" + retryResults.keySet()
+                + ", failed=" + getFailedNodes()
+                + ", requests=" + requestsNum
+                + "}";
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.broadcast;
+
+import com.microrisc.dpa22x.byteaccess.JByteAccessException;
+
+/**
+ * Exception thrown, when broadcast cannot be sent or acknowledged.
+ * 
+ * @author agent
+ */
+public class BroadcastException extends JByteAccessException {
+    
+    public BroadcastException(String message) {
+        super(message);
+    }
+    
+    public BroadcastException(String message, Throwable cause) {
+        super(message, cause);
+    }
+    
+    public BroadcastException(Throwable cause) {
+        super(cause);
+    }
+}
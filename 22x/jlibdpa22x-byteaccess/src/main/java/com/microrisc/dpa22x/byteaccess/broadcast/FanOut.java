@@ -0,0 +1,424 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.broadcast;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.byteaccess.accessors.RequestWindow;
+import com.microrisc.dpa22x.byteaccess.accessors.StandardByteAccessor;
+import com.microrisc.dpa22x.byteaccess.topology.NetworkState;
+import com.microrisc.dpa22x.peripherals.FRC;
+import com.microrisc.dpa22x.timing.FRC_ResponseTime;
+import com.microrisc.dpa22x.timing.FRC_TimingParams;
+import com.microrisc.dpa22x.timing.WaitingTimeCounter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the same request to many nodes in the cheapest way.
+ * <p>
+ * Time of sending by each {@link Strategy strategy} is predicted by timing 
+ * model of the waiting time counter of the accessor from the number of nodes,
+ * their hops and length of the request. Hops and bonded nodes are taken 
+ * from the network state of the accessor, if it is tracked. Without the state,
+ * each node is supposed to be one hop far and only unicast requests and 
+ * selective acknowledged broadcast can be used.
+ * <p>
+ * Predicted times of the strategies are not equally exact. Time of unicast 
+ * requests and of the broadcast is nominal time of their routing. Time of
+ * acknowledged broadcast is time of its FRC as counted by the waiting time 
+ * counter - an upper bound used as timeout of the FRC, which includes response
+ * time of the nodes and a reserve. Requests for bonded nodes and for extra 
+ * FRC result sent by the acknowledged broadcast are processed by coordinator 
+ * itself without routing, so they are not included, the same as transfer 
+ * of each unicast request between the library and the coordinator. The choice
+ * of the strategy is thus biased towards unicast requests.
+ * 
+ * @author agent
+ */
+public final class FanOut {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(FanOut.class);
+    
+    /**
+     * Strategy of sending of a request to many nodes.
+     */
+    public static enum Strategy {
+        /** Unicast request to each node, queued in the accessor at once. */
+        UNICAST,
+        
+        /** 
+         * One broadcast request, whose execution is not acknowledged. Used 
+         * only if unacknowledged delivery is allowed and the request is sent 
+         * to all bonded nodes.
+         */
+        BROADCAST,
+        
+        /** 
+         * Request embedded in FRC, selective if not sent to all bonded nodes, 
+         * retried by unicast requests to nodes, which did not acknowledge it.
+         * See {@link AcknowledgedBroadcast}.
+         */
+        ACKNOWLEDGED_BROADCAST
+    }
+    
+    /** Predicted time of strategy, which cannot be used. */
+    public static final long NOT_APPLICABLE = Long.MAX_VALUE;
+    
+    /** Number of unicast requests queued in the accessor at once. */
+    public static final int PIPELINE_DEPTH = RequestWindow.DEPTH_DEFAULT;
+    
+    
+    // accessor to send requests by
+    private final StandardByteAccessor accessor;
+    
+    // sender of acknowledged broadcasts
+    private final AcknowledgedBroadcast acknowledgedBroadcast;
+    
+    
+    private static StandardByteAccessor checkAccessor(StandardByteAccessor accessor) {
+        if ( accessor == null ) {
+            throw new IllegalArgumentException("Accessor cannot be null.");
+        }
+        return accessor;
+    }
+    
+    private static void checkNodes(NodeSet nodes) {
+        if ( nodes == null || nodes.isEmpty() ) {
+            throw new IllegalArgumentException("Nodes cannot be null or empty.");
+        }
+    }
+    
+    private static void checkRequest(short[] request) {
+        if ( request == null || request.length < ProtocolProperties.PDATA_START_POS 
+                || request.length > ProtocolProperties.PDATA_START_POS + ProtocolProperties.PDATA_MAX_LENGTH
+        ) {
+            throw new IllegalArgumentException("Invalid request: " + Arrays.toString(request));
+        }
+    }
+    
+    private static void checkStrategy(Strategy strategy) {
+        if ( strategy == null ) {
+            throw new IllegalArgumentException("Strategy cannot be null.");
+        }
+    }
+    
+    /**
+     * Creates new fan-out, which sends requests by specified accessor.
+     * 
+     * @param accessor accessor to send requests by
+     */
+    public FanOut(StandardByteAccessor accessor) {
+        this.accessor = checkAccessor(accessor);
+        this.acknowledgedBroadcast = new AcknowledgedBroadcast(accessor);
+    }
+    
+    
+    // returns copy of specified request addressed to specified address
+    private static short[] readdress(short[] request, int nadr) {
+        short[] readdressedRequest = request.clone();
+        readdressedRequest[ProtocolProperties.NADR_START] = (short)nadr;
+        readdressedRequest[ProtocolProperties.NADR_START + 1] = 0;
+        return readdressedRequest;
+    }
+    
+    // returns bonded nodes, or null if they are not known
+    private static NodeSet getBondedNodes(NetworkState state) {
+        if ( state == null || state.getBondedNodesNum() == 0 ) {
+            return null;
+        }
+        return NodeSet.of(state.getBondedNodes());
+    }
+    
+    // returns maximal known hops of the nodes, or default
+    private static int getMaxKnownHops(NetworkState state) {
+        if ( state == null || state.getMaxHops() == NetworkState.HOPS_UNKNOWN ) {
+            return NetworkState.HOPS_DEFAULT;
+        }
+        return state.getMaxHops();
+    }
+    
+    // returns hops of specified node, unknown hops are replaced by specified ones
+    private static int getHops(NetworkState state, int nadr, int unknownHops) {
+        if ( state == null || state.getHops(nadr) == NetworkState.HOPS_UNKNOWN ) {
+            return unknownHops;
+        }
+        return state.getHops(nadr);
+    }
+    
+    // returns FRC request of the same length as the one, which embeds specified request
+    private static short[] createFrcRequest(short[] request, boolean isSelective) {
+        int embeddedRequestLength = request.length - ProtocolProperties.PNUM_POS + 1;
+        int pDataLength = 1 + ( isSelective? FRC.SELECTED_NODES_LENGTH : 0 ) + embeddedRequestLength;
+        
+        short[] frcRequest = new short[ProtocolProperties.PDATA_START_POS + pDataLength];
+        frcRequest[ProtocolProperties.NADR_START] = ProtocolProperties.NADR_Properties.IQMESH_COORDINATOR_ADDRESS;
+        frcRequest[ProtocolProperties.PNUM_POS] = FRC.PNUM;
+        frcRequest[ProtocolProperties.PCMD_POS] = isSelective? 
+                FRC.Command.SEND_SELECTIVE.asByteValue() : FRC.Command.SEND.asByteValue();
+        frcRequest[ProtocolProperties.PDATA_START_POS] = FRC.ACKNOWLEDGED_BROADCAST_BITS;
+        return frcRequest;
+    }
+    
+    // returns predicted time of sending by specified strategy
+    private long predictTime(
+            Strategy strategy, NodeSet nodes, short[] request, NetworkState state, 
+            boolean unacknowledgedAllowed
+    ) {
+        WaitingTimeCounter waitingTimeCounter = accessor.getWaitingTimeCounter();
+        NodeSet bondedNodes = getBondedNodes(state);
+        boolean isAllBonded = nodes.equals(bondedNodes);
+        int unknownHops = getMaxKnownHops(state);
+        
+        switch ( strategy ) {
+            case UNICAST:
+                long time = 0;
+                for ( int nadr : nodes.toArray() ) {
+                    time += waitingTimeCounter.getPredictedRoutingTime(
+                            readdress(request, nadr), getHops(state, nadr, unknownHops)
+                    );
+                }
+                return time;
+                
+            case BROADCAST:
+                if ( !unacknowledgedAllowed || !isAllBonded ) {
+                    return NOT_APPLICABLE;
+                }
+                int maxHops = 0;
+                for ( int nadr : nodes.toArray() ) {
+                    maxHops = Math.max(maxHops, getHops(state, nadr, unknownHops));
+                }
+                return (maxHops + 1) * WaitingTimeCounter.getTimeslotLength(
+                        request.length - ProtocolProperties.PDATA_START_POS, 
+                        waitingTimeCounter.getRfMode(), waitingTimeCounter.getDctr()
+                );
+                
+            case ACKNOWLEDGED_BROADCAST:
+                int maxLength = isAllBonded? 
+                        AcknowledgedBroadcast.REQUEST_MAX_LENGTH 
+                        : AcknowledgedBroadcast.SELECTIVE_REQUEST_MAX_LENGTH;
+                if ( request.length > maxLength ) {
+                    return NOT_APPLICABLE;
+                }
+                // upper bound of the FRC, coordinator requests are not routed - see class doc
+                FRC_ResponseTime responseTime = ( state != null )? 
+                        state.getFRC_TimingParams().getResponseTime() 
+                        : FRC_TimingParams.DEFAULT_RESPONSE_TIME;
+                return waitingTimeCounter.getPredictedFrcTime(
+                        createFrcRequest(request, !isAllBonded), 
+                        new FRC_TimingParams(nodes.size(), waitingTimeCounter.getRfMode(), responseTime)
+                );
+                
+            default:
+                throw new IllegalArgumentException("Unsupported strategy: " + strategy);
+        }
+    }
+    
+    // returns the strategy with the least predicted time
+    private Strategy chooseStrategy(
+            NodeSet nodes, short[] request, NetworkState state, boolean unacknowledgedAllowed
+    ) {
+        Strategy bestStrategy = Strategy.UNICAST;
+        long bestTime = predictTime(Strategy.UNICAST, nodes, request, state, unacknowledgedAllowed);
+        for ( Strategy strategy : Strategy.values() ) {
+            long time = predictTime(strategy, nodes, request, state, unacknowledgedAllowed);
+            if ( time < bestTime ) {
+                bestStrategy = strategy;
+                bestTime = time;
+            }
+        }
+        return bestStrategy;
+    }
+    
+    /**
+     * Returns predicted time of sending of specified request to specified 
+     * nodes by specified strategy. Time of unicast retries is not included.
+     * Time of acknowledged broadcast is an upper bound, see the class 
+     * description.
+     * 
+     * @param strategy strategy of sending
+     * @param nodes addresses of nodes to send the request to
+     * @param request request to send, its NADR is ignored
+     * @param unacknowledgedAllowed if {@code true}, unacknowledged broadcast
+     *        can be used
+     * @return predicted time [in ms], or {@link #NOT_APPLICABLE}, if 
+     *         the strategy cannot be used
+     */
+    public long getPredictedTime(
+            Strategy strategy, NodeSet nodes, short[] request, boolean unacknowledgedAllowed
+    ) {
+        checkStrategy(strategy);
+        checkNodes(nodes);
+        checkRequest(request);
+        return predictTime(
+                strategy, nodes, request, accessor.getNetworkState(), unacknowledgedAllowed
+        );
+    }
+    
+    /**
+     * Returns strategy with the least predicted time of sending of specified 
+     * request to specified nodes.
+     * 
+     * @param nodes addresses of nodes to send the request to
+     * @param request request to send, its NADR is ignored
+     * @param unacknowledgedAllowed if {@code true}, unacknowledged broadcast
+     *        can be used
+     * @return the cheapest strategy
+     */
+    public Strategy chooseStrategy(NodeSet nodes, short[] request, boolean unacknowledgedAllowed) {
+        checkNodes(nodes);
+        checkRequest(request);
+        return chooseStrategy(nodes, request, accessor.getNetworkState(), unacknowledgedAllowed);
+    }
+    
+    // sends unicast request to each of specified nodes
+    private void sendUnicast(
+            int[] nodes, short[] request, FanOutResult.NodeStatus[] statuses, RequestResult[] results
+    ) throws BroadcastException 
+    {
+        RequestWindow<Integer> window = new RequestWindow<>(accessor, PIPELINE_DEPTH);
+        for ( int i = 0; i < nodes.length; i++ ) {
+            window.add(i, readdress(request, nodes[i]));
+        }
+        try {
+            while ( !window.isEmpty() ) {
+                RequestWindow.Completion<Integer> completion = window.next();
+                int i = completion.getItem();
+                results[i] = completion.getResult();
+                statuses[i] = AcknowledgedBroadcast.isSuccessful(results[i])? 
+                        FanOutResult.NodeStatus.SUCCEEDED : FanOutResult.NodeStatus.FAILED;
+            }
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw new BroadcastException("Sending interrupted.", ex);
+        } catch ( CancellationException ex ) {
+            throw new BroadcastException("Sending cancelled.", ex);
+        } finally {
+            window.cancel();
+        }
+    }
+    
+    // sends unacknowledged broadcast
+    private void sendBroadcast(short[] request, FanOutResult.NodeStatus[] statuses) 
+            throws BroadcastException 
+    {
+        RequestResult result = accessor.sendRequest(
+                readdress(request, ProtocolProperties.NADR_Properties.IQMESH_BROADCAST_ADDRESS)
+        );
+        if ( result.getStatus() != RequestResult.Status.SUCCESSFULLY_COMPLETED ) {
+            throw new BroadcastException(
+                    "Broadcast failed: " + result.getProcessingInfo()
+            );
+        }
+        Arrays.fill(statuses, FanOutResult.NodeStatus.UNCONFIRMED);
+    }
+    
+    // sends acknowledged broadcast and returns number of sent requests
+    private int sendAcknowledged(
+            NodeSet nodes, short[] request, boolean isAllBonded, 
+            FanOutResult.NodeStatus[] statuses, RequestResult[] results
+    ) throws BroadcastException 
+    {
+        short[] broadcastRequest = readdress(
+                request, ProtocolProperties.NADR_Properties.IQMESH_BROADCAST_ADDRESS
+        );
+        AcknowledgedBroadcastResult result = isAllBonded? 
+                acknowledgedBroadcast.send(broadcastRequest, true)
+                : acknowledgedBroadcast.send(broadcastRequest, nodes.toSet(), true);
+        
+        Set<Integer> succeededNodes = result.getSucceededNodes();
+        Map<Integer, RequestResult> retryResults = result.getRetryResults();
+        int[] nodesArray = nodes.toArray();
+        for ( int i = 0; i < nodesArray.length; i++ ) {
+            statuses[i] = succeededNodes.contains(nodesArray[i])? 
+                    FanOutResult.NodeStatus.SUCCEEDED : FanOutResult.NodeStatus.FAILED;
+            results[i] = retryResults.get(nodesArray[i]);
+        }
+        return result.getRequestsNum();
+    }
+    
+    /**
+     * Sends specified request to specified nodes by the cheapest strategy, 
+     * which acknowledges delivery to each node.
+     * 
+     * @param nodes addresses of nodes to send the request to
+     * @param request request to send, its NADR is ignored
+     * @return delivery state of the request in each of the nodes
+     * @throws BroadcastException if the request could not be sent
+     */
+    public FanOutResult sendToMany(NodeSet nodes, short[] request) throws BroadcastException {
+        return sendToMany(nodes, request, false);
+    }
+    
+    /**
+     * Sends specified request to specified nodes by the cheapest strategy.
+     * 
+     * @param nodes addresses of nodes to send the request to
+     * @param request request to send, its NADR is ignored
+     * @param unacknowledgedAllowed if {@code true}, unacknowledged broadcast
+     *        can be used, if the nodes are all bonded nodes
+     * @return delivery state of the request in each of the nodes
+     * @throws BroadcastException if the request could not be sent
+     */
+    public FanOutResult sendToMany(NodeSet nodes, short[] request, boolean unacknowledgedAllowed) 
+            throws BroadcastException 
+    {
+        checkNodes(nodes);
+        checkRequest(request);
+        logger.debug(
+                "sendToMany - start: nodes={}, request={}, unacknowledgedAllowed={}", 
+                nodes, Arrays.toString(request), unacknowledgedAllowed
+        );
+        
+        NetworkState state = accessor.getNetworkState();
+        Strategy strategy = chooseStrategy(nodes, request, state, unacknowledgedAllowed);
+        long predictedTime = predictTime(strategy, nodes, request, state, unacknowledgedAllowed);
+        
+        int[] nodesArray = nodes.toArray();
+        FanOutResult.NodeStatus[] statuses = new FanOutResult.NodeStatus[nodesArray.length];
+        RequestResult[] results = new RequestResult[nodesArray.length];
+        int requestsNum;
+        switch ( strategy ) {
+            case UNICAST:
+                sendUnicast(nodesArray, request, statuses, results);
+                requestsNum = nodesArray.length;
+                break;
+            case BROADCAST:
+                sendBroadcast(request, statuses);
+                requestsNum = 1;
+                break;
+            case ACKNOWLEDGED_BROADCAST:
+                requestsNum = sendAcknowledged(
+                        nodes, request, nodes.equals(getBondedNodes(state)), statuses, results
+                );
+                break;
+            default:
+                throw new IllegalStateException("Unsupported strategy: " + strategy);
+        }
+        
+        FanOutResult result = new FanOutResult(
+                strategy, nodesArray, statuses, results, predictedTime, requestsNum
+        );
+        logger.info("Request sent to many nodes: {}", result);
+        logger.debug("sendToMany - end");
+        return result;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.broadcast;
+
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Result of sending of a request to many nodes by {@link FanOut}.
+ * <p>
+ * Results are stored in arrays indexed in the same way as the array of 
+ * addressed nodes, which is sorted in ascending order.
+ * 
+ * @author agent
+ */
+public final class FanOutResult {
+    
+    /**
+     * Delivery state of the request in a node.
+     */
+    public static enum NodeStatus {
+        /** The node executed the request. */
+        SUCCEEDED,
+        
+        /** The node did not execute the request or its execution failed. */
+        FAILED,
+        
+        /** 
+         * The request was sent by unacknowledged broadcast, so it is not 
+         * known, whether the node executed it. 
+         */
+        UNCONFIRMED
+    }
+    
+    
+    // used strategy
+    private final FanOut.Strategy strategy;
+    
+    // addressed nodes in ascending order
+    private final int[] nodes;
+    
+    // delivery states of the nodes
+    private final NodeStatus[] statuses;
+    
+    // results of unicast requests to the nodes
+    private final RequestResult[] results;
+    
+    // predicted time of sending
+    private final long predictedTime;
+    
+    // number of sent requests
+    private final int requestsNum;
+    
+    
+    /**
+     * Creates new result.
+     * 
+     * @param strategy used strategy
+     * @param nodes addressed nodes in ascending order
+     * @param statuses delivery states of the nodes
+     * @param results results of unicast requests to the nodes, {@code null} 
+     *        items for nodes, which were not addressed by unicast request
+     * @param predictedTime predicted time of sending [in ms]
+     * @param requestsNum number of sent requests
+     */
+    public FanOutResult(
+            FanOut.Strategy strategy, int[] nodes, NodeStatus[] statuses, 
+            RequestResult[] results, long predictedTime, int requestsNum
+    ) {
+        if ( nodes.length != statuses.length || nodes.length != results.length ) {
+            throw new IllegalArgumentException("Lengths of arrays differ.");
+        }
+        this.strategy = strategy;
+        this.nodes = nodes.clone();
+        this.statuses = statuses.clone();
+        this.results = results.clone();
+        this.predictedTime = predictedTime;
+        this.requestsNum = requestsNum;
+    }
+    
+    /**
+     * @return used strategy
+     */
+    public FanOut.Strategy getStrategy() {
+        return strategy;
+    }
+    
+    /**
+     * @return addressed nodes in ascending order
+     */
+    public int[] getNodes() {
+        return nodes.clone();
+    }
+    
+    /**
+     * @return delivery states of the nodes, in the order of {@link #getNodes()}
+     */
+    public NodeStatus[] getStatuses() {
+        return statuses.clone();
+    }
+    
+    /**
+     * @return results of unicast requests, in the order of {@link #getNodes()},
+     *         {@code null} items for nodes, which were not addressed 
+     *         by unicast request
+     */
+    public RequestResult[] getResults() {
+        return results.clone();
+    }
+    
+    // returns index of specified node
+    private int indexOf(int nadr) {
+        int index = Arrays.binarySearch(nodes, nadr);
+        if ( index < 0 ) {
+            throw new IllegalArgumentException("Node not addressed: " + nadr);
+        }
+        return index;
+    }
+    
+    /**
+     * @param nadr address of addressed node
+     * @return delivery state of the request in specified node
+     * @throws IllegalArgumentException if the node was not addressed
+     */
+    public NodeStatus getStatus(int nadr) {
+        return statuses[indexOf(nadr)];
+    }
+    
+    /**
+     * @param nadr address of addressed node
+     * @return result of unicast request to specified node, or {@code null},
+     *         if the node was not addressed by unicast request
+     * @throws IllegalArgumentException if the node was not addressed
+     */
+    public RequestResult getResult(int nadr) {
+        return results[indexOf(nadr)];
+    }
+    
+    // returns nodes of specified status
+    private NodeSet getNodes(NodeStatus status) {
+        List<Integer> statusNodes = new ArrayList<>();
+        for ( int i = 0; i < nodes.length; i++ ) {
+            if ( statuses[i] == status ) {
+                statusNodes.add(nodes[i]);
+            }
+        }
+        return NodeSet.of(statusNodes);
+    }
+    
+    /**
+     * @return nodes, which executed the request
+     */
+    public NodeSet getSucceededNodes() {
+        return getNodes(NodeStatus.SUCCEEDED);
+    }
+    
+    /**
+     * @return nodes, which did not execute the request
+     */
+    public NodeSet getFailedNodes() {
+        return getNodes(NodeStatus.FAILED);
+    }
+    
+    /**
+     * @return predicted time of sending by used strategy [in ms]
+     */
+    public long getPredictedTime() {
+        return predictedTime;
+    }
+    
+    /**
+     * @return number of sent requests
+     */
+    public int getRequestsNum() {
+        return requestsNum;
+    }
+    
+    @Override
+    public String toString() {
+        return "{"
+                + "strategy=" + strategy
+                + ", nodes=" + nodes.length
+                + ", failed=" + getFailedNodes()
+                + ", predictedTime=" + predictedTime
+                + ", requests=" + requestsNum
+                + "}";
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.broadcast;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable set of node addresses.
+ * 
+ * @author agent
+ */
+public final class NodeSet {
+    
+    // addresses of the nodes
+    private final BitSet nodes;
+    
+    
+    private static void checkAddress(int nadr) {
+        if ( nadr < ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MIN 
+                || nadr > ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX 
+        ) {
+            throw new IllegalArgumentException("Invalid node address: " + nadr);
+        }
+    }
+    
+    private NodeSet(BitSet nodes) {
+        this.nodes = nodes;
+    }
+    
+    /**
+     * Returns set of specified nodes.
+     * 
+     * @param nodes addresses of the nodes
+     * @return set of the nodes
+     * @throws IllegalArgumentException if some of the addresses is not 
+     *         a valid node address
+     */
+    public static NodeSet of(int... nodes) {
+        if ( nodes == null ) {
+            throw new IllegalArgumentException("Nodes cannot be null.");
+        }
+        BitSet bitSet = new BitSet();
+        for ( int nadr : nodes ) {
+            checkAddress(nadr);
+            bitSet.set(nadr);
+        }
+        return new NodeSet(bitSet);
+    }
+    
+    /**
+     * Returns set of specified nodes.
+     * 
+     * @param nodes addresses of the nodes
+     * @return set of the nodes
+     * @throws IllegalArgumentException if some of the addresses is not 
+     *         a valid node address
+     */
+    public static NodeSet of(Collection<Integer> nodes) {
+        if ( nodes == null ) {
+            throw new IllegalArgumentException("Nodes cannot be null.");
+        }
+        BitSet bitSet = new BitSet();
+        for ( int nadr : nodes ) {
+            checkAddress(nadr);
+            bitSet.set(nadr);
+        }
+        return new NodeSet(bitSet);
+    }
+    
+    /**
+     * Returns set of nodes, whose bits are set in specified bitmap.
+     * Bits of addresses, which are not valid node addresses, are ignored.
+     * 
+     * @param nodes bitmap of node addresses
+     * @return set of the nodes
+     */
+    public static NodeSet of(BitSet nodes) {
+        if ( nodes == null ) {
+            throw new IllegalArgumentException("Nodes cannot be null.");
+        }
+        BitSet bitSet = nodes.get(0, ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX + 1);
+        bitSet.clear(0, ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MIN);
+        return new NodeSet(bitSet);
+    }
+    
+    /**
+     * @return number of nodes in the set
+     */
+    public int size() {
+        return nodes.cardinality();
+    }
+    
+    /**
+     * @return {@code true} if the set contains no nodes
+     */
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+    
+    /**
+     * @param nadr address of node
+     * @return {@code true} if the set contains specified node
+     */
+    public boolean contains(int nadr) {
+        return ( nadr >= 0 && nodes.get(nadr) );
+    }
+    
+    /**
+     * @param nodeSet other set
+     * @return {@code true} if the set contains all nodes of specified set
+     */
+    public boolean containsAll(NodeSet nodeSet) {
+        BitSet rest = (BitSet) nodeSet.nodes.clone();
+        rest.andNot(nodes);
+        return rest.isEmpty();
+    }
+    
+    /**
+     * @return addresses of the nodes in ascending order
+     */
+    public int[] toArray() {
+        int[] array = new int[nodes.cardinality()];
+        int index = 0;
+        for ( int nadr = nodes.nextSetBit(0); nadr >= 0; nadr = nodes.nextSetBit(nadr + 1) ) {
+            array[index++] = nadr;
+        }
+        return array;
+    }
+    
+    /**
+     * @return unmodifiable sorted set of addresses of the nodes
+     */
+    public Set<Integer> toSet() {
+        Set<Integer> set = new TreeSet<>();
+        for ( int nadr : toArray() ) {
+            set.add(nadr);
+        }
+        return Collections.unmodifiableSet(set);
+    }
+    
+    /**
+     * @return bitmap of addresses of the nodes
+     */
+    public BitSet toBitSet() {
+        return (BitSet) nodes.clone();
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        if ( this == obj ) {
+            return true;
+        }
+        if ( !(obj instanceof NodeSet) ) {
+            return false;
+        }
+        return nodes.equals(((NodeSet) obj).nodes);
+    }
+    
+    @Override
+    public int hashCode() {
+        return nodes.hashCode();
+    }
+    
+    @Override
+    public String toString() {
+        return nodes.toString();
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.cache;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessor;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorControlInterface;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorDecorator;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorException;
+import com.microrisc.dpa22x.byteaccess.validation.RequestClassifier;
+import com.microrisc.dpa22x.peripherals.Coordinator;
+import java.util.Arrays;
+import javax.management.JMException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Byte accessor, which answers idempotent reads from {@link ResponseCache}
+ * and sends other requests to underlying accessor.
+ * <p>
+ * Requests, which are not reads according to the 
+ * {@link RequestClassifier#DEFAULT default request classifier}, invalidate 
+ * cached results of their addressee. Such requests to the coordinator peripheral and 
+ * broadcasts invalidate the whole cache, as they can change bonds or
+ * state of all nodes.
+ * 
+ * @author agent
+ */
+public final class CachingByteAccessor 
+implements ByteAccessorDecorator, ByteAccessorControlInterface {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(CachingByteAccessor.class);
+    
+    
+    // underlying accessor
+    private final ByteAccessor accessor;
+    
+    // cache
+    private final ResponseCache cache;
+    
+    // name, under which the cache metrics are registered into JMX
+    private final String metricsName;
+    
+    // default waiting timeout
+    private volatile long defaultWaitingTimeout = ByteAccessor.WAITING_TIMEOUT_NOT_LIMITED;
+    
+    
+    private static ByteAccessor checkAccessor(ByteAccessor accessor) {
+        if ( accessor == null ) {
+            throw new IllegalArgumentException("Accessor cannot be null.");
+        }
+        return accessor;
+    }
+    
+    private static ResponseCache checkCache(ResponseCache cache) {
+        if ( cache == null ) {
+            throw new IllegalArgumentException("Cache cannot be null.");
+        }
+        return cache;
+    }
+    
+    // invalidates cached results, which can be changed by specified request
+    private void invalidate(short[] request) {
+        if ( RequestClassifier.DEFAULT.isRead(request) ) {
+            return;
+        }
+        
+        int nadr = request[ProtocolProperties.NADR_START];
+        if ( nadr == ProtocolProperties.NADR_Properties.IQMESH_BROADCAST_ADDRESS 
+                || ProtocolProperties.getPeripheralNumber(request) == Coordinator.PNUM 
+        ) {
+            logger.debug("Cache invalidated by request: {}", Arrays.toString(request));
+            cache.invalidateAll();
+            return;
+        }
+        
+        if ( nadr == ProtocolProperties.NADR_Properties.LOCAL_DEVICE_ADDRESS ) {
+            nadr = ProtocolProperties.NADR_Properties.IQMESH_COORDINATOR_ADDRESS;
+        }
+        cache.invalidateNode(nadr);
+    }
+    
+    
+    /**
+     * Creates new caching accessor.
+     * 
+     * @param accessor underlying accessor
+     * @param cache cache to use
+     * @param metricsName name, under which the cache metrics are registered 
+     *        into JMX at start, {@code null} means no registration
+     */
+    public CachingByteAccessor(ByteAccessor accessor, ResponseCache cache, String metricsName) {
+        this.accessor = checkAccessor(accessor);
+        this.cache = checkCache(cache);
+        this.metricsName = metricsName;
+        logger.debug("Caching byte accessor created");
+    }
+    
+    /**
+     * Creates new caching accessor, whose cache metrics are not registered into JMX.
+     * 
+     * @param accessor underlying accessor
+     * @param cache cache to use
+     */
+    public CachingByteAccessor(ByteAccessor accessor, ResponseCache cache) {
+        this(accessor, cache, null);
+    }
+    
+    @Override
+    public ByteAccessor getAccessor() {
+        return accessor;
+    }
+    
+    /**
+     * @return the cache
+     */
+    public ResponseCache getCache() {
+        return cache;
+    }
+    
+    @Override
+    public void start() throws ByteAccessorException {
+        logger.debug("start - start");
+        
+        if ( accessor instanceof ByteAccessorControlInterface ) {
+            ((ByteAccessorControlInterface) accessor).start();
+        }
+        
+        if ( metricsName != null ) {
+            try {
+                cache.getMetrics().registerMBean(metricsName);
+            } catch ( JMException ex ) {
+                logger.warn("Registration of cache metrics into JMX failed: {}", ex.getMessage());
+            }
+        }
+        
+        logger.debug("start - end");
+    }
+    
+    @Override
+    public RequestResult sendRequest(short[] request, long waitingTimeout) {
+        logger.debug(
+                "sendRequest - start: request={}, waitingTimeout={}",
+                Arrays.toString(request), waitingTimeout
+        );
+        
+        if ( !cache.isCacheable(request) ) {
+            RequestResult result = accessor.sendRequest(request, waitingTimeout);
+            invalidate(request);
+            
+            logger.debug("sendRequest - end");
+            return result;
+        }
+        
+        RequestResult result = cache.get(request);
+        if ( result != null ) {
+            logger.debug("sendRequest - end: cached");
+            return result;
+        }
+        
+        long generation = cache.getGeneration();
+        result = accessor.sendRequest(request, waitingTimeout);
+        cache.put(request, result, generation);
+        
+        logger.debug("sendRequest - end");
+        return result;
+    }
+    
+    @Override
+    public RequestResult sendRequest(short[] request) {
+        return sendRequest(request, defaultWaitingTimeout);
+    }
+    
+    @Override
+    public void setDefaultWaitingTimeout(long timeout) {
+        accessor.setDefaultWaitingTimeout(timeout);
+        this.defaultWaitingTimeout = timeout;
+    }
+    
+    @Override
+    public void terminateAndRelease() {
+        logger.debug("terminateAndRelease - start");
+        
+        cache.getMetrics().unregisterMBean();
+        cache.invalidateAll();
+        
+        if ( accessor instanceof ByteAccessorControlInterface ) {
+            ((ByteAccessorControlInterface) accessor).terminateAndRelease();
+        }
+        
+        logger.info("Caching byte accessor terminated and released");
+        logger.debug("terminateAndRelease - end");
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.cache;
+
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessor;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorFactory;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorFactoryException;
+import com.microrisc.dpa22x.byteaccess.accessors.StandardByteAccessorFactory;
+import java.lang.reflect.Constructor;
+import java.util.Iterator;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Factory of byte accessors wrapped into {@link CachingByteAccessor}.
+ * <p>
+ * Configuration items: <br>
+ * - <b>byteAccessor.cache.accessorFactory.class</b>: factory of underlying
+ * accessor, which is created from the same configuration. If no such 
+ * configuration key is found, {@link StandardByteAccessorFactory} is used. <br>
+ * 
+ * - <b>byteAccessor.cache.maxSize</b>: maximal number of cached results. 
+ * If no such configuration key is found, {@link ResponseCache#MAX_SIZE_DEFAULT}
+ * is used. <br>
+ * 
+ * - <b>byteAccessor.cache.ttl.&lt;PNUM&gt;.&lt;PCMD&gt;</b>: time to live [in ms]
+ * of results of the command, zero means no caching. Numbers can be decimal 
+ * or hexadecimal with 0x prefix. Commands, which are not configured, have 
+ * defaults of {@link ResponseCache.Settings.Builder}. <br>
+ * 
+ * - <b>byteAccessor.metrics.name</b>: name, under which the cache metrics
+ * are registered into JMX. If no such configuration key is found, 
+ * {@link StandardByteAccessorFactory#METRICS_NAME_DEFAULT} is used. Empty 
+ * value means no registration.
+ * 
+ * @author agent
+ */
+public final class CachingByteAccessorFactory implements ByteAccessorFactory {
+    
+    private static final String TTL_PREFIX = "byteAccessor.cache.ttl";
+    
+    // creates and returns underlying accessor
+    private static ByteAccessor createAccessor(Configuration configuration) 
+            throws ByteAccessorFactoryException 
+    {
+        String factoryClassName = configuration.getString("byteAccessor.cache.accessorFactory.class", "");
+        if ( factoryClassName.isEmpty() ) {
+            return new StandardByteAccessorFactory().getByteAccessor(configuration);
+        }
+        
+        Object factory = null;
+        try {
+            Class factoryClass = Class.forName(factoryClassName);
+            Constructor constructor = factoryClass.getConstructor();
+            factory = constructor.newInstance();
+        } catch ( Exception ex ) {
+            throw new ByteAccessorFactoryException(ex);
+        }
+        
+        if ( !(factory instanceof ByteAccessorFactory) ) {
+            throw new ByteAccessorFactoryException(
+                    "Byte accessor factory MUST implement the: " + ByteAccessorFactory.class
+                    + " interface."
+            );
+        }
+        return ((ByteAccessorFactory) factory).getByteAccessor(configuration);
+    }
+    
+    private static int parseNumber(String numberStr) throws ByteAccessorFactoryException {
+        try {
+            return Integer.decode(numberStr);
+        } catch ( NumberFormatException ex ) {
+            throw new ByteAccessorFactoryException("Invalid number: " + numberStr);
+        }
+    }
+    
+    // creates and returns cache settings
+    private static ResponseCache.Settings createSettings(Configuration configuration) 
+            throws ByteAccessorFactoryException 
+    {
+        ResponseCache.Settings.Builder builder = new ResponseCache.Settings.Builder()
+                .maxSize(configuration.getInt("byteAccessor.cache.maxSize", ResponseCache.MAX_SIZE_DEFAULT));
+        
+        Iterator<String> keysIter = configuration.getKeys(TTL_PREFIX);
+        while ( keysIter.hasNext() ) {
+            String key = keysIter.next();
+            String[] numbers = key.substring(TTL_PREFIX.length() + 1).split("\\.");
+            if ( numbers.length != 2 ) {
+                throw new ByteAccessorFactoryException("Invalid time to live key: " + key);
+            }
+            
+            try {
+                builder.ttl(parseNumber(numbers[0]), parseNumber(numbers[1]), configuration.getLong(key, 0));
+            } catch ( IllegalArgumentException ex ) {
+                throw new ByteAccessorFactoryException(ex);
+            }
+        }
+        
+        try {
+            return builder.build();
+        } catch ( IllegalArgumentException ex ) {
+            throw new ByteAccessorFactoryException(ex);
+        }
+    }
+    
+    @Override
+    public ByteAccessor getByteAccessor(Configuration configuration) 
+            throws ByteAccessorFactoryException 
+    {
+        ResponseCache cache = new ResponseCache(createSettings(configuration));
+        
+        String metricsName = configuration.getString(
+                "byteAccessor.metrics.name", StandardByteAccessorFactory.METRICS_NAME_DEFAULT
+        );
+        if ( metricsName.isEmpty() ) {
+            metricsName = null;
+        }
+        
+        return new CachingByteAccessor(createAccessor(configuration), cache, metricsName);
+    }
+}
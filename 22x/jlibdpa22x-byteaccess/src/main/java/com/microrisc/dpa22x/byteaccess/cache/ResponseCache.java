@@ -0,0 +1,385 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.cache;
+
+import com.microrisc.dpa22x.DPA_ResponseCode;
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.peripherals.Coordinator;
+import com.microrisc.dpa22x.peripherals.OS;
+import com.microrisc.dpa22x.timing.Clock;
+import com.microrisc.dpa22x.timing.SystemClock;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of results of idempotent read requests.
+ * <p>
+ * Results are keyed by complete bytes of requests. Only requests, whose
+ * command has configured time to live, are cached. The cache has bounded
+ * size, the least recently used entries are evicted, when the size is 
+ * exceeded.
+ * <p>
+ * Each invalidation increments generation of the cache. Results of requests
+ * started in older generation are not stored, so results read concurrently 
+ * with a write cannot get into the cache after the write.
+ * 
+ * @author agent
+ */
+public final class ResponseCache {
+    
+    /** Default maximal number of entries. */
+    public static final int MAX_SIZE_DEFAULT = 1024;
+    
+    /** Default time to live [in ms] of results of OS READ. */
+    public static final long OS_READ_TTL_DEFAULT = 3600000;
+    
+    /** Default time to live [in ms] of results of peripheral enumeration. */
+    public static final long PERIPHERAL_ENUMERATION_TTL_DEFAULT = 3600000;
+    
+    /** Default time to live [in ms] of results of GET_ADDRESSING_INFO. */
+    public static final long ADDRESSING_INFO_TTL_DEFAULT = 60000;
+    
+    // PCMD of peripheral enumeration
+    private static final int PERIPHERAL_ENUMERATION = 0x3F;
+    
+    
+    /**
+     * Settings of the cache.
+     */
+    public static final class Settings {
+        
+        private final int maxSize;
+        private final Map<Integer, Long> ttls;
+        
+        /**
+         * Builder of settings. Times to live of OS READ, peripheral enumeration
+         * and GET_ADDRESSING_INFO commands are set to their defaults.
+         */
+        public static final class Builder {
+            private int maxSize = MAX_SIZE_DEFAULT;
+            private final Map<Integer, Long> ttls = new HashMap<>();
+            
+            public Builder() {
+                ttl(OS.PNUM, OS.Command.READ.asByteValue(), OS_READ_TTL_DEFAULT);
+                ttl(
+                    ProtocolProperties.PNUM_Properties.DEVICE_EXPLORATION, 
+                    PERIPHERAL_ENUMERATION, PERIPHERAL_ENUMERATION_TTL_DEFAULT
+                );
+                ttl(
+                    Coordinator.PNUM, Coordinator.Command.GET_ADDRESSING_INFO.asByteValue(), 
+                    ADDRESSING_INFO_TTL_DEFAULT
+                );
+            }
+            
+            /**
+             * Sets maximal number of entries.
+             */
+            public Builder maxSize(int maxSize) {
+                this.maxSize = maxSize;
+                return this;
+            }
+            
+            /**
+             * Sets time to live [in ms] of results of specified command.
+             * Zero means, that the command is not cached.
+             */
+            public Builder ttl(int pnum, int pcmd, long ttl) {
+                if ( ttl < 0 ) {
+                    throw new IllegalArgumentException("Time to live cannot be negative.");
+                }
+                ttls.put(getCommandKey(pnum, pcmd), ttl);
+                return this;
+            }
+            
+            public Settings build() {
+                return new Settings(this);
+            }
+        }
+        
+        private Settings(Builder builder) {
+            if ( builder.maxSize <= 0 ) {
+                throw new IllegalArgumentException("Maximal size must be positive.");
+            }
+            this.maxSize = builder.maxSize;
+            this.ttls = new HashMap<>(builder.ttls);
+        }
+        
+        /**
+         * @return maximal number of entries
+         */
+        public int getMaxSize() {
+            return maxSize;
+        }
+        
+        /**
+         * Returns time to live of results of specified command.
+         * 
+         * @param pnum PNUM of the command
+         * @param pcmd PCMD of the command
+         * @return time to live [in ms], zero if the command is not cached
+         */
+        public long getTtl(int pnum, int pcmd) {
+            Long ttl = ttls.get(getCommandKey(pnum, pcmd));
+            return ( ttl != null )? ttl : 0;
+        }
+    }
+    
+    // key of a request
+    private static final class RequestKey {
+        private final short[] request;
+        private final int hashCode;
+        
+        RequestKey(short[] request) {
+            this.request = request.clone();
+            this.hashCode = Arrays.hashCode(request);
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            return ( obj instanceof RequestKey ) 
+                    && Arrays.equals(request, ((RequestKey) obj).request);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+    
+    // cached result
+    private static final class CachedResult {
+        private final RequestResult result;
+        private final int nadr;
+        private final long expirationTime;
+        
+        CachedResult(RequestResult result, int nadr, long expirationTime) {
+            this.result = result;
+            this.nadr = nadr;
+            this.expirationTime = expirationTime;
+        }
+    }
+    
+    
+    // settings
+    private final Settings settings;
+    
+    // clock to take time from
+    private final Clock clock;
+    
+    // entries in access order
+    private final LinkedHashMap<RequestKey, CachedResult> entries;
+    
+    // metrics
+    private final ResponseCacheMetrics metrics;
+    
+    // generation of the cache, incremented by each invalidation
+    private long generation = 0;
+    
+    
+    private static int getCommandKey(int pnum, int pcmd) {
+        return (pnum << 8) | pcmd;
+    }
+    
+    // returns address of the node, coordinator for local device
+    private static int getNodeAddress(short[] request) {
+        int nadr = request[ProtocolProperties.NADR_START];
+        if ( nadr == ProtocolProperties.NADR_Properties.LOCAL_DEVICE_ADDRESS ) {
+            return ProtocolProperties.NADR_Properties.IQMESH_COORDINATOR_ADDRESS;
+        }
+        return nadr;
+    }
+    
+    private static Settings checkSettings(Settings settings) {
+        if ( settings == null ) {
+            throw new IllegalArgumentException("Settings cannot be null.");
+        }
+        return settings;
+    }
+    
+    private static Clock checkClock(Clock clock) {
+        if ( clock == null ) {
+            throw new IllegalArgumentException("Clock cannot be null.");
+        }
+        return clock;
+    }
+    
+    
+    /**
+     * Creates new empty cache with specified settings.
+     * 
+     * @param settings settings
+     * @param clock clock to take time from
+     */
+    public ResponseCache(Settings settings, Clock clock) {
+        this.settings = checkSettings(settings);
+        this.clock = checkClock(clock);
+        this.metrics = new ResponseCacheMetrics(this);
+        this.entries = new LinkedHashMap<RequestKey, CachedResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RequestKey, CachedResult> eldest) {
+                if ( size() > ResponseCache.this.settings.getMaxSize() ) {
+                    metrics.evicted();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Creates new empty cache with specified settings and system clock.
+     * 
+     * @param settings settings
+     */
+    public ResponseCache(Settings settings) {
+        this(settings, SystemClock.INSTANCE);
+    }
+    
+    /**
+     * @return settings of the cache
+     */
+    public Settings getSettings() {
+        return settings;
+    }
+    
+    /**
+     * @return metrics of the cache
+     */
+    public ResponseCacheMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Indicates, whether results of specified request are cached.
+     * 
+     * @param request request
+     * @return {@code true} if results of {@code request} are cached <br>
+     *         {@code false} otherwise
+     */
+    public boolean isCacheable(short[] request) {
+        return settings.getTtl(
+                ProtocolProperties.getPeripheralNumber(request), 
+                ProtocolProperties.getCommand(request)
+        ) > 0;
+    }
+    
+    /**
+     * Returns copy of cached result of specified request and records hit 
+     * or miss.
+     * 
+     * @param request request
+     * @return copy of cached result or {@code null}, if there is no valid 
+     *         result cached
+     */
+    public synchronized RequestResult get(short[] request) {
+        RequestKey key = new RequestKey(request);
+        CachedResult entry = entries.get(key);
+        if ( entry != null && entry.expirationTime <= clock.currentTimeMillis() ) {
+            entries.remove(key);
+            metrics.expired();
+            entry = null;
+        }
+        
+        if ( entry == null ) {
+            metrics.miss();
+            return null;
+        }
+        
+        metrics.hit();
+        return RequestResult.copyOf(entry.result);
+    }
+    
+    /**
+     * @return current generation of the cache
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+    
+    /**
+     * Stores copy of specified result of specified request, if the result is 
+     * successful and the cache has not been invalidated since specified
+     * generation.
+     * 
+     * @param request request
+     * @param result result of the request
+     * @param requestGeneration generation of the cache at start of the request
+     */
+    public synchronized void put(short[] request, RequestResult result, long requestGeneration) {
+        if ( requestGeneration != generation 
+                || result.getStatus() != RequestResult.Status.SUCCESSFULLY_COMPLETED
+                || result.getResponse() == null
+                || result.getResponse().getResponseCode() != DPA_ResponseCode.NO_ERROR
+        ) {
+            return;
+        }
+        
+        long ttl = settings.getTtl(
+                ProtocolProperties.getPeripheralNumber(request), 
+                ProtocolProperties.getCommand(request)
+        );
+        if ( ttl == 0 ) {
+            return;
+        }
+        
+        entries.put(
+                new RequestKey(request), 
+                new CachedResult(
+                        RequestResult.copyOf(result), getNodeAddress(request), 
+                        clock.currentTimeMillis() + ttl
+                )
+        );
+    }
+    
+    /**
+     * Removes all results of requests to specified node.
+     * 
+     * @param nadr address of the node
+     */
+    public synchronized void invalidateNode(int nadr) {
+        generation++;
+        
+        int removedNum = 0;
+        Iterator<CachedResult> entriesIter = entries.values().iterator();
+        while ( entriesIter.hasNext() ) {
+            if ( entriesIter.next().nadr == nadr ) {
+                entriesIter.remove();
+                removedNum++;
+            }
+        }
+        metrics.invalidated(removedNum);
+    }
+    
+    /**
+     * Removes all results.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        metrics.invalidated(entries.size());
+        entries.clear();
+    }
+    
+    /**
+     * @return current number of entries
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+}
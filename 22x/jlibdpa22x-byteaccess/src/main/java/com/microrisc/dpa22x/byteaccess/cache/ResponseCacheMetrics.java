@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics of response cache - counters of hits, misses and removed entries.
+ * All methods can be called from any thread.
+ * 
+ * @author agent
+ */
+public final class ResponseCacheMetrics implements ResponseCacheMetricsMXBean {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCacheMetrics.class);
+    
+    /** Domain and type of object names, under which the metrics are registered. */
+    public static final String OBJECT_NAME_PREFIX = "com.microrisc.dpa22x:type=ResponseCache,name=";
+    
+    
+    // cache, whose size is reported
+    private final ResponseCache cache;
+    
+    // counters
+    private final AtomicLong hitsNum = new AtomicLong();
+    private final AtomicLong missesNum = new AtomicLong();
+    private final AtomicLong expirationsNum = new AtomicLong();
+    private final AtomicLong evictionsNum = new AtomicLong();
+    private final AtomicLong invalidationsNum = new AtomicLong();
+    
+    // name, under which the metrics are registered into the platform MBean server 
+    private ObjectName registeredName = null;
+    
+    
+    /**
+     * Creates new metrics of specified cache.
+     * @param cache cache
+     */
+    ResponseCacheMetrics(ResponseCache cache) {
+        this.cache = cache;
+    }
+    
+    void hit() {
+        hitsNum.incrementAndGet();
+    }
+    
+    void miss() {
+        missesNum.incrementAndGet();
+    }
+    
+    void expired() {
+        expirationsNum.incrementAndGet();
+    }
+    
+    void evicted() {
+        evictionsNum.incrementAndGet();
+    }
+    
+    void invalidated(int entriesNum) {
+        invalidationsNum.addAndGet(entriesNum);
+    }
+    
+    
+    // JMX
+    
+    /**
+     * Registers the metrics into platform MBean server under specified name.
+     * 
+     * @param name name of the cache
+     * @throws JMException if the registration has failed
+     */
+    public synchronized void registerMBean(String name) throws JMException {
+        if ( registeredName != null ) {
+            throw new IllegalStateException("Metrics already registered as: " + registeredName);
+        }
+        
+        ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        registeredName = objectName;
+        
+        logger.info("Cache metrics registered as: {}", objectName);
+    }
+    
+    /**
+     * Unregisters the metrics from platform MBean server. Does nothing, 
+     * if the metrics are not registered.
+     */
+    public synchronized void unregisterMBean() {
+        if ( registeredName == null ) {
+            return;
+        }
+        
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(registeredName);
+        } catch ( JMException ex ) {
+            logger.warn("Unregistration of cache metrics failed: {}", ex.getMessage());
+        }
+        registeredName = null;
+    }
+    
+    
+    // MXBean
+    
+    @Override
+    public long getHitsCount() {
+        return hitsNum.get();
+    }
+    
+    @Override
+    public long getMissesCount() {
+        return missesNum.get();
+    }
+    
+    @Override
+    public double getHitRatio() {
+        long hits = hitsNum.get();
+        long requests = hits + missesNum.get();
+        return ( requests == 0 )? 0 : (double) hits / requests;
+    }
+    
+    @Override
+    public long getExpirationsCount() {
+        return expirationsNum.get();
+    }
+    
+    @Override
+    public long getEvictionsCount() {
+        return evictionsNum.get();
+    }
+    
+    @Override
+    public long getInvalidationsCount() {
+        return invalidationsNum.get();
+    }
+    
+    @Override
+    public int getSize() {
+        return cache.getSize();
+    }
+    
+    @Override
+    public void reset() {
+        hitsNum.set(0);
+        missesNum.set(0);
+        expirationsNum.set(0);
+        evictionsNum.set(0);
+        invalidationsNum.set(0);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.cache;
+
+/**
+ * Management interface of response cache metrics.
+ * 
+ * @author agent
+ */
+public interface ResponseCacheMetricsMXBean {
+    
+    /**
+     * @return number of requests answered from the cache
+     */
+    long getHitsCount();
+    
+    /**
+     * @return number of cacheable requests, which had to be sent into the network
+     */
+    long getMissesCount();
+    
+    /**
+     * @return ratio of hits to all cacheable requests
+     */
+    double getHitRatio();
+    
+    /**
+     * @return number of entries removed because of their expiration
+     */
+    long getExpirationsCount();
+    
+    /**
+     * @return number of entries removed to keep maximal size of the cache
+     */
+    long getEvictionsCount();
+    
+    /**
+     * @return number of entries removed because of writes into nodes
+     *         or changes of bonds
+     */
+    long getInvalidationsCount();
+    
+    /**
+     * @return current number of entries
+     */
+    int getSize();
+    
+    /**
+     * Resets all counters to zero.
+     */
+    void reset();
+}
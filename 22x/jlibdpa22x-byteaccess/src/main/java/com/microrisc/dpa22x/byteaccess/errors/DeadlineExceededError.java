@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 Microrisc s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.errors;
+
+/**
+ * Deadline of the request passed, before the request was finished.
+ * 
+ * @author agent
+ */
+public final class DeadlineExceededError
+extends AbstractProcessingError implements ProcessingError 
+{
+    private static final ErrorType ERROR_TYPE = ErrorType.DEADLINE_EXCEEDED; 
+    
+    
+    public DeadlineExceededError() {
+        super(ERROR_TYPE, "");
+    }
+    
+    public DeadlineExceededError(String description) {
+        super(ERROR_TYPE, description);
+    }
+    
+    public DeadlineExceededError(Exception exception) {
+        super(ERROR_TYPE, "", exception);
+    }
+    
+    public DeadlineExceededError(String description, Exception exception) {
+        super(ERROR_TYPE, description, exception);
+    }
+}
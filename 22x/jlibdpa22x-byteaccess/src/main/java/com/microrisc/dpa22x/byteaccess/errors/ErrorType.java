@@ -32,5 +32,23 @@ public enum ErrorType {
     RECEIVE_DATA,
     
     /** Library internal error. */
-    LIBRARY_INTERNAL;
+    LIBRARY_INTERNAL,
+    
+    /** Addressed node is considered unavailable, request was not sent. */
+    NODE_UNAVAILABLE,
+    
+    /** Addressed node does not support the request, request was not sent. */
+    UNSUPPORTED_BY_NODE,
+    
+    /** Request violates properties of the protocol, request was not sent. */
+    INVALID_REQUEST,
+    
+    /** Request was cancelled by its sender. */
+    REQUEST_CANCELLED,
+    
+    /** Deadline of the request passed. */
+    DEADLINE_EXCEEDED,
+    
+    /** Request failed in remote byte accessor, e.g. in DPA proxy server. */
+    REMOTE_REQUEST;
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Microrisc s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.errors;
+
+/**
+ * Request failed in remote byte accessor, to which the network layer is
+ * connected, before any data of the request came from IQRF network.
+ * 
+ * @author agent
+ */
+public final class RemoteRequestError
+extends AbstractProcessingError implements ProcessingError 
+{
+    private static final ErrorType ERROR_TYPE = ErrorType.REMOTE_REQUEST; 
+    
+    
+    public RemoteRequestError() {
+        super(ERROR_TYPE, "");
+    }
+    
+    public RemoteRequestError(String description) {
+        super(ERROR_TYPE, description);
+    }
+    
+    public RemoteRequestError(Exception exception) {
+        super(ERROR_TYPE, "", exception);
+    }
+    
+    public RemoteRequestError(String description, Exception exception) {
+        super(ERROR_TYPE, description, exception);
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.metrics;
+
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.byteaccess.errors.ErrorType;
+import com.microrisc.dpa22x.byteaccess.errors.ProcessingError;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics of byte accessor - latencies of phases of requests processing and
+ * counters of requests.
+ * <p>
+ * Latencies are recorded in total, by peripheral and by node. Histograms for
+ * particular peripherals and nodes are created lazily, when the first value
+ * for them is recorded. All methods can be called from any thread.
+ * 
+ * @author agent
+ */
+public final class AccessorMetrics implements AccessorMetricsMXBean {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(AccessorMetrics.class);
+    
+    /** Domain and type of object names, under which the metrics are registered. */
+    public static final String OBJECT_NAME_PREFIX = "com.microrisc.dpa22x:type=ByteAccessor,name=";
+    
+    /**
+     * Phases of request processing, whose latencies are recorded.
+     */
+    public static enum Phase {
+        
+        /** From dispatch of request to reception of confirmation. */
+        CONFIRMATION,
+        
+        /** 
+         * From reception of confirmation to reception of response. For requests
+         * to local device from dispatch of request to reception of response.
+         */
+        RESPONSE,
+        
+        /** Waiting till routing of previous request is finished. */
+        ROUTING_WAIT
+    }
+    
+    // number of keys - PNUM or NADR values
+    private static final int KEYS_NUM = 0x100;
+    
+    // total latencies by phase
+    private final LatencyHistogram[] totalLatencies;
+    
+    // latencies by phase and peripheral
+    private final AtomicReferenceArray<LatencyHistogram> peripheralLatencies;
+    
+    // latencies by phase and node
+    private final AtomicReferenceArray<LatencyHistogram> nodeLatencies;
+    
+    // counters
+    private final AtomicLong requestsNum = new AtomicLong();
+    private final AtomicLong successfulRequestsNum = new AtomicLong();
+    private final AtomicLong timeoutsNum = new AtomicLong();
+    private final AtomicLong deduplicatedRequestsNum = new AtomicLong();
+    private final AtomicLong staleFramesNum = new AtomicLong();
+    private final AtomicLongArray errorsNum = new AtomicLongArray(ErrorType.values().length);
+    private final AtomicInteger inFlightRequestsNum = new AtomicInteger();
+    private final AtomicInteger queuedRequestsNum = new AtomicInteger();
+    
+    // name, under which the metrics are registered into the platform MBean server 
+    private ObjectName registeredName = null;
+    
+    
+    // returns histogram for specified phase and key, creates it if it does not exist
+    private static LatencyHistogram getOrCreateHistogram(
+            AtomicReferenceArray<LatencyHistogram> histograms, Phase phase, int key
+    ) {
+        int index = phase.ordinal() * KEYS_NUM + (key & 0xFF);
+        LatencyHistogram histogram = histograms.get(index);
+        if ( histogram != null ) {
+            return histogram;
+        }
+        histograms.compareAndSet(index, null, new LatencyHistogram());
+        return histograms.get(index);
+    }
+    
+    // returns snapshots of all existing histograms for specified phase
+    private static Map<Integer, LatencySnapshot> getSnapshots(
+            AtomicReferenceArray<LatencyHistogram> histograms, Phase phase
+    ) {
+        Map<Integer, LatencySnapshot> snapshots = new TreeMap<>();
+        for ( int key = 0; key < KEYS_NUM; key++ ) {
+            LatencyHistogram histogram = histograms.get(phase.ordinal() * KEYS_NUM + key);
+            if ( histogram != null && histogram.getCount() > 0 ) {
+                snapshots.put(key, histogram.getSnapshot());
+            }
+        }
+        return snapshots;
+    }
+    
+    private static void reset(AtomicReferenceArray<LatencyHistogram> histograms) {
+        for ( int i = 0; i < histograms.length(); i++ ) {
+            LatencyHistogram histogram = histograms.get(i);
+            if ( histogram != null ) {
+                histogram.reset();
+            }
+        }
+    }
+    
+    
+    /**
+     * Creates new metrics with no recorded values.
+     */
+    public AccessorMetrics() {
+        this.totalLatencies = new LatencyHistogram[Phase.values().length];
+        for ( int i = 0; i < totalLatencies.length; i++ ) {
+            totalLatencies[i] = new LatencyHistogram();
+        }
+        this.peripheralLatencies = new AtomicReferenceArray<>(Phase.values().length * KEYS_NUM);
+        this.nodeLatencies = new AtomicReferenceArray<>(Phase.values().length * KEYS_NUM);
+    }
+    
+    
+    // RECORDING
+    
+    /**
+     * Records, that a request waits for processing.
+     */
+    public void requestQueued() {
+        queuedRequestsNum.incrementAndGet();
+    }
+    
+    /**
+     * Records, that processing of previously queued request has started.
+     */
+    public void requestStarted() {
+        queuedRequestsNum.decrementAndGet();
+        inFlightRequestsNum.incrementAndGet();
+        requestsNum.incrementAndGet();
+    }
+    
+    /**
+     * Records, that processing of a request has finished with specified result.
+     * 
+     * @param result result of the request
+     */
+    public void requestFinished(RequestResult result) {
+        inFlightRequestsNum.decrementAndGet();
+        
+        if ( result.getStatus() == RequestResult.Status.SUCCESSFULLY_COMPLETED ) {
+            successfulRequestsNum.incrementAndGet();
+            return;
+        }
+        
+        ProcessingError error = result.getProcessingInfo().getProcesssingError();
+        if ( error != null ) {
+            errorsNum.incrementAndGet(error.getType().ordinal());
+        }
+    }
+    
+    /**
+     * Records request, which was rejected without being sent into the network.
+     * 
+     * @param result result of the request
+     */
+    public void requestRejected(RequestResult result) {
+        requestsNum.incrementAndGet();
+        
+        ProcessingError error = result.getProcessingInfo().getProcesssingError();
+        if ( error != null ) {
+            errorsNum.incrementAndGet(error.getType().ordinal());
+        }
+    }
+    
+    /**
+     * Records request, which was dropped from the queue without being sent 
+     * into the network.
+     * 
+     * @param result result of the request
+     */
+    public void requestDropped(RequestResult result) {
+        queuedRequestsNum.decrementAndGet();
+        requestRejected(result);
+    }
+    
+    /**
+     * Records dropped confirmation or response of abandoned request.
+     */
+    public void staleFrameDropped() {
+        staleFramesNum.incrementAndGet();
+    }
+    
+    /**
+     * Records request, which got result of identical request in flight.
+     */
+    public void requestDeduplicated() {
+        deduplicatedRequestsNum.incrementAndGet();
+    }
+    
+    /**
+     * Records timeout of waiting for data from the network.
+     */
+    public void timeoutOccurred() {
+        timeoutsNum.incrementAndGet();
+    }
+    
+    /**
+     * Records duration of specified phase of a request.
+     * 
+     * @param phase phase of the request
+     * @param nadr NADR of the request
+     * @param pnum PNUM of the request
+     * @param durationNanos duration [in ns]
+     */
+    public void recordLatency(Phase phase, int nadr, int pnum, long durationNanos) {
+        long durationMicros = TimeUnit.NANOSECONDS.toMicros(durationNanos);
+        totalLatencies[phase.ordinal()].record(durationMicros);
+        getOrCreateHistogram(peripheralLatencies, phase, pnum).record(durationMicros);
+        getOrCreateHistogram(nodeLatencies, phase, nadr).record(durationMicros);
+    }
+    
+    
+    // ACCESS FROM JAVA CODE
+    
+    /**
+     * Returns total latency histogram of specified phase.
+     * 
+     * @param phase phase
+     * @return histogram of specified phase
+     */
+    public LatencyHistogram getHistogram(Phase phase) {
+        return totalLatencies[phase.ordinal()];
+    }
+    
+    /**
+     * Returns latency histogram of specified phase and peripheral.
+     * 
+     * @param phase phase
+     * @param pnum peripheral number
+     * @return histogram or {@code null}, if no value for the peripheral 
+     *         has been recorded yet
+     */
+    public LatencyHistogram getPeripheralHistogram(Phase phase, int pnum) {
+        return peripheralLatencies.get(phase.ordinal() * KEYS_NUM + (pnum & 0xFF));
+    }
+    
+    /**
+     * Returns latency histogram of specified phase and node.
+     * 
+     * @param phase phase
+     * @param nadr node address
+     * @return histogram or {@code null}, if no value for the node 
+     *         has been recorded yet
+     */
+    public LatencyHistogram getNodeHistogram(Phase phase, int nadr) {
+        return nodeLatencies.get(phase.ordinal() * KEYS_NUM + (nadr & 0xFF));
+    }
+    
+    /**
+     * Returns number of requests failed with specified type of error.
+     * 
+     * @param errorType type of error
+     * @return number of requests failed with {@code errorType}
+     */
+    public long getErrorsCount(ErrorType errorType) {
+        return errorsNum.get(errorType.ordinal());
+    }
+    
+    
+    // JMX
+    
+    /**
+     * Registers the metrics into platform MBean server under specified name.
+     * 
+     * @param name name of the byte accessor
+     * @throws JMException if the registration has failed
+     */
+    public synchronized void registerMBean(String name) throws JMException {
+        if ( registeredName != null ) {
+            throw new IllegalStateException("Metrics already registered as: " + registeredName);
+        }
+        
+        ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        registeredName = objectName;
+        
+        logger.info("Metrics registered as: {}", objectName);
+    }
+    
+    /**
+     * Unregisters the metrics from platform MBean server. Does nothing, 
+     * if the metrics are not registered.
+     */
+    public synchronized void unregisterMBean() {
+        if ( registeredName == null ) {
+            return;
+        }
+        
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(registeredName);
+        } catch ( JMException ex ) {
+            logger.warn("Unregistration of metrics failed: {}", ex.getMessage());
+        }
+        registeredName = null;
+    }
+    
+    @Override
+    public long getRequestsCount() {
+        return requestsNum.get();
+    }
+
+    @Override
+    public long getSuccessfulRequestsCount() {
+        return successfulRequestsNum.get();
+    }
+
+    @Override
+    public long getTimeoutsCount() {
+        return timeoutsNum.get();
+    }
+
+    @Override
+    public long getDeduplicatedRequestsCount() {
+        return deduplicatedRequestsNum.get();
+    }
+
+    @Override
+    public long getStaleFramesCount() {
+        return staleFramesNum.get();
+    }
+
+    @Override
+    public Map<String, Long> getErrorsCountByType() {
+        Map<String, Long> errorsCount = new LinkedHashMap<>();
+        for ( ErrorType errorType : ErrorType.values() ) {
+            errorsCount.put(errorType.name(), errorsNum.get(errorType.ordinal()));
+        }
+        return errorsCount;
+    }
+
+    @Override
+    public int getInFlightRequestsCount() {
+        return inFlightRequestsNum.get();
+    }
+
+    @Override
+    public int getQueuedRequestsCount() {
+        return queuedRequestsNum.get();
+    }
+
+    @Override
+    public LatencySnapshot getConfirmationLatency() {
+        return totalLatencies[Phase.CONFIRMATION.ordinal()].getSnapshot();
+    }
+
+    @Override
+    public LatencySnapshot getResponseLatency() {
+        return totalLatencies[Phase.RESPONSE.ordinal()].getSnapshot();
+    }
+
+    @Override
+    public LatencySnapshot getRoutingWait() {
+        return totalLatencies[Phase.ROUTING_WAIT.ordinal()].getSnapshot();
+    }
+
+    @Override
+    public Map<Integer, LatencySnapshot> getConfirmationLatencyByPeripheral() {
+        return getSnapshots(peripheralLatencies, Phase.CONFIRMATION);
+    }
+
+    @Override
+    public Map<Integer, LatencySnapshot> getResponseLatencyByPeripheral() {
+        return getSnapshots(peripheralLatencies, Phase.RESPONSE);
+    }
+
+    @Override
+    public Map<Integer, LatencySnapshot> getRoutingWaitByPeripheral() {
+        return getSnapshots(peripheralLatencies, Phase.ROUTING_WAIT);
+    }
+
+    @Override
+    public Map<Integer, LatencySnapshot> getConfirmationLatencyByNode() {
+        return getSnapshots(nodeLatencies, Phase.CONFIRMATION);
+    }
+
+    @Override
+    public Map<Integer, LatencySnapshot> getResponseLatencyByNode() {
+        return getSnapshots(nodeLatencies, Phase.RESPONSE);
+    }
+
+    @Override
+    public Map<Integer, LatencySnapshot> getRoutingWaitByNode() {
+        return getSnapshots(nodeLatencies, Phase.ROUTING_WAIT);
+    }
+
+    @Override
+    public void reset() {
+        for ( LatencyHistogram histogram : totalLatencies ) {
+            histogram.reset();
+        }
+        reset(peripheralLatencies);
+        reset(nodeLatencies);
+        
+        requestsNum.set(0);
+        successfulRequestsNum.set(0);
+        timeoutsNum.set(0);
+        deduplicatedRequestsNum.set(0);
+        staleFramesNum.set(0);
+        for ( int i = 0; i < errorsNum.length(); i++ ) {
+            errorsNum.set(i, 0);
+        }
+    }
+}
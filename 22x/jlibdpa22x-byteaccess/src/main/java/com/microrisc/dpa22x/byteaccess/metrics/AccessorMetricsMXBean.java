@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of byte accessor metrics.
+ * <p>
+ * Latencies are in microseconds. Latencies by peripheral are keyed by PNUM,
+ * latencies by node are keyed by NADR. Only peripherals and nodes with some
+ * recorded latency are present.
+ * 
+ * @author agent
+ */
+public interface AccessorMetricsMXBean {
+    
+    /**
+     * @return number of requests, whose processing has started
+     */
+    long getRequestsCount();
+    
+    /**
+     * @return number of successfully completed requests
+     */
+    long getSuccessfulRequestsCount();
+    
+    /**
+     * @return number of requests, which ended with timeout
+     */
+    long getTimeoutsCount();
+    
+    /**
+     * @return number of requests, which got result of identical request in flight
+     */
+    long getDeduplicatedRequestsCount();
+    
+    /**
+     * @return number of dropped confirmations and responses of abandoned requests
+     */
+    long getStaleFramesCount();
+    
+    /**
+     * @return numbers of failed requests keyed by error type
+     */
+    Map<String, Long> getErrorsCountByType();
+    
+    /**
+     * @return number of requests currently being processed
+     */
+    int getInFlightRequestsCount();
+    
+    /**
+     * @return number of requests waiting for processing of previous requests
+     */
+    int getQueuedRequestsCount();
+    
+    /**
+     * @return latency from dispatch of requests to reception of confirmations
+     */
+    LatencySnapshot getConfirmationLatency();
+    
+    /**
+     * @return latency from reception of confirmations to reception of responses
+     */
+    LatencySnapshot getResponseLatency();
+    
+    /**
+     * @return time spent by waiting till routing of previous requests is finished
+     */
+    LatencySnapshot getRoutingWait();
+    
+    /**
+     * @return confirmation latency by peripheral
+     */
+    Map<Integer, LatencySnapshot> getConfirmationLatencyByPeripheral();
+    
+    /**
+     * @return response latency by peripheral
+     */
+    Map<Integer, LatencySnapshot> getResponseLatencyByPeripheral();
+    
+    /**
+     * @return routing wait by peripheral
+     */
+    Map<Integer, LatencySnapshot> getRoutingWaitByPeripheral();
+    
+    /**
+     * @return confirmation latency by node
+     */
+    Map<Integer, LatencySnapshot> getConfirmationLatencyByNode();
+    
+    /**
+     * @return response latency by node
+     */
+    Map<Integer, LatencySnapshot> getResponseLatencyByNode();
+    
+    /**
+     * @return routing wait by node
+     */
+    Map<Integer, LatencySnapshot> getRoutingWaitByNode();
+    
+    /**
+     * Discards all recorded values and resets all counters except of numbers 
+     * of in-flight and queued requests.
+     */
+    void reset();
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with log-linear buckets.
+ * <p>
+ * Values are recorded in microseconds. Each power of two is divided into 
+ * 16 buckets, so the relative error of reported percentiles is at most 
+ * about 6 %, while the whole histogram occupies a few kB only. Recording is 
+ * lock free and can be done from any thread.
+ * 
+ * @author agent
+ */
+public final class LatencyHistogram {
+    
+    // number of bits of sub-bucket index
+    private static final int SUB_BUCKET_BITS = 4;
+    
+    // number of sub-buckets in each power of two
+    private static final int SUB_BUCKETS_NUM = 1 << SUB_BUCKET_BITS;
+    
+    // highest power of two of recordable values - about 12 days in us
+    private static final int MAX_EXPONENT = 40;
+    
+    // number of buckets
+    private static final int BUCKETS_NUM = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS_NUM;
+    
+    /** Maximal recordable value [in us]. Greater values are recorded as this one. */
+    public static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    
+    
+    // counts of values in buckets
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS_NUM);
+    
+    // total count, sum and maximum of recorded values
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    
+    // returns index of bucket for specified value
+    private static int getBucketIndex(long value) {
+        if ( value < SUB_BUCKETS_NUM ) {
+            return (int)value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int)((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS_NUM - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS_NUM + subBucket;
+    }
+    
+    // returns highest value, which falls into bucket of specified index
+    private static long getBucketHighestValue(int index) {
+        if ( index < SUB_BUCKETS_NUM ) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS_NUM + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS_NUM;
+        long bucketWidth = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS_NUM + subBucket) * bucketWidth) + bucketWidth - 1;
+    }
+    
+    // updates maximum 
+    private void updateMax(long value) {
+        long currMax = max.get();
+        while ( value > currMax ) {
+            if ( max.compareAndSet(currMax, value) ) {
+                return;
+            }
+            currMax = max.get();
+        }
+    }
+    
+    
+    /**
+     * Records specified value.
+     * 
+     * @param valueMicros value [in us] to record. Negative values are recorded
+     *        as 0.
+     */
+    public void record(long valueMicros) {
+        long value = valueMicros;
+        if ( value < 0 ) {
+            value = 0;
+        } else if ( value > MAX_VALUE ) {
+            value = MAX_VALUE;
+        }
+        
+        counts.incrementAndGet(getBucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        updateMax(value);
+    }
+    
+    /**
+     * @return number of recorded values
+     */
+    public long getCount() {
+        return count.get();
+    }
+    
+    /**
+     * @return maximal recorded value [in us]
+     */
+    public long getMax() {
+        return max.get();
+    }
+    
+    /**
+     * @return mean of recorded values [in us], or 0 if no value has been recorded
+     */
+    public double getMean() {
+        long currCount = count.get();
+        return ( currCount == 0 )? 0 : (double)sum.get() / currCount;
+    }
+    
+    /**
+     * Returns value [in us], which is not exceeded by specified percentage
+     * of recorded values.
+     * 
+     * @param percentile percentile within the interval of (0, 100>
+     * @return value at specified percentile, or 0 if no value has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if ( percentile <= 0 || percentile > 100 ) {
+            throw new IllegalArgumentException("Percentile must be within the interval of (0, 100>.");
+        }
+        
+        long[] countsCopy = new long[BUCKETS_NUM];
+        long totalCount = 0;
+        for ( int i = 0; i < BUCKETS_NUM; i++ ) {
+            countsCopy[i] = counts.get(i);
+            totalCount += countsCopy[i];
+        }
+        if ( totalCount == 0 ) {
+            return 0;
+        }
+        
+        long countAtPercentile = (long)Math.ceil(totalCount * percentile / 100);
+        long cumulativeCount = 0;
+        for ( int i = 0; i < BUCKETS_NUM; i++ ) {
+            cumulativeCount += countsCopy[i];
+            if ( cumulativeCount >= countAtPercentile ) {
+                return Math.min(getBucketHighestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+    
+    /**
+     * @return snapshot of current state of the histogram
+     */
+    public LatencySnapshot getSnapshot() {
+        return new LatencySnapshot(
+                getCount(), getMean(), getValueAtPercentile(50), 
+                getValueAtPercentile(90), getValueAtPercentile(99), getMax()
+        );
+    }
+    
+    /**
+     * Discards all recorded values.
+     */
+    public void reset() {
+        for ( int i = 0; i < BUCKETS_NUM; i++ ) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Summary of latency histogram at some point in time. All times are in 
+ * microseconds.
+ * 
+ * @author agent
+ */
+public final class LatencySnapshot {
+    
+    private final long count;
+    private final double mean;
+    private final long percentile50;
+    private final long percentile90;
+    private final long percentile99;
+    private final long max;
+    
+    
+    /**
+     * Creates new snapshot.
+     * 
+     * @param count number of recorded values
+     * @param mean mean value
+     * @param percentile50 median
+     * @param percentile90 90th percentile
+     * @param percentile99 99th percentile
+     * @param max maximal value
+     */
+    @ConstructorProperties({ 
+        "count", "mean", "percentile50", "percentile90", "percentile99", "max" 
+    })
+    public LatencySnapshot(
+            long count, double mean, long percentile50, long percentile90, 
+            long percentile99, long max
+    ) {
+        this.count = count;
+        this.mean = mean;
+        this.percentile50 = percentile50;
+        this.percentile90 = percentile90;
+        this.percentile99 = percentile99;
+        this.max = max;
+    }
+    
+    /**
+     * @return number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return mean value
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return median
+     */
+    public long getPercentile50() {
+        return percentile50;
+    }
+
+    /**
+     * @return 90th percentile
+     */
+    public long getPercentile90() {
+        return percentile90;
+    }
+
+    /**
+     * @return 99th percentile
+     */
+    public long getPercentile99() {
+        return percentile99;
+    }
+
+    /**
+     * @return maximal value
+     */
+    public long getMax() {
+        return max;
+    }
+    
+    @Override
+    public String toString() {
+        return ("{ " +
+                "count=" + count +
+                ", mean=" + mean +
+                ", p50=" + percentile50 +
+                ", p90=" + percentile90 +
+                ", p99=" + percentile99 +
+                ", max=" + max +
+                " }");
+    }
+}
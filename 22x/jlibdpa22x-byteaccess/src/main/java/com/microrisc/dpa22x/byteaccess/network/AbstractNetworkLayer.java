@@ -15,11 +15,21 @@
  */
 package com.microrisc.dpa22x.byteaccess.network;
 
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Base class for network layer implementations.
+ * <p>
+ * Keeps list of registered listeners. Received data are passed to all of them
+ * in the order of their registration. All listeners get the same instance of
+ * data, so listeners must not modify them. Slow listeners should be wrapped
+ * into {@link AsyncNetworkLayerListener} in order not to delay the others.
+ * <p>
+ * Subclasses pass received data to the listeners by 
+ * {@link #fireDataReceived(short[])}. The {@link #listener} field is kept only
+ * for subclasses written for one listener.
  * 
  * @author Michal Konopa
  */
@@ -28,40 +38,131 @@ public abstract class AbstractNetworkLayer implements NetworkLayer {
     /** Logger */
     private static final Logger logger = LoggerFactory.getLogger(AbstractNetworkLayer.class);
 
-    /** Registered listener. */
-    protected NetworkLayerListener listener = null;
+    /** Registered listeners. */
+    private final CopyOnWriteArrayList<NetworkLayerListener> listeners = new CopyOnWriteArrayList<>();
+    
+    /** 
+     * Last registered listener, which is still registered, or {@code null}.
+     * 
+     * @deprecated data passed to this listener only are not got by the other 
+     *             listeners - use {@link #fireDataReceived(short[])} instead
+     */
+    @Deprecated
+    protected volatile NetworkLayerListener listener = null;
     
     
+    /**
+     * Unregisters specified listener from specified network layer. Network 
+     * layers derived from this class unregister only the listener, other
+     * network layers, which support only one listener, unregister their 
+     * currently registered listener.
+     * 
+     * @param networkLayer network layer to unregister the listener from
+     * @param listener listener to unregister
+     */
+    public static void unregisterListener(NetworkLayer networkLayer, NetworkLayerListener listener) {
+        if ( networkLayer instanceof AbstractNetworkLayer ) {
+            ((AbstractNetworkLayer) networkLayer).unregisterListener(listener);
+        } else {
+            networkLayer.unregisterListener();
+        }
+    }
+    
+    // updates the last registered listener
+    @SuppressWarnings("deprecation")
+    private void updateLastListener() {
+        listener = listeners.isEmpty()? null : listeners.get(listeners.size() - 1);
+    }
+    
     /**
      * Register specified listener. 
-     * If there already is some listener registered, then the old one is unregistered
-     * and {@code listener} is registered.
+     * If the listener is already registered, this operation has no effect.
      *
      * @param listener to register
+     * @throws IllegalArgumentException if {@code listener} is {@code null}
      */
     @Override
-    public void registerListener(NetworkLayerListener listener) {
-        if ( this.listener != null ) {
-            unregisterListener();
-            logger.info("Previously registered listener unregistered.");
+    public synchronized void registerListener(NetworkLayerListener listener) {
+        if ( listener == null ) {
+            throw new IllegalArgumentException("Listener cannot be null.");
         }
         
-        this.listener = listener;
-        logger.info("Listener registered: {}", listener);
+        if ( listeners.addIfAbsent(listener) ) {
+            updateLastListener();
+            logger.info("Listener registered: {}", listener);
+        }
     }
 
     /**
-     * Unregister already registered listener. 
+     * Unregister specified listener. 
+     * If the listener isn't registered, this operation has no effect.
+     * 
+     * @param listener listener to unregister
+     */
+    public synchronized void unregisterListener(NetworkLayerListener listener) {
+        if ( listeners.remove(listener) ) {
+            updateLastListener();
+            logger.info("Listener unregistered: {}", listener);
+        }
+    }
+    
+    /**
+     * Unregister all registered listeners. 
      * If there isn't registered listener, this operation has no effect.
      */
     @Override
-    public void unregisterListener() {
-        if ( listener == null ) {
+    public synchronized void unregisterListener() {
+        if ( listeners.isEmpty() ) {
             return;
         }
         
-        listener = null;
-        logger.info("Listener unregistered.");
+        listeners.clear();
+        updateLastListener();
+        logger.info("Listeners unregistered.");
+    }
+    
+    /**
+     * @return {@code true} if there is at least one registered listener <br>
+     *         {@code false} otherwise
+     */
+    protected boolean hasListeners() {
+        return !listeners.isEmpty();
     }
     
+    /**
+     * Passes specified received data to all registered listeners. 
+     * Exception thrown by a listener does not prevent the others from getting 
+     * the data.
+     * 
+     * @param data received data
+     */
+    protected void fireDataReceived(short[] data) {
+        for ( NetworkLayerListener listener : listeners ) {
+            try {
+                listener.onGetData(data);
+            } catch ( RuntimeException ex ) {
+                logger.error("Listener {} failed to process data: ", listener, ex);
+            }
+        }
+    }
+    
+    /**
+     * Notifies registered listeners, which implement 
+     * {@link NetworkLayerFailureListener}, of failure of specified request.
+     * 
+     * @param requestHeader header of the failed request
+     * @param description description of the failure
+     */
+    protected void fireRequestFailed(short[] requestHeader, String description) {
+        for ( NetworkLayerListener listener : listeners ) {
+            if ( !(listener instanceof NetworkLayerFailureListener) ) {
+                continue;
+            }
+            try {
+                ((NetworkLayerFailureListener) listener).onRequestFailed(requestHeader, description);
+            } catch ( RuntimeException ex ) {
+                logger.error("Listener {} failed to process failure of request: ", listener, ex);
+            }
+        }
+    }
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Network layer listener, which passes received data to another listener 
+ * asynchronously - in its own thread.
+ * <p>
+ * Data are put into bounded queue and the calling thread is never blocked. 
+ * If the queue is full, the data are dropped. Serves for isolation of slow 
+ * listeners, so that they cannot delay delivery of data to other listeners 
+ * of the same network layer.
+ * 
+ * @author agent
+ */
+public final class AsyncNetworkLayerListener implements NetworkLayerListener {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(AsyncNetworkLayerListener.class);
+    
+    /** Default capacity of the queue. */
+    public static final int QUEUE_CAPACITY_DEFAULT = 1024;
+    
+    
+    // listener to pass data to
+    private final NetworkLayerListener listener;
+    
+    // queue of data waiting to be passed
+    private final BlockingQueue<short[]> dataQueue;
+    
+    // number of dropped data
+    private final AtomicLong droppedDataNum = new AtomicLong(0);
+    
+    // listener caller thread
+    private Thread listenerCaller = null;
+    
+    
+    // passes data from the queue to the listener
+    private class ListenerCaller extends Thread {
+        
+        ListenerCaller() {
+            super("async-listener-caller");
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            while ( !isInterrupted() ) {
+                short[] data = null;
+                try {
+                    data = dataQueue.take();
+                } catch ( InterruptedException ex ) {
+                    logger.info("Listener caller end");
+                    return;
+                }
+                
+                try {
+                    listener.onGetData(data);
+                } catch ( RuntimeException ex ) {
+                    logger.error("Listener {} failed to process data: ", listener, ex);
+                }
+            }
+        }
+    }
+    
+    
+    private static NetworkLayerListener checkListener(NetworkLayerListener listener) {
+        if ( listener == null ) {
+            throw new IllegalArgumentException("Listener cannot be null.");
+        }
+        return listener;
+    }
+    
+    private static int checkQueueCapacity(int queueCapacity) {
+        if ( queueCapacity <= 0 ) {
+            throw new IllegalArgumentException("Queue capacity must be positive.");
+        }
+        return queueCapacity;
+    }
+    
+    
+    /**
+     * Creates new asynchronous listener.
+     * 
+     * @param listener listener to pass data to
+     * @param queueCapacity maximal number of data waiting to be passed
+     */
+    public AsyncNetworkLayerListener(NetworkLayerListener listener, int queueCapacity) {
+        this.listener = checkListener(listener);
+        this.dataQueue = new ArrayBlockingQueue<>(checkQueueCapacity(queueCapacity));
+    }
+    
+    /**
+     * Creates new asynchronous listener with queue of 
+     * {@link #QUEUE_CAPACITY_DEFAULT} capacity.
+     * 
+     * @param listener listener to pass data to
+     */
+    public AsyncNetworkLayerListener(NetworkLayerListener listener) {
+        this(listener, QUEUE_CAPACITY_DEFAULT);
+    }
+    
+    /**
+     * Starts passing of data to the listener.
+     */
+    public synchronized void start() {
+        logger.debug("start - start");
+        
+        if ( listenerCaller != null ) {
+            throw new IllegalStateException("Asynchronous listener already started.");
+        }
+        listenerCaller = new ListenerCaller();
+        listenerCaller.start();
+        
+        logger.debug("start - end");
+    }
+    
+    /**
+     * Stops passing of data to the listener. Data waiting in the queue are 
+     * discarded.
+     */
+    public synchronized void stop() {
+        logger.debug("stop - start");
+        
+        if ( listenerCaller == null ) {
+            return;
+        }
+        
+        listenerCaller.interrupt();
+        try {
+            listenerCaller.join();
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            logger.warn("Stopping of asynchronous listener interrupted");
+        }
+        listenerCaller = null;
+        dataQueue.clear();
+        
+        logger.debug("stop - end");
+    }
+    
+    @Override
+    public void onGetData(short[] data) {
+        if ( !dataQueue.offer(data) ) {
+            droppedDataNum.incrementAndGet();
+            logger.debug("Queue full, data dropped");
+        }
+    }
+    
+    /**
+     * @return number of data dropped because of full queue
+     */
+    public long getDroppedDataNum() {
+        return droppedDataNum.get();
+    }
+    
+    /**
+     * @return number of data waiting in the queue
+     */
+    public int getQueuedDataNum() {
+        return dataQueue.size();
+    }
+}
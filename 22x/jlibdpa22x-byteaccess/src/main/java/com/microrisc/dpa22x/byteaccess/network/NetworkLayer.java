@@ -31,7 +31,8 @@ public interface NetworkLayer {
     
     /**
      * Registers specified network layer listener, which send the data from 
-     * network layer to.
+     * network layer to. Network layers derived from {@link AbstractNetworkLayer}
+     * support more listeners, each of them gets all the data.
      * 
      * @param listener listener to register
      */
@@ -45,7 +46,9 @@ public interface NetworkLayer {
     void sendData(short[] data) throws NetworkLayerException;
     
     /**
-     * Unregisters currently registered network listener.
+     * Unregisters all currently registered network listeners.
+     * To unregister only one listener, use 
+     * {@link AbstractNetworkLayer#unregisterListener(NetworkLayer, NetworkLayerListener)}.
      */
     void unregisterListener();
     
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network;
+
+/**
+ * Network layer listener, which is notified also of requests failed 
+ * in the network layer.
+ * <p>
+ * Network layers connected to IQRF network through other byte accessor - 
+ * e.g. through DPA proxy server - can learn, that a request has failed there
+ * before any data of the request came from IQRF network. Listeners 
+ * implementing this interface are notified of such failures, so that they
+ * do not wait for data of the request. Other listeners are not notified.
+ * 
+ * @author agent
+ */
+public interface NetworkLayerFailureListener extends NetworkLayerListener {
+    
+    /**
+     * Called when a request has failed before any data of it came from 
+     * IQRF network.
+     * 
+     * @param requestHeader NADR, PNUM, PCMD and HWPID of the failed request
+     * @param description description of the failure
+     */
+    void onRequestFailed(short[] requestHeader, String description);
+}
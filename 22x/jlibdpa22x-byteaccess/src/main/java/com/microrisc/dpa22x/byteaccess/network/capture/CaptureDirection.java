@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.capture;
+
+/**
+ * Direction of captured frame.
+ * 
+ * @author agent
+ */
+public enum CaptureDirection {
+    
+    /** Frame sent into network. */
+    SENT        (0),
+    
+    /** Frame received from network. */
+    RECEIVED    (1);
+    
+    
+    // code of the direction in capture files
+    private final int code;
+    
+    private CaptureDirection(int code) {
+        this.code = code;
+    }
+    
+    /**
+     * @return code of the direction in capture files
+     */
+    public int getCode() {
+        return code;
+    }
+    
+    /**
+     * Returns direction of specified code.
+     * 
+     * @param code code of direction
+     * @return direction of specified code
+     * @throws IllegalArgumentException if there is no direction of {@code code}
+     */
+    public static CaptureDirection fromCode(int code) {
+        for ( CaptureDirection direction : values() ) {
+            if ( direction.code == code ) {
+                return direction;
+            }
+        }
+        throw new IllegalArgumentException("Unknown code of direction: " + code);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.capture;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Format constants and naming of capture files. The format is described in
+ * {@link TrafficCaptureReader}.
+ * <p>
+ * Rotated capture files of the same capture are named 
+ * {@code <base path>.<index>.cap}, with index increasing with time.
+ * 
+ * @author agent
+ */
+final class CaptureFiles {
+    
+    /** Magic number - "DPACAP01". */
+    static final long MAGIC = 0x4450414341503031L;
+    
+    /** Size of file header [in bytes]. */
+    static final int HEADER_SIZE = 24;
+    
+    /** Marker of record start. */
+    static final byte RECORD_MARKER = (byte)0xA5;
+    
+    /** Size of record header [in bytes]. */
+    static final int RECORD_HEADER_SIZE = 14;
+    
+    /** Maximal length of frame data. */
+    static final int MAX_DATA_LENGTH = 0xFFFF;
+    
+    // suffix of capture files
+    private static final String SUFFIX = ".cap";
+    
+    // format of index in file names
+    private static final String INDEX_FORMAT = "%06d";
+    
+    
+    /**
+     * Returns capture file of specified base path and index.
+     */
+    static File getFile(String basePath, int index) {
+        return new File(basePath + "." + String.format(INDEX_FORMAT, index) + SUFFIX);
+    }
+    
+    /**
+     * Returns index of specified capture file or -1, if the file does not 
+     * belong to capture of specified base path.
+     */
+    static int getIndex(String basePath, File file) {
+        String prefix = new File(basePath).getName() + ".";
+        String name = file.getName();
+        if ( !name.startsWith(prefix) || !name.endsWith(SUFFIX) ) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(prefix.length(), name.length() - SUFFIX.length()));
+        } catch ( NumberFormatException ex ) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Returns existing capture files of specified base path, ordered from 
+     * the oldest.
+     */
+    static List<File> listFiles(final String basePath) {
+        File directory = new File(basePath).getAbsoluteFile().getParentFile();
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return getIndex(basePath, new File(dir, name)) != -1;
+            }
+        });
+        
+        List<File> captureFiles = new ArrayList<>();
+        if ( files == null ) {
+            return captureFiles;
+        }
+        Collections.addAll(captureFiles, files);
+        Collections.sort(captureFiles, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                int index1 = getIndex(basePath, file1);
+                int index2 = getIndex(basePath, file2);
+                return ( index1 < index2 )? -1 : (( index1 == index2 )? 0 : 1);
+            }
+        });
+        return captureFiles;
+    }
+    
+    private CaptureFiles() {
+    }
+}
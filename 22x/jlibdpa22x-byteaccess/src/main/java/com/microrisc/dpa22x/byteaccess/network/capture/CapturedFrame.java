@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.capture;
+
+import java.util.Arrays;
+
+/**
+ * Frame read from capture file.
+ * 
+ * @author agent
+ */
+public final class CapturedFrame {
+    
+    // time of capture [in ns]
+    private final long timestamp;
+    
+    // direction
+    private final CaptureDirection direction;
+    
+    // identifier of transport
+    private final int transportId;
+    
+    // data of the frame
+    private final short[] data;
+    
+    
+    /**
+     * Creates new captured frame.
+     * 
+     * @param timestamp time of capture [in ns]
+     * @param direction direction
+     * @param transportId identifier of transport, which the frame went through
+     * @param data data of the frame
+     */
+    public CapturedFrame(
+            long timestamp, CaptureDirection direction, int transportId, short[] data
+    ) {
+        this.timestamp = timestamp;
+        this.direction = direction;
+        this.transportId = transportId;
+        this.data = data;
+    }
+    
+    /**
+     * @return time of capture [in ns], as returned by {@link System#nanoTime()}
+     *         of capturing process
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+    
+    /**
+     * @return direction
+     */
+    public CaptureDirection getDirection() {
+        return direction;
+    }
+    
+    /**
+     * @return identifier of transport, which the frame went through
+     */
+    public int getTransportId() {
+        return transportId;
+    }
+    
+    /**
+     * @return data of the frame
+     */
+    public short[] getData() {
+        return data;
+    }
+    
+    @Override
+    public String toString() {
+        return ("{ " +
+                "timestamp=" + timestamp +
+                ", direction=" + direction +
+                ", transport ID=" + transportId +
+                ", data=" + Arrays.toString(data) +
+                " }");
+    }
+}
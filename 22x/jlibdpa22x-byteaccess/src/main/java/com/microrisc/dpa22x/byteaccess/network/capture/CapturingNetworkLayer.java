@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.capture;
+
+import com.microrisc.dpa22x.byteaccess.network.AbstractNetworkLayer;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayer;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerException;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Network layer, which captures all frames going through another network
+ * layer.
+ * <p>
+ * Each frame sent into the underlying layer and each frame received from it
+ * is written by capture writer together with time of capture, direction and
+ * identifier of the transport.
+ * 
+ * @author agent
+ */
+public final class CapturingNetworkLayer
+extends AbstractNetworkLayer implements NetworkLayerListener {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(CapturingNetworkLayer.class);
+    
+    
+    // underlying network layer
+    private final NetworkLayer networkLayer;
+    
+    // writer of captured frames
+    private final TrafficCaptureWriter captureWriter;
+    
+    // identifier of transport
+    private final int transportId;
+    
+    
+    private static NetworkLayer checkNetworkLayer(NetworkLayer networkLayer) {
+        if ( networkLayer == null ) {
+            throw new IllegalArgumentException("Network layer cannot be null.");
+        }
+        return networkLayer;
+    }
+    
+    private static TrafficCaptureWriter checkCaptureWriter(TrafficCaptureWriter captureWriter) {
+        if ( captureWriter == null ) {
+            throw new IllegalArgumentException("Capture writer cannot be null.");
+        }
+        return captureWriter;
+    }
+    
+    private static int checkTransportId(int transportId) {
+        if ( transportId < 0 || transportId > 0xFFFF ) {
+            throw new IllegalArgumentException("Invalid transport ID: " + transportId);
+        }
+        return transportId;
+    }
+    
+    
+    /**
+     * Creates new capturing network layer.
+     * 
+     * @param networkLayer network layer to capture frames of
+     * @param captureWriter writer of captured frames. It is closed, when this
+     *        layer is terminated.
+     * @param transportId identifier of the transport, within the interval 
+     *        of &lt;0, 0xFFFF&gt;
+     */
+    public CapturingNetworkLayer(
+            NetworkLayer networkLayer, TrafficCaptureWriter captureWriter, int transportId
+    ) {
+        this.networkLayer = checkNetworkLayer(networkLayer);
+        this.captureWriter = checkCaptureWriter(captureWriter);
+        this.transportId = checkTransportId(transportId);
+    }
+    
+    @Override
+    public void start() throws NetworkLayerException {
+        logger.debug("start - start");
+        
+        networkLayer.registerListener(this);
+        networkLayer.start();
+        
+        logger.info("Capturing network layer started");
+        logger.debug("start - end");
+    }
+    
+    @Override
+    public void sendData(short[] data) throws NetworkLayerException {
+        captureWriter.write(CaptureDirection.SENT, transportId, System.nanoTime(), data);
+        networkLayer.sendData(data);
+    }
+    
+    @Override
+    public void onGetData(short[] data) {
+        captureWriter.write(CaptureDirection.RECEIVED, transportId, System.nanoTime(), data);
+        fireDataReceived(data);
+    }
+    
+    @Override
+    public void terminateAndRelease() {
+        logger.debug("terminateAndRelease - start");
+        
+        AbstractNetworkLayer.unregisterListener(networkLayer, this);
+        networkLayer.terminateAndRelease();
+        captureWriter.close();
+        
+        logger.info("Capturing network layer terminated and released");
+        logger.debug("terminateAndRelease - end");
+    }
+}
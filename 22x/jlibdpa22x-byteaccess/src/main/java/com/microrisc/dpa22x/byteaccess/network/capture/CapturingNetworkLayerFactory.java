@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.capture;
+
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayer;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerFactory;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerFactoryException;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Capturing network layer factory.
+ * <p>
+ * Configuration items: <br>
+ * - <b>networkLayer.type.capture.factory.class</b>: factory of the network 
+ *      layer to capture frames of. It is passed the same configuration. 
+ *      If no such configuration key is found, exception is thrown. <br>
+ * 
+ * - <b>networkLayer.type.capture.file</b>: base path of capture files. 
+ *      If no such configuration key is found, exception is thrown. <br>
+ * 
+ * - <b>networkLayer.type.capture.fileSize</b>: size of one capture file
+ *      [in bytes]. If no such configuration key is found, 
+ *      {@link TrafficCaptureWriter#FILE_SIZE_DEFAULT} is used. <br>
+ * 
+ * - <b>networkLayer.type.capture.maxFiles</b>: maximal number of capture files.
+ *      If no such configuration key is found, 
+ *      {@link TrafficCaptureWriter#MAX_FILES_DEFAULT} is used. <br>
+ * 
+ * - <b>networkLayer.type.capture.transportId</b>: identifier of the transport
+ *      written into captured frames. If no such configuration key is found, 
+ *      0 is used.
+ * 
+ * @author agent
+ */
+public final class CapturingNetworkLayerFactory implements NetworkLayerFactory {
+    
+    // creates and returns network layer to capture frames of
+    private static NetworkLayer createCapturedNetworkLayer(Configuration configuration) 
+            throws NetworkLayerFactoryException 
+    {
+        String factoryClassName = configuration.getString("networkLayer.type.capture.factory.class", "");
+        if ( factoryClassName.isEmpty() ) {
+            throw new NetworkLayerFactoryException("Factory of captured network layer is missing.");
+        }
+        
+        Object factory = null;
+        try {
+            Class factoryClass = Class.forName(factoryClassName);
+            Constructor constructor = factoryClass.getConstructor();
+            factory = constructor.newInstance();
+        } catch ( Exception ex ) {
+            throw new NetworkLayerFactoryException(ex);
+        }
+        
+        if ( !(factory instanceof NetworkLayerFactory) ) {
+            throw new NetworkLayerFactoryException(
+                    "Network layer factory MUST implement the: " + NetworkLayerFactory.class
+                    + "interface."
+            );
+        }
+        return ((NetworkLayerFactory)factory).getNetworkLayer(configuration);
+    }
+    
+    @Override
+    public NetworkLayer getNetworkLayer(Configuration configuration) throws NetworkLayerFactoryException {
+        String basePath = configuration.getString("networkLayer.type.capture.file", "");
+        if ( basePath.isEmpty() ) {
+            throw new NetworkLayerFactoryException("Capture file is missing.");
+        }
+        
+        long fileSize = configuration.getLong(
+                "networkLayer.type.capture.fileSize", TrafficCaptureWriter.FILE_SIZE_DEFAULT
+        );
+        int maxFiles = configuration.getInt(
+                "networkLayer.type.capture.maxFiles", TrafficCaptureWriter.MAX_FILES_DEFAULT
+        );
+        int transportId = configuration.getInt("networkLayer.type.capture.transportId", 0);
+        
+        NetworkLayer capturedNetworkLayer = createCapturedNetworkLayer(configuration);
+        
+        try {
+            TrafficCaptureWriter captureWriter = new TrafficCaptureWriter(basePath, fileSize, maxFiles);
+            return new CapturingNetworkLayer(capturedNetworkLayer, captureWriter, transportId);
+        } catch ( IOException | IllegalArgumentException ex ) {
+            throw new NetworkLayerFactoryException(ex);
+        }
+    }
+}
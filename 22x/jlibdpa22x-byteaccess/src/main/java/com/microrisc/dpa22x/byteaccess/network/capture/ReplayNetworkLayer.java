@@ -0,0 +1,242 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.capture;
+
+import com.microrisc.dpa22x.byteaccess.network.AbstractNetworkLayer;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerException;
+import com.microrisc.dpa22x.timing.VirtualClock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Network layer, which replays captured traffic.
+ * <p>
+ * Replay is driven by sent data: each sent frame is matched with the next 
+ * captured sent frame and captured frames received after it are delivered 
+ * to the listener with the same delays as they were captured with, divided 
+ * by the speed factor. Frames received before the first sent frame are 
+ * delivered right after start. Sent data, which differ from the captured 
+ * ones, are reported as mismatches, but the replay continues.
+ * <p>
+ * The same as the simulated network, the layer runs either in real time or
+ * in virtual time of a {@link VirtualClock}.
+ * 
+ * @author agent
+ */
+public final class ReplayNetworkLayer extends AbstractNetworkLayer {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(ReplayNetworkLayer.class);
+    
+    /** Value of transport ID, which means frames of all transports. */
+    public static final int ALL_TRANSPORTS = -1;
+    
+    private static final long NANOS_IN_MILLIS = 1000000;
+    
+    
+    // frames to replay
+    private final List<CapturedFrame> frames;
+    
+    // speed factor
+    private final double speed;
+    
+    // clock to schedule deliveries on - in virtual time mode
+    private final VirtualClock virtualClock;
+    
+    // executor of deliveries - in real time mode
+    private ScheduledExecutorService deliveryExecutor = null;
+    
+    // index of next frame to replay
+    private int nextFrameIndex = 0;
+    
+    // indicates, whether the layer has been started
+    private boolean started = false;
+    
+    // number of sent frames, which differ from captured ones
+    private long mismatchesNum = 0;
+    
+    
+    private static List<CapturedFrame> filterFrames(List<CapturedFrame> frames, int transportId) {
+        if ( frames == null ) {
+            throw new IllegalArgumentException("Frames cannot be null.");
+        }
+        
+        List<CapturedFrame> filteredFrames = new ArrayList<>();
+        for ( CapturedFrame frame : frames ) {
+            if ( transportId == ALL_TRANSPORTS || frame.getTransportId() == transportId ) {
+                filteredFrames.add(frame);
+            }
+        }
+        return filteredFrames;
+    }
+    
+    private static double checkSpeed(double speed) {
+        if ( !(speed > 0) ) {
+            throw new IllegalArgumentException("Speed must be positive.");
+        }
+        return speed;
+    }
+    
+    // delivers specified data to listeners after specified delay
+    private void deliver(final short[] data, long delayNanos) {
+        Runnable delivery = new Runnable() {
+            @Override
+            public void run() {
+                fireDataReceived(data);
+            }
+        };
+        
+        long scaledDelay = (long)(delayNanos / speed);
+        if ( virtualClock != null ) {
+            virtualClock.schedule(delivery, scaledDelay / NANOS_IN_MILLIS);
+        } else {
+            deliveryExecutor.schedule(delivery, scaledDelay, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    // delivers received frames from the next frame up to the next sent frame,
+    // relatively to specified time
+    private void deliverReceivedFrames(long referenceTime) {
+        while ( nextFrameIndex < frames.size() ) {
+            CapturedFrame frame = frames.get(nextFrameIndex);
+            if ( frame.getDirection() == CaptureDirection.SENT ) {
+                return;
+            }
+            deliver(frame.getData(), Math.max(0, frame.getTimestamp() - referenceTime));
+            nextFrameIndex++;
+        }
+    }
+    
+    
+    /**
+     * Creates new replay network layer.
+     * 
+     * @param frames captured frames
+     * @param transportId only frames of this transport will be replayed, 
+     *        {@link #ALL_TRANSPORTS} means frames of all transports
+     * @param speed speed factor, 1 means the original speed
+     * @param virtualClock clock to run in. If {@code null}, the layer runs
+     *        in real time.
+     */
+    public ReplayNetworkLayer(
+            List<CapturedFrame> frames, int transportId, double speed, VirtualClock virtualClock
+    ) {
+        this.frames = filterFrames(frames, transportId);
+        this.speed = checkSpeed(speed);
+        this.virtualClock = virtualClock;
+    }
+    
+    /**
+     * Creates new replay network layer running in real time.
+     * 
+     * @param frames captured frames
+     * @param transportId only frames of this transport will be replayed, 
+     *        {@link #ALL_TRANSPORTS} means frames of all transports
+     * @param speed speed factor, 1 means the original speed
+     */
+    public ReplayNetworkLayer(List<CapturedFrame> frames, int transportId, double speed) {
+        this(frames, transportId, speed, null);
+    }
+    
+    @Override
+    public synchronized void start() throws NetworkLayerException {
+        logger.debug("start - start");
+        
+        if ( started ) {
+            throw new NetworkLayerException("Replay network layer already started.");
+        }
+        
+        if ( virtualClock == null ) {
+            deliveryExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "capture-replay");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        started = true;
+        
+        if ( !frames.isEmpty() ) {
+            deliverReceivedFrames(frames.get(0).getTimestamp());
+        }
+        
+        logger.info("Replay network layer started: {} frames", frames.size());
+        logger.debug("start - end");
+    }
+    
+    @Override
+    public synchronized void sendData(short[] data) throws NetworkLayerException {
+        logger.debug("sendData - start: data={}", Arrays.toString(data));
+        
+        if ( !started ) {
+            throw new NetworkLayerException("Replay network layer not started.");
+        }
+        if ( nextFrameIndex >= frames.size() ) {
+            throw new NetworkLayerException("End of capture reached.");
+        }
+        
+        CapturedFrame sentFrame = frames.get(nextFrameIndex++);
+        if ( !Arrays.equals(sentFrame.getData(), data) ) {
+            mismatchesNum++;
+            logger.warn(
+                    "Sent data differ from captured ones. Sent: {}, captured: {}", 
+                    Arrays.toString(data), Arrays.toString(sentFrame.getData())
+            );
+        }
+        deliverReceivedFrames(sentFrame.getTimestamp());
+        
+        logger.debug("sendData - end");
+    }
+    
+    /**
+     * @return number of sent frames, which differ from captured ones
+     */
+    public synchronized long getMismatchesNum() {
+        return mismatchesNum;
+    }
+    
+    /**
+     * @return {@code true} if all captured frames have been replayed <br>
+     *         {@code false} otherwise
+     */
+    public synchronized boolean isFinished() {
+        return nextFrameIndex >= frames.size();
+    }
+    
+    @Override
+    public synchronized void terminateAndRelease() {
+        logger.debug("terminateAndRelease - start");
+        
+        started = false;
+        unregisterListener();
+        if ( deliveryExecutor != null ) {
+            deliveryExecutor.shutdownNow();
+            deliveryExecutor = null;
+        }
+        
+        logger.info("Replay network layer terminated and released");
+        logger.debug("terminateAndRelease - end");
+    }
+}
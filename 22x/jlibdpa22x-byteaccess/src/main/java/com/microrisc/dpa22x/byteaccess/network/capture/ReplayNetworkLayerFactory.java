@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.capture;
+
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayer;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerFactory;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerFactoryException;
+import java.io.IOException;
+import java.util.List;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Replay network layer factory.
+ * <p>
+ * Configuration items: <br>
+ * - <b>networkLayer.type.replay.file</b>: base path of capture files to replay.
+ *      If no such configuration key is found, exception is thrown. <br>
+ * 
+ * - <b>networkLayer.type.replay.speed</b>: speed factor of the replay. 
+ *      If no such configuration key is found, original speed is used. <br>
+ * 
+ * - <b>networkLayer.type.replay.transportId</b>: identifier of the transport,
+ *      whose frames will be replayed. If no such configuration key is found, 
+ *      frames of all transports are replayed.
+ * 
+ * @author agent
+ */
+public final class ReplayNetworkLayerFactory implements NetworkLayerFactory {
+    
+    @Override
+    public NetworkLayer getNetworkLayer(Configuration configuration) throws NetworkLayerFactoryException {
+        String basePath = configuration.getString("networkLayer.type.replay.file", "");
+        if ( basePath.isEmpty() ) {
+            throw new NetworkLayerFactoryException("Capture file is missing.");
+        }
+        
+        double speed = configuration.getDouble("networkLayer.type.replay.speed", 1);
+        int transportId = configuration.getInt(
+                "networkLayer.type.replay.transportId", ReplayNetworkLayer.ALL_TRANSPORTS
+        );
+        
+        try {
+            List<CapturedFrame> frames = TrafficCaptureReader.readFrames(basePath);
+            if ( frames.isEmpty() ) {
+                throw new NetworkLayerFactoryException("No captured frames found: " + basePath);
+            }
+            return new ReplayNetworkLayer(frames, transportId, speed);
+        } catch ( IOException | IllegalArgumentException ex ) {
+            throw new NetworkLayerFactoryException(ex);
+        }
+    }
+}
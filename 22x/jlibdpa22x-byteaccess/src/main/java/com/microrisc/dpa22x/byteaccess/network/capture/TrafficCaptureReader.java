@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reader of capture files written by {@link TrafficCaptureWriter}.
+ * <p>
+ * Capture file consists of header followed by records. Header: magic 
+ * "DPACAP01" (8 B), wall-clock time of the file creation [in ms] (8 B), 
+ * value of {@link System#nanoTime()} at the file creation (8 B). 
+ * Record: marker 0xA5 (1 B), direction code (1 B), transport ID (2 B), 
+ * data length (2 B), timestamp [in ns] (8 B), data - one byte per each item. 
+ * Records end with the first byte, which is not the record marker. All values
+ * are big-endian.
+ * 
+ * @author agent
+ */
+public final class TrafficCaptureReader {
+    
+    /**
+     * Reads all frames from specified capture file.
+     * 
+     * @param file capture file
+     * @return frames in the order of their capture
+     * @throws IOException if the file cannot be read or it is not a capture file
+     */
+    public static List<CapturedFrame> readFrames(File file) throws IOException {
+        List<CapturedFrame> frames = new ArrayList<>();
+        
+        RandomAccessFile captureFile = new RandomAccessFile(file, "r");
+        try {
+            long length = captureFile.length();
+            if ( length < CaptureFiles.HEADER_SIZE ) {
+                throw new IOException("Not a capture file: " + file);
+            }
+            MappedByteBuffer buffer = captureFile.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, length
+            );
+            if ( buffer.getLong() != CaptureFiles.MAGIC ) {
+                throw new IOException("Not a capture file: " + file);
+            }
+            buffer.position(CaptureFiles.HEADER_SIZE);
+            
+            while ( buffer.remaining() >= CaptureFiles.RECORD_HEADER_SIZE ) {
+                if ( buffer.get() != CaptureFiles.RECORD_MARKER ) {
+                    break;
+                }
+                CaptureDirection direction = CaptureDirection.fromCode(buffer.get());
+                int transportId = buffer.getShort() & 0xFFFF;
+                int dataLength = buffer.getShort() & 0xFFFF;
+                long timestamp = buffer.getLong();
+                if ( buffer.remaining() < dataLength ) {
+                    throw new IOException("Truncated record in capture file: " + file);
+                }
+                
+                short[] data = new short[dataLength];
+                for ( int i = 0; i < dataLength; i++ ) {
+                    data[i] = (short)(buffer.get() & 0xFF);
+                }
+                frames.add(new CapturedFrame(timestamp, direction, transportId, data));
+            }
+        } finally {
+            captureFile.close();
+        }
+        
+        return frames;
+    }
+    
+    /**
+     * Reads all frames from all capture files of specified base path, 
+     * from the oldest file.
+     * 
+     * @param basePath base path of capture files
+     * @return frames in the order of their capture
+     * @throws IOException if some of the files cannot be read
+     */
+    public static List<CapturedFrame> readFrames(String basePath) throws IOException {
+        List<CapturedFrame> frames = new ArrayList<>();
+        for ( File file : CaptureFiles.listFiles(basePath) ) {
+            frames.addAll(readFrames(file));
+        }
+        return frames;
+    }
+    
+    private TrafficCaptureReader() {
+    }
+}
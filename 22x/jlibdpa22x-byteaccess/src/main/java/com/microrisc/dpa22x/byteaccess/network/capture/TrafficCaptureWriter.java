@@ -0,0 +1,257 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writer of frames into memory-mapped capture files.
+ * <p>
+ * Frames are appended into current capture file, which is mapped into memory,
+ * so writing of a frame means copying of a few bytes only. When the current
+ * file is full, next file is created and the oldest files are deleted to keep
+ * at maximum specified number of files. The format of files is described
+ * in {@link TrafficCaptureReader}.
+ * <p>
+ * Each record is made valid by writing of its marker as the last step, so
+ * records are readable up to the last completely written one even if 
+ * the writing process crashes.
+ * 
+ * @author agent
+ */
+public final class TrafficCaptureWriter {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(TrafficCaptureWriter.class);
+    
+    /** Default size of one capture file [in bytes]. */
+    public static final long FILE_SIZE_DEFAULT = 16 * 1024 * 1024;
+    
+    /** Default maximal number of capture files. */
+    public static final int MAX_FILES_DEFAULT = 4;
+    
+    
+    // base path of capture files
+    private final String basePath;
+    
+    // size of one file
+    private final long fileSize;
+    
+    // maximal number of files
+    private final int maxFiles;
+    
+    // existing files, ordered from the oldest
+    private final LinkedList<File> files;
+    
+    // index of next file to create
+    private int nextFileIndex;
+    
+    // current file and its mapping
+    private RandomAccessFile currentFile = null;
+    private MappedByteBuffer buffer = null;
+    
+    // indicates, whether the writer is closed
+    private boolean closed = false;
+    
+    // number of frames not written because of errors
+    private long droppedFramesNum = 0;
+    
+    
+    private static String checkBasePath(String basePath) {
+        if ( basePath == null || basePath.isEmpty() ) {
+            throw new IllegalArgumentException("Base path cannot be null or empty.");
+        }
+        return basePath;
+    }
+    
+    private static long checkFileSize(long fileSize) {
+        if ( fileSize < CaptureFiles.HEADER_SIZE + CaptureFiles.RECORD_HEADER_SIZE 
+                + CaptureFiles.MAX_DATA_LENGTH + 1
+        ) {
+            throw new IllegalArgumentException("File size too small: " + fileSize);
+        }
+        if ( fileSize > Integer.MAX_VALUE ) {
+            throw new IllegalArgumentException("File size too big: " + fileSize);
+        }
+        return fileSize;
+    }
+    
+    private static int checkMaxFiles(int maxFiles) {
+        if ( maxFiles <= 0 ) {
+            throw new IllegalArgumentException("Maximal number of files must be positive.");
+        }
+        return maxFiles;
+    }
+    
+    // closes current file
+    private void closeCurrentFile() {
+        if ( currentFile == null ) {
+            return;
+        }
+        
+        buffer.force();
+        try {
+            currentFile.close();
+        } catch ( IOException ex ) {
+            logger.warn("Error while closing capture file: {}", ex.getMessage());
+        }
+        currentFile = null;
+        buffer = null;
+    }
+    
+    // closes current file, creates and maps the next one and deletes the oldest ones
+    private void openNextFile() throws IOException {
+        closeCurrentFile();
+        
+        File file = CaptureFiles.getFile(basePath, nextFileIndex++);
+        RandomAccessFile newFile = new RandomAccessFile(file, "rw");
+        try {
+            newFile.setLength(fileSize);
+            buffer = newFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        } catch ( IOException ex ) {
+            newFile.close();
+            throw ex;
+        }
+        currentFile = newFile;
+        
+        buffer.putLong(CaptureFiles.MAGIC);
+        buffer.putLong(System.currentTimeMillis());
+        buffer.putLong(System.nanoTime());
+        
+        files.add(file);
+        while ( files.size() > maxFiles ) {
+            File oldestFile = files.removeFirst();
+            if ( !oldestFile.delete() ) {
+                logger.warn("Capture file could not be deleted: {}", oldestFile);
+            }
+        }
+        
+        logger.info("Capture file created: {}", file);
+    }
+    
+    
+    /**
+     * Creates new writer. The first capture file is created immediately.
+     * Existing capture files with the same base path are kept - new files 
+     * continue in their numbering and the oldest of them are deleted by 
+     * the rotation.
+     * 
+     * @param basePath base path of capture files
+     * @param fileSize size of one capture file [in bytes]
+     * @param maxFiles maximal number of capture files
+     * @throws IOException if the first capture file cannot be created
+     */
+    public TrafficCaptureWriter(String basePath, long fileSize, int maxFiles) 
+            throws IOException 
+    {
+        this.basePath = checkBasePath(basePath);
+        this.fileSize = checkFileSize(fileSize);
+        this.maxFiles = checkMaxFiles(maxFiles);
+        
+        this.files = new LinkedList<>(CaptureFiles.listFiles(basePath));
+        this.nextFileIndex = files.isEmpty()? 
+                0 : CaptureFiles.getIndex(basePath, files.getLast()) + 1;
+        
+        openNextFile();
+    }
+    
+    /**
+     * Creates new writer with default file size and maximal number of files.
+     * 
+     * @param basePath base path of capture files
+     * @throws IOException if the first capture file cannot be created
+     */
+    public TrafficCaptureWriter(String basePath) throws IOException {
+        this(basePath, FILE_SIZE_DEFAULT, MAX_FILES_DEFAULT);
+    }
+    
+    /**
+     * Appends specified frame to the capture. Errors are logged and counted 
+     * as dropped frames, not thrown. 
+     * 
+     * @param direction direction of the frame
+     * @param transportId identifier of transport, which the frame went through
+     * @param timestamp time of capture [in ns]
+     * @param data data of the frame
+     */
+    public synchronized void write(
+            CaptureDirection direction, int transportId, long timestamp, short[] data
+    ) {
+        if ( closed || data.length > CaptureFiles.MAX_DATA_LENGTH ) {
+            droppedFramesNum++;
+            return;
+        }
+        
+        if ( buffer.remaining() < CaptureFiles.RECORD_HEADER_SIZE + data.length + 1 ) {
+            try {
+                openNextFile();
+            } catch ( IOException ex ) {
+                logger.error("Error while creating capture file, capturing stopped: {}", ex.getMessage());
+                closed = true;
+                droppedFramesNum++;
+                return;
+            }
+        }
+        
+        int recordStart = buffer.position();
+        buffer.position(recordStart + 1);
+        buffer.put((byte)direction.getCode());
+        buffer.putShort((short)transportId);
+        buffer.putShort((short)data.length);
+        buffer.putLong(timestamp);
+        for ( short item : data ) {
+            buffer.put((byte)item);
+        }
+        buffer.put(recordStart, CaptureFiles.RECORD_MARKER);
+    }
+    
+    /**
+     * @return number of frames not written because of errors or because 
+     *         the writer was closed
+     */
+    public synchronized long getDroppedFramesNum() {
+        return droppedFramesNum;
+    }
+    
+    /**
+     * Flushes written frames to the storage device.
+     */
+    public synchronized void flush() {
+        if ( buffer != null ) {
+            buffer.force();
+        }
+    }
+    
+    /**
+     * Closes the writer. Frames written after closing are dropped.
+     */
+    public synchronized void close() {
+        if ( closed && currentFile == null ) {
+            return;
+        }
+        closeCurrentFile();
+        closed = true;
+        
+        logger.info("Traffic capture closed");
+    }
+}
@@ -135,9 +135,7 @@ extends AbstractNetworkLayer implements J_AsyncMsgListener {
     public void onGetMessage(short[] data) {
         logger.debug("onGetMessage - start: data={}", Arrays.toString(data));
 
-        if ( listener != null ) {
-            listener.onGetData(data);
-        }
+        fireDataReceived(data);
 
         logger.debug("onGetMessage - end");
     }
@@ -0,0 +1,743 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.proxy;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.byteaccess.JByteAccess;
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.byteaccess.accessors.AbstractByteAccessor;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessor;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorDecorator;
+import com.microrisc.dpa22x.byteaccess.network.AbstractNetworkLayer;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayer;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerListener;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DPA proxy server, which enables more processes to share one IQRF network
+ * connection.
+ * <p>
+ * Listens on TCP port and multiplexes requests of all connected clients
+ * onto one byte accessor. Each client has its own bounded queue of requests 
+ * and the queues are served in round-robin manner, so a client sending many 
+ * requests cannot starve the others. Data coming from the network, which 
+ * belong to the request being processed according to their NADR, PNUM and 
+ * PCMD, are sent to the client, which has sent the request. Other data coming
+ * from the network - e.g. asynchronous messages - are sent to all clients. If processing of a request fails before any data come from
+ * the network, the client is notified of the failure at once.
+ * <p>
+ * Clients connect by {@link ProxyNetworkLayer}, so that they can use their 
+ * own byte accessor the same way as with direct connection to the network.
+ * <p>
+ * The server can be run as standalone application - see {@link #main}.
+ * 
+ * @author agent
+ */
+public final class DpaProxyServer implements NetworkLayerListener {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(DpaProxyServer.class);
+    
+    /** Default port, the server listens on. */
+    public static final int PORT_DEFAULT = 55400;
+    
+    // bit of PCMD, which indicates response
+    private static final int RESPONSE_PCMD_MASK = 0x80;
+    
+    
+    /**
+     * Settings of the server.
+     */
+    public static final class Settings {
+        
+        private final String hostName;
+        private final int port;
+        private final int requestQueueCapacity;
+        private final int dataQueueCapacity;
+        
+        /**
+         * Builder of settings.
+         */
+        public static final class Builder {
+            private String hostName = null;
+            private int port = PORT_DEFAULT;
+            private int requestQueueCapacity = 16;
+            private int dataQueueCapacity = 64;
+            
+            /**
+             * Sets host name to bind, {@code null} means the loopback.
+             */
+            public Builder hostName(String hostName) {
+                this.hostName = hostName;
+                return this;
+            }
+            
+            public Builder port(int port) {
+                this.port = port;
+                return this;
+            }
+            
+            /**
+             * Sets maximal number of requests waiting in the queue of each client.
+             */
+            public Builder requestQueueCapacity(int requestQueueCapacity) {
+                this.requestQueueCapacity = requestQueueCapacity;
+                return this;
+            }
+            
+            /**
+             * Sets maximal number of data waiting to be sent to each client.
+             */
+            public Builder dataQueueCapacity(int dataQueueCapacity) {
+                this.dataQueueCapacity = dataQueueCapacity;
+                return this;
+            }
+            
+            public Settings build() {
+                return new Settings(this);
+            }
+        }
+        
+        private Settings(Builder builder) {
+            if ( builder.port < 0 || builder.port > 0xFFFF ) {
+                throw new IllegalArgumentException("Invalid port: " + builder.port);
+            }
+            if ( builder.requestQueueCapacity <= 0 || builder.dataQueueCapacity <= 0 ) {
+                throw new IllegalArgumentException("Queue capacities must be positive.");
+            }
+            
+            this.hostName = builder.hostName;
+            this.port = builder.port;
+            this.requestQueueCapacity = builder.requestQueueCapacity;
+            this.dataQueueCapacity = builder.dataQueueCapacity;
+        }
+        
+        /**
+         * @return host name to bind, {@code null} means the loopback
+         */
+        public String getHostName() {
+            return hostName;
+        }
+        
+        /**
+         * @return port to listen on
+         */
+        public int getPort() {
+            return port;
+        }
+        
+        /**
+         * @return maximal number of requests waiting in the queue of each client
+         */
+        public int getRequestQueueCapacity() {
+            return requestQueueCapacity;
+        }
+        
+        /**
+         * @return maximal number of data waiting to be sent to each client
+         */
+        public int getDataQueueCapacity() {
+            return dataQueueCapacity;
+        }
+    }
+    
+    
+    /**
+     * Connected client.
+     */
+    private final class Client {
+        
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        
+        // requests waiting for processing - guarded by readyClients
+        private final Deque<short[]> requests = new ArrayDeque<>();
+        
+        // messages waiting to be sent to the client
+        private final BlockingQueue<ProxyProtocol.Message> messagesToSend;
+        
+        private final Thread reader;
+        private final Thread writer;
+        
+        Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.messagesToSend = new ArrayBlockingQueue<>(settings.getDataQueueCapacity());
+            
+            this.reader = new Thread("dpa-proxy-reader-" + socket.getPort()) {
+                @Override
+                public void run() {
+                    readRequests();
+                }
+            };
+            this.reader.setDaemon(true);
+            
+            this.writer = new Thread("dpa-proxy-writer-" + socket.getPort()) {
+                @Override
+                public void run() {
+                    writeData();
+                }
+            };
+            this.writer.setDaemon(true);
+        }
+        
+        void start() {
+            reader.start();
+            writer.start();
+        }
+        
+        // reads requests from the client until the connection is closed
+        private void readRequests() {
+            while ( !Thread.currentThread().isInterrupted() ) {
+                ProxyProtocol.Message message = null;
+                try {
+                    message = ProxyProtocol.readMessage(in);
+                } catch ( IOException ex ) {
+                    logger.info("Client {} disconnected", socket.getRemoteSocketAddress());
+                    disconnect(this);
+                    return;
+                }
+                
+                if ( message.getType() != ProxyProtocol.MESSAGE_REQUEST ) {
+                    logger.warn(
+                            "Unsupported message from {}: type={}", 
+                            socket.getRemoteSocketAddress(), message.getType()
+                    );
+                    continue;
+                }
+                enqueueRequest(this, message.getData());
+            }
+        }
+        
+        // writes data to the client until the writer is interrupted
+        private void writeData() {
+            while ( !Thread.currentThread().isInterrupted() ) {
+                ProxyProtocol.Message message = null;
+                try {
+                    message = messagesToSend.take();
+                } catch ( InterruptedException ex ) {
+                    return;
+                }
+                
+                try {
+                    ProxyProtocol.writeMessage(out, message.getType(), message.getData());
+                } catch ( IOException ex ) {
+                    logger.info("Sending to client {} failed: {}", socket.getRemoteSocketAddress(), ex.getMessage());
+                    disconnect(this);
+                    return;
+                }
+            }
+        }
+        
+        // puts specified data into queue of data to send to the client
+        void send(short[] data) {
+            if ( !messagesToSend.offer(new ProxyProtocol.Message(ProxyProtocol.MESSAGE_DATA, data)) ) {
+                droppedDataNum.incrementAndGet();
+                logger.warn(
+                        "Data queue of client {} full, data dropped: {}", 
+                        socket.getRemoteSocketAddress(), Arrays.toString(data)
+                );
+            }
+        }
+        
+        // notifies the client of failure of specified request
+        void sendFailure(short[] request) {
+            short[] header = Arrays.copyOf(
+                    request, Math.min(request.length, ProtocolProperties.FOURSOME_LENGTH)
+            );
+            if ( !messagesToSend.offer(new ProxyProtocol.Message(ProxyProtocol.MESSAGE_FAILURE, header)) ) {
+                droppedDataNum.incrementAndGet();
+                logger.warn(
+                        "Data queue of client {} full, failure of request dropped: {}", 
+                        socket.getRemoteSocketAddress(), Arrays.toString(request)
+                );
+            }
+        }
+        
+        void close() {
+            reader.interrupt();
+            writer.interrupt();
+            try {
+                socket.close();
+            } catch ( IOException ex ) {
+                logger.warn("Error while closing client socket: {}", ex.getMessage());
+            }
+        }
+    }
+    
+    
+    // byte accessor to multiplex requests onto
+    private final ByteAccessor accessor;
+    
+    // network layer used by the accessor
+    private final NetworkLayer networkLayer;
+    
+    // settings
+    private final Settings settings;
+    
+    // connected clients
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    
+    // clients with waiting requests - in the order of their service
+    private final Deque<Client> readyClients = new ArrayDeque<>();
+    
+    // request being processed
+    private static final class ProcessedRequest {
+        final Client client;
+        final short[] request;
+        
+        // indicates, whether some data have been sent to the client
+        volatile boolean dataSent = false;
+        
+        ProcessedRequest(Client client, short[] request) {
+            this.client = client;
+            this.request = request;
+        }
+    }
+    
+    // request, which is just being processed, or null
+    private volatile ProcessedRequest processedRequest = null;
+    
+    // server socket
+    private ServerSocket serverSocket = null;
+    
+    // accepts new clients
+    private Thread acceptor = null;
+    
+    // processes requests of clients
+    private Thread dispatcher = null;
+    
+    // statistics
+    private final AtomicLong processedRequestsNum = new AtomicLong();
+    private final AtomicLong rejectedRequestsNum = new AtomicLong();
+    private final AtomicLong droppedDataNum = new AtomicLong();
+    
+    
+    private static ByteAccessor checkAccessor(ByteAccessor accessor) {
+        if ( accessor == null ) {
+            throw new IllegalArgumentException("Byte accessor cannot be null.");
+        }
+        return accessor;
+    }
+    
+    private static NetworkLayer checkNetworkLayer(NetworkLayer networkLayer) {
+        if ( networkLayer == null ) {
+            throw new IllegalArgumentException("Network layer cannot be null.");
+        }
+        return networkLayer;
+    }
+    
+    // returns address of device, which sent or is to receive specified message
+    private static int getDeviceAddress(short[] message) {
+        int address = message[ProtocolProperties.NADR_START] 
+                | (message[ProtocolProperties.NADR_START + 1] << 8);
+        return ( address == ProtocolProperties.NADR_Properties.LOCAL_DEVICE_ADDRESS )?
+                ProtocolProperties.NADR_Properties.IQMESH_COORDINATOR_ADDRESS : address;
+    }
+    
+    // indicates, whether specified data from the network belong to specified request
+    private static boolean isDataOfRequest(short[] data, short[] request) {
+        return ( data.length > ProtocolProperties.PCMD_POS 
+                && request.length > ProtocolProperties.PCMD_POS
+                && getDeviceAddress(data) == getDeviceAddress(request)
+                && data[ProtocolProperties.PNUM_POS] == request[ProtocolProperties.PNUM_POS]
+                && (data[ProtocolProperties.PCMD_POS] & ~RESPONSE_PCMD_MASK) 
+                    == request[ProtocolProperties.PCMD_POS]
+        );
+    }
+    
+    private static NetworkLayer getNetworkLayer(AbstractByteAccessor accessor) {
+        return ( (AbstractByteAccessor)checkAccessor(accessor) ).getNetworkLayer();
+    }
+    
+    private static Settings checkSettings(Settings settings) {
+        if ( settings == null ) {
+            throw new IllegalArgumentException("Settings cannot be null.");
+        }
+        return settings;
+    }
+    
+    // puts specified request into the queue of specified client
+    private void enqueueRequest(Client client, short[] request) {
+        synchronized ( readyClients ) {
+            if ( client.requests.size() >= settings.getRequestQueueCapacity() ) {
+                rejectedRequestsNum.incrementAndGet();
+                logger.warn(
+                        "Request queue of client {} full, request rejected: {}", 
+                        client.socket.getRemoteSocketAddress(), Arrays.toString(request)
+                );
+                return;
+            }
+            
+            if ( client.requests.isEmpty() ) {
+                readyClients.addLast(client);
+            }
+            client.requests.addLast(request);
+            readyClients.notifyAll();
+        }
+    }
+    
+    // disconnects specified client
+    private void disconnect(Client client) {
+        if ( !clients.remove(client) ) {
+            return;
+        }
+        
+        synchronized ( readyClients ) {
+            readyClients.remove(client);
+            client.requests.clear();
+        }
+        client.close();
+    }
+    
+    // accepts new clients until the server socket is closed
+    private void acceptClients() {
+        while ( !Thread.currentThread().isInterrupted() ) {
+            Socket socket = null;
+            try {
+                socket = serverSocket.accept();
+            } catch ( IOException ex ) {
+                if ( serverSocket.isClosed() ) {
+                    logger.info("Server socket closed, acceptor thread ends");
+                    return;
+                }
+                logger.error("Error while accepting client: {}", ex.getMessage());
+                continue;
+            }
+            
+            try {
+                socket.setTcpNoDelay(true);
+                Client client = new Client(socket);
+                clients.add(client);
+                client.start();
+                logger.info("Client {} connected", socket.getRemoteSocketAddress());
+            } catch ( IOException ex ) {
+                logger.error("Error while connecting client: {}", ex.getMessage());
+                try {
+                    socket.close();
+                } catch ( IOException closeEx ) {
+                    logger.warn("Error while closing client socket: {}", closeEx.getMessage());
+                }
+            }
+        }
+    }
+    
+    // processes requests of clients until the dispatcher is interrupted
+    private void dispatchRequests() {
+        while ( !Thread.currentThread().isInterrupted() ) {
+            Client client = null;
+            short[] request = null;
+            
+            synchronized ( readyClients ) {
+                while ( readyClients.isEmpty() ) {
+                    try {
+                        readyClients.wait();
+                    } catch ( InterruptedException ex ) {
+                        logger.info("Dispatcher end");
+                        return;
+                    }
+                }
+                
+                // round-robin: client with more waiting requests goes to the end
+                client = readyClients.pollFirst();
+                request = client.requests.pollFirst();
+                if ( !client.requests.isEmpty() ) {
+                    readyClients.addLast(client);
+                }
+            }
+            
+            ProcessedRequest currProcessedRequest = new ProcessedRequest(client, request);
+            processedRequest = currProcessedRequest;
+            RequestResult result = accessor.sendRequest(request);
+            processedRequest = null;
+            
+            processedRequestsNum.incrementAndGet();
+            if ( result.getStatus() != RequestResult.Status.SUCCESSFULLY_COMPLETED ) {
+                logger.info(
+                        "Request of client {} not completed: {}", 
+                        client.socket.getRemoteSocketAddress(), result.getProcessingInfo()
+                );
+                
+                // the client would wait for data, which will not come
+                if ( !currProcessedRequest.dataSent 
+                        && request.length >= ProtocolProperties.FOURSOME_LENGTH 
+                ) {
+                    client.sendFailure(request);
+                }
+            }
+        }
+    }
+    
+    
+    /**
+     * Creates new proxy server multiplexing requests onto specified accessor.
+     * 
+     * @param accessor byte accessor to send requests by
+     * @param networkLayer network layer used by {@code accessor}
+     * @param settings settings of the server
+     */
+    public DpaProxyServer(ByteAccessor accessor, NetworkLayer networkLayer, Settings settings) {
+        this.accessor = checkAccessor(accessor);
+        this.networkLayer = checkNetworkLayer(networkLayer);
+        this.settings = checkSettings(settings);
+    }
+    
+    /**
+     * Creates new proxy server multiplexing requests onto specified accessor.
+     * 
+     * @param accessor byte accessor to send requests by
+     * @param settings settings of the server
+     */
+    public DpaProxyServer(AbstractByteAccessor accessor, Settings settings) {
+        this(accessor, getNetworkLayer(accessor), settings);
+    }
+    
+    /**
+     * Starts the server. The byte accessor must be already started.
+     * 
+     * @throws IOException if the server socket cannot be bound
+     */
+    public synchronized void start() throws IOException {
+        logger.debug("start - start");
+        
+        if ( serverSocket != null ) {
+            throw new IllegalStateException("Proxy server already started.");
+        }
+        
+        serverSocket = new ServerSocket(
+                settings.getPort(), 0, InetAddress.getByName(settings.getHostName())
+        );
+        
+        // data must be routed before the accessor gets them - else the dispatcher
+        // could switch to next client before the routing
+        if ( accessor instanceof NetworkLayerListener ) {
+            AbstractNetworkLayer.unregisterListener(networkLayer, (NetworkLayerListener)accessor);
+            networkLayer.registerListener(this);
+            networkLayer.registerListener((NetworkLayerListener)accessor);
+        } else {
+            networkLayer.registerListener(this);
+        }
+        
+        dispatcher = new Thread("dpa-proxy-dispatcher") {
+            @Override
+            public void run() {
+                dispatchRequests();
+            }
+        };
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        
+        acceptor = new Thread("dpa-proxy-acceptor") {
+            @Override
+            public void run() {
+                acceptClients();
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+        
+        logger.info("DPA proxy server listening on {}", serverSocket.getLocalSocketAddress());
+        logger.debug("start - end");
+    }
+    
+    /**
+     * Stops the server and disconnects all clients. The byte accessor stays 
+     * running.
+     */
+    public synchronized void stop() {
+        logger.debug("stop - start");
+        
+        if ( serverSocket == null ) {
+            return;
+        }
+        
+        AbstractNetworkLayer.unregisterListener(networkLayer, this);
+        
+        acceptor.interrupt();
+        try {
+            serverSocket.close();
+        } catch ( IOException ex ) {
+            logger.warn("Error while closing server socket: {}", ex.getMessage());
+        }
+        dispatcher.interrupt();
+        
+        try {
+            acceptor.join();
+            dispatcher.join();
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            logger.warn("Stopping of proxy server interrupted");
+        }
+        
+        for ( Client client : clients ) {
+            disconnect(client);
+        }
+        
+        acceptor = null;
+        dispatcher = null;
+        serverSocket = null;
+        
+        logger.info("DPA proxy server stopped");
+        logger.debug("stop - end");
+    }
+    
+    /**
+     * @return port, the server listens on, or -1 if the server is not running
+     */
+    public synchronized int getLocalPort() {
+        return ( serverSocket == null )? -1 : serverSocket.getLocalPort();
+    }
+    
+    /**
+     * @return number of connected clients
+     */
+    public int getClientsNum() {
+        return clients.size();
+    }
+    
+    /**
+     * @return number of processed requests
+     */
+    public long getProcessedRequestsNum() {
+        return processedRequestsNum.get();
+    }
+    
+    /**
+     * @return number of requests rejected because of full queue
+     */
+    public long getRejectedRequestsNum() {
+        return rejectedRequestsNum.get();
+    }
+    
+    /**
+     * @return number of data dropped because of full queue of a client
+     */
+    public long getDroppedDataNum() {
+        return droppedDataNum.get();
+    }
+    
+    /**
+     * Sends data coming from the network to the client, whose request is just
+     * being processed, if the data belong to the request. Other data are sent 
+     * to all clients.
+     * 
+     * @param data data from the network
+     */
+    @Override
+    public void onGetData(short[] data) {
+        ProcessedRequest currProcessedRequest = processedRequest;
+        if ( currProcessedRequest != null && isDataOfRequest(data, currProcessedRequest.request) ) {
+            currProcessedRequest.dataSent = true;
+            currProcessedRequest.client.send(data);
+            return;
+        }
+        
+        for ( Client connectedClient : clients ) {
+            connectedClient.send(data);
+        }
+    }
+    
+    
+    // parses value of specified argument
+    private static String getArgValue(String arg, String key) {
+        String prefix = key + "=";
+        if ( arg.startsWith(prefix) ) {
+            return arg.substring(prefix.length());
+        }
+        return null;
+    }
+    
+    /**
+     * Runs the server until the process is terminated.
+     * <p>
+     * Byte accessor is created by {@link JByteAccess} according to 
+     * the configuration file. Other arguments are in the form of key=value: <br>
+     * - <b>config</b>: configuration file of the library <br>
+     * - <b>host</b>: host name to bind, loopback by default <br>
+     * - <b>port</b>: port to listen on, {@link #PORT_DEFAULT} by default <br>
+     * - <b>requestQueueCapacity</b>: capacity of request queue of each client <br>
+     * - <b>dataQueueCapacity</b>: capacity of data queue of each client
+     * 
+     * @param args arguments
+     * @throws Exception if an error has occured
+     */
+    public static void main(String[] args) throws Exception {
+        Settings.Builder settingsBuilder = new Settings.Builder();
+        String configFile = "config" + System.getProperty("file.separator") + "byteaccess.properties";
+        
+        for ( String arg : args ) {
+            String value = null;
+            if ( (value = getArgValue(arg, "config")) != null ) {
+                configFile = value;
+            } else if ( (value = getArgValue(arg, "host")) != null ) {
+                settingsBuilder.hostName(value);
+            } else if ( (value = getArgValue(arg, "port")) != null ) {
+                settingsBuilder.port(Integer.parseInt(value));
+            } else if ( (value = getArgValue(arg, "requestQueueCapacity")) != null ) {
+                settingsBuilder.requestQueueCapacity(Integer.parseInt(value));
+            } else if ( (value = getArgValue(arg, "dataQueueCapacity")) != null ) {
+                settingsBuilder.dataQueueCapacity(Integer.parseInt(value));
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        
+        JByteAccess.init(configFile);
+        ByteAccessor accessor = JByteAccess.getAccessor();
+        ByteAccessor innermostAccessor = accessor;
+        while ( innermostAccessor instanceof ByteAccessorDecorator ) {
+            innermostAccessor = ((ByteAccessorDecorator) innermostAccessor).getAccessor();
+        }
+        if ( !(innermostAccessor instanceof AbstractByteAccessor) ) {
+            JByteAccess.terminateAndRelease();
+            throw new IllegalStateException("Byte accessor must extend or decorate " + AbstractByteAccessor.class);
+        }
+        
+        final DpaProxyServer server = new DpaProxyServer(
+                accessor, ((AbstractByteAccessor)innermostAccessor).getNetworkLayer(), 
+                settingsBuilder.build()
+        );
+        
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                server.stop();
+                JByteAccess.terminateAndRelease();
+            }
+        });
+        server.start();
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.proxy;
+
+import com.microrisc.dpa22x.byteaccess.network.AbstractNetworkLayer;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerException;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerFailureListener;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Network layer connected to IQRF network through {@link DpaProxyServer}.
+ * <p>
+ * Requests of all clients are queued in the proxy, so time to wait for 
+ * confirmation, which is set in waiting time counter of the byte accessor 
+ * using this layer, should include time spent in the queue.
+ * <p>
+ * Failure of a request in the proxy, which has occured before any data of 
+ * the request came from IQRF network, is passed to the listeners implementing
+ * {@link NetworkLayerFailureListener}.
+ * 
+ * @author agent
+ */
+public final class ProxyNetworkLayer extends AbstractNetworkLayer {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(ProxyNetworkLayer.class);
+    
+    
+    // host name of the proxy server
+    private final String hostName;
+    
+    // port of the proxy server
+    private final int port;
+    
+    // connection to the proxy server
+    private Socket socket = null;
+    private DataOutputStream out = null;
+    
+    // reads data from the proxy server
+    private Thread socketReader = null;
+    
+    
+    /**
+     * Reading of data from the proxy server.
+     */
+    private class SocketReader extends Thread {
+        
+        private final DataInputStream in;
+        
+        SocketReader(DataInputStream in) {
+            super("dpa-proxy-client-reader");
+            setDaemon(true);
+            this.in = in;
+        }
+        
+        @Override
+        public void run() {
+            while ( !isInterrupted() ) {
+                ProxyProtocol.Message message = null;
+                try {
+                    message = ProxyProtocol.readMessage(in);
+                } catch ( IOException ex ) {
+                    logger.info("Connection to proxy server closed, reader thread ends");
+                    return;
+                }
+                
+                switch ( message.getType() ) {
+                    case ProxyProtocol.MESSAGE_DATA:
+                        fireDataReceived(message.getData());
+                        break;
+                    case ProxyProtocol.MESSAGE_FAILURE:
+                        logger.info(
+                                "Request failed in proxy server: {}", 
+                                Arrays.toString(message.getData())
+                        );
+                        fireRequestFailed(message.getData(), "Request failed in proxy server.");
+                        break;
+                    default:
+                        logger.warn("Unsupported message from proxy server: type={}", message.getType());
+                }
+            }
+        }
+    }
+    
+    
+    private static int checkPort(int port) {
+        if ( port < 0 || port > 0xFFFF ) {
+            throw new IllegalArgumentException("Invalid port: " + port);
+        }
+        return port;
+    }
+    
+    
+    /**
+     * Creates new network layer connecting to the proxy server on specified
+     * host and port.
+     * 
+     * @param hostName host name of the proxy server, {@code null} means the loopback
+     * @param port port of the proxy server
+     */
+    public ProxyNetworkLayer(String hostName, int port) {
+        this.hostName = hostName;
+        this.port = checkPort(port);
+    }
+    
+    @Override
+    public synchronized void start() throws NetworkLayerException {
+        logger.debug("start - start");
+        
+        if ( socket != null ) {
+            throw new NetworkLayerException("Proxy network layer already started.");
+        }
+        
+        try {
+            socket = new Socket(hostName, port);
+            socket.setTcpNoDelay(true);
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            socketReader = new SocketReader(
+                    new DataInputStream(new BufferedInputStream(socket.getInputStream()))
+            );
+        } catch ( IOException ex ) {
+            closeSocket();
+            throw new NetworkLayerException(ex);
+        }
+        socketReader.start();
+        
+        logger.info("Proxy network layer connected to {}", socket.getRemoteSocketAddress());
+        logger.debug("start - end");
+    }
+    
+    @Override
+    public synchronized void sendData(short[] data) throws NetworkLayerException {
+        logger.debug("sendData - start: data={}", Arrays.toString(data));
+        
+        if ( socket == null ) {
+            throw new NetworkLayerException("Proxy network layer not started.");
+        }
+        
+        try {
+            ProxyProtocol.writeMessage(out, ProxyProtocol.MESSAGE_REQUEST, data);
+        } catch ( IOException | IllegalArgumentException ex ) {
+            throw new NetworkLayerException(ex);
+        }
+        
+        logger.debug("sendData - end");
+    }
+    
+    // closes the socket, if there is any
+    private void closeSocket() {
+        if ( socket == null ) {
+            return;
+        }
+        
+        try {
+            socket.close();
+        } catch ( IOException ex ) {
+            logger.warn("Error while closing socket: {}", ex.getMessage());
+        }
+        socket = null;
+        out = null;
+    }
+    
+    @Override
+    public synchronized void terminateAndRelease() {
+        logger.debug("terminateAndRelease - start");
+        
+        unregisterListener();
+        closeSocket();
+        
+        if ( socketReader != null ) {
+            socketReader.interrupt();
+            try {
+                socketReader.join();
+            } catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+                logger.warn("Termination of proxy network layer interrupted");
+            }
+            socketReader = null;
+        }
+        
+        logger.info("Proxy network layer terminated and released");
+        logger.debug("terminateAndRelease - end");
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.proxy;
+
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayer;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerFactory;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerFactoryException;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Proxy network layer factory.
+ * <p>
+ * Configuration items: <br>
+ * - <b>networkLayer.type.proxy.hostName</b>: host name of the proxy server.
+ *      If no such configuration key is found, the loopback is used. <br>
+ * 
+ * - <b>networkLayer.type.proxy.port</b>: port of the proxy server.
+ *      If no such configuration key is found, {@link DpaProxyServer#PORT_DEFAULT}
+ *      is used.
+ * 
+ * @author agent
+ */
+public final class ProxyNetworkLayerFactory implements NetworkLayerFactory {
+    
+    @Override
+    public NetworkLayer getNetworkLayer(Configuration configuration) throws NetworkLayerFactoryException {
+        String hostName = configuration.getString("networkLayer.type.proxy.hostName", "");
+        int port = configuration.getInt("networkLayer.type.proxy.port", DpaProxyServer.PORT_DEFAULT);
+        
+        try {
+            return new ProxyNetworkLayer(hostName.isEmpty()? null : hostName, port);
+        } catch ( IllegalArgumentException ex ) {
+            throw new NetworkLayerFactoryException(ex);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.proxy;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Protocol between DPA proxy server and its clients.
+ * <p>
+ * Each message consists of 1 byte of message type, 1 byte of data length and
+ * the data. Clients send DPA requests in {@link #MESSAGE_REQUEST} messages, 
+ * the server sends data coming from IQRF network in {@link #MESSAGE_DATA} 
+ * messages. If processing of a request fails before any data of the request
+ * come from IQRF network - e.g. the request is rejected by the byte accessor of
+ * the server - the server sends {@link #MESSAGE_FAILURE} message with the 
+ * header of the request, so that the client does not wait for its timeout.
+ * 
+ * @author agent
+ */
+final class ProxyProtocol {
+    
+    /** DPA request sent by client. */
+    static final int MESSAGE_REQUEST = 0x01;
+    
+    /** Data from IQRF network sent by server. */
+    static final int MESSAGE_DATA = 0x02;
+    
+    /** Header of failed request sent by server. */
+    static final int MESSAGE_FAILURE = 0x03;
+    
+    /** Maximal length of message data. */
+    static final int MAX_DATA_LENGTH = 0xFF;
+    
+    
+    /**
+     * Message of the protocol.
+     */
+    static final class Message {
+        private final int type;
+        private final short[] data;
+        
+        Message(int type, short[] data) {
+            this.type = type;
+            this.data = data;
+        }
+        
+        int getType() {
+            return type;
+        }
+        
+        short[] getData() {
+            return data;
+        }
+    }
+    
+    
+    /**
+     * Writes message of specified type and data into specified stream.
+     * 
+     * @param out stream to write into
+     * @param type message type
+     * @param data message data
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if the data are too long
+     */
+    static void writeMessage(DataOutputStream out, int type, short[] data) throws IOException {
+        if ( data.length > MAX_DATA_LENGTH ) {
+            throw new IllegalArgumentException("Data too long: " + data.length);
+        }
+        
+        byte[] message = new byte[2 + data.length];
+        message[0] = (byte)type;
+        message[1] = (byte)data.length;
+        for ( int i = 0; i < data.length; i++ ) {
+            message[2 + i] = (byte)(data[i] & 0xFF);
+        }
+        out.write(message);
+        out.flush();
+    }
+    
+    /**
+     * Reads next message from specified stream.
+     * 
+     * @param in stream to read from
+     * @return read message
+     * @throws IOException if an I/O error occurs or the stream ends
+     */
+    static Message readMessage(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        int length = in.readUnsignedByte();
+        
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        
+        short[] data = new short[length];
+        for ( int i = 0; i < length; i++ ) {
+            data[i] = (short)(bytes[i] & 0xFF);
+        }
+        return new Message(type, data);
+    }
+    
+    // Suppress default constructor for noninstantiability
+    private ProxyProtocol() {
+        throw new AssertionError();
+    }
+}
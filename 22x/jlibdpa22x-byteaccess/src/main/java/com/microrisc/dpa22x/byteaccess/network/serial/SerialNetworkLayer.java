@@ -272,9 +272,7 @@ public final class SerialNetworkLayer extends AbstractNetworkLayer {
                         continue;
                     }
 
-                    if ( listener != null ) {
-                        listener.onGetData(userData);
-                    }
+                    fireDataReceived(userData);
                 }
             }
         }
@@ -0,0 +1,645 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.simulation;
+
+import com.microrisc.dpa22x.RF_Mode;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerListener;
+import com.microrisc.dpa22x.byteaccess.network.udp.GWETH_DataTransformer;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Emulator of GW-ETH gateway, which fronts simulated IQMESH network.
+ * <p>
+ * Listens on UDP port and speaks the same protocol as GW-ETH: write requests
+ * are answered with write result and forwarded into the simulated network,
+ * confirmations and responses from the network are sent as asynchronous 
+ * messages to the client, which has sent the last request. Thus, 
+ * {@link com.microrisc.dpa22x.byteaccess.network.udp.UdpNetworkLayer} can 
+ * be used against the emulator instead of real gateway.
+ * <p>
+ * Each datagram in both directions can be delayed, lost or reordered 
+ * according to emulator settings.
+ * <p>
+ * The emulator can be run as standalone application - see {@link #main}.
+ * 
+ * @author agent
+ */
+public final class GWETH_Emulator implements NetworkLayerListener {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(GWETH_Emulator.class);
+    
+    /** Default port, the emulator listens on. */
+    public static final int PORT_DEFAULT = 55300;
+    
+    // maximal size of received datagrams
+    private static final int MAX_DATAGRAM_SIZE = 512;
+    
+    
+    /**
+     * Settings of the emulator.
+     */
+    public static final class Settings {
+        
+        private final String hostName;
+        private final int port;
+        private final long delay;
+        private final long jitter;
+        private final double lossRate;
+        private final double reorderRate;
+        private final long reorderDelay;
+        private final long seed;
+        
+        /**
+         * Builder of settings.
+         */
+        public static final class Builder {
+            private String hostName = null;
+            private int port = PORT_DEFAULT;
+            private long delay = 0;
+            private long jitter = 0;
+            private double lossRate = 0;
+            private double reorderRate = 0;
+            private long reorderDelay = 50;
+            private long seed = 0;
+            
+            /**
+             * Sets host name to bind, {@code null} means the loopback.
+             */
+            public Builder hostName(String hostName) {
+                this.hostName = hostName;
+                return this;
+            }
+            
+            public Builder port(int port) {
+                this.port = port;
+                return this;
+            }
+            
+            /**
+             * Sets delay [in ms] of each datagram.
+             */
+            public Builder delay(long delay) {
+                this.delay = delay;
+                return this;
+            }
+            
+            /**
+             * Sets maximal random delay [in ms] added to the delay of each datagram.
+             */
+            public Builder jitter(long jitter) {
+                this.jitter = jitter;
+                return this;
+            }
+            
+            /**
+             * Sets probability of loss of each datagram.
+             */
+            public Builder lossRate(double lossRate) {
+                this.lossRate = lossRate;
+                return this;
+            }
+            
+            /**
+             * Sets probability, that a datagram is held back by 
+             * the reorder delay and so overtaken by following datagrams.
+             */
+            public Builder reorderRate(double reorderRate) {
+                this.reorderRate = reorderRate;
+                return this;
+            }
+            
+            /**
+             * Sets delay [in ms] of held back datagrams.
+             */
+            public Builder reorderDelay(long reorderDelay) {
+                this.reorderDelay = reorderDelay;
+                return this;
+            }
+            
+            public Builder seed(long seed) {
+                this.seed = seed;
+                return this;
+            }
+            
+            public Settings build() {
+                return new Settings(this);
+            }
+        }
+        
+        private static double checkRate(double rate) {
+            if ( rate < 0 || rate > 1 ) {
+                throw new IllegalArgumentException("Rate must be within the interval of <0, 1>.");
+            }
+            return rate;
+        }
+        
+        private Settings(Builder builder) {
+            if ( builder.port < 0 || builder.port > 0xFFFF ) {
+                throw new IllegalArgumentException("Invalid port: " + builder.port);
+            }
+            if ( builder.delay < 0 || builder.jitter < 0 || builder.reorderDelay < 0 ) {
+                throw new IllegalArgumentException("Delays must be nonnegative.");
+            }
+            
+            this.hostName = builder.hostName;
+            this.port = builder.port;
+            this.delay = builder.delay;
+            this.jitter = builder.jitter;
+            this.lossRate = checkRate(builder.lossRate);
+            this.reorderRate = checkRate(builder.reorderRate);
+            this.reorderDelay = builder.reorderDelay;
+            this.seed = builder.seed;
+        }
+        
+        /**
+         * @return host name to bind, {@code null} means the loopback
+         */
+        public String getHostName() {
+            return hostName;
+        }
+        
+        /**
+         * @return port to listen on
+         */
+        public int getPort() {
+            return port;
+        }
+        
+        /**
+         * @return delay [in ms] of each datagram
+         */
+        public long getDelay() {
+            return delay;
+        }
+        
+        /**
+         * @return maximal random delay [in ms] added to the delay of each datagram
+         */
+        public long getJitter() {
+            return jitter;
+        }
+        
+        /**
+         * @return probability of loss of each datagram
+         */
+        public double getLossRate() {
+            return lossRate;
+        }
+        
+        /**
+         * @return probability, that a datagram is held back
+         */
+        public double getReorderRate() {
+            return reorderRate;
+        }
+        
+        /**
+         * @return delay [in ms] of held back datagrams
+         */
+        public long getReorderDelay() {
+            return reorderDelay;
+        }
+        
+        /**
+         * @return seed of random numbers generator
+         */
+        public long getSeed() {
+            return seed;
+        }
+    }
+    
+    
+    // settings
+    private final Settings settings;
+    
+    // emulated network
+    private final SimulatedNetwork network;
+    
+    // random numbers for impairments
+    private final Random random;
+    
+    // socket
+    private DatagramSocket socket = null;
+    
+    // receiver of datagrams
+    private Thread socketReader = null;
+    
+    // executor of delayed datagrams processing
+    private ScheduledExecutorService executor = null;
+    
+    // client, which has sent the last request 
+    private volatile SocketAddress clientAddress = null;
+    
+    // statistics
+    private final AtomicLong receivedNum = new AtomicLong();
+    private final AtomicLong sentNum = new AtomicLong();
+    private final AtomicLong lostNum = new AtomicLong();
+    private final AtomicLong invalidNum = new AtomicLong();
+    
+    
+    private static SimulatedNetwork checkNetwork(SimulatedNetwork network) {
+        if ( network == null ) {
+            throw new IllegalArgumentException("Simulated network cannot be null.");
+        }
+        return network;
+    }
+    
+    private static Settings checkSettings(Settings settings) {
+        if ( settings == null ) {
+            throw new IllegalArgumentException("Settings cannot be null.");
+        }
+        return settings;
+    }
+    
+    // converts between bytes and shorts
+    private static short[] toShorts(byte[] data, int length) {
+        short[] result = new short[length];
+        for ( int i = 0; i < length; i++ ) {
+            result[i] = (short)(data[i] & 0xFF);
+        }
+        return result;
+    }
+    
+    private static byte[] toBytes(short[] data) {
+        byte[] result = new byte[data.length];
+        for ( int i = 0; i < data.length; i++ ) {
+            result[i] = (byte)(data[i] & 0xFF);
+        }
+        return result;
+    }
+    
+    // returns delay of next datagram or -1, if the datagram will be lost
+    private synchronized long nextDatagramDelay() {
+        if ( settings.getLossRate() > 0 && random.nextDouble() < settings.getLossRate() ) {
+            return -1;
+        }
+        
+        long delay = settings.getDelay();
+        if ( settings.getJitter() > 0 ) {
+            delay += (long)(random.nextDouble() * (settings.getJitter() + 1));
+        }
+        if ( settings.getReorderRate() > 0 && random.nextDouble() < settings.getReorderRate() ) {
+            delay += settings.getReorderDelay();
+        }
+        return delay;
+    }
+    
+    // runs specified action after impairments, returns false if the datagram was lost
+    private boolean impair(Runnable action) {
+        long delay = nextDatagramDelay();
+        if ( delay == -1 ) {
+            lostNum.incrementAndGet();
+            return false;
+        }
+        
+        ScheduledExecutorService currExecutor = executor;
+        if ( currExecutor == null ) {
+            return false;
+        }
+        if ( delay == 0 ) {
+            currExecutor.execute(action);
+        } else {
+            currExecutor.schedule(action, delay, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+    
+    // sends specified message to specified address
+    private void send(final short[] message, final SocketAddress address) {
+        impair(new Runnable() {
+            @Override
+            public void run() {
+                DatagramSocket currSocket = socket;
+                if ( currSocket == null ) {
+                    return;
+                }
+                byte[] data = toBytes(message);
+                try {
+                    currSocket.send(new DatagramPacket(data, data.length, address));
+                    sentNum.incrementAndGet();
+                } catch ( IOException ex ) {
+                    logger.error("Error while sending datagram: {}", ex.getMessage());
+                }
+            }
+        });
+    }
+    
+    // processes specified message from client
+    private void processMessage(short[] message, SocketAddress sender) {
+        boolean isWriteRequest = false;
+        short[] data = null;
+        try {
+            isWriteRequest = GWETH_DataTransformer.isWriteRequest(message);
+            data = GWETH_DataTransformer.getDataFromMessage(message);
+        } catch ( IllegalArgumentException ex ) {
+            // the same as real GW, invalid messages are ignored
+            logger.warn("Invalid message from {}: {}", sender, ex.getMessage());
+            invalidNum.incrementAndGet();
+            return;
+        }
+        
+        if ( !isWriteRequest ) {
+            logger.warn("Unsupported message from {}: {}", sender, Arrays.toString(message));
+            invalidNum.incrementAndGet();
+            return;
+        }
+        
+        clientAddress = sender;
+        
+        int writeResult = GWETH_DataTransformer.WRITE_RESULT_OK;
+        try {
+            network.processRequest(data);
+        } catch ( IllegalArgumentException ex ) {
+            logger.warn("Invalid request from {}: {}", sender, ex.getMessage());
+            writeResult = GWETH_DataTransformer.WRITE_RESULT_ERROR_DATA;
+        }
+        send(GWETH_DataTransformer.createWriteAnswer(message, writeResult), sender);
+    }
+    
+    /**
+     * Reading of datagrams from socket.
+     */
+    private class SocketReader extends Thread {
+        
+        SocketReader() {
+            super("gweth-emulator-reader");
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            
+            while ( !isInterrupted() ) {
+                try {
+                    socket.receive(packet);
+                } catch ( IOException ex ) {
+                    if ( socket.isClosed() ) {
+                        logger.info("Socket closed, reader thread ends");
+                        return;
+                    }
+                    logger.error("Error while receiving datagram: {}", ex.getMessage());
+                    continue;
+                }
+                receivedNum.incrementAndGet();
+                
+                final short[] message = toShorts(packet.getData(), packet.getLength());
+                final SocketAddress sender = packet.getSocketAddress();
+                impair(new Runnable() {
+                    @Override
+                    public void run() {
+                        processMessage(message, sender);
+                    }
+                });
+            }
+        }
+    }
+    
+    
+    /**
+     * Creates new emulator fronting specified simulated network.
+     * 
+     * @param network network to front
+     * @param settings settings of the emulator
+     */
+    public GWETH_Emulator(SimulatedNetwork network, Settings settings) {
+        this.network = checkNetwork(network);
+        this.settings = checkSettings(settings);
+        this.random = new Random(settings.getSeed());
+    }
+    
+    /**
+     * Starts the emulator - binds its socket and starts the network.
+     * 
+     * @throws SocketException if the socket cannot be bound
+     */
+    public synchronized void start() throws SocketException {
+        logger.debug("start - start");
+        
+        if ( socket != null ) {
+            throw new IllegalStateException("Emulator already started.");
+        }
+        
+        try {
+            socket = new DatagramSocket(
+                    settings.getPort(), InetAddress.getByName(settings.getHostName())
+            );
+        } catch ( IOException ex ) {
+            SocketException socketEx = new SocketException(ex.getMessage());
+            socketEx.initCause(ex);
+            throw socketEx;
+        }
+        
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "gweth-emulator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        network.start(this);
+        
+        socketReader = new SocketReader();
+        socketReader.start();
+        
+        logger.info("GW-ETH emulator listening on {}", socket.getLocalSocketAddress());
+        logger.debug("start - end");
+    }
+    
+    /**
+     * Stops the emulator and the network.
+     */
+    public synchronized void stop() {
+        logger.debug("stop - start");
+        
+        if ( socket == null ) {
+            return;
+        }
+        
+        socketReader.interrupt();
+        socket.close();
+        try {
+            socketReader.join();
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            logger.warn("Stopping of emulator interrupted");
+        }
+        
+        network.stop();
+        executor.shutdownNow();
+        
+        socketReader = null;
+        executor = null;
+        socket = null;
+        
+        logger.info("GW-ETH emulator stopped");
+        logger.debug("stop - end");
+    }
+    
+    /**
+     * @return port, the emulator listens on, or -1 if the emulator is not running
+     */
+    public synchronized int getLocalPort() {
+        return ( socket == null )? -1 : socket.getLocalPort();
+    }
+    
+    /**
+     * @return emulated network
+     */
+    public SimulatedNetwork getNetwork() {
+        return network;
+    }
+    
+    /**
+     * @return number of received datagrams
+     */
+    public long getReceivedNum() {
+        return receivedNum.get();
+    }
+    
+    /**
+     * @return number of sent datagrams
+     */
+    public long getSentNum() {
+        return sentNum.get();
+    }
+    
+    /**
+     * @return number of datagrams lost in both directions
+     */
+    public long getLostNum() {
+        return lostNum.get();
+    }
+    
+    /**
+     * @return number of received invalid messages
+     */
+    public long getInvalidNum() {
+        return invalidNum.get();
+    }
+    
+    /**
+     * Sends data coming from the network to the client as asynchronous message.
+     * 
+     * @param data data from the network
+     */
+    @Override
+    public void onGetData(short[] data) {
+        SocketAddress client = clientAddress;
+        if ( client == null ) {
+            logger.warn("No client to send data to: {}", Arrays.toString(data));
+            return;
+        }
+        send(GWETH_DataTransformer.transformAsynchronousData(data), client);
+    }
+    
+    
+    // parses value of specified argument
+    private static String getArgValue(String arg, String key) {
+        String prefix = key + "=";
+        if ( arg.startsWith(prefix) ) {
+            return arg.substring(prefix.length());
+        }
+        return null;
+    }
+    
+    /**
+     * Runs the emulator until the process is terminated.
+     * <p>
+     * Arguments are in the form of key=value: <br>
+     * - <b>host</b>: host name to bind, loopback by default <br>
+     * - <b>port</b>: port to listen on, {@link #PORT_DEFAULT} by default <br>
+     * - <b>nodes</b>: number of nodes <br>
+     * - <b>maxHops</b>: maximal number of hops <br>
+     * - <b>rfMode</b>: RF mode - STD or LP <br>
+     * - <b>hopLossRate</b>: probability of loss at each hop in the network <br>
+     * - <b>delay</b>, <b>jitter</b>, <b>lossRate</b>, <b>reorderRate</b>, 
+     *   <b>reorderDelay</b>: impairments of datagrams <br>
+     * - <b>seed</b>: seed of random numbers generators
+     * 
+     * @param args arguments
+     * @throws Exception if an error has occured
+     */
+    public static void main(String[] args) throws Exception {
+        Settings.Builder settingsBuilder = new Settings.Builder();
+        SimulatedNetwork.Settings.Builder networkSettingsBuilder = new SimulatedNetwork.Settings.Builder();
+        int nodesNum = SimulatedNetworkLayerFactory.NODES_NUM_DEFAULT;
+        int maxHops = SimulatedNetworkLayerFactory.MAX_HOPS_DEFAULT;
+        
+        for ( String arg : args ) {
+            String value = null;
+            if ( (value = getArgValue(arg, "host")) != null ) {
+                settingsBuilder.hostName(value);
+            } else if ( (value = getArgValue(arg, "port")) != null ) {
+                settingsBuilder.port(Integer.parseInt(value));
+            } else if ( (value = getArgValue(arg, "nodes")) != null ) {
+                nodesNum = Integer.parseInt(value);
+            } else if ( (value = getArgValue(arg, "maxHops")) != null ) {
+                maxHops = Integer.parseInt(value);
+            } else if ( (value = getArgValue(arg, "rfMode")) != null ) {
+                networkSettingsBuilder.rfMode(RF_Mode.valueOf(value));
+            } else if ( (value = getArgValue(arg, "hopLossRate")) != null ) {
+                networkSettingsBuilder.hopLossRate(Double.parseDouble(value));
+            } else if ( (value = getArgValue(arg, "delay")) != null ) {
+                settingsBuilder.delay(Long.parseLong(value));
+            } else if ( (value = getArgValue(arg, "jitter")) != null ) {
+                settingsBuilder.jitter(Long.parseLong(value));
+            } else if ( (value = getArgValue(arg, "lossRate")) != null ) {
+                settingsBuilder.lossRate(Double.parseDouble(value));
+            } else if ( (value = getArgValue(arg, "reorderRate")) != null ) {
+                settingsBuilder.reorderRate(Double.parseDouble(value));
+            } else if ( (value = getArgValue(arg, "reorderDelay")) != null ) {
+                settingsBuilder.reorderDelay(Long.parseLong(value));
+            } else if ( (value = getArgValue(arg, "seed")) != null ) {
+                settingsBuilder.seed(Long.parseLong(value));
+                networkSettingsBuilder.seed(Long.parseLong(value));
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        
+        SimulatedNetwork network = SimulatedNetwork.create(
+                nodesNum, maxHops, networkSettingsBuilder.build()
+        );
+        final GWETH_Emulator emulator = new GWETH_Emulator(network, settingsBuilder.build());
+        
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                emulator.stop();
+            }
+        });
+        emulator.start();
+        Thread.currentThread().join();
+    }
+}
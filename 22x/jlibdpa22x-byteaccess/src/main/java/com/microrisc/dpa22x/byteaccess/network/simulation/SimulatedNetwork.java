@@ -0,0 +1,1362 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.simulation;
+
+import com.microrisc.dpa22x.DCTR;
+import com.microrisc.dpa22x.DPA_ResponseCode;
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.RF_Mode;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerListener;
+import com.microrisc.dpa22x.peripherals.Coordinator;
+import com.microrisc.dpa22x.peripherals.EEEPROM;
+import com.microrisc.dpa22x.peripherals.EEPROM;
+import com.microrisc.dpa22x.peripherals.FRC;
+import com.microrisc.dpa22x.peripherals.IO;
+import com.microrisc.dpa22x.peripherals.LEDG;
+import com.microrisc.dpa22x.peripherals.LEDR;
+import com.microrisc.dpa22x.peripherals.Node;
+import com.microrisc.dpa22x.peripherals.OS;
+import com.microrisc.dpa22x.peripherals.RAM;
+import com.microrisc.dpa22x.peripherals.Thermometer;
+import com.microrisc.dpa22x.timing.FRC_ResponseTime;
+import com.microrisc.dpa22x.timing.VirtualClock;
+import com.microrisc.dpa22x.timing.WaitingTimeCounter;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Simulated IQMESH network - coordinator and its bonded nodes.
+ * <p>
+ * Requests passed into the network are processed by the addressed device and
+ * corresponding confirmation and response are delivered back to the registered
+ * receiver after the time, which the real network would need for routing of
+ * both messages. Routing times are based on the same timeslot lengths, which
+ * are used by {@link WaitingTimeCounter}. Each hop of the routing can be lost
+ * with configured probability, in which case only the confirmation is
+ * delivered.
+ * <p>
+ * The network answers to requests for standard peripherals only. Effects of
+ * requests (memory writes, bonding etc.) take place at the time of request's
+ * reception. FRC supports predefined acknowledged broadcast command only.
+ * <p>
+ * The network runs either in real time, in which case messages are delivered
+ * by its own thread, or in virtual time of a {@link VirtualClock}, in which 
+ * case messages are delivered by the thread advancing the clock.
+ *
+ * @author agent
+ */
+public final class SimulatedNetwork {
+
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(SimulatedNetwork.class);
+
+    // number of NADR values
+    private static final int ADDRESSES_NUM = 0x100;
+
+    // length of bitmaps of nodes in coordinator responses
+    private static final int NODES_BITMAP_LENGTH = 32;
+
+    // length of one block of backed up network info of coordinator
+    private static final int NETWORK_INFO_BLOCK_LENGTH = 49;
+
+    // number of blocks of network info of coordinator
+    private static final int NETWORK_INFO_BLOCKS_NUM = 2;
+
+    // DPA value reported in responses
+    private static final short DPA_VALUE = 0x40;
+
+    // DPA version reported by peripheral enumeration - 2.28
+    private static final short[] DPA_VERSION = { 0x28, 0x02 };
+
+    // device ID reported by coordinator
+    private static final short DID = 0x2A;
+
+    // value of HWPID, which matches any node's HWPID
+    private static final int HWPID_ANY = 0xFFFF;
+
+    // length of header of embedded request - length, PNUM, PCMD and HWPID
+    private static final int EMBEDDED_REQUEST_HEADER_LENGTH = 5;
+
+    // length of FRC data collected from nodes
+    private static final int FRC_DATA_LENGTH = FRC.DATA_LENGTH + FRC.EXTRA_RESULT_LENGTH;
+
+    // position of bits 1 in FRC data of 2 bits per node
+    private static final int FRC_BIT_1_POS = 32;
+
+    // maximal FRC status, which means number of nodes
+    private static final int FRC_STATUS_NODES_MAX = 0xEF;
+
+    // FRC status, which means error
+    private static final short FRC_STATUS_ERROR = 0xFF;
+
+    // mask of FRC response time in FRC params
+    private static final int FRC_RESPONSE_TIME_MASK = 0b01110000;
+
+    // length of PData of OS Load Code - flags, address, length and checksum
+    private static final int LOAD_CODE_DATA_LENGTH = 7;
+
+    // flag of OS Load Code, which means loading of the code, not only verification
+    private static final int LOAD_CODE_FLAG_LOAD = 0x01;
+
+    // flag of OS Load Code, which means IQRF plugin instead of DPA handler
+    private static final int LOAD_CODE_FLAG_IQRF_PLUGIN = 0x02;
+
+    // initial values of checksums of DPA handler and IQRF plugin
+    private static final int HANDLER_CHECKSUM_INIT = 0x0001;
+    private static final int IQRF_PLUGIN_CHECKSUM_INIT = 0x0003;
+
+
+    /**
+     * Settings of the simulated network.
+     */
+    public static final class Settings {
+
+        /** Default delay [in ms] of delivery of confirmation. */
+        public static final long CONFIRMATION_DELAY_DEFAULT = 10;
+
+        /** Default delay [in ms] of response of local device. */
+        public static final long LOCAL_RESPONSE_DELAY_DEFAULT = 10;
+
+        /** Default time [in ms] of bonding of a node. */
+        public static final long BONDING_TIME_DEFAULT = 10000;
+
+        /** Default time [in ms] of discovery, per one node. */
+        public static final long DISCOVERY_TIME_PER_NODE_DEFAULT = 100;
+
+        private final RF_Mode rfMode;
+        private final DCTR dctr;
+        private final double hopLossRate;
+        private final long seed;
+        private final long confirmationDelay;
+        private final long localResponseDelay;
+        private final long bondingTime;
+        private final long discoveryTimePerNode;
+
+
+        public static final class Builder {
+            private RF_Mode rfMode = WaitingTimeCounter.RF_MODE_DEEFAULT;
+            private DCTR dctr = WaitingTimeCounter.DCTR_DEFAULT;
+            private double hopLossRate = 0;
+            private long seed = 0;
+            private long confirmationDelay = CONFIRMATION_DELAY_DEFAULT;
+            private long localResponseDelay = LOCAL_RESPONSE_DELAY_DEFAULT;
+            private long bondingTime = BONDING_TIME_DEFAULT;
+            private long discoveryTimePerNode = DISCOVERY_TIME_PER_NODE_DEFAULT;
+
+            public Builder rfMode(RF_Mode rfMode) {
+                this.rfMode = rfMode;
+                return this;
+            }
+
+            public Builder dctr(DCTR dctr) {
+                this.dctr = dctr;
+                return this;
+            }
+
+            public Builder hopLossRate(double hopLossRate) {
+                this.hopLossRate = hopLossRate;
+                return this;
+            }
+
+            public Builder seed(long seed) {
+                this.seed = seed;
+                return this;
+            }
+
+            public Builder confirmationDelay(long confirmationDelay) {
+                this.confirmationDelay = confirmationDelay;
+                return this;
+            }
+
+            public Builder localResponseDelay(long localResponseDelay) {
+                this.localResponseDelay = localResponseDelay;
+                return this;
+            }
+
+            public Builder bondingTime(long bondingTime) {
+                this.bondingTime = bondingTime;
+                return this;
+            }
+
+            public Builder discoveryTimePerNode(long discoveryTimePerNode) {
+                this.discoveryTimePerNode = discoveryTimePerNode;
+                return this;
+            }
+
+            public Settings build() {
+                return new Settings(this);
+            }
+        }
+
+        private Settings(Builder builder) {
+            if ( builder.rfMode == null ) {
+                throw new IllegalArgumentException("RF mode cannot be null.");
+            }
+            if ( builder.dctr == null ) {
+                throw new IllegalArgumentException("DCTR cannot be null.");
+            }
+            if ( builder.hopLossRate < 0 || builder.hopLossRate > 1 ) {
+                throw new IllegalArgumentException("Hop loss rate must be within <0, 1>.");
+            }
+            if (
+                builder.confirmationDelay < 0 || builder.localResponseDelay < 0
+                || builder.bondingTime < 0 || builder.discoveryTimePerNode < 0
+            ) {
+                throw new IllegalArgumentException("Delays must be nonnegative.");
+            }
+
+            this.rfMode = builder.rfMode;
+            this.dctr = builder.dctr;
+            this.hopLossRate = builder.hopLossRate;
+            this.seed = builder.seed;
+            this.confirmationDelay = builder.confirmationDelay;
+            this.localResponseDelay = builder.localResponseDelay;
+            this.bondingTime = builder.bondingTime;
+            this.discoveryTimePerNode = builder.discoveryTimePerNode;
+        }
+
+        /**
+         * @return RF mode
+         */
+        public RF_Mode getRfMode() {
+            return rfMode;
+        }
+
+        /**
+         * @return DCTR HW type
+         */
+        public DCTR getDctr() {
+            return dctr;
+        }
+
+        /**
+         * @return probability of loss of a message at each hop
+         */
+        public double getHopLossRate() {
+            return hopLossRate;
+        }
+
+        /**
+         * @return seed of random numbers generator
+         */
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * @return delay [in ms] of delivery of confirmation
+         */
+        public long getConfirmationDelay() {
+            return confirmationDelay;
+        }
+
+        /**
+         * @return delay [in ms] of response of local device
+         */
+        public long getLocalResponseDelay() {
+            return localResponseDelay;
+        }
+
+        /**
+         * @return time [in ms] of bonding of a node
+         */
+        public long getBondingTime() {
+            return bondingTime;
+        }
+
+        /**
+         * @return time [in ms] of discovery, per one node
+         */
+        public long getDiscoveryTimePerNode() {
+            return discoveryTimePerNode;
+        }
+    }
+
+
+    // reply of a device on a request
+    private static final class Reply {
+        final DPA_ResponseCode responseCode;
+        final short[] data;
+        final long processingTime;
+
+        Reply(DPA_ResponseCode responseCode, short[] data, long processingTime) {
+            this.responseCode = responseCode;
+            this.data = data;
+            this.processingTime = processingTime;
+        }
+
+        static Reply ok(short... data) {
+            return new Reply(DPA_ResponseCode.NO_ERROR, data, 0);
+        }
+
+        static Reply error(DPA_ResponseCode responseCode) {
+            return new Reply(responseCode, new short[0], 0);
+        }
+    }
+
+
+    // settings
+    private final Settings settings;
+
+    // devices - indexed by address
+    private final SimulatedNode[] devices;
+
+    // bonded and discovered nodes
+    private final boolean[] bonded;
+    private final boolean[] discovered;
+
+    // random numbers for losses
+    private final Random random;
+
+    // FRC params of coordinator
+    private short frcParams = 0;
+
+    // data collected by the last FRC
+    private final short[] frcData = new short[FRC_DATA_LENGTH];
+
+    // hops settings of coordinator
+    private short requestHops = 0xFF;
+    private short responseHops = 0xFF;
+
+    // blocks of network info of coordinator received by restore
+    private short[] restoredInfo = null;
+    private int restoredBlocksNum = 0;
+
+    // executor of deliveries - in real time mode
+    private ScheduledExecutorService deliveryExecutor = null;
+
+    // clock to schedule deliveries on - in virtual time mode
+    private final VirtualClock virtualClock;
+
+    // indicates, whether the network has been started
+    private boolean running = false;
+
+    // receiver of delivered messages
+    private volatile NetworkLayerListener receiver = null;
+
+    // statistics
+    private final AtomicLong requestsNum = new AtomicLong();
+    private final AtomicLong confirmationsNum = new AtomicLong();
+    private final AtomicLong responsesNum = new AtomicLong();
+    private final AtomicLong lostNum = new AtomicLong();
+
+
+    private static Settings checkSettings(Settings settings) {
+        if ( settings == null ) {
+            throw new IllegalArgumentException("Settings cannot be null.");
+        }
+        return settings;
+    }
+
+    /**
+     * Creates new simulated network, which consists of coordinator and
+     * specified nodes. All nodes are bonded and discovered.
+     *
+     * @param nodes nodes of the network
+     * @param settings settings of the network
+     * @throws IllegalArgumentException if some of the nodes has address of
+     *         the coordinator or there are more nodes with the same address
+     */
+    public SimulatedNetwork(Collection<SimulatedNode> nodes, Settings settings) {
+        this(nodes, settings, null);
+    }
+
+    /**
+     * Creates new simulated network, which consists of coordinator and
+     * specified nodes and which runs in virtual time of specified clock.
+     * All nodes are bonded and discovered.
+     * <p>
+     * Confirmations and responses are delivered by the thread, which advances
+     * the clock. Byte accessor using this network should use waiting time
+     * counter created with the same clock.
+     *
+     * @param nodes nodes of the network
+     * @param settings settings of the network
+     * @param virtualClock clock to run in. If {@code null}, the network runs
+     *        in real time.
+     * @throws IllegalArgumentException if some of the nodes has address of
+     *         the coordinator or there are more nodes with the same address
+     */
+    public SimulatedNetwork(
+            Collection<SimulatedNode> nodes, Settings settings, VirtualClock virtualClock
+    ) {
+        this.settings = checkSettings(settings);
+        this.virtualClock = virtualClock;
+        this.devices = new SimulatedNode[ADDRESSES_NUM];
+        this.bonded = new boolean[ADDRESSES_NUM];
+        this.discovered = new boolean[ADDRESSES_NUM];
+
+        int coordAddr = ProtocolProperties.NADR_Properties.IQMESH_COORDINATOR_ADDRESS;
+        devices[coordAddr] = new SimulatedNode.Builder(coordAddr).hops(0).build();
+
+        for ( SimulatedNode node : nodes ) {
+            if ( node.getAddress() == coordAddr ) {
+                throw new IllegalArgumentException("Node cannot have address of the coordinator.");
+            }
+            if ( devices[node.getAddress()] != null ) {
+                throw new IllegalArgumentException("Duplicate node address: " + node.getAddress());
+            }
+            devices[node.getAddress()] = node;
+            bonded[node.getAddress()] = true;
+            discovered[node.getAddress()] = true;
+        }
+
+        this.random = new Random(settings.getSeed());
+    }
+
+    /**
+     * Creates new simulated network with specified number of nodes addressed
+     * from 1. Nodes are evenly spread into distances from 1 to {@code maxHops}
+     * hops.
+     *
+     * @param nodesNum number of nodes
+     * @param maxHops maximal number of hops
+     * @param settings settings of the network
+     * @return simulated network
+     */
+    public static SimulatedNetwork create(int nodesNum, int maxHops, Settings settings) {
+        return create(nodesNum, maxHops, settings, null);
+    }
+
+    /**
+     * Creates new simulated network with specified number of nodes addressed
+     * from 1, which runs in virtual time of specified clock. Nodes are evenly
+     * spread into distances from 1 to {@code maxHops} hops.
+     *
+     * @param nodesNum number of nodes
+     * @param maxHops maximal number of hops
+     * @param settings settings of the network
+     * @param virtualClock clock to run in. If {@code null}, the network runs
+     *        in real time.
+     * @return simulated network
+     */
+    public static SimulatedNetwork create(
+            int nodesNum, int maxHops, Settings settings, VirtualClock virtualClock
+    ) {
+        if ( nodesNum < 0 || nodesNum > ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX ) {
+            throw new IllegalArgumentException("Invalid number of nodes: " + nodesNum);
+        }
+        if ( maxHops <= 0 ) {
+            throw new IllegalArgumentException("Maximal number of hops must be positive.");
+        }
+
+        SimulatedNode[] nodes = new SimulatedNode[nodesNum];
+        for ( int nodeId = 0; nodeId < nodesNum; nodeId++ ) {
+            int address = nodeId + 1;
+            nodes[nodeId] = new SimulatedNode.Builder(address)
+                    .hops(1 + nodeId % maxHops)
+                    .build();
+        }
+        return new SimulatedNetwork(Arrays.asList(nodes), settings, virtualClock);
+    }
+
+
+    /**
+     * Starts the network. Confirmations and responses will be delivered to
+     * specified receiver.
+     * @param receiver receiver of confirmations and responses
+     */
+    public synchronized void start(NetworkLayerListener receiver) {
+        if ( receiver == null ) {
+            throw new IllegalArgumentException("Receiver cannot be null.");
+        }
+        if ( running ) {
+            throw new IllegalStateException("Simulated network already started.");
+        }
+
+        this.receiver = receiver;
+        if ( virtualClock == null ) {
+            this.deliveryExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "simulated-network");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        running = true;
+
+        logger.info("Simulated network started: {} nodes", getBondedNodesNum());
+    }
+
+    /**
+     * Stops the network. Not yet delivered messages are discarded.
+     */
+    public synchronized void stop() {
+        if ( !running ) {
+            return;
+        }
+
+        if ( deliveryExecutor != null ) {
+            deliveryExecutor.shutdownNow();
+            try {
+                deliveryExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+                logger.warn("Stopping of simulated network interrupted");
+            }
+            deliveryExecutor = null;
+        }
+        running = false;
+        receiver = null;
+
+        logger.info("Simulated network stopped");
+    }
+
+    /**
+     * Returns device with specified address.
+     * @param address address of the device
+     * @return device with {@code address}, or {@code null} if there is no
+     *         such device
+     */
+    public synchronized SimulatedNode getDevice(int address) {
+        if ( address < 0 || address >= ADDRESSES_NUM ) {
+            return null;
+        }
+        return devices[address];
+    }
+
+    /**
+     * @return settings of the network
+     */
+    public Settings getSettings() {
+        return settings;
+    }
+
+    /**
+     * @return number of bonded nodes
+     */
+    public synchronized int getBondedNodesNum() {
+        int bondedNum = 0;
+        for ( boolean isBonded : bonded ) {
+            if ( isBonded ) {
+                bondedNum++;
+            }
+        }
+        return bondedNum;
+    }
+
+    /**
+     * @return number of requests passed into the network
+     */
+    public long getRequestsNum() {
+        return requestsNum.get();
+    }
+
+    /**
+     * @return number of delivered confirmations
+     */
+    public long getConfirmationsNum() {
+        return confirmationsNum.get();
+    }
+
+    /**
+     * @return number of delivered responses
+     */
+    public long getResponsesNum() {
+        return responsesNum.get();
+    }
+
+    /**
+     * @return number of requests or responses lost during routing
+     */
+    public long getLostNum() {
+        return lostNum.get();
+    }
+
+
+    // delivers specified message to the receiver after specified delay
+    private void deliver(final short[] message, long delay, final boolean isConfirmation) {
+        if ( !running ) {
+            logger.warn("Simulated network not running, message discarded: {}", Arrays.toString(message));
+            return;
+        }
+
+        Runnable delivery = new Runnable() {
+            @Override
+            public void run() {
+                NetworkLayerListener currReceiver = receiver;
+                if ( currReceiver == null ) {
+                    return;
+                }
+                if ( isConfirmation ) {
+                    confirmationsNum.incrementAndGet();
+                } else {
+                    responsesNum.incrementAndGet();
+                }
+                currReceiver.onGetData(message);
+            }
+        };
+
+        if ( virtualClock != null ) {
+            virtualClock.schedule(delivery, delay);
+        } else {
+            deliveryExecutor.schedule(delivery, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // indicates, whether a message routed over specified number of hops was lost
+    private boolean isLost(int hops) {
+        if ( settings.getHopLossRate() == 0 ) {
+            return false;
+        }
+        for ( int hop = 0; hop <= hops; hop++ ) {
+            if ( random.nextDouble() < settings.getHopLossRate() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // returns maximal number of hops in the network
+    private int getMaxHops() {
+        int maxHops = 0;
+        for ( int address = 1; address < ADDRESSES_NUM; address++ ) {
+            if ( bonded[address] && devices[address].getHops() > maxHops ) {
+                maxHops = devices[address].getHops();
+            }
+        }
+        return maxHops;
+    }
+
+    private static short lowByte(int value) {
+        return (short)(value & 0xFF);
+    }
+
+    private static short highByte(int value) {
+        return (short)((value >> 8) & 0xFF);
+    }
+
+    // creates confirmation of specified request
+    private static short[] createConfirmation(
+            short[] request, int hops, int timeslotLength, int hopsResponse
+    ) {
+        short[] confirmation = new short[ProtocolProperties.CONFIRMATION_LENGTH];
+        System.arraycopy(request, 0, confirmation, 0, ProtocolProperties.FOURSOME_LENGTH);
+        confirmation[ProtocolProperties.RESPONSE_CODE_POS] = (short)DPA_ResponseCode.CONFIRMATION.getIntValue();
+        confirmation[ProtocolProperties.DPA_VALUE_POS] = DPA_VALUE;
+        confirmation[ProtocolProperties.HOPS_POS] = lowByte(hops);
+        confirmation[ProtocolProperties.TIMESLOT_LENGTH_POS] = lowByte(timeslotLength / 10);
+        confirmation[ProtocolProperties.HOPS_RESPONSE_POS] = lowByte(hopsResponse);
+        return confirmation;
+    }
+
+    // creates response of specified device on specified request
+    private static short[] createResponse(short[] request, SimulatedNode device, Reply reply) {
+        int dataStartPos = ProtocolProperties.DPA_VALUE_POS + 1;
+        short[] response = new short[dataStartPos + reply.data.length];
+        response[ProtocolProperties.NADR_START] = lowByte(device.getAddress());
+        response[ProtocolProperties.NADR_START + 1] = 0;
+        response[ProtocolProperties.PNUM_POS] = request[ProtocolProperties.PNUM_POS];
+        response[ProtocolProperties.PCMD_POS] = (short)(request[ProtocolProperties.PCMD_POS] | 0x80);
+        response[ProtocolProperties.HWPID_START] = lowByte(device.getHwpid());
+        response[ProtocolProperties.HWPID_START + 1] = highByte(device.getHwpid());
+        response[ProtocolProperties.RESPONSE_CODE_POS] = (short)reply.responseCode.getIntValue();
+        response[ProtocolProperties.DPA_VALUE_POS] = DPA_VALUE;
+        System.arraycopy(reply.data, 0, response, dataStartPos, reply.data.length);
+        return response;
+    }
+
+    private static int getHwpid(short[] request) {
+        return request[ProtocolProperties.HWPID_START] | (request[ProtocolProperties.HWPID_START + 1] << 8);
+    }
+
+    private static int getNadr(short[] request) {
+        return request[ProtocolProperties.NADR_START] | (request[ProtocolProperties.NADR_START + 1] << 8);
+    }
+
+
+    /**
+     * Passes specified request into the network.
+     * @param request request to process
+     * @throws IllegalArgumentException if {@code request} is not a valid DPA request
+     */
+    public synchronized void processRequest(short[] request) {
+        if ( request == null || request.length < ProtocolProperties.FOURSOME_LENGTH ) {
+            throw new IllegalArgumentException("Invalid request: " + Arrays.toString(request));
+        }
+        requestsNum.incrementAndGet();
+
+        int nadr = getNadr(request);
+
+        // local device
+        if (
+            nadr == ProtocolProperties.NADR_Properties.IQMESH_COORDINATOR_ADDRESS
+            || nadr == ProtocolProperties.NADR_Properties.LOCAL_DEVICE_ADDRESS
+        ) {
+            SimulatedNode coordinator = devices[ProtocolProperties.NADR_Properties.IQMESH_COORDINATOR_ADDRESS];
+            Reply reply = processRequestOnDevice(request, coordinator);
+            deliver(
+                createResponse(request, coordinator, reply),
+                settings.getLocalResponseDelay() + reply.processingTime,
+                false
+            );
+            return;
+        }
+
+        int requestTimeslot = WaitingTimeCounter.getTimeslotLength(
+                request.length - ProtocolProperties.PDATA_START_POS, settings.getRfMode(), settings.getDctr()
+        );
+
+        // broadcast - each online bonded node processes the request, no responses
+        if ( nadr == ProtocolProperties.NADR_Properties.IQMESH_BROADCAST_ADDRESS ) {
+            int maxHops = getMaxHops();
+            deliver(
+                createConfirmation(request, maxHops, requestTimeslot, 0),
+                settings.getConfirmationDelay(),
+                true
+            );
+
+            for ( int address = 1; address < ADDRESSES_NUM; address++ ) {
+                if ( bonded[address] && devices[address].isOnline() ) {
+                    if ( isLost(devices[address].getHops()) ) {
+                        lostNum.incrementAndGet();
+                    } else {
+                        processRequestOnDevice(request, devices[address]);
+                    }
+                }
+            }
+            return;
+        }
+
+        // nodes not known to the coordinator are routed over the whole network
+        boolean isBonded = ( nadr < ADDRESSES_NUM ) && bonded[nadr];
+        SimulatedNode node = isBonded? devices[nadr] : null;
+        int hops = isBonded? node.getHops() : getMaxHops();
+        int hopsResponse = isBonded? node.getHopsResponse() : hops;
+
+        deliver(
+            createConfirmation(request, hops, requestTimeslot, hopsResponse),
+            settings.getConfirmationDelay(),
+            true
+        );
+
+        if ( node == null || !node.isOnline() ) {
+            logger.debug("Request to unreachable node {}", nadr);
+            return;
+        }
+
+        if ( isLost(hops) ) {
+            lostNum.incrementAndGet();
+            return;
+        }
+
+        Reply reply = processRequestOnDevice(request, node);
+
+        if ( isLost(hopsResponse) ) {
+            lostNum.incrementAndGet();
+            return;
+        }
+
+        int responseTimeslot = WaitingTimeCounter.getTimeslotLength(
+                reply.data.length, settings.getRfMode(), settings.getDctr()
+        );
+        long routingTime = (hops + 1) * requestTimeslot + (hopsResponse + 1) * responseTimeslot;
+
+        deliver(
+            createResponse(request, node, reply),
+            settings.getConfirmationDelay() + routingTime + reply.processingTime,
+            false
+        );
+    }
+
+
+    // processes specified request on specified device and returns the reply
+    private Reply processRequestOnDevice(short[] request, SimulatedNode device) {
+        int hwpid = getHwpid(request);
+        if ( hwpid != HWPID_ANY && hwpid != device.getHwpid() ) {
+            return Reply.error(DPA_ResponseCode.ERROR_HWPROFILE);
+        }
+
+        short pnum = ProtocolProperties.getPeripheralNumber(request);
+        short pcmd = ProtocolProperties.getCommand(request);
+        short[] pData = ProtocolProperties.getData(request);
+
+        if ( pnum == ProtocolProperties.PNUM_Properties.DEVICE_EXPLORATION ) {
+            return processEnumeration(pcmd, device);
+        }
+
+        if ( !device.isPeripheralSupported(pnum) ) {
+            return Reply.error(DPA_ResponseCode.ERROR_PNUM);
+        }
+
+        switch ( pnum ) {
+            case ProtocolProperties.PNUM_Properties.COORDINATOR:
+                return processCoordinator(pcmd, pData);
+            case ProtocolProperties.PNUM_Properties.NODE:
+                return processNode(pcmd, device);
+            case ProtocolProperties.PNUM_Properties.OS:
+                return processOS(pcmd, pData, device);
+            case ProtocolProperties.PNUM_Properties.EEPROM:
+                return processMemory(
+                    pcmd, pData, device.getEeprom(), 1,
+                    EEPROM.Command.READ.asByteValue(), EEPROM.Command.WRITE.asByteValue()
+                );
+            case ProtocolProperties.PNUM_Properties.EEEPROM:
+                return processMemory(
+                    pcmd, pData, device.getEeeprom(), 2,
+                    EEEPROM.Command.EXTENDED_READ.asByteValue(),
+                    EEEPROM.Command.EXTEDNED_WRITE.asByteValue()
+                );
+            case ProtocolProperties.PNUM_Properties.RAM:
+                return processMemory(
+                    pcmd, pData, device.getRam(), 1,
+                    RAM.Command.READ.asByteValue(), RAM.Command.WRITE.asByteValue()
+                );
+            case ProtocolProperties.PNUM_Properties.LEDR:
+            case ProtocolProperties.PNUM_Properties.LEDG:
+                return processLed(pnum, pcmd, device);
+            case ProtocolProperties.PNUM_Properties.IO:
+                return processIO(pcmd);
+            case ProtocolProperties.PNUM_Properties.THERMOMETER:
+                return processThermometer(pcmd);
+            case ProtocolProperties.PNUM_Properties.FRC:
+                return processFRC(pcmd, pData);
+            default:
+                return Reply.error(DPA_ResponseCode.ERROR_PCMD);
+        }
+    }
+
+    // peripheral enumeration
+    private Reply processEnumeration(short pcmd, SimulatedNode device) {
+        if ( pcmd != 0x3F ) {
+            return Reply.error(DPA_ResponseCode.ERROR_PCMD);
+        }
+
+        short[] data = new short[12];
+        data[0] = DPA_VERSION[0];
+        data[1] = DPA_VERSION[1];
+
+        // user peripherals number
+        data[2] = 0;
+
+        // embedded peripherals bitmap
+        for ( int pnum = 0; pnum < 32; pnum++ ) {
+            if ( device.isPeripheralSupported(pnum) ) {
+                data[3 + pnum / 8] |= (short)(1 << (pnum % 8));
+            }
+        }
+
+        data[7] = lowByte(device.getHwpid());
+        data[8] = highByte(device.getHwpid());
+
+        // HWPID version
+        data[9] = 0;
+        data[10] = 0;
+
+        // flags - bit 0 indicates STD mode
+        data[11] = (short)(( settings.getRfMode() == RF_Mode.STD )? 1 : 0);
+        return Reply.ok(data);
+    }
+
+    // returns bitmap of nodes
+    private static short[] createNodesBitmap(boolean[] nodes) {
+        short[] bitmap = new short[NODES_BITMAP_LENGTH];
+        for ( int address = 1; address < NODES_BITMAP_LENGTH * 8; address++ ) {
+            if ( nodes[address] ) {
+                bitmap[address / 8] |= (short)(1 << (address % 8));
+            }
+        }
+        return bitmap;
+    }
+
+    // returns network info of coordinator - bitmaps of bonded and discovered nodes
+    private short[] createNetworkInfo() {
+        short[] info = new short[NETWORK_INFO_BLOCKS_NUM * NETWORK_INFO_BLOCK_LENGTH];
+        System.arraycopy(createNodesBitmap(bonded), 0, info, 0, NODES_BITMAP_LENGTH);
+        System.arraycopy(createNodesBitmap(discovered), 0, info, NODES_BITMAP_LENGTH, NODES_BITMAP_LENGTH);
+        return info;
+    }
+
+    // stores next block of network info, the info is applied after 
+    // its last block has come
+    private Reply restoreNetworkInfo(short[] block) {
+        if ( restoredInfo == null ) {
+            restoredInfo = new short[NETWORK_INFO_BLOCKS_NUM * NETWORK_INFO_BLOCK_LENGTH];
+            restoredBlocksNum = 0;
+        }
+        System.arraycopy(
+            block, 0, restoredInfo, restoredBlocksNum * NETWORK_INFO_BLOCK_LENGTH, NETWORK_INFO_BLOCK_LENGTH
+        );
+        restoredBlocksNum++;
+        if ( restoredBlocksNum < NETWORK_INFO_BLOCKS_NUM ) {
+            return Reply.ok();
+        }
+
+        for ( int address = 1; address < NODES_BITMAP_LENGTH * 8; address++ ) {
+            short mask = (short)(1 << (address % 8));
+            bonded[address] = ( (restoredInfo[address / 8] & mask) != 0 );
+            discovered[address] = ( (restoredInfo[NODES_BITMAP_LENGTH + address / 8] & mask) != 0 );
+            if ( bonded[address] && devices[address] == null ) {
+                devices[address] = new SimulatedNode.Builder(address).hops(1).build();
+            }
+        }
+        restoredInfo = null;
+        return Reply.ok();
+    }
+
+    // returns first free address for bonding
+    private int getFreeAddress() {
+        for (
+            int address = ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MIN;
+            address <= ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX;
+            address++
+        ) {
+            if ( !bonded[address] ) {
+                return address;
+            }
+        }
+        return -1;
+    }
+
+    private Reply processCoordinator(short pcmd, short[] pData) {
+        if ( pcmd == Coordinator.Command.GET_ADDRESSING_INFO.asByteValue() ) {
+            return Reply.ok(lowByte(getBondedNodesNum()), DID);
+        }
+
+        if ( pcmd == Coordinator.Command.GET_DISCOVERED_NODES.asByteValue() ) {
+            return Reply.ok(createNodesBitmap(discovered));
+        }
+
+        if ( pcmd == Coordinator.Command.GET_BONDED_NODES.asByteValue() ) {
+            return Reply.ok(createNodesBitmap(bonded));
+        }
+
+        if ( pcmd == Coordinator.Command.CLEAR_ALL_BONDS.asByteValue() ) {
+            Arrays.fill(bonded, false);
+            Arrays.fill(discovered, false);
+            return Reply.ok();
+        }
+
+        if ( pcmd == Coordinator.Command.BOND_NODE.asByteValue() ) {
+            if ( pData.length != 2 ) {
+                return Reply.error(DPA_ResponseCode.ERROR_DATA_LEN);
+            }
+
+            int address = ( pData[0] == 0 )? getFreeAddress() : pData[0];
+            if (
+                address < ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MIN
+                || address > ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX
+                || bonded[address]
+            ) {
+                return Reply.error(DPA_ResponseCode.ERROR_ADDR);
+            }
+
+            if ( devices[address] == null ) {
+                devices[address] = new SimulatedNode.Builder(address).hops(1).build();
+            }
+            bonded[address] = true;
+            return new Reply(
+                DPA_ResponseCode.NO_ERROR,
+                new short[] { lowByte(address), lowByte(getBondedNodesNum()) },
+                settings.getBondingTime()
+            );
+        }
+
+        if (
+            pcmd == Coordinator.Command.REMOVE_BONDED_NODE.asByteValue()
+            || pcmd == Coordinator.Command.REBOND_NODE.asByteValue()
+        ) {
+            if ( pData.length != 1 ) {
+                return Reply.error(DPA_ResponseCode.ERROR_DATA_LEN);
+            }
+
+            int address = pData[0];
+            if (
+                address < ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MIN
+                || address > ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX
+            ) {
+                return Reply.error(DPA_ResponseCode.ERROR_ADDR);
+            }
+
+            boolean bond = ( pcmd == Coordinator.Command.REBOND_NODE.asByteValue() );
+            if ( bond && devices[address] == null ) {
+                devices[address] = new SimulatedNode.Builder(address).hops(1).build();
+            }
+            bonded[address] = bond;
+            if ( !bond ) {
+                discovered[address] = false;
+            }
+            return Reply.ok(lowByte(getBondedNodesNum()));
+        }
+
+        if ( pcmd == Coordinator.Command.RUN_DISCOVERY.asByteValue() ) {
+            int discoveredNum = 0;
+            for ( int address = 1; address < ADDRESSES_NUM; address++ ) {
+                discovered[address] = bonded[address] && devices[address].isOnline();
+                if ( discovered[address] ) {
+                    discoveredNum++;
+                }
+            }
+            return new Reply(
+                DPA_ResponseCode.NO_ERROR,
+                new short[] { lowByte(discoveredNum) },
+                settings.getDiscoveryTimePerNode() * getBondedNodesNum()
+            );
+        }
+
+        if ( pcmd == Coordinator.Command.BACKUP.asByteValue() ) {
+            if ( pData.length != 1 ) {
+                return Reply.error(DPA_ResponseCode.ERROR_DATA_LEN);
+            }
+            short[] info = createNetworkInfo();
+            int blockStart = pData[0] * NETWORK_INFO_BLOCK_LENGTH;
+            if ( blockStart >= info.length ) {
+                return Reply.error(DPA_ResponseCode.ERROR_DATA);
+            }
+            return Reply.ok(Arrays.copyOfRange(info, blockStart, blockStart + NETWORK_INFO_BLOCK_LENGTH));
+        }
+
+        if ( pcmd == Coordinator.Command.RESTORE.asByteValue() ) {
+            if ( pData.length != NETWORK_INFO_BLOCK_LENGTH ) {
+                return Reply.error(DPA_ResponseCode.ERROR_DATA_LEN);
+            }
+            return restoreNetworkInfo(pData);
+        }
+
+        if ( pcmd == Coordinator.Command.SET_HOPS.asByteValue() ) {
+            if ( pData.length != 2 ) {
+                return Reply.error(DPA_ResponseCode.ERROR_DATA_LEN);
+            }
+            Reply reply = Reply.ok(requestHops, responseHops);
+            requestHops = pData[0];
+            responseHops = pData[1];
+            return reply;
+        }
+
+        return Reply.error(DPA_ResponseCode.ERROR_PCMD);
+    }
+
+    private Reply processNode(short pcmd, SimulatedNode device) {
+        if ( pcmd == Node.Command.READ.asByteValue() ) {
+            return Reply.ok(new short[12]);
+        }
+
+        if ( pcmd == Node.Command.REMOVE_BOND.asByteValue() ) {
+            bonded[device.getAddress()] = false;
+            discovered[device.getAddress()] = false;
+            return Reply.ok();
+        }
+
+        return Reply.error(DPA_ResponseCode.ERROR_PCMD);
+    }
+
+    private Reply processOS(short pcmd, short[] pData, SimulatedNode device) {
+        if ( pcmd == OS.Command.READ.asByteValue() ) {
+            long mid = device.getModuleId();
+            return Reply.ok(
+                lowByte((int)mid), lowByte((int)(mid >> 8)),
+                lowByte((int)(mid >> 16)), lowByte((int)(mid >> 24)),
+                (short)0x41,                // OS version
+                (short)0x48,                // MCU type
+                (short)0x08, (short)0x08,   // OS build
+                DPA_VALUE,                  // RSSI
+                (short)0x30,                // supply voltage
+                (short)0x00,                // flags
+                (short)0x31                 // slot limits
+            );
+        }
+
+        if (
+            pcmd == OS.Command.RESET.asByteValue()
+            || pcmd == OS.Command.RESTART.asByteValue()
+        ) {
+            return Reply.ok();
+        }
+
+        if ( pcmd == OS.Command.BATCH.asByteValue() ) {
+            return processBatch(pData, device);
+        }
+
+        if ( pcmd == OS.Command.LOAD_CODE.asByteValue() ) {
+            return processLoadCode(pData, device);
+        }
+
+        return Reply.error(DPA_ResponseCode.ERROR_PCMD);
+    }
+
+    // creates request for specified device from request embedded in specified 
+    // data at specified position - length, PNUM, PCMD, HWPID and PData,
+    // returns null if the embedded request is not valid
+    private static short[] createEmbeddedRequest(short[] data, int pos, SimulatedNode device) {
+        int length = data[pos];
+        if ( length < EMBEDDED_REQUEST_HEADER_LENGTH || pos + length > data.length ) {
+            return null;
+        }
+
+        short[] embeddedRequest = new short[ProtocolProperties.NADR_LENGTH + length - 1];
+        embeddedRequest[ProtocolProperties.NADR_START] = lowByte(device.getAddress());
+        System.arraycopy(
+            data, pos + 1, embeddedRequest, ProtocolProperties.PNUM_POS, length - 1
+        );
+        return embeddedRequest;
+    }
+
+    // processes OS Batch - zero length of embedded request terminates the batch
+    private Reply processBatch(short[] pData, SimulatedNode device) {
+        int pos = 0;
+        while ( pos < pData.length && pData[pos] != 0 ) {
+            short[] embeddedRequest = createEmbeddedRequest(pData, pos, device);
+            if ( embeddedRequest == null ) {
+                return Reply.error(DPA_ResponseCode.ERROR_DATA);
+            }
+            processRequestOnDevice(embeddedRequest, device);
+            pos += pData[pos];
+        }
+        return Reply.ok();
+    }
+
+    // Fletcher-16 checksum used by DPA
+    private static int getChecksum(int initialValue, short[] data, int start, int length) {
+        int checksumLow = initialValue & 0xFF;
+        int checksumHigh = (initialValue >> 8) & 0xFF;
+        for ( int pos = start; pos < start + length; pos++ ) {
+            checksumLow += data[pos];
+            if ( checksumLow > 0xFF ) {
+                checksumLow = (checksumLow + 1) & 0xFF;
+            }
+            checksumHigh += checksumLow;
+            if ( checksumHigh > 0xFF ) {
+                checksumHigh = (checksumHigh + 1) & 0xFF;
+            }
+        }
+        return (checksumHigh << 8) | checksumLow;
+    }
+
+    // processes OS Load Code - the code is checked against its checksum, 
+    // the check fails with an error
+    private static Reply processLoadCode(short[] pData, SimulatedNode device) {
+        if ( pData.length != LOAD_CODE_DATA_LENGTH ) {
+            return Reply.error(DPA_ResponseCode.ERROR_DATA_LEN);
+        }
+
+        int address = pData[1] | (pData[2] << 8);
+        int length = pData[3] | (pData[4] << 8);
+        int checksum = pData[5] | (pData[6] << 8);
+        short[] eeeprom = device.getEeeprom();
+        if ( address + length > eeeprom.length ) {
+            return Reply.error(DPA_ResponseCode.ERROR_ADDR);
+        }
+
+        int initialValue = ( (pData[0] & LOAD_CODE_FLAG_IQRF_PLUGIN) != 0 )?
+                IQRF_PLUGIN_CHECKSUM_INIT : HANDLER_CHECKSUM_INIT;
+        if ( getChecksum(initialValue, eeeprom, address, length) != checksum ) {
+            return Reply.error(DPA_ResponseCode.ERROR_FAIL);
+        }
+
+        if ( (pData[0] & LOAD_CODE_FLAG_LOAD) != 0 ) {
+            logger.debug("Code loaded on device {}", device.getAddress());
+        }
+        return Reply.ok((short)1);
+    }
+
+    // processes READ and WRITE commands of memory peripherals
+    private static Reply processMemory(
+            short pcmd, short[] pData, short[] memory, int addressLength,
+            short readCmd, short writeCmd
+    ) {
+        if ( pData.length < addressLength ) {
+            return Reply.error(DPA_ResponseCode.ERROR_DATA_LEN);
+        }
+
+        int address = pData[0];
+        if ( addressLength == 2 ) {
+            address |= pData[1] << 8;
+        }
+
+        if ( pcmd == readCmd ) {
+            if ( pData.length != addressLength + 1 ) {
+                return Reply.error(DPA_ResponseCode.ERROR_DATA_LEN);
+            }
+            int length = pData[addressLength];
+            if ( length > ProtocolProperties.PDATA_MAX_LENGTH ) {
+                return Reply.error(DPA_ResponseCode.ERROR_DATA_LEN);
+            }
+            if ( address + length > memory.length ) {
+                return Reply.error(DPA_ResponseCode.ERROR_ADDR);
+            }
+            return Reply.ok(Arrays.copyOfRange(memory, address, address + length));
+        }
+
+        if ( pcmd == writeCmd ) {
+            int length = pData.length - addressLength;
+            if ( length == 0 ) {
+                return Reply.error(DPA_ResponseCode.ERROR_DATA_LEN);
+            }
+            if ( address + length > memory.length ) {
+                return Reply.error(DPA_ResponseCode.ERROR_ADDR);
+            }
+            System.arraycopy(pData, addressLength, memory, address, length);
+            return Reply.ok();
+        }
+
+        return Reply.error(DPA_ResponseCode.ERROR_PCMD);
+    }
+
+    private static Reply processLed(short pnum, short pcmd, SimulatedNode device) {
+        boolean isRed = ( pnum == ProtocolProperties.PNUM_Properties.LEDR );
+        boolean isOn = isRed? device.isLedrOn() : device.isLedgOn();
+
+        if ( pcmd == LEDR.Command.GET.asByteValue() || pcmd == LEDG.Command.GET.asByteValue() ) {
+            return Reply.ok((short)(isOn? 1 : 0));
+        }
+
+        if ( pcmd == LEDR.Command.ON.asByteValue() || pcmd == LEDG.Command.ON.asByteValue() ) {
+            isOn = true;
+        } else if ( pcmd == LEDR.Command.OFF.asByteValue() || pcmd == LEDG.Command.OFF.asByteValue() ) {
+            isOn = false;
+        } else if ( pcmd != LEDR.Command.PULSE.asByteValue() && pcmd != LEDG.Command.PULSE.asByteValue() ) {
+            return Reply.error(DPA_ResponseCode.ERROR_PCMD);
+        }
+
+        if ( isRed ) {
+            device.setLedrOn(isOn);
+        } else {
+            device.setLedgOn(isOn);
+        }
+        return Reply.ok();
+    }
+
+    private static Reply processIO(short pcmd) {
+        if ( pcmd == IO.Command.GET.asByteValue() ) {
+            return Reply.ok(new short[5]);
+        }
+
+        if (
+            pcmd == IO.Command.DIRECTION.asByteValue()
+            || pcmd == IO.Command.SET.asByteValue()
+        ) {
+            return Reply.ok();
+        }
+
+        return Reply.error(DPA_ResponseCode.ERROR_PCMD);
+    }
+
+    private static Reply processThermometer(short pcmd) {
+        if ( pcmd != Thermometer.Command.READ.asByteValue() ) {
+            return Reply.error(DPA_ResponseCode.ERROR_PCMD);
+        }
+
+        // 22 degrees of Celsius
+        return Reply.ok((short)22, (short)0x60, (short)0x01);
+    }
+
+    private Reply processFRC(short pcmd, short[] pData) {
+        if ( pcmd == FRC.Command.SET_FRC_PARAMS.asByteValue() ) {
+            if ( pData.length != 1 ) {
+                return Reply.error(DPA_ResponseCode.ERROR_DATA_LEN);
+            }
+            Reply reply = Reply.ok(frcParams);
+            frcParams = pData[0];
+            return reply;
+        }
+
+        if ( pcmd == FRC.Command.EXTRA_RESULT.asByteValue() ) {
+            return Reply.ok(Arrays.copyOfRange(frcData, FRC.DATA_LENGTH, FRC_DATA_LENGTH));
+        }
+
+        if ( pcmd == FRC.Command.SEND.asByteValue() ) {
+            if ( pData.length < 1 ) {
+                return Reply.error(DPA_ResponseCode.ERROR_DATA_LEN);
+            }
+            boolean[] selected = new boolean[ADDRESSES_NUM];
+            for ( int address = 1; address < ADDRESSES_NUM; address++ ) {
+                selected[address] = bonded[address];
+            }
+            return processFRC_Send(pData[0], Arrays.copyOfRange(pData, 1, pData.length), selected, false);
+        }
+
+        if ( pcmd == FRC.Command.SEND_SELECTIVE.asByteValue() ) {
+            int userDataPos = 1 + FRC.SELECTED_NODES_LENGTH;
+            if ( pData.length < userDataPos ) {
+                return Reply.error(DPA_ResponseCode.ERROR_DATA_LEN);
+            }
+            boolean[] selected = new boolean[ADDRESSES_NUM];
+            for ( int address = 1; address < FRC.SELECTED_NODES_LENGTH * 8; address++ ) {
+                selected[address] = bonded[address] 
+                        && ((pData[1 + address / 8] >> (address % 8)) & 1) == 1;
+            }
+            return processFRC_Send(
+                pData[0], Arrays.copyOfRange(pData, userDataPos, pData.length), selected, true
+            );
+        }
+
+        return Reply.error(DPA_ResponseCode.ERROR_PCMD);
+    }
+
+    // sends FRC to selected nodes - results of selective FRC are stored 
+    // in the order of selected nodes, starting at index 1
+    private Reply processFRC_Send(
+            short frcCommand, short[] userData, boolean[] selected, boolean isSelective
+    ) {
+        Arrays.fill(frcData, (short)0);
+        if ( frcCommand != FRC.ACKNOWLEDGED_BROADCAST_BITS || userData.length == 0 ) {
+            return Reply.ok(FRC_STATUS_ERROR);
+        }
+
+        int nodesNum = 0;
+        for ( int address = 1; address < ADDRESSES_NUM; address++ ) {
+            if ( !selected[address] ) {
+                continue;
+            }
+            nodesNum++;
+            
+            SimulatedNode node = devices[address];
+            if ( !node.isOnline() || isLost(node.getHops()) || isLost(node.getHopsResponse()) ) {
+                continue;
+            }
+            
+            int index = isSelective? nodesNum : address;
+            if ( index >= FRC_BIT_1_POS * 8 ) {
+                continue;
+            }
+            frcData[index / 8] |= 1 << (index % 8);
+            
+            short[] embeddedRequest = createEmbeddedRequest(userData, 0, node);
+            if ( embeddedRequest != null 
+                && processRequestOnDevice(embeddedRequest, node).responseCode == DPA_ResponseCode.NO_ERROR
+            ) {
+                frcData[FRC_BIT_1_POS + index / 8] |= 1 << (index % 8);
+            }
+        }
+
+        // each node has its own timeslot, coordinator waits for response time at the end
+        int timeslot = WaitingTimeCounter.getTimeslotLength(
+                userData.length, settings.getRfMode(), settings.getDctr()
+        );
+        long responseTime = 0;
+        for ( FRC_ResponseTime frcResponseTime : FRC_ResponseTime.values() ) {
+            if ( frcResponseTime.getId() == (frcParams & FRC_RESPONSE_TIME_MASK) ) {
+                responseTime = frcResponseTime.getTimeAsInt();
+            }
+        }
+        long processingTime = (nodesNum + 1) * 2 * timeslot + responseTime;
+
+        short[] data = new short[1 + FRC.DATA_LENGTH];
+        data[0] = (short)Math.min(nodesNum, FRC_STATUS_NODES_MAX);
+        System.arraycopy(frcData, 0, data, 1, FRC.DATA_LENGTH);
+        return new Reply(DPA_ResponseCode.NO_ERROR, data, processingTime);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.simulation;
+
+import com.microrisc.dpa22x.byteaccess.network.AbstractNetworkLayer;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerException;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerListener;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Network layer connected to simulated IQMESH network.
+ * <p>
+ * Serves as a replacement of real hardware - for testing and benchmarking
+ * of upper layers.
+ *
+ * @author agent
+ */
+public final class SimulatedNetworkLayer
+extends AbstractNetworkLayer implements NetworkLayerListener {
+
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(SimulatedNetworkLayer.class);
+
+
+    // simulated network
+    private final SimulatedNetwork network;
+
+    // indicates, whether the layer has been started
+    private volatile boolean started = false;
+
+
+    private static SimulatedNetwork checkNetwork(SimulatedNetwork network) {
+        if ( network == null ) {
+            throw new IllegalArgumentException("Simulated network cannot be null.");
+        }
+        return network;
+    }
+
+    /**
+     * Creates new network layer connected to specified simulated network.
+     * @param network simulated network to connect to
+     */
+    public SimulatedNetworkLayer(SimulatedNetwork network) {
+        this.network = checkNetwork(network);
+        logger.debug("Simulated network layer created");
+    }
+
+    /**
+     * @return connected simulated network
+     */
+    public SimulatedNetwork getNetwork() {
+        return network;
+    }
+
+    @Override
+    public void start() throws NetworkLayerException {
+        logger.debug("start - start");
+
+        network.start(this);
+        started = true;
+
+        logger.info("Simulated network layer started");
+        logger.debug("start - end");
+    }
+
+    @Override
+    public void sendData(short[] data) throws NetworkLayerException {
+        logger.debug("sendData - start: data={}", Arrays.toString(data));
+
+        if ( !started ) {
+            throw new NetworkLayerException("Simulated network layer not started.");
+        }
+
+        try {
+            network.processRequest(data);
+        } catch ( IllegalArgumentException ex ) {
+            throw new NetworkLayerException(ex);
+        }
+
+        logger.debug("sendData - end");
+    }
+
+    @Override
+    public void terminateAndRelease() {
+        logger.debug("terminateAndRelease - start: ");
+
+        started = false;
+        unregisterListener();
+        network.stop();
+
+        logger.info("Simulated network layer terminated and released");
+        logger.debug("terminateAndRelease - end");
+    }
+
+    @Override
+    public void onGetData(short[] data) {
+        logger.debug("onGetData - start: data={}", Arrays.toString(data));
+
+        fireDataReceived(data);
+
+        logger.debug("onGetData - end");
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.simulation;
+
+import com.microrisc.dpa22x.DCTR;
+import com.microrisc.dpa22x.RF_Mode;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayer;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerFactory;
+import com.microrisc.dpa22x.byteaccess.network.NetworkLayerFactoryException;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Simulated network layer factory.
+ * <p>
+ * Configuration items: <br>
+ * - <b>networkLayer.type.simulation.nodesNum</b>: number of nodes.
+ *      If no such configuration key is found, {@link #NODES_NUM_DEFAULT} is used. <br>
+ *
+ * - <b>networkLayer.type.simulation.maxHops</b>: maximal number of hops.
+ *      If no such configuration key is found, {@link #MAX_HOPS_DEFAULT} is used. <br>
+ *
+ * - <b>networkLayer.type.simulation.rfMode</b>: RF mode - STD or LP.
+ *      If no such configuration key is found, STD mode is used. <br>
+ *
+ * - <b>networkLayer.type.simulation.dctr</b>: DCTR HW type - 5xD or 7xD.
+ *      If no such configuration key is found, 7xD is used. <br>
+ *
+ * - <b>networkLayer.type.simulation.hopLossRate</b>: probability of loss
+ *      of a message at each hop. If no such configuration key is found,
+ *      no messages are lost. <br>
+ *
+ * - <b>networkLayer.type.simulation.seed</b>: seed of random numbers
+ *      generator. If no such configuration key is found, 0 is used.
+ *
+ * @author agent
+ */
+public final class SimulatedNetworkLayerFactory implements NetworkLayerFactory {
+
+    /** Default number of nodes. */
+    public static final int NODES_NUM_DEFAULT = 10;
+
+    /** Default maximal number of hops. */
+    public static final int MAX_HOPS_DEFAULT = 1;
+
+
+    private static RF_Mode parseRF_Mode(String rfModeStr) throws NetworkLayerFactoryException {
+        switch ( rfModeStr ) {
+            case "STD":
+                return RF_Mode.STD;
+            case "LP":
+                return RF_Mode.LP;
+            default:
+                throw new NetworkLayerFactoryException("Unknown value of RF mode: " + rfModeStr);
+        }
+    }
+
+    private static DCTR parseDctr(String dctrStr) throws NetworkLayerFactoryException {
+        switch ( dctrStr ) {
+            case "5xD":
+                return DCTR.DCTR_5xD;
+            case "7xD":
+                return DCTR.DCTR_7xD;
+            default:
+                throw new NetworkLayerFactoryException("Unknown value of DCTR HW: " + dctrStr);
+        }
+    }
+
+    @Override
+    public NetworkLayer getNetworkLayer(Configuration configuration) throws NetworkLayerFactoryException {
+        SimulatedNetwork.Settings.Builder settingsBuilder = new SimulatedNetwork.Settings.Builder();
+
+        String rfModeStr = configuration.getString("networkLayer.type.simulation.rfMode", "");
+        if ( !rfModeStr.isEmpty() ) {
+            settingsBuilder.rfMode(parseRF_Mode(rfModeStr));
+        }
+
+        String dctrStr = configuration.getString("networkLayer.type.simulation.dctr", "");
+        if ( !dctrStr.isEmpty() ) {
+            settingsBuilder.dctr(parseDctr(dctrStr));
+        }
+
+        int nodesNum = configuration.getInt("networkLayer.type.simulation.nodesNum", NODES_NUM_DEFAULT);
+        int maxHops = configuration.getInt("networkLayer.type.simulation.maxHops", MAX_HOPS_DEFAULT);
+
+        try {
+            SimulatedNetwork.Settings settings = settingsBuilder
+                .hopLossRate(configuration.getDouble("networkLayer.type.simulation.hopLossRate", 0))
+                .seed(configuration.getLong("networkLayer.type.simulation.seed", 0))
+                .build();
+
+            return new SimulatedNetworkLayer(SimulatedNetwork.create(nodesNum, maxHops, settings));
+        } catch ( Exception ex ) {
+            throw new NetworkLayerFactoryException(ex);
+        }
+    }
+}
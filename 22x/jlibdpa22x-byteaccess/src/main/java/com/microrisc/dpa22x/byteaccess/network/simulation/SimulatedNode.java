@@ -0,0 +1,307 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.network.simulation;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+
+/**
+ * Simulated IQMESH node.
+ * <p>
+ * Holds node's position in the network (number of hops), its identification
+ * and contents of its memories. Node can be switched off and on during the
+ * simulation run.
+ *
+ * @author agent
+ */
+public final class SimulatedNode {
+
+    /** Size of EEPROM [in bytes]. */
+    public static final int EEPROM_SIZE = 0xC0;
+
+    /** Size of RAM [in bytes]. */
+    public static final int RAM_SIZE = 0x30;
+
+    /** Size of external EEPROM [in bytes]. */
+    public static final int EEEPROM_SIZE = 0x4000;
+
+    /** Default HWPID. */
+    public static final int HWPID_DEFAULT = 0x0000;
+
+    /** Embedded peripherals, which are supported by nodes by default. */
+    public static final int[] NODE_PERIPHERALS_DEFAULT = {
+        ProtocolProperties.PNUM_Properties.NODE,
+        ProtocolProperties.PNUM_Properties.OS,
+        ProtocolProperties.PNUM_Properties.EEPROM,
+        ProtocolProperties.PNUM_Properties.EEEPROM,
+        ProtocolProperties.PNUM_Properties.RAM,
+        ProtocolProperties.PNUM_Properties.LEDR,
+        ProtocolProperties.PNUM_Properties.LEDG,
+        ProtocolProperties.PNUM_Properties.IO,
+        ProtocolProperties.PNUM_Properties.THERMOMETER
+    };
+
+    /** Embedded peripherals, which are supported by coordinator by default. */
+    public static final int[] COORDINATOR_PERIPHERALS_DEFAULT = {
+        ProtocolProperties.PNUM_Properties.COORDINATOR,
+        ProtocolProperties.PNUM_Properties.OS,
+        ProtocolProperties.PNUM_Properties.EEPROM,
+        ProtocolProperties.PNUM_Properties.EEEPROM,
+        ProtocolProperties.PNUM_Properties.RAM,
+        ProtocolProperties.PNUM_Properties.LEDR,
+        ProtocolProperties.PNUM_Properties.LEDG,
+        ProtocolProperties.PNUM_Properties.IO,
+        ProtocolProperties.PNUM_Properties.THERMOMETER,
+        ProtocolProperties.PNUM_Properties.FRC
+    };
+
+
+    // address
+    private final int address;
+
+    // number of hops used to deliver a request to the node
+    private final int hops;
+
+    // number of hops used to deliver a response back to the coordinator
+    private final int hopsResponse;
+
+    // HWPID
+    private final int hwpid;
+
+    // module ID
+    private final long moduleId;
+
+    // supported embedded peripherals
+    private final boolean[] supportedPeripherals;
+
+    // memories
+    private final short[] eeprom;
+    private final short[] ram;
+    private short[] eeeprom;
+
+    // LEDs state
+    private boolean ledrOn;
+    private boolean ledgOn;
+
+    // indicates, whether the node is switched on
+    private volatile boolean online;
+
+
+    /**
+     * Builder of simulated nodes.
+     */
+    public static final class Builder {
+        private final int address;
+        private int hops = 1;
+        private int hopsResponse = -1;
+        private int hwpid = HWPID_DEFAULT;
+        private long moduleId = -1;
+        private int[] peripherals = null;
+        private boolean online = true;
+
+        public Builder(int address) {
+            this.address = address;
+        }
+
+        public Builder hops(int hops) {
+            this.hops = hops;
+            return this;
+        }
+
+        public Builder hopsResponse(int hopsResponse) {
+            this.hopsResponse = hopsResponse;
+            return this;
+        }
+
+        public Builder hwpid(int hwpid) {
+            this.hwpid = hwpid;
+            return this;
+        }
+
+        public Builder moduleId(long moduleId) {
+            this.moduleId = moduleId;
+            return this;
+        }
+
+        public Builder peripherals(int... peripherals) {
+            this.peripherals = peripherals;
+            return this;
+        }
+
+        public Builder online(boolean online) {
+            this.online = online;
+            return this;
+        }
+
+        public SimulatedNode build() {
+            return new SimulatedNode(this);
+        }
+    }
+
+
+    private static int checkAddress(int address) {
+        if (
+            address < ProtocolProperties.NADR_Properties.IQMESH_COORDINATOR_ADDRESS
+            || address > ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX
+        ) {
+            throw new IllegalArgumentException("Invalid node address: " + address);
+        }
+        return address;
+    }
+
+    private static int checkHops(int hops) {
+        if ( hops < 0 || hops > ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX ) {
+            throw new IllegalArgumentException("Invalid number of hops: " + hops);
+        }
+        return hops;
+    }
+
+    private SimulatedNode(Builder builder) {
+        this.address = checkAddress(builder.address);
+        this.hops = checkHops(builder.hops);
+        this.hopsResponse = ( builder.hopsResponse == -1 )?
+                this.hops : checkHops(builder.hopsResponse);
+        this.hwpid = builder.hwpid & 0xFFFF;
+        this.moduleId = ( builder.moduleId == -1 )?
+                (0x81000000L | address) : (builder.moduleId & 0xFFFFFFFFL);
+
+        this.supportedPeripherals = new boolean[ProtocolProperties.PNUM_Properties.DEVICE_EXPLORATION];
+        int[] peripherals = builder.peripherals;
+        if ( peripherals == null ) {
+            peripherals = ( address == ProtocolProperties.NADR_Properties.IQMESH_COORDINATOR_ADDRESS )?
+                    COORDINATOR_PERIPHERALS_DEFAULT : NODE_PERIPHERALS_DEFAULT;
+        }
+        for ( int pnum : peripherals ) {
+            this.supportedPeripherals[pnum] = true;
+        }
+
+        this.eeprom = new short[EEPROM_SIZE];
+        this.ram = new short[RAM_SIZE];
+        this.eeeprom = null;
+        this.online = builder.online;
+    }
+
+
+    /**
+     * @return address of the node
+     */
+    public int getAddress() {
+        return address;
+    }
+
+    /**
+     * @return number of hops used to deliver a request to the node
+     */
+    public int getHops() {
+        return hops;
+    }
+
+    /**
+     * @return number of hops used to deliver a response back to the coordinator
+     */
+    public int getHopsResponse() {
+        return hopsResponse;
+    }
+
+    /**
+     * @return HWPID of the node
+     */
+    public int getHwpid() {
+        return hwpid;
+    }
+
+    /**
+     * @return module ID of the node
+     */
+    public long getModuleId() {
+        return moduleId;
+    }
+
+    /**
+     * Indicates, whether the node supports specified embedded peripheral.
+     * @param pnum peripheral number
+     * @return {@code true} if the peripheral is supported <br>
+     *         {@code false} otherwise
+     */
+    public boolean isPeripheralSupported(int pnum) {
+        if ( pnum < 0 || pnum >= supportedPeripherals.length ) {
+            return false;
+        }
+        return supportedPeripherals[pnum];
+    }
+
+    /**
+     * @return {@code true} if the node is switched on <br>
+     *         {@code false} otherwise
+     */
+    public boolean isOnline() {
+        return online;
+    }
+
+    /**
+     * Switches the node on or off. Switched off node does not respond to any
+     * requests.
+     * @param online {@code true} to switch the node on, {@code false} to
+     *        switch it off
+     */
+    public void setOnline(boolean online) {
+        this.online = online;
+    }
+
+
+    // MEMORIES ACCESS - only the simulated network calls them
+
+    short[] getEeprom() {
+        return eeprom;
+    }
+
+    short[] getRam() {
+        return ram;
+    }
+
+    short[] getEeeprom() {
+        if ( eeeprom == null ) {
+            eeeprom = new short[EEEPROM_SIZE];
+        }
+        return eeeprom;
+    }
+
+    boolean isLedrOn() {
+        return ledrOn;
+    }
+
+    void setLedrOn(boolean ledrOn) {
+        this.ledrOn = ledrOn;
+    }
+
+    boolean isLedgOn() {
+        return ledgOn;
+    }
+
+    void setLedgOn(boolean ledgOn) {
+        this.ledgOn = ledgOn;
+    }
+
+    @Override
+    public String toString() {
+        return ("{ " +
+                "address=" + address +
+                ", hops=" + hops +
+                ", hops response=" + hopsResponse +
+                ", HWPID=" + hwpid +
+                ", online=" + online +
+                " }");
+    }
+}
@@ -194,9 +194,7 @@ extends AbstractNetworkLayer {
                 // remove data from queue and send it to listener
                 while ( !consumedData.isEmpty() ) {
                     short[] userData = consumedData.poll();
-                    if ( listener != null ) {
-                        listener.onGetData( userData );
-                    }
+                    fireDataReceived( userData );
                 }
             }
         }
@@ -54,6 +54,18 @@ public class GWETH_DataTransformer {
     /** Maximal length of DATA part. */
     public static final int MAX_DATA_LENGTH = 497;
     
+    /** Result of write in GW answer - OK. */
+    public static final int WRITE_RESULT_OK = 0x50;
+    
+    /** Result of write in GW answer - error in data. */
+    public static final int WRITE_RESULT_ERROR_DATA = 0x60;
+    
+    /** Result of write in GW answer - SPI of TR module is busy. */
+    public static final int WRITE_RESULT_ERROR_BUSY = 0x61;
+    
+    /** Result of write in GW answer - no TR module. */
+    public static final int WRITE_RESULT_ERROR_NO_MODULE = 0x62;
+    
     
     /** Returns value of data length fields in specified message. */
     private static int getDataSizeField(short[] data) {
@@ -209,18 +221,14 @@ public class GWETH_DataTransformer {
     }
     
     
-    /**
-     * Transform specified Simply request data into GW message format.
-     * @param data request data to transform
-     * @return transformed data - message for GW
-     */
-    public static short[] transformRequestData(short[] data) {
+    /** Creates GW message with specified command, subcommand and data. */
+    private static short[] createMessage(int cmd, int subcmd, short[] data) {
         checkRequest(data);
         short[] transformedData = new short[HEADER_SIZE + data.length + CRC_SIZE];
          
         transformedData[GW_ADR_POS] = GW_ADR_VALUE;
-        transformedData[CMD_POS] = CMD_WRITE_VALUE;
-        transformedData[SUBCMD_POS] = SUBCMD_WRITE_VALUE;
+        transformedData[CMD_POS] = (short)cmd;
+        transformedData[SUBCMD_POS] = (short)subcmd;
         
         System.arraycopy(data, 0, transformedData, HEADER_SIZE, data.length);
         
@@ -235,6 +243,60 @@ public class GWETH_DataTransformer {
         return transformedData;
     }
     
+    
+    /**
+     * Transform specified Simply request data into GW message format.
+     * @param data request data to transform
+     * @return transformed data - message for GW
+     */
+    public static short[] transformRequestData(short[] data) {
+        return createMessage(CMD_WRITE_VALUE, SUBCMD_WRITE_VALUE, data);
+    }
+    
+    /**
+     * Transform specified data coming from TR module into asynchronous 
+     * GW message, i.e. into the message GW sends to its client.
+     * @param data data to transform
+     * @return transformed data - asynchronous message from GW
+     */
+    public static short[] transformAsynchronousData(short[] data) {
+        return createMessage(CMD_ASYNC_VALUE, SUBCMD_ASYNC_VALUE, data);
+    }
+    
+    /**
+     * Creates answer of GW on specified write request.
+     * @param request write request to answer on
+     * @param writeResult result of the write, one of the {@code WRITE_RESULT_*} 
+     *        values
+     * @return answer on {@code request}
+     */
+    public static short[] createWriteAnswer(short[] request, int writeResult) {
+        checkMessageFromGW(request);
+        return createMessage(request[CMD_POS] | CMD_ANSWER_INDICATION, writeResult, new short[0]);
+    }
+    
+    /**
+     * Returns {@code true} if the specified message is request to write data 
+     * into TR module.
+     * @param message message to check
+     * @return {@code true} if the specified message is write request <br>
+     *         {@code false} otherwise
+     */
+    public static boolean isWriteRequest(short[] message) {
+        checkMessageFromGW(message);
+        return (message[CMD_POS] == CMD_WRITE_VALUE);
+    }
+    
+    /**
+     * Returns write result of specified GW answer.
+     * @param answer answer of GW
+     * @return write result of specified answer
+     */
+    public static int getWriteResult(short[] answer) {
+        checkMessageFromGW(answer);
+        return answer[SUBCMD_POS];
+    }
+    
     /**
      * Returns {@code true} if the specified message is asynchrounous message.
      * @param message message to check for asynchronity
@@ -204,7 +204,7 @@ public final class UdpNetworkLayer extends AbstractNetworkLayer {
                 while ( !consumedData.isEmpty() ) {
                     short[] packetData = consumedData.poll();
 
-                    if ( listener == null ) {
+                    if ( !hasListeners() ) {
                         continue;
                     }
 
@@ -223,9 +223,7 @@ public final class UdpNetworkLayer extends AbstractNetworkLayer {
                     
                     // we are interested only in asynchronous messages, not in GW own answers 
                     if ( isAsync ) {
-                        if ( listener != null ) {
-                            listener.onGetData(userData);
-                        }
+                        fireDataReceived(userData);
                     }
                 }
             }
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.retry;
+
+/**
+ * Classes of DPA requests according to the effect of their repeated execution.
+ * Retry policy uses the class to decide, whether a failed request can be
+ * sent again, when it is not known, if it has been executed.
+ * 
+ * @author agent
+ */
+public enum IdempotencyClass {
+    
+    /** Request does not change state of the device - always safe to repeat. */
+    READ,
+    
+    /** Repeated execution of request has the same effect as single execution. */
+    IDEMPOTENT_WRITE,
+    
+    /** Repeated execution of request can have different effect, e.g. bonding. */
+    NON_IDEMPOTENT;
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.retry;
+
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Handle of asynchronously sent request. 
+ * <p>
+ * Gives access to the final result of the request. Cancellation of the handle
+ * prevents next attempts of the request, attempt already in progress is
+ * finished.
+ * 
+ * @author agent
+ */
+public final class RequestHandle implements Future<RequestResult> {
+    
+    // request
+    private final short[] request;
+    
+    // counts down, when the request is finished
+    private final CountDownLatch finished = new CountDownLatch(1);
+    
+    // final result
+    private RequestResult result = null;
+    
+    // indicates, whether the request was cancelled
+    private boolean cancelled = false;
+    
+    // number of performed attempts
+    private int attemptsNum = 0;
+    
+    
+    /**
+     * Creates new handle of specified request.
+     * @param request request
+     */
+    RequestHandle(short[] request) {
+        this.request = request;
+    }
+    
+    // increments and returns number of attempts, returns -1 if the request is finished
+    synchronized int startAttempt() {
+        if ( finished.getCount() == 0 ) {
+            return -1;
+        }
+        return ++attemptsNum;
+    }
+    
+    // sets final result, returns false if the request was already finished
+    synchronized boolean finish(RequestResult result) {
+        if ( finished.getCount() == 0 ) {
+            return false;
+        }
+        this.result = result;
+        finished.countDown();
+        return true;
+    }
+    
+    /**
+     * @return the request
+     */
+    public short[] getRequest() {
+        return request;
+    }
+    
+    /**
+     * @return number of attempts performed so far
+     */
+    public synchronized int getAttemptsNum() {
+        return attemptsNum;
+    }
+    
+    @Override
+    public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+        if ( finished.getCount() == 0 ) {
+            return false;
+        }
+        cancelled = true;
+        finished.countDown();
+        return true;
+    }
+    
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+    
+    @Override
+    public boolean isDone() {
+        return ( finished.getCount() == 0 );
+    }
+    
+    /**
+     * Waits for final result of the request.
+     * 
+     * @return final result of the request
+     * @throws CancellationException if the request was cancelled
+     * @throws InterruptedException if waiting was interrupted
+     */
+    @Override
+    public RequestResult get() throws InterruptedException {
+        finished.await();
+        return getResult();
+    }
+    
+    @Override
+    public RequestResult get(long timeout, TimeUnit unit) 
+            throws InterruptedException, TimeoutException 
+    {
+        if ( !finished.await(timeout, unit) ) {
+            throw new TimeoutException("Request not finished.");
+        }
+        return getResult();
+    }
+    
+    // returns result of finished request
+    private synchronized RequestResult getResult() {
+        if ( cancelled ) {
+            throw new CancellationException("Request cancelled.");
+        }
+        return result;
+    }
+}
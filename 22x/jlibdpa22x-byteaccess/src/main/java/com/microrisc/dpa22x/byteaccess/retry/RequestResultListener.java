@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.retry;
+
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+
+/**
+ * Listener of results of asynchronously sent requests.
+ * 
+ * @author agent
+ */
+public interface RequestResultListener {
+    
+    /**
+     * Called, when processing of request is finished - after successful
+     * attempt or after the last failed one. The method is called from 
+     * a thread of the accessor and should return quickly.
+     * 
+     * @param handle handle of the request
+     * @param result final result of the request
+     */
+    void onRequestResult(RequestHandle handle, RequestResult result);
+}
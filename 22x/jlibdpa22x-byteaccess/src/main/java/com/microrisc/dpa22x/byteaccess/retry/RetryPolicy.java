@@ -0,0 +1,396 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.retry;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.byteaccess.errors.ErrorType;
+import com.microrisc.dpa22x.byteaccess.validation.RequestClassifier;
+import com.microrisc.dpa22x.peripherals.Coordinator;
+import com.microrisc.dpa22x.peripherals.EEEPROM;
+import com.microrisc.dpa22x.peripherals.EEPROM;
+import com.microrisc.dpa22x.peripherals.FRC;
+import com.microrisc.dpa22x.peripherals.IO;
+import com.microrisc.dpa22x.peripherals.LEDG;
+import com.microrisc.dpa22x.peripherals.LEDR;
+import com.microrisc.dpa22x.peripherals.OS;
+import com.microrisc.dpa22x.peripherals.PWM;
+import com.microrisc.dpa22x.peripherals.RAM;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Policy of retries of failed requests.
+ * <p>
+ * Whether a failed request is retried, depends on the type of the error and 
+ * on the {@link IdempotencyClass idempotency class} of the request. For each
+ * error type, the policy holds the set of idempotency classes, whose requests 
+ * can be retried. Idempotency classes of requests are looked up in the table
+ * keyed by PNUM and PCMD, which is prefilled with classes of writes of 
+ * standard DPA peripherals and can be overriden. Requests not found in 
+ * the table are {@link IdempotencyClass#READ reads}, if the 
+ * {@link RequestClassifier} of the policy classifies them so.
+ * <p>
+ * Delays between attempts grow exponentially from the larger of minimal 
+ * backoff and predicted routing time of the request, up to the maximal backoff.
+ * Each delay is shortened by random part given by the jitter, so that
+ * retries of more requests do not hit the network at the same time. 
+ * 
+ * @author agent
+ */
+public final class RetryPolicy {
+    
+    /** Default maximal number of attempts, including the first one. */
+    public static final int MAX_ATTEMPTS_DEFAULT = 3;
+    
+    /** Default minimal backoff [in ms]. */
+    public static final long MIN_BACKOFF_DEFAULT = 100;
+    
+    /** Default maximal backoff [in ms]. */
+    public static final long MAX_BACKOFF_DEFAULT = 5000;
+    
+    /** Default jitter. */
+    public static final double JITTER_DEFAULT = 0.5;
+    
+    /** Indicates, that the overall deadline of a request is not limited. */
+    public static final long DEADLINE_NOT_LIMITED = -1;
+    
+    /** Policy with default settings. */
+    public static final RetryPolicy DEFAULT = new Builder().build();
+    
+    
+    // maximal number of attempts
+    private final int maxAttempts;
+    
+    // minimal backoff
+    private final long minBackoff;
+    
+    // maximal backoff
+    private final long maxBackoff;
+    
+    // jitter
+    private final double jitter;
+    
+    // overall deadline of a request
+    private final long deadline;
+    
+    // idempotency classes of retryable requests for each error type
+    private final Map<ErrorType, Set<IdempotencyClass>> retryableClasses;
+    
+    // idempotency classes of commands, keyed by PNUM and PCMD
+    private final Map<Integer, IdempotencyClass> commandClasses;
+    
+    // idempotency classes of peripherals, keyed by PNUM
+    private final Map<Integer, IdempotencyClass> peripheralClasses;
+    
+    // classifier of reads
+    private final RequestClassifier requestClassifier;
+    
+    // idempotency class of requests not found in the tables
+    private final IdempotencyClass defaultClass;
+    
+    
+    // returns key of a command
+    private static int getCommandKey(int pnum, int pcmd) {
+        return (pnum << 8) | pcmd;
+    }
+    
+    
+    /**
+     * Builder of retry policies.
+     */
+    public static final class Builder {
+        private int maxAttempts = MAX_ATTEMPTS_DEFAULT;
+        private long minBackoff = MIN_BACKOFF_DEFAULT;
+        private long maxBackoff = MAX_BACKOFF_DEFAULT;
+        private double jitter = JITTER_DEFAULT;
+        private long deadline = DEADLINE_NOT_LIMITED;
+        private final Map<ErrorType, Set<IdempotencyClass>> retryableClasses 
+                = new EnumMap<>(ErrorType.class);
+        private final Map<Integer, IdempotencyClass> commandClasses = new HashMap<>();
+        private final Map<Integer, IdempotencyClass> peripheralClasses = new HashMap<>();
+        private RequestClassifier requestClassifier = RequestClassifier.DEFAULT;
+        private IdempotencyClass defaultClass = IdempotencyClass.NON_IDEMPOTENT;
+        
+        // fills in idempotency classes of writes of standard DPA peripherals
+        private void initIdempotencyClasses() {
+            idempotencyClass(Coordinator.PNUM, Coordinator.Command.SET_DPA_PARAM.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+            idempotencyClass(Coordinator.PNUM, Coordinator.Command.SET_HOPS.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+            
+            idempotencyClass(OS.PNUM, OS.Command.SET_USEC.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+            idempotencyClass(OS.PNUM, OS.Command.WRITE_HWP_CONFIGURATION_BYTE.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+            idempotencyClass(OS.PNUM, OS.Command.WTITE_HWP_CONFIGURATION.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+            
+            idempotencyClass(EEPROM.PNUM, EEPROM.Command.WRITE.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+            idempotencyClass(EEEPROM.PNUM, EEEPROM.Command.WRITE.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+            idempotencyClass(EEEPROM.PNUM, EEEPROM.Command.EXTEDNED_WRITE.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+            idempotencyClass(RAM.PNUM, RAM.Command.WRITE.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+            
+            idempotencyClass(LEDR.PNUM, LEDR.Command.ON.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+            idempotencyClass(LEDR.PNUM, LEDR.Command.OFF.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+            idempotencyClass(LEDG.PNUM, LEDG.Command.ON.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+            idempotencyClass(LEDG.PNUM, LEDG.Command.OFF.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+            
+            idempotencyClass(IO.PNUM, IO.Command.DIRECTION.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+            idempotencyClass(IO.PNUM, IO.Command.SET.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+            idempotencyClass(PWM.PNUM, PWM.Command.SET.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+            
+            idempotencyClass(FRC.PNUM, FRC.Command.SET_FRC_PARAMS.asByteValue(), IdempotencyClass.IDEMPOTENT_WRITE);
+        }
+        
+        /**
+         * Creates new builder. Requests, which has failed to be dispatched,
+         * are retried for all idempotency classes. Timeouted requests and 
+         * requests, whose result has failed to be received, are retried for 
+         * {@link IdempotencyClass#READ} and {@link IdempotencyClass#IDEMPOTENT_WRITE}
+         * classes. Other errors are not retried. Idempotency classes of 
+         * writes of standard DPA peripherals are filled in, reads are 
+         * classified by {@link RequestClassifier#DEFAULT}, requests of other 
+         * peripherals are {@link IdempotencyClass#NON_IDEMPOTENT}.
+         */
+        public Builder() {
+            retryOn(ErrorType.DISPATCH_REQUEST, IdempotencyClass.values());
+            retryOn(ErrorType.NETWORK_INTERNAL, IdempotencyClass.READ, IdempotencyClass.IDEMPOTENT_WRITE);
+            retryOn(ErrorType.RECEIVE_DATA, IdempotencyClass.READ, IdempotencyClass.IDEMPOTENT_WRITE);
+            initIdempotencyClasses();
+        }
+        
+        /**
+         * Sets maximal number of attempts, including the first one.
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+        
+        /**
+         * Sets minimal backoff [in ms].
+         */
+        public Builder minBackoff(long minBackoff) {
+            this.minBackoff = minBackoff;
+            return this;
+        }
+        
+        /**
+         * Sets maximal backoff [in ms].
+         */
+        public Builder maxBackoff(long maxBackoff) {
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+        
+        /**
+         * Sets maximal part of backoff, which is randomly cut off.
+         */
+        public Builder jitter(double jitter) {
+            this.jitter = jitter;
+            return this;
+        }
+        
+        /**
+         * Sets overall deadline [in ms] of a request. No next attempt is 
+         * scheduled, if its backoff would exceed the deadline.
+         */
+        public Builder deadline(long deadline) {
+            this.deadline = deadline;
+            return this;
+        }
+        
+        /**
+         * Sets idempotency classes of requests, which are retried on specified
+         * type of error. No class means, that the error is never retried.
+         */
+        public Builder retryOn(ErrorType errorType, IdempotencyClass... classes) {
+            Set<IdempotencyClass> classesSet = EnumSet.noneOf(IdempotencyClass.class);
+            classesSet.addAll(Arrays.asList(classes));
+            retryableClasses.put(errorType, classesSet);
+            return this;
+        }
+        
+        /**
+         * Sets idempotency class of specified command.
+         */
+        public Builder idempotencyClass(int pnum, int pcmd, IdempotencyClass idempotencyClass) {
+            commandClasses.put(getCommandKey(pnum, pcmd), idempotencyClass);
+            return this;
+        }
+        
+        /**
+         * Sets idempotency class of all commands of specified peripheral, 
+         * which have no class set individually.
+         */
+        public Builder idempotencyClass(int pnum, IdempotencyClass idempotencyClass) {
+            peripheralClasses.put(pnum, idempotencyClass);
+            return this;
+        }
+        
+        /**
+         * Sets classifier of reads, which are not found in the table.
+         */
+        public Builder requestClassifier(RequestClassifier requestClassifier) {
+            this.requestClassifier = requestClassifier;
+            return this;
+        }
+        
+        /**
+         * Sets idempotency class of requests, which have no class set.
+         */
+        public Builder defaultIdempotencyClass(IdempotencyClass idempotencyClass) {
+            this.defaultClass = idempotencyClass;
+            return this;
+        }
+        
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+    
+    private RetryPolicy(Builder builder) {
+        if ( builder.maxAttempts <= 0 ) {
+            throw new IllegalArgumentException("Maximal number of attempts must be positive.");
+        }
+        if ( builder.minBackoff < 0 || builder.maxBackoff < builder.minBackoff ) {
+            throw new IllegalArgumentException(
+                    "Backoffs must be nonnegative and the maximal one must not be less"
+                    + " then the minimal one."
+            );
+        }
+        if ( builder.jitter < 0 || builder.jitter > 1 ) {
+            throw new IllegalArgumentException("Jitter must be within the interval of <0, 1>.");
+        }
+        if ( builder.deadline < 0 && builder.deadline != DEADLINE_NOT_LIMITED ) {
+            throw new IllegalArgumentException("Invalid deadline: " + builder.deadline);
+        }
+        if ( builder.requestClassifier == null ) {
+            throw new IllegalArgumentException("Request classifier cannot be null.");
+        }
+        if ( builder.defaultClass == null ) {
+            throw new IllegalArgumentException("Default idempotency class cannot be null.");
+        }
+        
+        this.maxAttempts = builder.maxAttempts;
+        this.minBackoff = builder.minBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.jitter = builder.jitter;
+        this.deadline = builder.deadline;
+        this.retryableClasses = new EnumMap<>(builder.retryableClasses);
+        this.commandClasses = new HashMap<>(builder.commandClasses);
+        this.peripheralClasses = new HashMap<>(builder.peripheralClasses);
+        this.requestClassifier = builder.requestClassifier;
+        this.defaultClass = builder.defaultClass;
+    }
+    
+    /**
+     * @return maximal number of attempts, including the first one
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+    
+    /**
+     * @return minimal backoff [in ms]
+     */
+    public long getMinBackoff() {
+        return minBackoff;
+    }
+    
+    /**
+     * @return maximal backoff [in ms]
+     */
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+    
+    /**
+     * @return maximal part of backoff, which is randomly cut off
+     */
+    public double getJitter() {
+        return jitter;
+    }
+    
+    /**
+     * @return overall deadline [in ms] of a request or {@link #DEADLINE_NOT_LIMITED}
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+    
+    /**
+     * @return classifier of reads
+     */
+    public RequestClassifier getRequestClassifier() {
+        return requestClassifier;
+    }
+    
+    /**
+     * Returns idempotency class of specified request.
+     * 
+     * @param request request
+     * @return idempotency class of {@code request}
+     */
+    public IdempotencyClass getIdempotencyClass(short[] request) {
+        int pnum = ProtocolProperties.getPeripheralNumber(request);
+        int pcmd = ProtocolProperties.getCommand(request);
+        
+        IdempotencyClass idempotencyClass = commandClasses.get(getCommandKey(pnum, pcmd));
+        if ( idempotencyClass != null ) {
+            return idempotencyClass;
+        }
+        
+        if ( requestClassifier.isRead(request) ) {
+            return IdempotencyClass.READ;
+        }
+        
+        idempotencyClass = peripheralClasses.get(pnum);
+        return ( idempotencyClass != null )? idempotencyClass : defaultClass;
+    }
+    
+    /**
+     * Indicates, whether requests of specified idempotency class are retried
+     * on specified type of error.
+     * 
+     * @param errorType type of error
+     * @param idempotencyClass idempotency class of request
+     * @return {@code true} if the request is retried <br>
+     *         {@code false} otherwise
+     */
+    public boolean isRetryable(ErrorType errorType, IdempotencyClass idempotencyClass) {
+        Set<IdempotencyClass> classes = retryableClasses.get(errorType);
+        return ( classes != null && classes.contains(idempotencyClass) );
+    }
+    
+    /**
+     * Returns backoff before next attempt.
+     * 
+     * @param attempt number of failed attempts, starting from 1
+     * @param routingTime predicted routing time [in ms] of the request
+     * @param random generator of jitter
+     * @return backoff [in ms]
+     */
+    public long getBackoff(int attempt, long routingTime, Random random) {
+        long backoff = Math.max(minBackoff, routingTime);
+        for ( int i = 1; i < attempt && backoff < maxBackoff; i++ ) {
+            backoff *= 2;
+        }
+        backoff = Math.min(backoff, maxBackoff);
+        
+        return backoff - (long)(backoff * jitter * random.nextDouble());
+    }
+}
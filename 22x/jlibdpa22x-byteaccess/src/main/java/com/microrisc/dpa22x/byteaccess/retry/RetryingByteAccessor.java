@@ -0,0 +1,616 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.retry;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.byteaccess.ProcessingInfo;
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.byteaccess.accessors.AbstractByteAccessor;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessor;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorControlInterface;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorDecorator;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorException;
+import com.microrisc.dpa22x.byteaccess.accessors.CancellableRequest;
+import com.microrisc.dpa22x.byteaccess.accessors.StandardByteAccessor;
+import com.microrisc.dpa22x.byteaccess.errors.LibraryInternalError;
+import com.microrisc.dpa22x.byteaccess.errors.ProcessingError;
+import com.microrisc.dpa22x.byteaccess.topology.NetworkState;
+import com.microrisc.dpa22x.timing.Clock;
+import com.microrisc.dpa22x.timing.SystemClock;
+import com.microrisc.dpa22x.timing.VirtualClock;
+import com.microrisc.dpa22x.timing.WaitingTimeCounter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Byte accessor, which retries failed requests of underlying accessor 
+ * according to {@link RetryPolicy retry policy}.
+ * <p>
+ * Requests can be sent synchronously - by the methods of 
+ * {@link ByteAccessor} interface, or asynchronously - by the 
+ * {@code sendRequestAsync} methods. Asynchronous requests are processed by 
+ * the thread of the accessor and their backoffs are scheduled, so no thread 
+ * is blocked during waiting for next attempt. The thread of the accessor does
+ * not wait for results of attempts either - if the underlying accessor is 
+ * {@link StandardByteAccessor}, attempts are sent by its asynchronous
+ * interface, otherwise they are sent by separate threads. Attempts of requests 
+ * with limited deadline never last beyond the deadline.
+ * <p>
+ * Backoffs are based on predicted routing time of the request. If the 
+ * underlying accessor is {@link StandardByteAccessor} tracking the state 
+ * of the network, hops of addressed node are taken from the state.
+ * <p>
+ * Deadlines and backoffs are measured by the clock of waiting time counter 
+ * of the underlying accessor, if it is {@link AbstractByteAccessor}, 
+ * otherwise by the system clock. If the clock is {@link VirtualClock}, 
+ * backoffs of asynchronous requests are scheduled on it, so they pass only 
+ * when the virtual time is advanced.
+ * 
+ * @author agent
+ */
+public final class RetryingByteAccessor 
+implements ByteAccessorDecorator, ByteAccessorControlInterface {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(RetryingByteAccessor.class);
+    
+    
+    // underlying accessor
+    private final ByteAccessor accessor;
+    
+    // waiting time counter for prediction of routing times
+    private final WaitingTimeCounter waitingTimeCounter;
+    
+    // retry policy
+    private final RetryPolicy policy;
+    
+    // clock to measure deadlines and backoffs by
+    private final Clock clock;
+    
+    // generator of jitter
+    private final Random random = new Random();
+    
+    // requests in progress
+    private final Set<RetryTask> activeTasks 
+            = Collections.newSetFromMap(new ConcurrentHashMap<RetryTask, Boolean>());
+    
+    // default waiting timeout
+    private volatile long defaultWaitingTimeout = ByteAccessor.WAITING_TIMEOUT_NOT_LIMITED;
+    
+    // scheduler of asynchronous requests
+    private volatile ScheduledExecutorService scheduler = null;
+    
+    // executor of attempts by an accessor, which has no asynchronous interface
+    private volatile ExecutorService attemptExecutor = null;
+    
+    
+    private static ByteAccessor checkAccessor(ByteAccessor accessor) {
+        if ( accessor == null ) {
+            throw new IllegalArgumentException("Accessor cannot be null.");
+        }
+        return accessor;
+    }
+    
+    private static WaitingTimeCounter checkWaitingTimeCounter(WaitingTimeCounter waitingTimeCounter) {
+        if ( waitingTimeCounter == null ) {
+            throw new IllegalArgumentException("Waiting time counter cannot be null.");
+        }
+        return waitingTimeCounter;
+    }
+    
+    private static RetryPolicy checkPolicy(RetryPolicy policy) {
+        if ( policy == null ) {
+            throw new IllegalArgumentException("Retry policy cannot be null.");
+        }
+        return policy;
+    }
+    
+    private static long checkWaitingTimeout(long waitingTimeout) {
+        if ( waitingTimeout < 0 && waitingTimeout != ByteAccessor.WAITING_TIMEOUT_NOT_LIMITED ) {
+            throw new IllegalArgumentException("Invalid waiting timeout: " + waitingTimeout);
+        }
+        return waitingTimeout;
+    }
+    
+    private static long checkDeadline(long deadline) {
+        if ( deadline < 0 && deadline != RetryPolicy.DEADLINE_NOT_LIMITED ) {
+            throw new IllegalArgumentException("Invalid deadline: " + deadline);
+        }
+        return deadline;
+    }
+    
+    // returns predicted routing time of specified request
+    private long getRoutingTime(short[] request) {
+        int hops = NetworkState.HOPS_DEFAULT;
+        if ( accessor instanceof StandardByteAccessor ) {
+            NetworkState state = ((StandardByteAccessor) accessor).getNetworkState();
+            if ( state != null ) {
+                int nadr = request[ProtocolProperties.NADR_START];
+                if ( nadr < NetworkState.NODE_ADDRESSES_NUM 
+                        && state.getHops(nadr) != NetworkState.HOPS_UNKNOWN 
+                ) {
+                    hops = state.getHops(nadr);
+                }
+            }
+        }
+        return waitingTimeCounter.getPredictedRoutingTime(request, hops);
+    }
+    
+    private static RequestResult createTerminatedResult() {
+        return new RequestResult(
+                RequestResult.Status.ERROR, null,
+                new ProcessingInfo( new LibraryInternalError("Accessor terminated.") )
+        );
+    }
+    
+    // returns result of finished attempt sent by standard accessor
+    private static RequestResult getAttemptResult(CancellableRequest pendingRequest) {
+        try {
+            return pendingRequest.get();
+        } catch ( CancellationException ex ) {
+            return new RequestResult(
+                    RequestResult.Status.ERROR, null,
+                    new ProcessingInfo( new LibraryInternalError("Attempt cancelled.") )
+            );
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            return new RequestResult(
+                    RequestResult.Status.ERROR, null,
+                    new ProcessingInfo( new LibraryInternalError("Waiting for attempt interrupted.") )
+            );
+        }
+    }
+    
+    
+    // processing of one request through all of its attempts
+    private final class RetryTask implements Runnable {
+        
+        private final RequestHandle handle;
+        private final long waitingTimeout;
+        private final RequestResultListener listener;
+        private final IdempotencyClass idempotencyClass;
+        
+        // time of deadline as returned by the clock's nanoTime, or -1 if not limited
+        private final long deadlineTime;
+        
+        // result of the last attempt
+        private RequestResult lastResult = null;
+        
+        
+        RetryTask(
+                short[] request, long waitingTimeout, long deadline, 
+                RequestResultListener listener
+        ) {
+            this.handle = new RequestHandle(request);
+            this.waitingTimeout = waitingTimeout;
+            this.listener = listener;
+            this.idempotencyClass = policy.getIdempotencyClass(request);
+            this.deadlineTime = ( deadline == RetryPolicy.DEADLINE_NOT_LIMITED )? 
+                    -1 : clock.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadline);
+        }
+        
+        // returns time [in ms] remaining to the deadline
+        private long getRemainingTime() {
+            return TimeUnit.NANOSECONDS.toMillis(deadlineTime - clock.nanoTime());
+        }
+        
+        // returns waiting timeout of the next attempt
+        private long getAttemptWaitingTimeout() {
+            if ( deadlineTime == -1 ) {
+                return waitingTimeout;
+            }
+            
+            long remainingTime = Math.max(1, getRemainingTime());
+            if ( waitingTimeout == ByteAccessor.WAITING_TIMEOUT_NOT_LIMITED 
+                    || waitingTimeout > remainingTime 
+            ) {
+                return remainingTime;
+            }
+            return waitingTimeout;
+        }
+        
+        // returns backoff before next attempt, or -1 if the result is final
+        private long getBackoff(int attemptNum, RequestResult result) {
+            if ( result.getStatus() == RequestResult.Status.SUCCESSFULLY_COMPLETED ) {
+                return -1;
+            }
+            
+            ProcessingError error = ( result.getProcessingInfo() != null )? 
+                    result.getProcessingInfo().getProcesssingError() : null;
+            if ( error == null || attemptNum >= policy.getMaxAttempts() 
+                    || !policy.isRetryable(error.getType(), idempotencyClass) 
+            ) {
+                return -1;
+            }
+            
+            long backoff = policy.getBackoff(attemptNum, getRoutingTime(handle.getRequest()), random);
+            if ( deadlineTime != -1 && backoff >= getRemainingTime() ) {
+                logger.info("Request not retried - deadline would be exceeded");
+                return -1;
+            }
+            return backoff;
+        }
+        
+        // returns deadline of the next attempt [in ms since epoch]
+        private long getAttemptDeadline() {
+            if ( deadlineTime == -1 ) {
+                return CancellableRequest.DEADLINE_NOT_LIMITED;
+            }
+            return clock.currentTimeMillis() + Math.max(1, getRemainingTime());
+        }
+        
+        // performs next attempt, returns backoff before next attempt or -1 if finished
+        long attempt() {
+            int attemptNum = handle.startAttempt();
+            if ( attemptNum == -1 ) {
+                activeTasks.remove(this);
+                return -1;
+            }
+            return processAttemptResult(
+                    attemptNum, accessor.sendRequest(handle.getRequest(), getAttemptWaitingTimeout())
+            );
+        }
+        
+        // processes result of specified attempt, returns backoff before next 
+        // attempt or -1 if finished
+        private long processAttemptResult(int attemptNum, RequestResult result) {
+            lastResult = result;
+            long backoff = getBackoff(attemptNum, lastResult);
+            if ( backoff == -1 ) {
+                finish(lastResult);
+                return -1;
+            }
+            
+            logger.info(
+                    "Attempt {} of request {} failed, next attempt in {} ms: {}", 
+                    attemptNum, Arrays.toString(handle.getRequest()), backoff,
+                    lastResult.getProcessingInfo()
+            );
+            return backoff;
+        }
+        
+        // finishes the request with specified result
+        void finish(RequestResult result) {
+            activeTasks.remove(this);
+            if ( handle.finish(result) && listener != null ) {
+                try {
+                    listener.onRequestResult(handle, result);
+                } catch ( RuntimeException ex ) {
+                    logger.error("Error in request result listener", ex);
+                }
+            }
+        }
+        
+        // sends next attempt, its result is processed by the scheduler
+        private void attemptAsync() {
+            final int attemptNum = handle.startAttempt();
+            if ( attemptNum == -1 ) {
+                activeTasks.remove(this);
+                return;
+            }
+            
+            final short[] request = handle.getRequest();
+            final long attemptWaitingTimeout = getAttemptWaitingTimeout();
+            if ( accessor instanceof StandardByteAccessor ) {
+                StandardByteAccessor standardAccessor = (StandardByteAccessor) accessor;
+                final CancellableRequest pendingRequest = standardAccessor.sendRequestAsync(
+                        request, attemptWaitingTimeout, getAttemptDeadline()
+                );
+                pendingRequest.addCompletionListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        onAttemptFinished(attemptNum, getAttemptResult(pendingRequest));
+                    }
+                });
+                return;
+            }
+            
+            ExecutorService currAttemptExecutor = attemptExecutor;
+            if ( currAttemptExecutor == null ) {
+                throw new RejectedExecutionException("Accessor terminated.");
+            }
+            currAttemptExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    onAttemptFinished(attemptNum, accessor.sendRequest(request, attemptWaitingTimeout));
+                }
+            });
+        }
+        
+        // passes result of specified attempt to the scheduler
+        private void onAttemptFinished(final int attemptNum, final RequestResult result) {
+            ScheduledExecutorService currScheduler = scheduler;
+            try {
+                if ( currScheduler == null ) {
+                    throw new RejectedExecutionException("Accessor terminated.");
+                }
+                currScheduler.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        scheduleNextAttempt( processAttemptResult(attemptNum, result) );
+                    }
+                });
+            } catch ( RejectedExecutionException ex ) {
+                finish(result);
+            }
+        }
+        
+        // schedules next attempt after specified backoff
+        private void scheduleNextAttempt(long backoff) {
+            if ( backoff == -1 ) {
+                return;
+            }
+            
+            ScheduledExecutorService currScheduler = scheduler;
+            try {
+                if ( currScheduler == null ) {
+                    throw new RejectedExecutionException("Accessor terminated.");
+                }
+                if ( clock instanceof VirtualClock ) {
+                    ((VirtualClock) clock).schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            resume();
+                        }
+                    }, backoff);
+                } else {
+                    currScheduler.schedule(this, backoff, TimeUnit.MILLISECONDS);
+                }
+            } catch ( RejectedExecutionException ex ) {
+                finish(lastResult);
+            }
+        }
+        
+        // passes the task to the scheduler after backoff in virtual time
+        private void resume() {
+            ScheduledExecutorService currScheduler = scheduler;
+            try {
+                if ( currScheduler == null ) {
+                    throw new RejectedExecutionException("Accessor terminated.");
+                }
+                currScheduler.execute(this);
+            } catch ( RejectedExecutionException ex ) {
+                finish(lastResult);
+            }
+        }
+        
+        @Override
+        public void run() {
+            try {
+                attemptAsync();
+            } catch ( RejectedExecutionException ex ) {
+                finish(createTerminatedResult());
+            }
+        }
+    }
+    
+    
+    /**
+     * Creates new retrying accessor.
+     * 
+     * @param accessor underlying accessor to send requests by
+     * @param waitingTimeCounter waiting time counter for prediction of routing times
+     * @param policy retry policy
+     */
+    public RetryingByteAccessor(
+            ByteAccessor accessor, WaitingTimeCounter waitingTimeCounter, RetryPolicy policy
+    ) {
+        this.accessor = checkAccessor(accessor);
+        this.waitingTimeCounter = checkWaitingTimeCounter(waitingTimeCounter);
+        this.policy = checkPolicy(policy);
+        this.clock = ( accessor instanceof AbstractByteAccessor )?
+                ((AbstractByteAccessor) accessor).getWaitingTimeCounter().getClock()
+                : SystemClock.INSTANCE;
+        logger.debug("Retrying byte accessor created");
+    }
+    
+    @Override
+    public ByteAccessor getAccessor() {
+        return accessor;
+    }
+    
+    /**
+     * @return retry policy
+     */
+    public RetryPolicy getPolicy() {
+        return policy;
+    }
+    
+    /**
+     * Starts the underlying accessor, if it is controllable, and the thread 
+     * for processing of asynchronous requests.
+     * 
+     * @throws ByteAccessorException if the underlying accessor has failed to start
+     */
+    @Override
+    public void start() throws ByteAccessorException {
+        logger.debug("start - start");
+        
+        if ( accessor instanceof ByteAccessorControlInterface ) {
+            ((ByteAccessorControlInterface) accessor).start();
+        }
+        
+        scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "retrying-byte-accessor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        
+        if ( !(accessor instanceof StandardByteAccessor) ) {
+            attemptExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "retrying-byte-accessor-attempt");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        
+        logger.info("Retrying byte accessor started");
+        logger.debug("start - end");
+    }
+    
+    /**
+     * Sends specified request asynchronously. 
+     * 
+     * @param request request to send
+     * @param deadline overall deadline [in ms] of the request or 
+     *        {@link RetryPolicy#DEADLINE_NOT_LIMITED}
+     * @param listener listener of the final result, can be {@code null}
+     * @return handle of the request
+     * @throws IllegalStateException if the accessor is not started
+     */
+    public RequestHandle sendRequestAsync(
+            short[] request, long deadline, RequestResultListener listener
+    ) {
+        logger.debug(
+                "sendRequestAsync - start: request={}, deadline={}", 
+                Arrays.toString(request), deadline
+        );
+        
+        ScheduledExecutorService currScheduler = scheduler;
+        if ( currScheduler == null ) {
+            throw new IllegalStateException("Accessor not started.");
+        }
+        
+        RetryTask task = new RetryTask(request, defaultWaitingTimeout, checkDeadline(deadline), listener);
+        activeTasks.add(task);
+        try {
+            currScheduler.execute(task);
+        } catch ( RejectedExecutionException ex ) {
+            activeTasks.remove(task);
+            throw new IllegalStateException("Accessor terminated.", ex);
+        }
+        
+        logger.debug("sendRequestAsync - end");
+        return task.handle;
+    }
+    
+    /**
+     * Sends specified request asynchronously with the deadline of the policy.
+     * 
+     * @param request request to send
+     * @param listener listener of the final result, can be {@code null}
+     * @return handle of the request
+     * @throws IllegalStateException if the accessor is not started
+     */
+    public RequestHandle sendRequestAsync(short[] request, RequestResultListener listener) {
+        return sendRequestAsync(request, policy.getDeadline(), listener);
+    }
+    
+    /**
+     * Sends specified request and retries it according to the policy. Calling
+     * thread is blocked during backoffs.
+     * 
+     * @param request request to send
+     * @param waitingTimeout maximum time to wait for result of each attempt
+     * @return final result of the request
+     */
+    @Override
+    public RequestResult sendRequest(short[] request, long waitingTimeout) {
+        logger.debug(
+                "sendRequest - start: request={}, waitingTimeout={}",
+                Arrays.toString(request), waitingTimeout
+        );
+        
+        RetryTask task = new RetryTask(
+                request, checkWaitingTimeout(waitingTimeout), policy.getDeadline(), null
+        );
+        
+        long backoff = task.attempt();
+        while ( backoff != -1 ) {
+            try {
+                clock.sleep(backoff);
+            } catch ( InterruptedException ex ) {
+                logger.warn("Waiting for next attempt interrupted");
+                Thread.currentThread().interrupt();
+                task.finish(task.lastResult);
+                break;
+            }
+            backoff = task.attempt();
+        }
+        
+        logger.debug("sendRequest - end");
+        return task.lastResult;
+    }
+    
+    @Override
+    public RequestResult sendRequest(short[] request) {
+        return sendRequest(request, defaultWaitingTimeout);
+    }
+    
+    @Override
+    public void setDefaultWaitingTimeout(long timeout) {
+        this.defaultWaitingTimeout = checkWaitingTimeout(timeout);
+    }
+    
+    /**
+     * Stops processing of asynchronous requests and terminates the underlying 
+     * accessor, if it is controllable. Unfinished asynchronous requests are
+     * finished with {@link LibraryInternalError}.
+     */
+    @Override
+    public void terminateAndRelease() {
+        logger.debug("terminateAndRelease - start");
+        
+        ScheduledExecutorService currScheduler = scheduler;
+        scheduler = null;
+        if ( currScheduler != null ) {
+            currScheduler.shutdownNow();
+            try {
+                currScheduler.awaitTermination(1, TimeUnit.SECONDS);
+            } catch ( InterruptedException ex ) {
+                logger.warn("Waiting for termination of scheduler interrupted");
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        ExecutorService currAttemptExecutor = attemptExecutor;
+        attemptExecutor = null;
+        if ( currAttemptExecutor != null ) {
+            currAttemptExecutor.shutdownNow();
+        }
+        
+        RequestResult terminatedResult = createTerminatedResult();
+        for ( RetryTask task : activeTasks ) {
+            task.finish(terminatedResult);
+        }
+        
+        if ( accessor instanceof ByteAccessorControlInterface ) {
+            ((ByteAccessorControlInterface) accessor).terminateAndRelease();
+        }
+        
+        logger.info("Retrying byte accessor terminated and released");
+        logger.debug("terminateAndRelease - end");
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.retry;
+
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessor;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorFactory;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorFactoryException;
+import com.microrisc.dpa22x.byteaccess.accessors.StandardByteAccessor;
+import com.microrisc.dpa22x.byteaccess.accessors.StandardByteAccessorFactory;
+import com.microrisc.dpa22x.byteaccess.errors.ErrorType;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Factory of Standard Byte Accessors wrapped into {@link RetryingByteAccessor}.
+ * <p>
+ * The underlying accessor is created by {@link StandardByteAccessorFactory} 
+ * from the same configuration. Retry policy is created by 
+ * {@link RetryPolicyFactory}. The retrying accessor is wrapped into 
+ * decorators by {@link StandardByteAccessorFactory#decorate}, so that 
+ * invalid requests are not retried.
+ * 
+ * @author agent
+ */
+public final class RetryingByteAccessorFactory implements ByteAccessorFactory {
+    
+    /**
+     * Retry policy factory.
+     * <p>
+     * Configuration items: <br>
+     * - <b>byteAccessor.retry.maxAttempts</b>: maximal number of attempts. 
+     * If no such configuration key is found, 
+     * {@link RetryPolicy#MAX_ATTEMPTS_DEFAULT} is used. <br>
+     * 
+     * - <b>byteAccessor.retry.minBackoff</b>, <b>byteAccessor.retry.maxBackoff</b>:
+     * minimal and maximal backoff [in ms]. If no such configuration keys are
+     * found, {@link RetryPolicy#MIN_BACKOFF_DEFAULT} and 
+     * {@link RetryPolicy#MAX_BACKOFF_DEFAULT} are used. <br>
+     * 
+     * - <b>byteAccessor.retry.jitter</b>: maximal part of backoff, which is 
+     * randomly cut off. If no such configuration key is found, 
+     * {@link RetryPolicy#JITTER_DEFAULT} is used. <br>
+     * 
+     * - <b>byteAccessor.retry.deadline</b>: overall deadline of a request [in ms].
+     * If no such configuration key is found, the deadline is not limited. <br>
+     * 
+     * - <b>byteAccessor.retry.on.&lt;ERROR_TYPE&gt;</b>: list of idempotency 
+     * classes of requests, which are retried on specified type of error. 
+     * Empty list means no retries. If no such configuration key is found, 
+     * default of {@link RetryPolicy.Builder} is used. <br>
+     * 
+     * - <b>byteAccessor.retry.idempotency.&lt;PNUM&gt;[.&lt;PCMD&gt;]</b>: 
+     * idempotency class of all commands of the peripheral or of the single 
+     * command. Numbers can be decimal or hexadecimal with 0x prefix.
+     */
+    public static class RetryPolicyFactory {
+        
+        private static final String IDEMPOTENCY_PREFIX = "byteAccessor.retry.idempotency";
+        
+        private static IdempotencyClass parseIdempotencyClass(String classStr) 
+                throws ByteAccessorFactoryException 
+        {
+            try {
+                return IdempotencyClass.valueOf(classStr.trim());
+            } catch ( IllegalArgumentException ex ) {
+                throw new ByteAccessorFactoryException("Unknown idempotency class: " + classStr);
+            }
+        }
+        
+        private static int parseNumber(String numberStr) throws ByteAccessorFactoryException {
+            try {
+                return Integer.decode(numberStr);
+            } catch ( NumberFormatException ex ) {
+                throw new ByteAccessorFactoryException("Invalid number: " + numberStr);
+            }
+        }
+        
+        /** 
+         * Creates and returns retry policy according to specified configuration.
+         * @param configuration configuration of retry policy
+         * @return retry policy
+         * @throws ByteAccessorFactoryException if the configuration is invalid
+         */
+        public static RetryPolicy getRetryPolicy(Configuration configuration) 
+                throws ByteAccessorFactoryException 
+        {
+            RetryPolicy.Builder builder = new RetryPolicy.Builder()
+                    .maxAttempts(configuration.getInt(
+                            "byteAccessor.retry.maxAttempts", RetryPolicy.MAX_ATTEMPTS_DEFAULT
+                    ))
+                    .minBackoff(configuration.getLong(
+                            "byteAccessor.retry.minBackoff", RetryPolicy.MIN_BACKOFF_DEFAULT
+                    ))
+                    .maxBackoff(configuration.getLong(
+                            "byteAccessor.retry.maxBackoff", RetryPolicy.MAX_BACKOFF_DEFAULT
+                    ))
+                    .jitter(configuration.getDouble(
+                            "byteAccessor.retry.jitter", RetryPolicy.JITTER_DEFAULT
+                    ))
+                    .deadline(configuration.getLong(
+                            "byteAccessor.retry.deadline", RetryPolicy.DEADLINE_NOT_LIMITED
+                    ));
+            
+            for ( ErrorType errorType : ErrorType.values() ) {
+                String key = "byteAccessor.retry.on." + errorType.name();
+                if ( !configuration.containsKey(key) ) {
+                    continue;
+                }
+                List<IdempotencyClass> classes = new ArrayList<>();
+                for ( String classStr : configuration.getStringArray(key) ) {
+                    if ( !classStr.trim().isEmpty() ) {
+                        classes.add(parseIdempotencyClass(classStr));
+                    }
+                }
+                builder.retryOn(errorType, classes.toArray(new IdempotencyClass[classes.size()]));
+            }
+            
+            Iterator<String> keysIter = configuration.getKeys(IDEMPOTENCY_PREFIX);
+            while ( keysIter.hasNext() ) {
+                String key = keysIter.next();
+                String[] numbers = key.substring(IDEMPOTENCY_PREFIX.length() + 1).split("\\.");
+                IdempotencyClass idempotencyClass 
+                        = parseIdempotencyClass(configuration.getString(key));
+                switch ( numbers.length ) {
+                    case 1:
+                        builder.idempotencyClass(parseNumber(numbers[0]), idempotencyClass);
+                        break;
+                    case 2:
+                        builder.idempotencyClass(
+                                parseNumber(numbers[0]), parseNumber(numbers[1]), idempotencyClass
+                        );
+                        break;
+                    default:
+                        throw new ByteAccessorFactoryException("Invalid idempotency key: " + key);
+                }
+            }
+            
+            try {
+                return builder.build();
+            } catch ( IllegalArgumentException ex ) {
+                throw new ByteAccessorFactoryException(ex);
+            }
+        }
+    }
+    
+    
+    @Override
+    public ByteAccessor getByteAccessor(Configuration configuration) 
+            throws ByteAccessorFactoryException 
+    {
+        StandardByteAccessor accessor = new StandardByteAccessorFactory().getStandardByteAccessor(configuration);
+        RetryPolicy policy = RetryPolicyFactory.getRetryPolicy(configuration);
+        
+        return StandardByteAccessorFactory.decorate(
+                new RetryingByteAccessor(accessor, accessor.getWaitingTimeCounter(), policy), 
+                accessor, configuration
+        );
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.sweep;
+
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of sweep - results of the requests and its predicted and actual
+ * makespan.
+ * 
+ * @author agent
+ */
+public final class SweepResult {
+    
+    // results of the requests in the order of the sweep's requests
+    private final List<RequestResult> results;
+    
+    // indexes of the requests in the order of sending
+    private final int[] order;
+    
+    // predicted makespan
+    private final long predictedMakespan;
+    
+    // actual makespan
+    private final long makespan;
+    
+    
+    /**
+     * Creates new result.
+     * 
+     * @param results results of the requests in the order of the sweep's requests
+     * @param order indexes of the requests in the order of sending
+     * @param predictedMakespan predicted makespan [in ms]
+     * @param makespan actual makespan [in ms]
+     */
+    public SweepResult(
+            List<RequestResult> results, int[] order, long predictedMakespan, long makespan
+    ) {
+        this.results = Collections.unmodifiableList(Arrays.asList(
+                results.toArray(new RequestResult[results.size()])
+        ));
+        this.order = order.clone();
+        this.predictedMakespan = predictedMakespan;
+        this.makespan = makespan;
+    }
+    
+    /**
+     * @return results of the requests in the order of the sweep's requests
+     */
+    public List<RequestResult> getResults() {
+        return results;
+    }
+    
+    /**
+     * @return indexes of the requests in the order, in which they were sent
+     */
+    public int[] getOrder() {
+        return order.clone();
+    }
+    
+    /**
+     * @return makespan predicted by timing model [in ms]
+     */
+    public long getPredictedMakespan() {
+        return predictedMakespan;
+    }
+    
+    /**
+     * @return actual makespan - time from sending of the first request till 
+     *         result of the last one [in ms]
+     */
+    public long getMakespan() {
+        return makespan;
+    }
+    
+    /**
+     * @return number of requests, which were not successfully completed
+     */
+    public int getFailedRequestsNum() {
+        int failedNum = 0;
+        for ( RequestResult result : results ) {
+            if ( result.getStatus() != RequestResult.Status.SUCCESSFULLY_COMPLETED ) {
+                failedNum++;
+            }
+        }
+        return failedNum;
+    }
+    
+    @Override
+    public String toString() {
+        return "{"
+                + "requests=" + results.size()
+                + ", failed=" + getFailedRequestsNum()
+                + ", predictedMakespan=" + predictedMakespan
+                + ", makespan=" + makespan
+                + "}";
+    }
+}
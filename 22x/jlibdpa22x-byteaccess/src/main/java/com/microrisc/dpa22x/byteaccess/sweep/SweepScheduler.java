@@ -0,0 +1,329 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.sweep;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.byteaccess.accessors.RequestWindow;
+import com.microrisc.dpa22x.byteaccess.accessors.StandardByteAccessor;
+import com.microrisc.dpa22x.byteaccess.topology.NetworkState;
+import com.microrisc.dpa22x.timing.Clock;
+import com.microrisc.dpa22x.timing.FRC_TimingParams;
+import com.microrisc.dpa22x.timing.WaitingTimeCounter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends bulk of requests ordered by distance of their addressees.
+ * <p>
+ * Routing time of each request is predicted by timing model of the waiting 
+ * time counter of the accessor from hops of the addressee, which are learned 
+ * by the network state of the accessor. Nodes with unknown hops are supposed 
+ * to be as far as the farthest known node. Requests are sent from the nearest
+ * addressees, so that the total time, which the requests wait in the queue, 
+ * is minimal. Requests to nodes, which are not bonded, are sent last. 
+ * <p>
+ * Requests for the local device, which are processed without the network - see
+ * {@link StandardByteAccessor#isProcessedWithoutNetwork(short[]) } - are not
+ * routed, so the accessor processes them during the rest of routing of the 
+ * previous request. They are placed after the requests with the longest routing
+ * - broadcasts and requests to the farthest nodes - and they are supposed to 
+ * take no time of the sweep. Other requests for the local device, e.g. FRC or
+ * discovery, use the network and they are planned as routed requests. Only
+ * the time of FRC is predicted for them, the time of other ones is unknown
+ * and it is not included in predicted makespan.
+ * 
+ * @author agent
+ */
+public final class SweepScheduler {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(SweepScheduler.class);
+    
+    /** Number of requests queued in the accessor at once. */
+    public static final int PIPELINE_DEPTH = RequestWindow.DEPTH_DEFAULT;
+    
+    
+    // planned request of a sweep
+    private static final class Item {
+        
+        // index of the request in the sweep
+        final int index;
+        
+        // the request
+        final short[] request;
+        
+        // indicates, whether the request is for local device
+        final boolean isLocal;
+        
+        // indicates, whether the request is broadcast
+        final boolean isBroadcast;
+        
+        // indicates, whether the addressee is not bonded
+        final boolean isUnreachable;
+        
+        // indicates, whether the accessor waits for the rest of routing after the request
+        final boolean hasRoutingRest;
+        
+        // predicted time [in ms]
+        final long predictedTime;
+        
+        Item(
+                int index, short[] request, boolean isLocal, boolean isBroadcast, 
+                boolean isUnreachable, boolean hasRoutingRest, long predictedTime
+        ) {
+            this.index = index;
+            this.request = request;
+            this.isLocal = isLocal;
+            this.isBroadcast = isBroadcast;
+            this.isUnreachable = isUnreachable;
+            this.hasRoutingRest = hasRoutingRest;
+            this.predictedTime = predictedTime;
+        }
+    }
+    
+    // orders routed requests from the shortest one, unreachable nodes last
+    private static final Comparator<Item> SENDING_ORDER = new Comparator<Item>() {
+        @Override
+        public int compare(Item item1, Item item2) {
+            if ( item1.isUnreachable != item2.isUnreachable ) {
+                return item1.isUnreachable? 1 : -1;
+            }
+            return Long.compare(item1.predictedTime, item2.predictedTime);
+        }
+    };
+    
+    // orders routed requests from the one with the longest rest of routing
+    private static final Comparator<Item> ROUTING_REST_ORDER = new Comparator<Item>() {
+        @Override
+        public int compare(Item item1, Item item2) {
+            if ( item1.isBroadcast != item2.isBroadcast ) {
+                return item1.isBroadcast? -1 : 1;
+            }
+            return Long.compare(item2.predictedTime, item1.predictedTime);
+        }
+    };
+    
+    
+    // accessor to send requests by
+    private final StandardByteAccessor accessor;
+    
+    
+    private static StandardByteAccessor checkAccessor(StandardByteAccessor accessor) {
+        if ( accessor == null ) {
+            throw new IllegalArgumentException("Accessor cannot be null.");
+        }
+        return accessor;
+    }
+    
+    private static void checkRequests(List<short[]> requests) {
+        if ( requests == null ) {
+            throw new IllegalArgumentException("Requests cannot be null.");
+        }
+        for ( short[] request : requests ) {
+            if ( request == null || request.length < ProtocolProperties.PDATA_START_POS ) {
+                throw new IllegalArgumentException("Invalid request: " + Arrays.toString(request));
+            }
+        }
+    }
+    
+    /**
+     * Creates new scheduler, which sends requests by specified accessor.
+     * 
+     * @param accessor accessor to send requests by
+     */
+    public SweepScheduler(StandardByteAccessor accessor) {
+        this.accessor = checkAccessor(accessor);
+    }
+    
+    
+    // creates planned item of specified request
+    private Item createItem(int index, short[] request, NetworkState state) {
+        if ( StandardByteAccessor.isProcessedWithoutNetwork(request) ) {
+            return new Item(index, request, true, false, false, false, 0);
+        }
+        
+        WaitingTimeCounter waitingTimeCounter = accessor.getWaitingTimeCounter();
+        if ( ProtocolProperties.isAddresseeLocalDevice(request) ) {
+            long predictedTime = 0;
+            if ( ProtocolProperties.getPeripheralNumber(request) == ProtocolProperties.PNUM_Properties.FRC ) {
+                predictedTime = waitingTimeCounter.getPredictedFrcTime(
+                        request, ( state != null )? state.getFRC_TimingParams() : new FRC_TimingParams()
+                );
+            }
+            return new Item(index, request, false, false, false, false, predictedTime);
+        }
+        
+        int maxHops = ( state != null && state.getMaxHops() != NetworkState.HOPS_UNKNOWN )?
+                state.getMaxHops() : NetworkState.HOPS_DEFAULT;
+        
+        int nadr = request[ProtocolProperties.NADR_START];
+        if ( nadr == ProtocolProperties.NADR_Properties.IQMESH_BROADCAST_ADDRESS ) {
+            long predictedTime = (maxHops + 1) * WaitingTimeCounter.getTimeslotLength(
+                    request.length - ProtocolProperties.PDATA_START_POS, 
+                    waitingTimeCounter.getRfMode(), waitingTimeCounter.getDctr()
+            );
+            return new Item(index, request, false, true, false, true, predictedTime);
+        }
+        
+        boolean isNode = ( nadr <= ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX );
+        boolean isUnreachable = ( state != null && state.getBondedNodesNum() > 0 
+                && !( isNode && state.isBonded(nadr) ) );
+        int hops = ( isNode && state != null && state.getHops(nadr) != NetworkState.HOPS_UNKNOWN )?
+                state.getHops(nadr) : maxHops;
+        return new Item(
+                index, request, false, false, isUnreachable, true, 
+                waitingTimeCounter.getPredictedRoutingTime(request, hops)
+        );
+    }
+    
+    // returns specified requests in the order of sending
+    private List<Item> plan(List<short[]> requests) {
+        NetworkState state = accessor.getNetworkState();
+        List<Item> localItems = new LinkedList<>();
+        List<Item> routedItems = new ArrayList<>();
+        for ( int i = 0; i < requests.size(); i++ ) {
+            Item item = createItem(i, requests.get(i), state);
+            if ( item.isLocal ) {
+                localItems.add(item);
+            } else {
+                routedItems.add(item);
+            }
+        }
+        Collections.sort(routedItems, SENDING_ORDER);
+        
+        // routed requests, after which local requests are placed
+        List<Item> routedItemsByRoutingRest = new ArrayList<>();
+        for ( Item item : routedItems ) {
+            if ( item.hasRoutingRest ) {
+                routedItemsByRoutingRest.add(item);
+            }
+        }
+        Collections.sort(routedItemsByRoutingRest, ROUTING_REST_ORDER);
+        Set<Item> longestRoutedItems = new HashSet<>(routedItemsByRoutingRest.subList(
+                0, Math.min(localItems.size(), routedItemsByRoutingRest.size())
+        ));
+        
+        // local requests, which exceed the routed ones, are sent first
+        List<Item> plan = new ArrayList<>();
+        while ( localItems.size() > longestRoutedItems.size() ) {
+            plan.add(localItems.remove(0));
+        }
+        for ( Item item : routedItems ) {
+            plan.add(item);
+            if ( longestRoutedItems.contains(item) ) {
+                plan.add(localItems.remove(0));
+            }
+        }
+        return plan;
+    }
+    
+    // returns predicted makespan of specified plan
+    private static long countPredictedMakespan(List<Item> plan) {
+        long makespan = 0;
+        for ( Item item : plan ) {
+            makespan += item.predictedTime;
+        }
+        return makespan;
+    }
+    
+    /**
+     * Returns specified requests in the order, in which they would be sent.
+     * 
+     * @param requests requests to order
+     * @return the requests in the order of sending
+     */
+    public List<short[]> order(List<short[]> requests) {
+        checkRequests(requests);
+        List<short[]> orderedRequests = new ArrayList<>(requests.size());
+        for ( Item item : plan(requests) ) {
+            orderedRequests.add(item.request);
+        }
+        return orderedRequests;
+    }
+    
+    /**
+     * Returns predicted makespan of sending of specified requests in the order
+     * of sending.
+     * 
+     * @param requests requests to send
+     * @return predicted makespan [in ms]
+     */
+    public long getPredictedMakespan(List<short[]> requests) {
+        checkRequests(requests);
+        return countPredictedMakespan(plan(requests));
+    }
+    
+    /**
+     * Sends specified requests ordered by distance of their addressees. 
+     * Requests are queued in the accessor, so that the next request is sent 
+     * right after the previous one is finished.
+     * 
+     * @param requests requests to send
+     * @return results of the requests and makespan of the sweep
+     * @throws SweepException if the sweep is interrupted or cancelled
+     */
+    public SweepResult sweep(List<short[]> requests) throws SweepException {
+        checkRequests(requests);
+        logger.debug("sweep - start: requests={}", requests.size());
+        
+        List<Item> plan = plan(requests);
+        long predictedMakespan = countPredictedMakespan(plan);
+        
+        Clock clock = accessor.getWaitingTimeCounter().getClock();
+        RequestResult[] results = new RequestResult[plan.size()];
+        RequestWindow<Item> window = new RequestWindow<>(accessor, PIPELINE_DEPTH);
+        for ( Item item : plan ) {
+            window.add(item, item.request);
+        }
+        long startTime = clock.currentTimeMillis();
+        try {
+            while ( !window.isEmpty() ) {
+                RequestWindow.Completion<Item> completion = window.next();
+                results[completion.getItem().index] = completion.getResult();
+            }
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw new SweepException("Sweep interrupted.", ex);
+        } catch ( CancellationException ex ) {
+            throw new SweepException("Sweep cancelled.", ex);
+        } finally {
+            window.cancel();
+        }
+        long makespan = clock.currentTimeMillis() - startTime;
+        
+        int[] order = new int[plan.size()];
+        for ( int i = 0; i < order.length; i++ ) {
+            order[i] = plan.get(i).index;
+        }
+        
+        SweepResult result = new SweepResult(
+                Arrays.asList(results), order, predictedMakespan, makespan
+        );
+        logger.info("Sweep finished: {}", result);
+        logger.debug("sweep - end");
+        return result;
+    }
+}
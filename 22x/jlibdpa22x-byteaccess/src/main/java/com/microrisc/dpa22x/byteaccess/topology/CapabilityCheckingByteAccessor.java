@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.topology;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.byteaccess.ProcessingInfo;
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessor;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorControlInterface;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorDecorator;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorException;
+import com.microrisc.dpa22x.byteaccess.accessors.StandardByteAccessor;
+import com.microrisc.dpa22x.byteaccess.errors.UnsupportedByNodeError;
+import com.microrisc.dpa22x.byteaccess.metrics.AccessorMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Byte accessor, which checks requests against known capabilities of 
+ * addressed devices before they are sent by the underlying accessor.
+ * <p>
+ * Request to a peripheral, which the device does not support, or with HWPID,
+ * which the device does not accept, is not sent and fails with 
+ * {@link UnsupportedByNodeError}. Capabilities are taken from the state 
+ * of the network kept by {@link NetworkStateTracker}. Requests to devices
+ * with unknown capabilities are always sent.
+ * 
+ * @author agent
+ */
+public final class CapabilityCheckingByteAccessor 
+implements ByteAccessorDecorator, ByteAccessorControlInterface {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(CapabilityCheckingByteAccessor.class);
+    
+    
+    // underlying accessor
+    private final ByteAccessor accessor;
+    
+    // tracker of network state
+    private final NetworkStateTracker networkStateTracker;
+    
+    // metrics to record rejected requests into, null means no recording
+    private final AccessorMetrics metrics;
+    
+    // default waiting timeout
+    private volatile long defaultWaitingTimeout = ByteAccessor.WAITING_TIMEOUT_NOT_LIMITED;
+    
+    
+    private static ByteAccessor checkAccessor(ByteAccessor accessor) {
+        if ( accessor == null ) {
+            throw new IllegalArgumentException("Accessor cannot be null.");
+        }
+        return accessor;
+    }
+    
+    private static NetworkStateTracker checkNetworkStateTracker(NetworkStateTracker networkStateTracker) {
+        if ( networkStateTracker == null ) {
+            throw new IllegalArgumentException("Network state tracker cannot be null.");
+        }
+        return networkStateTracker;
+    }
+    
+    // returns reason, why specified request is certain to fail according 
+    // to known capabilities of addressed device, or null
+    private String getUnsupportedReason(short[] request) {
+        if ( request.length < ProtocolProperties.FOURSOME_LENGTH
+                || request[ProtocolProperties.NADR_START + 1] != 0
+        ) {
+            return null;
+        }
+        
+        int address = request[ProtocolProperties.NADR_START];
+        if ( address == ProtocolProperties.NADR_Properties.LOCAL_DEVICE_ADDRESS ) {
+            address = ProtocolProperties.NADR_Properties.IQMESH_COORDINATOR_ADDRESS;
+        } else if ( address > ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX ) {
+            return null;
+        }
+        
+        NodeCapabilities capabilities = networkStateTracker.getState().getCapabilities(address);
+        if ( capabilities == null ) {
+            return null;
+        }
+        
+        short pnum = request[ProtocolProperties.PNUM_POS];
+        if ( !capabilities.isPeripheralSupported(pnum) ) {
+            return "Peripheral " + pnum + " not supported by device " + address;
+        }
+        
+        int hwpid = request[ProtocolProperties.HWPID_START] 
+                | (request[ProtocolProperties.HWPID_START + 1] << 8);
+        if ( !capabilities.isHwpidAccepted(hwpid) ) {
+            return "HWPID " + Integer.toHexString(hwpid) + " not accepted by device " + address;
+        }
+        return null;
+    }
+    
+    
+    /**
+     * Creates new capability checking accessor.
+     * 
+     * @param accessor underlying accessor
+     * @param networkStateTracker tracker of network state, which holds 
+     *        capabilities of devices
+     * @param metrics metrics to record rejected requests into,
+     *        {@code null} means no recording
+     */
+    public CapabilityCheckingByteAccessor(
+            ByteAccessor accessor, NetworkStateTracker networkStateTracker, AccessorMetrics metrics
+    ) {
+        this.accessor = checkAccessor(accessor);
+        this.networkStateTracker = checkNetworkStateTracker(networkStateTracker);
+        this.metrics = metrics;
+        logger.debug("Capability checking byte accessor created");
+    }
+    
+    /**
+     * Creates new capability checking accessor, which checks requests against
+     * capabilities tracked by specified accessor and records rejected requests
+     * into its metrics.
+     * 
+     * @param accessor underlying accessor, which must track state of the network
+     */
+    public CapabilityCheckingByteAccessor(StandardByteAccessor accessor) {
+        this(
+                accessor, 
+                ( accessor != null )? accessor.getNetworkStateTracker() : null, 
+                ( accessor != null )? accessor.getMetrics() : null
+        );
+    }
+    
+    @Override
+    public ByteAccessor getAccessor() {
+        return accessor;
+    }
+    
+    @Override
+    public void start() throws ByteAccessorException {
+        if ( accessor instanceof ByteAccessorControlInterface ) {
+            ((ByteAccessorControlInterface) accessor).start();
+        }
+    }
+    
+    @Override
+    public RequestResult sendRequest(short[] request, long waitingTimeout) {
+        String unsupportedReason = getUnsupportedReason(request);
+        if ( unsupportedReason == null ) {
+            return accessor.sendRequest(request, waitingTimeout);
+        }
+        
+        logger.info("Request rejected: {}", unsupportedReason);
+        RequestResult requestResult = new RequestResult(
+                RequestResult.Status.ERROR, null, 
+                new ProcessingInfo( new UnsupportedByNodeError(unsupportedReason) )
+        );
+        if ( metrics != null ) {
+            metrics.requestRejected(requestResult);
+        }
+        return requestResult;
+    }
+    
+    @Override
+    public RequestResult sendRequest(short[] request) {
+        return sendRequest(request, defaultWaitingTimeout);
+    }
+    
+    @Override
+    public void setDefaultWaitingTimeout(long timeout) {
+        accessor.setDefaultWaitingTimeout(timeout);
+        this.defaultWaitingTimeout = timeout;
+    }
+    
+    @Override
+    public void terminateAndRelease() {
+        if ( accessor instanceof ByteAccessorControlInterface ) {
+            ((ByteAccessorControlInterface) accessor).terminateAndRelease();
+        }
+        logger.info("Capability checking byte accessor terminated and released");
+    }
+}
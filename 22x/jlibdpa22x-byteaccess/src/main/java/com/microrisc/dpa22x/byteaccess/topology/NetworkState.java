@@ -0,0 +1,313 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.topology;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.RF_Mode;
+import com.microrisc.dpa22x.timing.FRC_ResponseTime;
+import com.microrisc.dpa22x.timing.FRC_TimingParams;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Immutable snapshot of state of IQRF network, as known to a byte accessor.
+ * <p>
+ * Each change of the state produces new snapshot with incremented version.
+ * 
+ * @author agent
+ */
+public final class NetworkState {
+    
+    /** Number of node addresses. */
+    public static final int NODE_ADDRESSES_NUM = ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX + 1;
+    
+    /** Number of hops of a node, which is not known. */
+    public static final int HOPS_UNKNOWN = -1;
+    
+    /** Number of hops supposed for a node, whose number of hops is not known. */
+    public static final int HOPS_DEFAULT = 1;
+    
+    
+    // version
+    private final long version;
+    
+    // time of creation [in ms since epoch]
+    private final long timestamp;
+    
+    // bonded nodes
+    private final BitSet bondedNodes;
+    
+    // discovered nodes
+    private final BitSet discoveredNodes;
+    
+    // RF mode, null if not known
+    private final RF_Mode rfMode;
+    
+    // FRC response time, null if not known
+    private final FRC_ResponseTime frcResponseTime;
+    
+    // number of hops of each node
+    private final int[] hops;
+    
+    // capabilities of each node, null items if not known
+    private final NodeCapabilities[] capabilities;
+    
+    
+    /**
+     * Builder of network states.
+     */
+    public static final class Builder {
+        private long version = 0;
+        private long timestamp = 0;
+        private BitSet bondedNodes = new BitSet(NODE_ADDRESSES_NUM);
+        private BitSet discoveredNodes = new BitSet(NODE_ADDRESSES_NUM);
+        private RF_Mode rfMode = null;
+        private FRC_ResponseTime frcResponseTime = null;
+        private final int[] hops = new int[NODE_ADDRESSES_NUM];
+        private final NodeCapabilities[] capabilities = new NodeCapabilities[NODE_ADDRESSES_NUM];
+        
+        /**
+         * Creates builder of empty state.
+         */
+        public Builder() {
+            Arrays.fill(hops, HOPS_UNKNOWN);
+        }
+        
+        /**
+         * Creates builder initialized with values of specified state.
+         * @param state state to take the values from
+         */
+        public Builder(NetworkState state) {
+            this.version = state.version;
+            this.timestamp = state.timestamp;
+            this.bondedNodes = (BitSet)state.bondedNodes.clone();
+            this.discoveredNodes = (BitSet)state.discoveredNodes.clone();
+            this.rfMode = state.rfMode;
+            this.frcResponseTime = state.frcResponseTime;
+            System.arraycopy(state.hops, 0, hops, 0, hops.length);
+            System.arraycopy(state.capabilities, 0, capabilities, 0, capabilities.length);
+        }
+        
+        public Builder version(long version) {
+            this.version = version;
+            return this;
+        }
+        
+        public Builder timestamp(long timestamp) {
+            this.timestamp = timestamp;
+            return this;
+        }
+        
+        public Builder bondedNodes(BitSet bondedNodes) {
+            this.bondedNodes = (BitSet)bondedNodes.clone();
+            return this;
+        }
+        
+        public Builder bonded(int address, boolean bonded) {
+            this.bondedNodes.set(checkAddress(address), bonded);
+            return this;
+        }
+        
+        public Builder discoveredNodes(BitSet discoveredNodes) {
+            this.discoveredNodes = (BitSet)discoveredNodes.clone();
+            return this;
+        }
+        
+        public Builder rfMode(RF_Mode rfMode) {
+            this.rfMode = rfMode;
+            return this;
+        }
+        
+        public Builder frcResponseTime(FRC_ResponseTime frcResponseTime) {
+            this.frcResponseTime = frcResponseTime;
+            return this;
+        }
+        
+        public Builder hops(int address, int hops) {
+            if ( hops < HOPS_UNKNOWN || hops > ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX ) {
+                throw new IllegalArgumentException("Invalid number of hops: " + hops);
+            }
+            this.hops[checkAddress(address)] = hops;
+            return this;
+        }
+        
+        public Builder capabilities(int address, NodeCapabilities capabilities) {
+            this.capabilities[checkAddress(address)] = capabilities;
+            return this;
+        }
+        
+        public NetworkState build() {
+            return new NetworkState(this);
+        }
+    }
+    
+    
+    private static int checkAddress(int address) {
+        if ( address < 0 || address >= NODE_ADDRESSES_NUM ) {
+            throw new IllegalArgumentException("Invalid node address: " + address);
+        }
+        return address;
+    }
+    
+    private NetworkState(Builder builder) {
+        this.version = builder.version;
+        this.timestamp = builder.timestamp;
+        this.bondedNodes = (BitSet)builder.bondedNodes.clone();
+        this.discoveredNodes = (BitSet)builder.discoveredNodes.clone();
+        this.rfMode = builder.rfMode;
+        this.frcResponseTime = builder.frcResponseTime;
+        this.hops = builder.hops.clone();
+        this.capabilities = builder.capabilities.clone();
+    }
+    
+    
+    /**
+     * @return version of the state
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * @return time of creation of the state [in ms since epoch]
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+    
+    /**
+     * @return bonded nodes - bits set at addresses of bonded nodes
+     */
+    public BitSet getBondedNodes() {
+        return (BitSet)bondedNodes.clone();
+    }
+    
+    /**
+     * @param address node address
+     * @return {@code true} if node of specified address is bonded <br>
+     *         {@code false} otherwise
+     */
+    public boolean isBonded(int address) {
+        return bondedNodes.get(checkAddress(address));
+    }
+    
+    /**
+     * @return number of bonded nodes
+     */
+    public int getBondedNodesNum() {
+        return bondedNodes.cardinality();
+    }
+    
+    /**
+     * @return discovered nodes - bits set at addresses of discovered nodes
+     */
+    public BitSet getDiscoveredNodes() {
+        return (BitSet)discoveredNodes.clone();
+    }
+    
+    /**
+     * @param address node address
+     * @return {@code true} if node of specified address is discovered <br>
+     *         {@code false} otherwise
+     */
+    public boolean isDiscovered(int address) {
+        return discoveredNodes.get(checkAddress(address));
+    }
+    
+    /**
+     * @return RF mode, or {@code null} if not known
+     */
+    public RF_Mode getRfMode() {
+        return rfMode;
+    }
+    
+    /**
+     * @return FRC response time, or {@code null} if not known
+     */
+    public FRC_ResponseTime getFrcResponseTime() {
+        return frcResponseTime;
+    }
+    
+    /**
+     * @param address node address
+     * @return number of hops of specified node, or {@link #HOPS_UNKNOWN}
+     */
+    public int getHops(int address) {
+        return hops[checkAddress(address)];
+    }
+    
+    /**
+     * @return maximal known number of hops of the nodes, or {@link #HOPS_UNKNOWN}
+     */
+    public int getMaxHops() {
+        int maxHops = HOPS_UNKNOWN;
+        for ( int nodeHops : hops ) {
+            maxHops = Math.max(maxHops, nodeHops);
+        }
+        return maxHops;
+    }
+    
+    /**
+     * @param address node address
+     * @return capabilities of specified node, or {@code null} if not known
+     */
+    public NodeCapabilities getCapabilities(int address) {
+        return capabilities[checkAddress(address)];
+    }
+    
+    /**
+     * Returns FRC timing parameters according to the state. Unknown values
+     * are replaced by defaults.
+     * 
+     * @return FRC timing parameters
+     */
+    public FRC_TimingParams getFRC_TimingParams() {
+        return new FRC_TimingParams(
+                getBondedNodesNum(),
+                ( rfMode != null )? rfMode : FRC_TimingParams.DEFAULT_RF_MODE,
+                ( frcResponseTime != null )? frcResponseTime : FRC_TimingParams.DEFAULT_RESPONSE_TIME
+        );
+    }
+    
+    /**
+     * Indicates, whether specified state has the same content as this one,
+     * regardless of version and timestamp.
+     * 
+     * @param state state to compare with
+     * @return {@code true} if the content is the same <br>
+     *         {@code false} otherwise
+     */
+    public boolean hasSameContent(NetworkState state) {
+        return bondedNodes.equals(state.bondedNodes)
+                && discoveredNodes.equals(state.discoveredNodes)
+                && rfMode == state.rfMode
+                && frcResponseTime == state.frcResponseTime
+                && Arrays.equals(hops, state.hops)
+                && Arrays.equals(capabilities, state.capabilities);
+    }
+    
+    @Override
+    public String toString() {
+        return ("{ " +
+                "version=" + version +
+                ", timestamp=" + timestamp +
+                ", bonded nodes=" + bondedNodes +
+                ", discovered nodes=" + discoveredNodes +
+                ", RF mode=" + rfMode +
+                ", FRC response time=" + frcResponseTime +
+                " }");
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.topology;
+
+import com.microrisc.dpa22x.RF_Mode;
+import com.microrisc.dpa22x.timing.FRC_ResponseTime;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+
+/**
+ * Reading and writing of network state snapshot files.
+ * <p>
+ * Format of the file (big endian): <br>
+ * - magic number {@link #MAGIC} [4 bytes] <br>
+ * - format version {@link #FORMAT_VERSION} [2 bytes] <br>
+ * - version of the state [8 bytes] <br>
+ * - timestamp of the state [8 bytes] <br>
+ * - RF mode: 0 - STD, 1 - LP, 0xFF - unknown [1 byte] <br>
+ * - FRC response time: ID of the time, 0xFF - unknown [1 byte] <br>
+ * - bitmap of bonded nodes [30 bytes] <br>
+ * - bitmap of discovered nodes [30 bytes] <br>
+ * - number of hops of each node, 0xFF - unknown [240 bytes] <br>
+ * - number of nodes with known capabilities [1 byte] <br>
+ * - capabilities of each of these nodes: address [1 byte], DPA version 
+ *   [2 bytes], HWPID [2 bytes], HWPID version [2 bytes], bitmap of supported
+ *   peripherals [14 bytes]
+ * <p>
+ * Files of format version 1, which have no capabilities, are still readable.
+ * <p>
+ * The file is replaced atomically, so that it is never left partially written.
+ * 
+ * @author agent
+ */
+final class NetworkStateFiles {
+    
+    /** Magic number - "DPNS". */
+    static final int MAGIC = 0x44504E53;
+    
+    /** Version of the file format. */
+    static final int FORMAT_VERSION = 2;
+    
+    // version of the file format without capabilities
+    private static final int FORMAT_VERSION_NO_CAPABILITIES = 1;
+    
+    // length of nodes bitmap
+    private static final int BITMAP_LENGTH = NetworkState.NODE_ADDRESSES_NUM / 8;
+    
+    // length of peripherals bitmap
+    private static final int PERIPHERALS_BITMAP_LENGTH = NodeCapabilities.PERIPHERALS_NUM / 8;
+    
+    // value of unknown items
+    private static final int UNKNOWN = 0xFF;
+    
+    
+    private static void writeBitmap(DataOutputStream out, BitSet bits, int length) throws IOException {
+        byte[] bitmap = new byte[length];
+        for ( int bit = bits.nextSetBit(0); bit >= 0; bit = bits.nextSetBit(bit + 1) ) {
+            bitmap[bit / 8] |= (byte)(1 << (bit % 8));
+        }
+        out.write(bitmap);
+    }
+    
+    private static BitSet readBitmap(DataInputStream in, int length) throws IOException {
+        byte[] bitmap = new byte[length];
+        in.readFully(bitmap);
+        
+        BitSet bits = new BitSet(length * 8);
+        for ( int bit = 0; bit < length * 8; bit++ ) {
+            if ( (bitmap[bit / 8] & (1 << (bit % 8))) != 0 ) {
+                bits.set(bit);
+            }
+        }
+        return bits;
+    }
+    
+    private static void writeCapabilities(DataOutputStream out, NetworkState state) throws IOException {
+        int capabilitiesNum = 0;
+        for ( int address = 0; address < NetworkState.NODE_ADDRESSES_NUM; address++ ) {
+            if ( state.getCapabilities(address) != null ) {
+                capabilitiesNum++;
+            }
+        }
+        out.writeByte(capabilitiesNum);
+        
+        for ( int address = 0; address < NetworkState.NODE_ADDRESSES_NUM; address++ ) {
+            NodeCapabilities capabilities = state.getCapabilities(address);
+            if ( capabilities == null ) {
+                continue;
+            }
+            out.writeByte(address);
+            out.writeShort(capabilities.getDpaVersion());
+            out.writeShort(capabilities.getHwpid());
+            out.writeShort(capabilities.getHwpidVersion());
+            writeBitmap(out, capabilities.getPeripherals(), PERIPHERALS_BITMAP_LENGTH);
+        }
+    }
+    
+    private static void readCapabilities(DataInputStream in, NetworkState.Builder builder) 
+            throws IOException 
+    {
+        int capabilitiesNum = in.readUnsignedByte();
+        for ( int i = 0; i < capabilitiesNum; i++ ) {
+            int address = in.readUnsignedByte();
+            int dpaVersion = in.readUnsignedShort();
+            int hwpid = in.readUnsignedShort();
+            int hwpidVersion = in.readUnsignedShort();
+            BitSet peripherals = readBitmap(in, PERIPHERALS_BITMAP_LENGTH);
+            builder.capabilities(
+                    address, new NodeCapabilities(dpaVersion, peripherals, hwpid, hwpidVersion)
+            );
+        }
+    }
+    
+    private static RF_Mode parseRfMode(int value) throws IOException {
+        switch ( value ) {
+            case 0:
+                return RF_Mode.STD;
+            case 1:
+                return RF_Mode.LP;
+            case UNKNOWN:
+                return null;
+            default:
+                throw new IOException("Invalid RF mode: " + value);
+        }
+    }
+    
+    private static FRC_ResponseTime parseFrcResponseTime(int value) throws IOException {
+        if ( value == UNKNOWN ) {
+            return null;
+        }
+        for ( FRC_ResponseTime responseTime : FRC_ResponseTime.values() ) {
+            if ( responseTime.getId() == value ) {
+                return responseTime;
+            }
+        }
+        throw new IOException("Invalid FRC response time: " + value);
+    }
+    
+    /**
+     * Writes specified state into specified file.
+     * 
+     * @param state state to write
+     * @param file file to write into
+     * @throws IOException if an I/O error occurs
+     */
+    static void save(NetworkState state, File file) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        
+        try ( DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile))) 
+        ) {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeLong(state.getVersion());
+            out.writeLong(state.getTimestamp());
+            
+            RF_Mode rfMode = state.getRfMode();
+            out.writeByte( ( rfMode == null )? UNKNOWN : (( rfMode == RF_Mode.STD )? 0 : 1) );
+            
+            FRC_ResponseTime frcResponseTime = state.getFrcResponseTime();
+            out.writeByte( ( frcResponseTime == null )? UNKNOWN : frcResponseTime.getId() );
+            
+            writeBitmap(out, state.getBondedNodes(), BITMAP_LENGTH);
+            writeBitmap(out, state.getDiscoveredNodes(), BITMAP_LENGTH);
+            
+            for ( int address = 0; address < NetworkState.NODE_ADDRESSES_NUM; address++ ) {
+                int hops = state.getHops(address);
+                out.writeByte( ( hops == NetworkState.HOPS_UNKNOWN )? UNKNOWN : hops );
+            }
+            
+            writeCapabilities(out, state);
+        }
+        
+        Files.move(
+                tempFile.toPath(), file.toPath(), 
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+        );
+    }
+    
+    /**
+     * Reads state from specified file.
+     * 
+     * @param file file to read from
+     * @return read state, or {@code null} if the file does not exist
+     * @throws IOException if an I/O error occurs or the file is not valid
+     */
+    static NetworkState load(File file) throws IOException {
+        if ( !file.exists() ) {
+            return null;
+        }
+        
+        try ( DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file))) 
+        ) {
+            if ( in.readInt() != MAGIC ) {
+                throw new IOException("Not a network state file: " + file);
+            }
+            int formatVersion = in.readUnsignedShort();
+            if ( formatVersion != FORMAT_VERSION 
+                    && formatVersion != FORMAT_VERSION_NO_CAPABILITIES 
+            ) {
+                throw new IOException("Unsupported format version: " + formatVersion);
+            }
+            
+            NetworkState.Builder builder = new NetworkState.Builder()
+                    .version(in.readLong())
+                    .timestamp(in.readLong())
+                    .rfMode(parseRfMode(in.readUnsignedByte()))
+                    .frcResponseTime(parseFrcResponseTime(in.readUnsignedByte()))
+                    .bondedNodes(readBitmap(in, BITMAP_LENGTH))
+                    .discoveredNodes(readBitmap(in, BITMAP_LENGTH));
+            
+            for ( int address = 0; address < NetworkState.NODE_ADDRESSES_NUM; address++ ) {
+                int hops = in.readUnsignedByte();
+                builder.hops(address, ( hops == UNKNOWN )? NetworkState.HOPS_UNKNOWN : hops);
+            }
+            
+            if ( formatVersion != FORMAT_VERSION_NO_CAPABILITIES ) {
+                readCapabilities(in, builder);
+            }
+            return builder.build();
+        } catch ( IllegalArgumentException ex ) {
+            throw new IOException("Invalid network state file: " + file, ex);
+        }
+    }
+    
+    private NetworkStateFiles() {
+    }
+}
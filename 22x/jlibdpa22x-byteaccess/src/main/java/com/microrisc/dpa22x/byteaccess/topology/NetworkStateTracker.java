@@ -0,0 +1,471 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.topology;
+
+import com.microrisc.dpa22x.DPA_Confirmation;
+import com.microrisc.dpa22x.DPA_Response;
+import com.microrisc.dpa22x.DPA_ResponseCode;
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.RF_Mode;
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessor;
+import com.microrisc.dpa22x.peripherals.Coordinator;
+import com.microrisc.dpa22x.peripherals.FRC;
+import com.microrisc.dpa22x.timing.FRC_ResponseTime;
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks state of IQRF network according to requests processed by a byte 
+ * accessor and persists it into snapshot file.
+ * <p>
+ * At start, the state is loaded from the snapshot file, so that it is 
+ * available immediately. After that, the state is refreshed in the background
+ * by sending of requests for bonded and discovered nodes and for peripheral
+ * enumeration of the coordinator. Each change of the state is written into 
+ * the snapshot file in the background.
+ * <p>
+ * Capabilities of devices are taken from responses on peripheral enumeration
+ * and forgotten, when the device is bonded again or removed.
+ * 
+ * @author agent
+ */
+public final class NetworkStateTracker {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(NetworkStateTracker.class);
+    
+    /** Default delay of background refresh after start [in ms]. */
+    public static final long REFRESH_DELAY_DEFAULT = 10000;
+    
+    // command of peripheral enumeration
+    private static final int PERIPHERAL_ENUMERATION = 0x3F;
+    
+    // bits of FRC params, which specify response time
+    private static final int FRC_RESPONSE_TIME_MASK = 0x70;
+    
+    // requests, which refresh the state
+    private static final short[][] REFRESH_REQUESTS = {
+        createCoordinatorRequest(
+                Coordinator.PNUM, Coordinator.Command.GET_BONDED_NODES.asByteValue()
+        ),
+        createCoordinatorRequest(
+                Coordinator.PNUM, Coordinator.Command.GET_DISCOVERED_NODES.asByteValue()
+        ),
+        createCoordinatorRequest(
+                ProtocolProperties.PNUM_Properties.DEVICE_EXPLORATION, PERIPHERAL_ENUMERATION
+        )
+    };
+    
+    
+    // snapshot file, null means no persistence
+    private final File snapshotFile;
+    
+    // delay of background refresh after start
+    private final long refreshDelay;
+    
+    // indicates, whether refresh enumerates nodes with unknown capabilities
+    private volatile boolean capabilitiesDiscoveryEnabled = false;
+    
+    // actual state
+    private volatile NetworkState state = new NetworkState.Builder().build();
+    
+    // indicates, whether the actual state is waiting to be saved
+    private final AtomicBoolean savePending = new AtomicBoolean(false);
+    
+    // synchronizes updates of the state
+    private final Object updateLock = new Object();
+    
+    // accessor to send refresh requests by
+    private volatile ByteAccessor accessor = null;
+    
+    // executor of refreshes and saving
+    private volatile ScheduledExecutorService executor = null;
+    
+    
+    private static short[] createCoordinatorRequest(int pnum, int pcmd) {
+        return new short[] { 
+            ProtocolProperties.NADR_Properties.IQMESH_COORDINATOR_ADDRESS, 0, 
+            (short)pnum, (short)pcmd, 0xFF, 0xFF 
+        };
+    }
+    
+    private static long checkRefreshDelay(long refreshDelay) {
+        if ( refreshDelay < 0 ) {
+            throw new IllegalArgumentException("Refresh delay cannot be less then 0");
+        }
+        return refreshDelay;
+    }
+    
+    // returns nodes from specified bitmap
+    private static BitSet parseNodesBitmap(short[] bitmap) {
+        BitSet nodes = new BitSet(NetworkState.NODE_ADDRESSES_NUM);
+        int bitsNum = Math.min(bitmap.length * 8, NetworkState.NODE_ADDRESSES_NUM);
+        for ( int address = ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MIN; address < bitsNum; address++ ) {
+            if ( (bitmap[address / 8] & (1 << (address % 8))) != 0 ) {
+                nodes.set(address);
+            }
+        }
+        return nodes;
+    }
+    
+    // returns node address of specified request or -1 if not a node
+    private static int getNodeAddress(short[] request) {
+        int address = request[ProtocolProperties.NADR_START];
+        if ( request[ProtocolProperties.NADR_START + 1] != 0
+            || address < ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MIN
+            || address > ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX
+        ) {
+            return -1;
+        }
+        return address;
+    }
+    
+    // updates specified state according to coordinator request and its response
+    private void updateByCoordinatorResponse(
+            NetworkState.Builder builder, short pcmd, short[] requestData, short[] responseData
+    ) {
+        if ( pcmd == Coordinator.Command.GET_BONDED_NODES.asByteValue() ) {
+            builder.bondedNodes(parseNodesBitmap(responseData));
+        } else if ( pcmd == Coordinator.Command.GET_DISCOVERED_NODES.asByteValue() ) {
+            builder.discoveredNodes(parseNodesBitmap(responseData));
+        } else if ( pcmd == Coordinator.Command.CLEAR_ALL_BONDS.asByteValue() ) {
+            builder.bondedNodes(new BitSet()).discoveredNodes(new BitSet());
+            for ( int address = 0; address < NetworkState.NODE_ADDRESSES_NUM; address++ ) {
+                builder.hops(address, NetworkState.HOPS_UNKNOWN);
+                if ( address >= ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MIN ) {
+                    builder.capabilities(address, null);
+                }
+            }
+        } else if ( pcmd == Coordinator.Command.BOND_NODE.asByteValue() 
+                && responseData.length > 0 
+        ) {
+            builder.bonded(responseData[0], true).capabilities(responseData[0], null);
+        } else if ( pcmd == Coordinator.Command.REBOND_NODE.asByteValue() 
+                && requestData.length > 0 
+        ) {
+            builder.bonded(requestData[0], true).capabilities(requestData[0], null);
+        } else if ( pcmd == Coordinator.Command.REMOVE_BONDED_NODE.asByteValue() 
+                && requestData.length > 0 
+        ) {
+            builder.bonded(requestData[0], false)
+                    .hops(requestData[0], NetworkState.HOPS_UNKNOWN)
+                    .capabilities(requestData[0], null);
+        } else if ( pcmd == Coordinator.Command.RUN_DISCOVERY.asByteValue() ) {
+            // discovered nodes are not part of the response
+            scheduleRefresh(0);
+        }
+    }
+    
+    // schedules saving of the state
+    private void scheduleSave() {
+        ScheduledExecutorService currExecutor = executor;
+        if ( currExecutor == null || snapshotFile == null ) {
+            return;
+        }
+        if ( savePending.compareAndSet(false, true) ) {
+            try {
+                currExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        save();
+                    }
+                });
+            } catch ( RejectedExecutionException ex ) {
+                logger.debug("Saving not scheduled - tracker stopped");
+            }
+        }
+    }
+    
+    // saves actual state into snapshot file
+    private void save() {
+        if ( !savePending.compareAndSet(true, false) ) {
+            return;
+        }
+        
+        NetworkState stateToSave = state;
+        try {
+            NetworkStateFiles.save(stateToSave, snapshotFile);
+            logger.debug("Network state version {} saved", stateToSave.getVersion());
+        } catch ( IOException ex ) {
+            logger.error("Saving of network state failed: {}", ex.getMessage());
+        }
+    }
+    
+    // schedules refresh of the state after specified delay
+    private void scheduleRefresh(long delay) {
+        ScheduledExecutorService currExecutor = executor;
+        if ( currExecutor == null ) {
+            return;
+        }
+        try {
+            currExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    refresh();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch ( RejectedExecutionException ex ) {
+            logger.debug("Refresh not scheduled - tracker stopped");
+        }
+    }
+    
+    // refreshes the state - responses are processed by update method
+    private void refresh() {
+        logger.debug("refresh - start");
+        
+        ByteAccessor currAccessor = accessor;
+        for ( short[] request : REFRESH_REQUESTS ) {
+            if ( currAccessor == null || Thread.currentThread().isInterrupted() ) {
+                return;
+            }
+            RequestResult result = currAccessor.sendRequest(request);
+            if ( result.getStatus() != RequestResult.Status.SUCCESSFULLY_COMPLETED ) {
+                logger.warn("Refresh of network state failed: {}", result.getProcessingInfo());
+                return;
+            }
+        }
+        
+        if ( capabilitiesDiscoveryEnabled ) {
+            discoverCapabilities(currAccessor);
+        }
+        
+        logger.info("Network state refreshed: {}", state);
+        logger.debug("refresh - end");
+    }
+    
+    // enumerates bonded nodes with unknown capabilities - responses are 
+    // processed by update method
+    private void discoverCapabilities(ByteAccessor currAccessor) {
+        NetworkState currState = state;
+        BitSet bondedNodes = currState.getBondedNodes();
+        for ( int address = bondedNodes.nextSetBit(0); address >= 0; address = bondedNodes.nextSetBit(address + 1) ) {
+            if ( Thread.currentThread().isInterrupted() ) {
+                return;
+            }
+            if ( currState.getCapabilities(address) != null ) {
+                continue;
+            }
+            short[] request = { 
+                (short)address, 0, ProtocolProperties.PNUM_Properties.DEVICE_EXPLORATION, 
+                PERIPHERAL_ENUMERATION, 0xFF, 0xFF 
+            };
+            RequestResult result = currAccessor.sendRequest(request);
+            if ( result.getStatus() != RequestResult.Status.SUCCESSFULLY_COMPLETED ) {
+                logger.info("Capabilities of node {} not discovered: {}", address, result.getProcessingInfo());
+            }
+        }
+    }
+    
+    
+    /**
+     * Creates new tracker.
+     * 
+     * @param snapshotFile file to persist the state into, {@code null} means
+     *        no persistence
+     * @param refreshDelay delay of background refresh after start [in ms]
+     */
+    public NetworkStateTracker(File snapshotFile, long refreshDelay) {
+        this.snapshotFile = snapshotFile;
+        this.refreshDelay = checkRefreshDelay(refreshDelay);
+    }
+    
+    /**
+     * Creates new tracker with {@link #REFRESH_DELAY_DEFAULT default} refresh delay.
+     * 
+     * @param snapshotFile file to persist the state into, {@code null} means
+     *        no persistence
+     */
+    public NetworkStateTracker(File snapshotFile) {
+        this(snapshotFile, REFRESH_DELAY_DEFAULT);
+    }
+    
+    /**
+     * Enables or disables discovery of capabilities. If enabled, each refresh
+     * sends peripheral enumeration to bonded nodes, whose capabilities are 
+     * not known yet. Otherwise, capabilities are learned only from peripheral
+     * enumerations sent by users of the accessor. Disabled by default.
+     * 
+     * @param enabled {@code true} to enable discovery of capabilities
+     */
+    public void setCapabilitiesDiscoveryEnabled(boolean enabled) {
+        this.capabilitiesDiscoveryEnabled = enabled;
+    }
+    
+    /**
+     * Loads the state from the snapshot file and schedules its refresh 
+     * by specified accessor. If there is no valid snapshot, the refresh is
+     * run immediately.
+     * 
+     * @param accessor accessor to send refresh requests by
+     */
+    public synchronized void start(ByteAccessor accessor) {
+        logger.debug("start - start");
+        
+        if ( executor != null ) {
+            throw new IllegalStateException("Network state tracker already started.");
+        }
+        
+        NetworkState loadedState = null;
+        if ( snapshotFile != null ) {
+            try {
+                loadedState = NetworkStateFiles.load(snapshotFile);
+            } catch ( IOException ex ) {
+                logger.warn("Loading of network state failed: {}", ex.getMessage());
+            }
+        }
+        if ( loadedState != null ) {
+            state = loadedState;
+            logger.info("Network state loaded: {}", loadedState);
+        }
+        
+        this.accessor = accessor;
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "network-state-tracker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduleRefresh( ( loadedState != null )? refreshDelay : 0 );
+        
+        logger.debug("start - end");
+    }
+    
+    /**
+     * Stops background refresh and saves pending changes of the state.
+     */
+    public synchronized void stop() {
+        logger.debug("stop - start");
+        
+        if ( executor == null ) {
+            return;
+        }
+        
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            logger.warn("Stopping of network state tracker interrupted");
+        }
+        executor = null;
+        accessor = null;
+        
+        if ( snapshotFile != null ) {
+            save();
+        }
+        
+        logger.debug("stop - end");
+    }
+    
+    /**
+     * @return actual state of the network
+     */
+    public NetworkState getState() {
+        return state;
+    }
+    
+    /**
+     * Updates the state according to specified successfully processed request.
+     * 
+     * @param request processed request
+     * @param confirmation confirmation of the request, {@code null} if the 
+     *        request was targeted for local device
+     * @param response response on the request
+     */
+    public void update(short[] request, DPA_Confirmation confirmation, DPA_Response response) {
+        if ( response.getResponseCode() != DPA_ResponseCode.NO_ERROR ) {
+            return;
+        }
+        
+        short pnum = ProtocolProperties.getPeripheralNumber(request);
+        short pcmd = ProtocolProperties.getCommand(request);
+        short[] requestData = ProtocolProperties.getData(request);
+        int nodeAddress = getNodeAddress(request);
+        
+        synchronized ( updateLock ) {
+            NetworkState currState = state;
+            NetworkState.Builder builder = new NetworkState.Builder(currState);
+            
+            try {
+                if ( nodeAddress != -1 && confirmation != null ) {
+                    builder.hops(nodeAddress, confirmation.getHops());
+                }
+                
+                if ( pnum == ProtocolProperties.PNUM_Properties.DEVICE_EXPLORATION
+                        && pcmd == PERIPHERAL_ENUMERATION
+                ) {
+                    int deviceAddress = ProtocolProperties.isAddresseeLocalDevice(request)?
+                            ProtocolProperties.NADR_Properties.IQMESH_COORDINATOR_ADDRESS : nodeAddress;
+                    if ( deviceAddress != -1 ) {
+                        builder.capabilities(
+                                deviceAddress, NodeCapabilities.parseEnumeration(response.getData())
+                        );
+                    }
+                }
+                
+                if ( ProtocolProperties.isAddresseeLocalDevice(request) ) {
+                    if ( pnum == Coordinator.PNUM ) {
+                        updateByCoordinatorResponse(builder, pcmd, requestData, response.getData());
+                    } else if ( pnum == ProtocolProperties.PNUM_Properties.DEVICE_EXPLORATION
+                            && pcmd == PERIPHERAL_ENUMERATION 
+                            && response.getData().length > 11
+                    ) {
+                        int flags = response.getData()[11];
+                        builder.rfMode( ((flags & 1) == 1)? RF_Mode.STD : RF_Mode.LP );
+                    } else if ( pnum == FRC.PNUM 
+                            && pcmd == FRC.Command.SET_FRC_PARAMS.asByteValue()
+                            && requestData.length > 0
+                    ) {
+                        int responseTimeId = requestData[0] & FRC_RESPONSE_TIME_MASK;
+                        for ( FRC_ResponseTime responseTime : FRC_ResponseTime.values() ) {
+                            if ( responseTime.getId() == responseTimeId ) {
+                                builder.frcResponseTime(responseTime);
+                            }
+                        }
+                    }
+                }
+            } catch ( IllegalArgumentException ex ) {
+                logger.warn("Network state not updated: {}", ex.getMessage());
+                return;
+            }
+            
+            NetworkState newState = builder.build();
+            if ( newState.hasSameContent(currState) ) {
+                return;
+            }
+            
+            state = new NetworkState.Builder(newState)
+                    .version(currState.getVersion() + 1)
+                    .timestamp(System.currentTimeMillis())
+                    .build();
+        }
+        
+        logger.debug("Network state changed to version {}", state.getVersion());
+        scheduleSave();
+    }
+}
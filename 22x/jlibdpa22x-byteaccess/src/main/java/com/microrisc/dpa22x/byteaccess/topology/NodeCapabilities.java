@@ -0,0 +1,222 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.topology;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import java.util.BitSet;
+
+/**
+ * Capabilities of a device, as reported by its peripheral enumeration.
+ * <p>
+ * Capabilities determine requests, which are certain to fail on the device:
+ * requests to peripherals, which the device does not support, and requests
+ * with HWPID, which does not match HWPID of the device.
+ * 
+ * @author agent
+ */
+public final class NodeCapabilities {
+    
+    /** Number of peripheral numbers, which can be reported by enumeration. */
+    public static final int PERIPHERALS_NUM = ProtocolProperties.PNUM_Properties.USER_PERIPHERAL_END + 1;
+    
+    /** Value of HWPID in requests, which matches any device's HWPID. */
+    public static final int HWPID_ANY = 0xFFFF;
+    
+    // minimal length of enumeration response data
+    private static final int ENUMERATION_MIN_LENGTH = 12;
+    
+    // positions of items in enumeration response data
+    private static final int DPA_VERSION_POS = 0;
+    private static final int EMBEDDED_PERIPHERALS_POS = 3;
+    private static final int EMBEDDED_PERIPHERALS_LENGTH = 4;
+    private static final int HWPID_POS = 7;
+    private static final int HWPID_VERSION_POS = 9;
+    private static final int USER_PERIPHERALS_POS = 12;
+    
+    
+    // DPA version
+    private final int dpaVersion;
+    
+    // supported peripherals - bits set at their numbers
+    private final BitSet peripherals;
+    
+    // HWPID
+    private final int hwpid;
+    
+    // HWPID version
+    private final int hwpidVersion;
+    
+    
+    private static int checkWord(int value, String name) {
+        if ( value < 0 || value > 0xFFFF ) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+        return value;
+    }
+    
+    private static BitSet checkPeripherals(BitSet peripherals) {
+        if ( peripherals == null ) {
+            throw new IllegalArgumentException("Peripherals cannot be null.");
+        }
+        if ( peripherals.length() > PERIPHERALS_NUM ) {
+            throw new IllegalArgumentException("Invalid peripheral number: " + (peripherals.length() - 1));
+        }
+        return (BitSet)peripherals.clone();
+    }
+    
+    private static int getWord(short[] data, int pos) {
+        return data[pos] | (data[pos + 1] << 8);
+    }
+    
+    
+    /**
+     * Creates new capabilities.
+     * 
+     * @param dpaVersion DPA version
+     * @param peripherals supported peripherals - bits set at their numbers
+     * @param hwpid HWPID
+     * @param hwpidVersion HWPID version
+     */
+    public NodeCapabilities(int dpaVersion, BitSet peripherals, int hwpid, int hwpidVersion) {
+        this.dpaVersion = checkWord(dpaVersion, "DPA version");
+        this.peripherals = checkPeripherals(peripherals);
+        this.hwpid = checkWord(hwpid, "HWPID");
+        this.hwpidVersion = checkWord(hwpidVersion, "HWPID version");
+    }
+    
+    /**
+     * Parses capabilities from data of response on peripheral enumeration.
+     * 
+     * @param responseData data of the response
+     * @return parsed capabilities
+     * @throws IllegalArgumentException if the data is not valid enumeration data
+     */
+    public static NodeCapabilities parseEnumeration(short[] responseData) {
+        if ( responseData.length < ENUMERATION_MIN_LENGTH ) {
+            throw new IllegalArgumentException(
+                    "Enumeration data too short: " + responseData.length
+            );
+        }
+        
+        BitSet peripherals = new BitSet(PERIPHERALS_NUM);
+        for ( int bit = 0; bit < EMBEDDED_PERIPHERALS_LENGTH * 8; bit++ ) {
+            if ( (responseData[EMBEDDED_PERIPHERALS_POS + bit / 8] & (1 << (bit % 8))) != 0 ) {
+                peripherals.set(bit);
+            }
+        }
+        
+        int userPeripheralsNum = PERIPHERALS_NUM - ProtocolProperties.PNUM_Properties.USER_PERIPHERAL_START;
+        int userBitsNum = Math.min((responseData.length - USER_PERIPHERALS_POS) * 8, userPeripheralsNum);
+        for ( int bit = 0; bit < userBitsNum; bit++ ) {
+            if ( (responseData[USER_PERIPHERALS_POS + bit / 8] & (1 << (bit % 8))) != 0 ) {
+                peripherals.set(ProtocolProperties.PNUM_Properties.USER_PERIPHERAL_START + bit);
+            }
+        }
+        
+        return new NodeCapabilities(
+                getWord(responseData, DPA_VERSION_POS), peripherals,
+                getWord(responseData, HWPID_POS), getWord(responseData, HWPID_VERSION_POS)
+        );
+    }
+    
+    /**
+     * @return DPA version
+     */
+    public int getDpaVersion() {
+        return dpaVersion;
+    }
+    
+    /**
+     * @return supported peripherals - bits set at their numbers
+     */
+    public BitSet getPeripherals() {
+        return (BitSet)peripherals.clone();
+    }
+    
+    /**
+     * @return HWPID
+     */
+    public int getHwpid() {
+        return hwpid;
+    }
+    
+    /**
+     * @return HWPID version
+     */
+    public int getHwpidVersion() {
+        return hwpidVersion;
+    }
+    
+    /**
+     * Indicates, whether specified peripheral is supported. Device exploration
+     * is always supported.
+     * 
+     * @param pnum peripheral number
+     * @return {@code true} if the peripheral is supported <br>
+     *         {@code false} otherwise
+     */
+    public boolean isPeripheralSupported(int pnum) {
+        if ( pnum == ProtocolProperties.PNUM_Properties.DEVICE_EXPLORATION ) {
+            return true;
+        }
+        return ( pnum >= 0 && pnum < PERIPHERALS_NUM && peripherals.get(pnum) );
+    }
+    
+    /**
+     * Indicates, whether request with specified HWPID is accepted.
+     * 
+     * @param hwpid HWPID of a request
+     * @return {@code true} if the request is accepted <br>
+     *         {@code false} otherwise
+     */
+    public boolean isHwpidAccepted(int hwpid) {
+        return ( hwpid == HWPID_ANY || hwpid == this.hwpid );
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        if ( this == obj ) {
+            return true;
+        }
+        if ( !(obj instanceof NodeCapabilities) ) {
+            return false;
+        }
+        NodeCapabilities capabilities = (NodeCapabilities)obj;
+        return dpaVersion == capabilities.dpaVersion
+                && hwpid == capabilities.hwpid
+                && hwpidVersion == capabilities.hwpidVersion
+                && peripherals.equals(capabilities.peripherals);
+    }
+    
+    @Override
+    public int hashCode() {
+        int hash = dpaVersion;
+        hash = 31 * hash + peripherals.hashCode();
+        hash = 31 * hash + hwpid;
+        hash = 31 * hash + hwpidVersion;
+        return hash;
+    }
+    
+    @Override
+    public String toString() {
+        return ("{ " +
+                "DPA version=" + Integer.toHexString(dpaVersion) +
+                ", peripherals=" + peripherals +
+                ", HWPID=" + Integer.toHexString(hwpid) +
+                ", HWPID version=" + Integer.toHexString(hwpidVersion) +
+                " }");
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.transfer;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.byteaccess.accessors.StandardByteAccessor;
+import com.microrisc.dpa22x.byteaccess.broadcast.AcknowledgedBroadcast;
+import com.microrisc.dpa22x.byteaccess.broadcast.AcknowledgedBroadcastResult;
+import com.microrisc.dpa22x.byteaccess.broadcast.BroadcastException;
+import com.microrisc.dpa22x.peripherals.EEEPROM;
+import com.microrisc.dpa22x.peripherals.OS;
+import com.microrisc.dpa22x.timing.Clock;
+import java.util.Set;
+import java.util.TreeSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Upload of code - DPA handler or IQRF plugin - into all nodes of the network.
+ * <p>
+ * Blocks of the code are broadcast into EEEPROM of all nodes at once, so 
+ * the time of the upload does not depend on the number of nodes. Then each 
+ * node checks the code against its checksum by OS Load Code sent by 
+ * {@link AcknowledgedBroadcast}. Only the nodes, which received the check 
+ * but whose code is corrupted, are repaired: each block is checked in them 
+ * and the corrupted blocks are rewritten by acknowledged broadcast, which 
+ * reaches the selected nodes only. Finally, the code is loaded by the nodes,
+ * which passed the check.
+ * <p>
+ * Code must be prepared for loading, i.e. exactly in the form, in which 
+ * OS Load Code expects it in EEEPROM.
+ * 
+ * @author agent
+ */
+public final class CodeUpload {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(CodeUpload.class);
+    
+    /**
+     * Type of uploaded code.
+     */
+    public static enum CodeType {
+        /** Custom DPA handler. */
+        HANDLER(0x00, 0x0001),
+        
+        /** IQRF plugin. */
+        IQRF_PLUGIN(0x02, 0x0003);
+        
+        // flags of OS Load Code
+        private final int flags;
+        
+        // initial value of checksum
+        private final int checksumInit;
+        
+        private CodeType(int flags, int checksumInit) {
+            this.flags = flags;
+            this.checksumInit = checksumInit;
+        }
+    }
+    
+    /** Length of broadcast blocks of code. Blocks do not cross EEEPROM pages. */
+    public static final int BLOCK_LENGTH = EeepromTransfer.PAGE_SIZE / 2;
+    
+    /** Maximal number of checks and repairs of corrupted nodes. */
+    public static final int REPAIR_ROUNDS_NUM = 3;
+    
+    // flag of OS Load Code, which means loading of the code, not only check
+    private static final int LOAD_CODE_FLAG_LOAD = 0x01;
+    
+    // maximal length of data written by one acknowledged broadcast - address precedes
+    private static final int ACKNOWLEDGED_WRITE_LENGTH_MAX 
+            = AcknowledgedBroadcast.SELECTIVE_REQUEST_MAX_LENGTH - ProtocolProperties.PDATA_START_POS - 2;
+    
+    
+    // accessor to send requests by
+    private final StandardByteAccessor accessor;
+    
+    // acknowledged broadcast to check, repair and load the code by
+    private final AcknowledgedBroadcast acknowledgedBroadcast;
+    
+    
+    // counter of requests sent during one upload
+    private static final class RequestCounter {
+        long requestsNum = 0;
+    }
+    
+    
+    private static StandardByteAccessor checkAccessor(StandardByteAccessor accessor) {
+        if ( accessor == null ) {
+            throw new IllegalArgumentException("Accessor cannot be null.");
+        }
+        return accessor;
+    }
+    
+    private static void checkCode(int address, short[] code, CodeType type) {
+        if ( code == null || code.length == 0 ) {
+            throw new IllegalArgumentException("Code cannot be null or empty.");
+        }
+        if ( address < 0 || address + code.length > EeepromTransfer.ADDRESS_SPACE_SIZE ) {
+            throw new IllegalArgumentException(
+                    "Code out of EEEPROM: " + address + ", length " + code.length
+            );
+        }
+        if ( type == null ) {
+            throw new IllegalArgumentException("Code type cannot be null.");
+        }
+    }
+    
+    /**
+     * Creates new upload, which sends requests by specified accessor.
+     * 
+     * @param accessor accessor to send requests by
+     */
+    public CodeUpload(StandardByteAccessor accessor) {
+        this.accessor = checkAccessor(accessor);
+        this.acknowledgedBroadcast = new AcknowledgedBroadcast(accessor);
+    }
+    
+    
+    // REQUESTS
+    
+    private static short[] createBroadcastRequest(int pnum, int pcmd, short... pData) {
+        short[] request = new short[ProtocolProperties.PDATA_START_POS + pData.length];
+        request[ProtocolProperties.NADR_START] = ProtocolProperties.NADR_Properties.IQMESH_BROADCAST_ADDRESS;
+        request[ProtocolProperties.PNUM_POS] = (short)pnum;
+        request[ProtocolProperties.PCMD_POS] = (short)pcmd;
+        request[ProtocolProperties.HWPID_START] = 0xFF;
+        request[ProtocolProperties.HWPID_START + 1] = 0xFF;
+        System.arraycopy(pData, 0, request, ProtocolProperties.PDATA_START_POS, pData.length);
+        return request;
+    }
+    
+    private static short[] createWriteData(int address, short[] code, int offset, int length) {
+        short[] pData = new short[2 + length];
+        pData[0] = (short)((address + offset) & 0xFF);
+        pData[1] = (short)((address + offset) >> 8);
+        System.arraycopy(code, offset, pData, 2, length);
+        return pData;
+    }
+    
+    // OS Load Code of specified range of the code
+    private static short[] createLoadCode(
+            CodeType type, boolean load, int address, short[] code, int offset, int length
+    ) {
+        int checksum = getChecksum(type.checksumInit, code, offset, length);
+        return createBroadcastRequest(
+                OS.PNUM, OS.Command.LOAD_CODE.asByteValue(),
+                (short)(type.flags | (load? LOAD_CODE_FLAG_LOAD : 0)),
+                (short)((address + offset) & 0xFF), (short)((address + offset) >> 8),
+                (short)(length & 0xFF), (short)(length >> 8),
+                (short)(checksum & 0xFF), (short)(checksum >> 8)
+        );
+    }
+    
+    /**
+     * Returns Fletcher-16 checksum of specified part of code, which is used 
+     * by OS Load Code.
+     * 
+     * @param initialValue initial value of the checksum
+     * @param code code
+     * @param offset start of the part
+     * @param length length of the part
+     * @return checksum
+     */
+    public static int getChecksum(int initialValue, short[] code, int offset, int length) {
+        int checksumLow = initialValue & 0xFF;
+        int checksumHigh = (initialValue >> 8) & 0xFF;
+        for ( int pos = offset; pos < offset + length; pos++ ) {
+            checksumLow += code[pos];
+            if ( checksumLow > 0xFF ) {
+                checksumLow = (checksumLow + 1) & 0xFF;
+            }
+            checksumHigh += checksumLow;
+            if ( checksumHigh > 0xFF ) {
+                checksumHigh = (checksumHigh + 1) & 0xFF;
+            }
+        }
+        return (checksumHigh << 8) | checksumLow;
+    }
+    
+    // sends specified request by acknowledged broadcast to specified nodes,
+    // or to all bonded nodes if nodes are not specified
+    private AcknowledgedBroadcastResult sendAcknowledged(
+            short[] request, Set<Integer> nodes, RequestCounter counter
+    ) throws TransferException {
+        try {
+            AcknowledgedBroadcastResult result = ( nodes == null )?
+                    acknowledgedBroadcast.send(request, false) 
+                    : acknowledgedBroadcast.send(request, nodes, false);
+            counter.requestsNum += result.getRequestsNum();
+            return result;
+        } catch ( BroadcastException ex ) {
+            throw new TransferException(ex);
+        }
+    }
+    
+    
+    // UPLOAD
+    
+    // broadcasts all blocks of the code - lost broadcasts are repaired later
+    private void broadcastCode(int address, short[] code, RequestCounter counter) 
+            throws TransferException 
+    {
+        for ( int offset = 0; offset < code.length; ) {
+            int length = Math.min(BLOCK_LENGTH - (address + offset) % BLOCK_LENGTH, code.length - offset);
+            short[] request = createBroadcastRequest(
+                    EEEPROM.PNUM, EEEPROM.Command.EXTEDNED_WRITE.asByteValue(),
+                    createWriteData(address, code, offset, length)
+            );
+            counter.requestsNum++;
+            RequestResult result = accessor.sendRequest(request);
+            if ( result.getStatus() != RequestResult.Status.SUCCESSFULLY_COMPLETED ) {
+                logger.warn(
+                        "Broadcast of block at {} failed: {}", 
+                        address + offset, result.getProcessingInfo()
+                );
+            }
+            offset += length;
+        }
+    }
+    
+    // rewrites blocks of the code, which are corrupted in specified nodes
+    private void repairNodes(
+            Set<Integer> nodes, int address, short[] code, CodeType type, RequestCounter counter
+    ) throws TransferException {
+        for ( int offset = 0; offset < code.length; ) {
+            int length = Math.min(BLOCK_LENGTH - (address + offset) % BLOCK_LENGTH, code.length - offset);
+            Set<Integer> corruptedNodes = sendAcknowledged(
+                    createLoadCode(type, false, address, code, offset, length), nodes, counter
+            ).getRejectingNodes();
+            if ( !corruptedNodes.isEmpty() ) {
+                logger.debug("Block at {} rewritten in nodes {}", address + offset, corruptedNodes);
+                for ( int pos = offset; pos < offset + length; pos += ACKNOWLEDGED_WRITE_LENGTH_MAX ) {
+                    int writeLength = Math.min(ACKNOWLEDGED_WRITE_LENGTH_MAX, offset + length - pos);
+                    sendAcknowledged(createBroadcastRequest(
+                            EEEPROM.PNUM, EEEPROM.Command.EXTEDNED_WRITE.asByteValue(),
+                            createWriteData(address, code, pos, writeLength)
+                    ), corruptedNodes, counter);
+                }
+            }
+            offset += length;
+        }
+    }
+    
+    /**
+     * Uploads specified code into EEEPROM of all bonded nodes and loads it.
+     * 
+     * @param address address in EEEPROM to store the code at
+     * @param code code prepared for loading
+     * @param type type of the code
+     * @return result of the upload - nodes, which loaded the code, and nodes,
+     *         which failed
+     * @throws TransferException if some request to coordinator failed
+     */
+    public CodeUploadResult upload(int address, short[] code, CodeType type) 
+            throws TransferException 
+    {
+        checkCode(address, code, type);
+        logger.debug("upload - start: address={}, length={}, type={}", address, code.length, type);
+        
+        Clock clock = accessor.getWaitingTimeCounter().getClock();
+        long startTime = clock.nanoTime();
+        RequestCounter counter = new RequestCounter();
+        
+        broadcastCode(address, code, counter);
+        
+        // the first check is sent to all bonded nodes
+        short[] checkRequest = createLoadCode(type, false, address, code, 0, code.length);
+        Set<Integer> nodes = null;
+        Set<Integer> checkedNodes = new TreeSet<>();
+        Set<Integer> remainingNodes = null;
+        for ( int round = 0; remainingNodes == null || !remainingNodes.isEmpty(); round++ ) {
+            AcknowledgedBroadcastResult checkResult = sendAcknowledged(checkRequest, remainingNodes, counter);
+            if ( nodes == null ) {
+                nodes = checkResult.getNodes();
+                remainingNodes = new TreeSet<>(nodes);
+            }
+            Set<Integer> passedNodes = checkResult.getAcknowledgedNodes();
+            checkedNodes.addAll(passedNodes);
+            remainingNodes.removeAll(passedNodes);
+            
+            // unreachable nodes cannot be repaired, they are checked again only
+            Set<Integer> corruptedNodes = checkResult.getRejectingNodes();
+            logger.info(
+                    "Code check {}: {} nodes passed, {} corrupted, {} unreachable", 
+                    round, passedNodes.size(), corruptedNodes.size(), 
+                    remainingNodes.size() - corruptedNodes.size()
+            );
+            if ( round == REPAIR_ROUNDS_NUM || remainingNodes.isEmpty() ) {
+                break;
+            }
+            if ( !corruptedNodes.isEmpty() ) {
+                repairNodes(corruptedNodes, address, code, type, counter);
+            }
+        }
+        
+        // load is repeated for nodes, which did not receive it
+        short[] loadRequest = createLoadCode(type, true, address, code, 0, code.length);
+        Set<Integer> loadedNodes = new TreeSet<>();
+        for ( int round = 0; round <= REPAIR_ROUNDS_NUM && !checkedNodes.isEmpty(); round++ ) {
+            AcknowledgedBroadcastResult loadResult = sendAcknowledged(loadRequest, checkedNodes, counter);
+            loadedNodes.addAll(loadResult.getAcknowledgedNodes());
+            checkedNodes = loadResult.getUnreachableNodes();
+        }
+        Set<Integer> failedNodes = new TreeSet<>(nodes);
+        failedNodes.removeAll(loadedNodes);
+        
+        CodeUploadResult result = new CodeUploadResult(
+                loadedNodes, failedNodes, new TransferStatistics(
+                    nodes.size(), counter.requestsNum, code.length, (clock.nanoTime() - startTime) / 1000000
+                )
+        );
+        logger.info("Code uploaded: {}", result);
+        logger.debug("upload - end");
+        return result;
+    }
+}
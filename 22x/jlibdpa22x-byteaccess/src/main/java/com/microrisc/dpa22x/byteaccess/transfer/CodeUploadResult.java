@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.transfer;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Result of upload of code into nodes of the network.
+ * 
+ * @author agent
+ */
+public final class CodeUploadResult {
+    
+    // nodes, which verified and loaded the code
+    private final Set<Integer> loadedNodes;
+    
+    // nodes, which did not load the code
+    private final Set<Integer> failedNodes;
+    
+    // statistics of the upload
+    private final TransferStatistics statistics;
+    
+    
+    /**
+     * Creates new result.
+     * 
+     * @param loadedNodes nodes, which verified and loaded the code
+     * @param failedNodes nodes, which did not load the code
+     * @param statistics statistics of the upload
+     */
+    public CodeUploadResult(
+            Set<Integer> loadedNodes, Set<Integer> failedNodes, TransferStatistics statistics
+    ) {
+        this.loadedNodes = Collections.unmodifiableSet(new TreeSet<>(loadedNodes));
+        this.failedNodes = Collections.unmodifiableSet(new TreeSet<>(failedNodes));
+        this.statistics = statistics;
+    }
+    
+    /**
+     * @return addresses of nodes, which verified and loaded the code
+     */
+    public Set<Integer> getLoadedNodes() {
+        return loadedNodes;
+    }
+    
+    /**
+     * @return addresses of nodes, which did not load the code - because they
+     *         were unreachable or because the code stayed corrupted in them
+     */
+    public Set<Integer> getFailedNodes() {
+        return failedNodes;
+    }
+    
+    /**
+     * @return statistics of the upload - blocks counts all sent requests 
+     */
+    public TransferStatistics getStatistics() {
+        return statistics;
+    }
+    
+    @Override
+    public String toString() {
+        return "{"
+                + "loaded=" + loadedNodes.size()
+                + ", failed=" + failedNodes
+                + ", statistics=" + statistics
+                + "}";
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.transfer;
+
+import com.microrisc.dpa22x.DPA_Response;
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.byteaccess.accessors.StandardByteAccessor;
+import com.microrisc.dpa22x.peripherals.EEEPROM;
+import com.microrisc.dpa22x.timing.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Transfer of byte ranges of any length from and to EEEPROM of a device.
+ * <p>
+ * The range is split into chunks of maximal length, which are transferred
+ * by extended read and write commands. Chunk requests are pipelined - several
+ * of them are queued in the accessor at once, so that the next chunk is sent
+ * right after the previous one is finished, without a round trip through 
+ * the caller. Failed chunk is repeated alone, up to {@link #ATTEMPTS_NUM} 
+ * times. Written data can be verified by reading back, chunks, which differ, 
+ * are written again.
+ * 
+ * @author agent
+ */
+public final class EeepromTransfer {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(EeepromTransfer.class);
+    
+    /** Size of address space of EEEPROM. */
+    public static final int ADDRESS_SPACE_SIZE = 0x10000;
+    
+    /** Size of EEEPROM page - written chunk cannot cross page boundary. */
+    public static final int PAGE_SIZE = 64;
+    
+    /** Maximal length of read chunk - the length of data of the longest response. */
+    public static final int READ_CHUNK_LENGTH_MAX 
+            = ProtocolProperties.RESPONSE_MAX_LENGTH - (ProtocolProperties.DPA_VALUE_POS + 1);
+    
+    /** Maximal length of written chunk - the address is in PData too. */
+    public static final int WRITE_CHUNK_LENGTH_MAX = ProtocolProperties.PDATA_MAX_LENGTH - 2;
+    
+    /** Default number of chunk requests queued in the accessor at once. */
+    public static final int PIPELINE_DEPTH_DEFAULT = RequestPipeline.DEPTH_DEFAULT;
+    
+    /** Number of attempts to transfer a chunk. */
+    public static final int ATTEMPTS_NUM = RequestPipeline.ATTEMPTS_NUM;
+    
+    
+    // chunk of transferred range
+    private static final class Chunk {
+        // address in EEEPROM
+        final int address;
+        
+        // position in the data
+        final int offset;
+        
+        final int length;
+        
+        Chunk(int address, int offset, int length) {
+            this.address = address;
+            this.offset = offset;
+            this.length = length;
+        }
+        
+        @Override
+        public String toString() {
+            return length + " bytes at " + address;
+        }
+    }
+    
+    
+    // pipeline to send requests by
+    private final RequestPipeline pipeline;
+    
+    // clock to measure duration of transfers by
+    private final Clock clock;
+    
+    
+    private static void checkNadr(int nadr) {
+        if ( nadr < 0 || nadr > ProtocolProperties.NADR_Properties.LOCAL_DEVICE_ADDRESS ) {
+            throw new IllegalArgumentException("Invalid NADR: " + nadr);
+        }
+    }
+    
+    private static void checkRange(int address, short[] data) {
+        if ( data == null || data.length == 0 ) {
+            throw new IllegalArgumentException("Data cannot be null or empty.");
+        }
+        if ( address < 0 || address + data.length > ADDRESS_SPACE_SIZE ) {
+            throw new IllegalArgumentException(
+                    "Range out of address space: " + address + ", length " + data.length
+            );
+        }
+    }
+    
+    /**
+     * Creates new transfer engine.
+     * 
+     * @param accessor accessor to send requests by
+     * @param pipelineDepth number of chunk requests queued in the accessor at once
+     */
+    public EeepromTransfer(StandardByteAccessor accessor, int pipelineDepth) {
+        this.pipeline = new RequestPipeline(accessor, pipelineDepth);
+        this.clock = accessor.getWaitingTimeCounter().getClock();
+    }
+    
+    /**
+     * Creates new transfer engine with default pipeline depth.
+     * 
+     * @param accessor accessor to send requests by
+     */
+    public EeepromTransfer(StandardByteAccessor accessor) {
+        this(accessor, PIPELINE_DEPTH_DEFAULT);
+    }
+    
+    // splits specified range into chunks
+    private static List<Chunk> createChunks(int address, int length, boolean write) {
+        List<Chunk> chunks = new ArrayList<>();
+        int offset = 0;
+        while ( offset < length ) {
+            int chunkLength;
+            if ( write ) {
+                int pageRest = PAGE_SIZE - (address + offset) % PAGE_SIZE;
+                chunkLength = Math.min(WRITE_CHUNK_LENGTH_MAX, pageRest);
+            } else {
+                chunkLength = READ_CHUNK_LENGTH_MAX;
+            }
+            chunkLength = Math.min(chunkLength, length - offset);
+            chunks.add(new Chunk(address + offset, offset, chunkLength));
+            offset += chunkLength;
+        }
+        return chunks;
+    }
+    
+    private static short[] createRequest(int nadr, int pcmd, Chunk chunk, short[] data) {
+        short[] request = new short[ProtocolProperties.PDATA_START_POS + 2 + data.length];
+        request[ProtocolProperties.NADR_START] = (short)nadr;
+        request[ProtocolProperties.PNUM_POS] = EEEPROM.PNUM;
+        request[ProtocolProperties.PCMD_POS] = (short)pcmd;
+        request[ProtocolProperties.HWPID_START] = 0xFF;
+        request[ProtocolProperties.HWPID_START + 1] = 0xFF;
+        request[ProtocolProperties.PDATA_START_POS] = (short)(chunk.address & 0xFF);
+        request[ProtocolProperties.PDATA_START_POS + 1] = (short)(chunk.address >> 8);
+        System.arraycopy(data, 0, request, ProtocolProperties.PDATA_START_POS + 2, data.length);
+        return request;
+    }
+    
+    private static short[] createReadRequest(int nadr, Chunk chunk) {
+        return createRequest(
+                nadr, EEEPROM.Command.EXTENDED_READ.asByteValue(), chunk, 
+                new short[] { (short)chunk.length }
+        );
+    }
+    
+    private long getElapsedTime(long startTime) {
+        return (clock.nanoTime() - startTime) / 1000000;
+    }
+    
+    /**
+     * Reads range of EEEPROM of specified device into specified buffer.
+     * 
+     * @param nadr address of the device
+     * @param address start address of the range
+     * @param buffer buffer to read into, its length is the length of the range
+     * @return statistics of the transfer
+     * @throws TransferException if some chunk could not be read
+     */
+    public TransferStatistics read(final int nadr, int address, final short[] buffer) 
+            throws TransferException 
+    {
+        checkNadr(nadr);
+        checkRange(address, buffer);
+        logger.debug("read - start: nadr={}, address={}, length={}", nadr, address, buffer.length);
+        
+        long startTime = clock.nanoTime();
+        List<Chunk> chunks = createChunks(address, buffer.length, false);
+        pipeline.run(chunks, new RequestPipeline.Handler<Chunk>() {
+            @Override
+            public short[] createRequest(Chunk chunk) {
+                return createReadRequest(nadr, chunk);
+            }
+
+            @Override
+            public String processResponse(Chunk chunk, DPA_Response response) {
+                short[] data = response.getData();
+                if ( data.length != chunk.length ) {
+                    return "Unexpected length of data: " + data.length;
+                }
+                System.arraycopy(data, 0, buffer, chunk.offset, data.length);
+                return null;
+            }
+        }, "Read");
+        
+        TransferStatistics statistics = new TransferStatistics(
+                1, chunks.size(), buffer.length, getElapsedTime(startTime)
+        );
+        logger.info("EEEPROM of node {} read: {}", nadr, statistics);
+        logger.debug("read - end");
+        return statistics;
+    }
+    
+    /**
+     * Writes specified data into EEEPROM of specified device.
+     * 
+     * @param nadr address of the device
+     * @param address start address of the range
+     * @param data data to write
+     * @param verify if {@code true}, written data are read back and chunks,
+     *        which differ, are written again
+     * @return statistics of the transfer
+     * @throws TransferException if some chunk could not be written or verified
+     */
+    public TransferStatistics write(final int nadr, int address, final short[] data, boolean verify) 
+            throws TransferException 
+    {
+        checkNadr(nadr);
+        checkRange(address, data);
+        logger.debug(
+                "write - start: nadr={}, address={}, length={}, verify={}", 
+                nadr, address, data.length, verify
+        );
+        
+        long startTime = clock.nanoTime();
+        List<Chunk> chunks = createChunks(address, data.length, true);
+        long chunksNum = 0;
+        
+        RequestPipeline.Handler<Chunk> writeHandler = new RequestPipeline.Handler<Chunk>() {
+            @Override
+            public short[] createRequest(Chunk chunk) {
+                return EeepromTransfer.createRequest(
+                        nadr, EEEPROM.Command.EXTEDNED_WRITE.asByteValue(), chunk,
+                        Arrays.copyOfRange(data, chunk.offset, chunk.offset + chunk.length)
+                );
+            }
+
+            @Override
+            public String processResponse(Chunk chunk, DPA_Response response) {
+                return null;
+            }
+        };
+        
+        final List<Chunk> differentChunks = new ArrayList<>();
+        RequestPipeline.Handler<Chunk> verifyHandler = new RequestPipeline.Handler<Chunk>() {
+            @Override
+            public short[] createRequest(Chunk chunk) {
+                return createReadRequest(nadr, chunk);
+            }
+
+            @Override
+            public String processResponse(Chunk chunk, DPA_Response response) {
+                short[] readData = response.getData();
+                if ( readData.length != chunk.length ) {
+                    return "Unexpected length of data: " + readData.length;
+                }
+                for ( int i = 0; i < chunk.length; i++ ) {
+                    if ( readData[i] != data[chunk.offset + i] ) {
+                        differentChunks.add(chunk);
+                        break;
+                    }
+                }
+                return null;
+            }
+        };
+        
+        List<Chunk> chunksToWrite = chunks;
+        for ( int roundsNum = 1; ; roundsNum++ ) {
+            pipeline.run(chunksToWrite, writeHandler, "Write");
+            chunksNum += chunksToWrite.size();
+            if ( !verify ) {
+                break;
+            }
+            
+            differentChunks.clear();
+            pipeline.run(chunksToWrite, verifyHandler, "Verification");
+            if ( differentChunks.isEmpty() ) {
+                break;
+            }
+            if ( roundsNum >= ATTEMPTS_NUM ) {
+                throw new TransferException(
+                        "Verification failed: " + differentChunks.size() + " chunks differ"
+                );
+            }
+            logger.warn("Verification: {} chunks differ, writing again", differentChunks.size());
+            chunksToWrite = new ArrayList<>(differentChunks);
+        }
+        
+        TransferStatistics statistics = new TransferStatistics(
+                1, chunksNum, data.length, getElapsedTime(startTime)
+        );
+        logger.info("EEEPROM of node {} written: {}", nadr, statistics);
+        logger.debug("write - end");
+        return statistics;
+    }
+}
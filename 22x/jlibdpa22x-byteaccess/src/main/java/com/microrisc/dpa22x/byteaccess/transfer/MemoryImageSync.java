@@ -0,0 +1,605 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.transfer;
+
+import com.microrisc.dpa22x.DPA_Response;
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.byteaccess.accessors.StandardByteAccessor;
+import com.microrisc.dpa22x.peripherals.OS;
+import com.microrisc.dpa22x.timing.Clock;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Synchronization of EEPROM and EEEPROM regions of devices with desired 
+ * images, which writes only the changed bytes.
+ * <p>
+ * The last known image of each region - identified by the device, memory 
+ * and start address - is kept. Desired image is compared with it and only
+ * ranges of changed bytes are written. Changes separated by a few unchanged
+ * bytes are written together, if it is cheaper than separate writes. Short 
+ * writes are joined into one OS Batch request. Known image is updated with 
+ * each successful request, so that even interrupted synchronization is not
+ * repeated. Successful response of OS Batch does not mean, that the writes
+ * in it have succeeded, so the batched writes are verified by reading back
+ * and the known image is updated by the read content. Region without known 
+ * image is written completely.
+ * <p>
+ * Known images can be stored in a directory, so that they survive restarts 
+ * of the application. Each image is kept in a file named 
+ * {@code <nadr>-<memory>-<address>.img}, which contains its bytes.
+ * 
+ * @author agent
+ */
+public final class MemoryImageSync {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(MemoryImageSync.class);
+    
+    /**
+     * Synchronized memory.
+     */
+    public static enum Memory {
+        /** EEPROM peripheral. */
+        EEPROM(
+                com.microrisc.dpa22x.peripherals.EEPROM.PNUM, 
+                com.microrisc.dpa22x.peripherals.EEPROM.Command.READ.asByteValue(), 
+                com.microrisc.dpa22x.peripherals.EEPROM.Command.WRITE.asByteValue(), 
+                1, 0xC0, 0
+        ),
+        
+        /** EEEPROM peripheral - extended write. */
+        EEEPROM(
+                com.microrisc.dpa22x.peripherals.EEEPROM.PNUM, 
+                com.microrisc.dpa22x.peripherals.EEEPROM.Command.EXTENDED_READ.asByteValue(), 
+                com.microrisc.dpa22x.peripherals.EEEPROM.Command.EXTEDNED_WRITE.asByteValue(), 2, 
+                EeepromTransfer.ADDRESS_SPACE_SIZE, EeepromTransfer.PAGE_SIZE
+        );
+        
+        private final int pnum;
+        private final int readCommand;
+        private final int writeCommand;
+        private final int addressLength;
+        private final int size;
+        
+        // size of page, which a write cannot cross, 0 if there are no pages
+        private final int pageSize;
+        
+        private Memory(
+                int pnum, int readCommand, int writeCommand, int addressLength, int size, int pageSize
+        ) {
+            this.pnum = pnum;
+            this.readCommand = readCommand;
+            this.writeCommand = writeCommand;
+            this.addressLength = addressLength;
+            this.size = size;
+            this.pageSize = pageSize;
+        }
+        
+        /**
+         * @return size of address space of the memory
+         */
+        public int getSize() {
+            return size;
+        }
+    }
+    
+    // length of OS Batch item header - length, PNUM, PCMD, HWPID
+    private static final int BATCH_ITEM_HEADER_LENGTH = 5;
+    
+    // space for items of OS Batch - its PData ends with zero
+    private static final int BATCH_CAPACITY = ProtocolProperties.PDATA_MAX_LENGTH - 1;
+    
+    // maximal length of read range
+    private static final int READ_LENGTH_MAX = EeepromTransfer.READ_CHUNK_LENGTH_MAX;
+    
+    // suffix of image files
+    private static final String IMAGE_FILE_SUFFIX = ".img";
+    
+    
+    // write of a range
+    private static final class Write {
+        final int address;
+        final short[] data;
+        
+        Write(int address, short[] data) {
+            this.address = address;
+            this.data = data;
+        }
+    }
+    
+    // writes sent in one request
+    private static final class Transaction {
+        final List<Write> writes = new ArrayList<>();
+        int length = 0;
+        
+        boolean isBatch() {
+            return ( writes.size() > 1 );
+        }
+        
+        @Override
+        public String toString() {
+            Write first = writes.get(0);
+            return ( writes.size() == 1 )? 
+                    "write of " + first.data.length + " bytes at " + first.address 
+                    : "batch of " + writes.size() + " writes from " + first.address;
+        }
+    }
+    
+    // read back of batched writes
+    private static final class Verification {
+        final int address;
+        final int length;
+        final List<Write> writes = new ArrayList<>();
+        
+        Verification(int address, int length) {
+            this.address = address;
+            this.length = length;
+        }
+        
+        @Override
+        public String toString() {
+            return "read back of " + writes.size() + " writes from " + address;
+        }
+    }
+    
+    
+    // pipeline to send requests by
+    private final RequestPipeline pipeline;
+    
+    // clock to measure duration of synchronizations by
+    private final Clock clock;
+    
+    // directory with stored images, null if images are kept in memory only
+    private final File imagesDirectory;
+    
+    // known images of regions
+    private final ConcurrentHashMap<String, short[]> knownImages = new ConcurrentHashMap<>();
+    
+    
+    private static File checkImagesDirectory(File imagesDirectory) {
+        if ( imagesDirectory != null && !imagesDirectory.isDirectory() ) {
+            throw new IllegalArgumentException("Not a directory: " + imagesDirectory);
+        }
+        return imagesDirectory;
+    }
+    
+    private static void checkNadr(int nadr) {
+        if ( nadr < 0 || nadr > ProtocolProperties.NADR_Properties.LOCAL_DEVICE_ADDRESS ) {
+            throw new IllegalArgumentException("Invalid NADR: " + nadr);
+        }
+    }
+    
+    private static void checkRegion(Memory memory, int address, short[] image) {
+        if ( memory == null ) {
+            throw new IllegalArgumentException("Memory cannot be null.");
+        }
+        if ( image == null || image.length == 0 ) {
+            throw new IllegalArgumentException("Image cannot be null or empty.");
+        }
+        if ( address < 0 || address + image.length > memory.size ) {
+            throw new IllegalArgumentException(
+                    "Region out of " + memory + ": " + address + ", length " + image.length
+            );
+        }
+    }
+    
+    /**
+     * Creates new synchronization engine.
+     * 
+     * @param accessor accessor to send requests by
+     * @param imagesDirectory directory to store known images into, 
+     *        {@code null} means that images are kept in memory only
+     */
+    public MemoryImageSync(StandardByteAccessor accessor, File imagesDirectory) {
+        this.pipeline = new RequestPipeline(accessor, RequestPipeline.DEPTH_DEFAULT);
+        this.clock = accessor.getWaitingTimeCounter().getClock();
+        this.imagesDirectory = checkImagesDirectory(imagesDirectory);
+    }
+    
+    /**
+     * Creates new synchronization engine, which keeps known images in memory only.
+     * 
+     * @param accessor accessor to send requests by
+     */
+    public MemoryImageSync(StandardByteAccessor accessor) {
+        this(accessor, null);
+    }
+    
+    
+    // IMAGES
+    
+    private static String getImageKey(int nadr, Memory memory, int address) {
+        return nadr + "-" + memory + "-" + address;
+    }
+    
+    private File getImageFile(String key) {
+        return new File(imagesDirectory, key + IMAGE_FILE_SUFFIX);
+    }
+    
+    private short[] loadImage(String key) {
+        short[] image = knownImages.get(key);
+        if ( image != null || imagesDirectory == null ) {
+            return image;
+        }
+        
+        File file = getImageFile(key);
+        if ( !file.exists() ) {
+            return null;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            image = new short[bytes.length];
+            for ( int i = 0; i < bytes.length; i++ ) {
+                image[i] = (short)(bytes[i] & 0xFF);
+            }
+            knownImages.put(key, image);
+            return image;
+        } catch ( IOException ex ) {
+            logger.warn("Image could not be read, region considered unknown: {}", ex.getMessage());
+            return null;
+        }
+    }
+    
+    private void storeImage(String key, short[] image) {
+        knownImages.put(key, image);
+        if ( imagesDirectory == null ) {
+            return;
+        }
+        
+        byte[] bytes = new byte[image.length];
+        for ( int i = 0; i < image.length; i++ ) {
+            bytes[i] = (byte)image[i];
+        }
+        File file = getImageFile(key);
+        File tempFile = new File(imagesDirectory, key + IMAGE_FILE_SUFFIX + ".tmp");
+        try {
+            Files.write(tempFile.toPath(), bytes);
+            Files.move(
+                    tempFile.toPath(), file.toPath(), 
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+            );
+        } catch ( IOException ex ) {
+            logger.error("Image could not be stored: {}", ex.getMessage());
+        }
+    }
+    
+    /**
+     * Returns last known image of specified region.
+     * 
+     * @param nadr address of the device
+     * @param memory memory of the region
+     * @param address start address of the region
+     * @return copy of known image, or {@code null} if the image is not known
+     */
+    public short[] getKnownImage(int nadr, Memory memory, int address) {
+        short[] image = loadImage(getImageKey(nadr, memory, address));
+        return ( image != null )? image.clone() : null;
+    }
+    
+    /**
+     * Sets known image of specified region - for example content read from 
+     * the device.
+     * 
+     * @param nadr address of the device
+     * @param memory memory of the region
+     * @param address start address of the region
+     * @param image content of the region
+     */
+    public void setKnownImage(int nadr, Memory memory, int address, short[] image) {
+        checkNadr(nadr);
+        checkRegion(memory, address, image);
+        storeImage(getImageKey(nadr, memory, address), image.clone());
+    }
+    
+    /**
+     * Forgets known image of specified region, so that the next 
+     * synchronization writes the whole region.
+     * 
+     * @param nadr address of the device
+     * @param memory memory of the region
+     * @param address start address of the region
+     */
+    public void forgetImage(int nadr, Memory memory, int address) {
+        String key = getImageKey(nadr, memory, address);
+        knownImages.remove(key);
+        if ( imagesDirectory != null && getImageFile(key).exists() 
+                && !getImageFile(key).delete() 
+        ) {
+            logger.warn("Image file could not be deleted: {}", getImageFile(key));
+        }
+    }
+    
+    
+    // WRITES
+    
+    // returns ranges of bytes to write - {start, end} offsets in the image
+    private static List<int[]> getChangedRanges(short[] knownImage, short[] desiredImage, int mergeGap) {
+        List<int[]> ranges = new ArrayList<>();
+        int[] range = null;
+        for ( int offset = 0; offset < desiredImage.length; offset++ ) {
+            boolean changed = ( knownImage == null || offset >= knownImage.length 
+                    || knownImage[offset] != desiredImage[offset] 
+            );
+            if ( !changed ) {
+                continue;
+            }
+            
+            // unchanged bytes are written too, if it is cheaper than a new write
+            if ( range != null && offset - range[1] <= mergeGap ) {
+                range[1] = offset + 1;
+            } else {
+                range = new int[] { offset, offset + 1 };
+                ranges.add(range);
+            }
+        }
+        return ranges;
+    }
+    
+    // splits changed ranges into writes, which fit into one request
+    private static List<Write> createWrites(
+            Memory memory, int address, short[] desiredImage, List<int[]> ranges
+    ) {
+        int writeLengthMax = ProtocolProperties.PDATA_MAX_LENGTH - memory.addressLength;
+        List<Write> writes = new ArrayList<>();
+        for ( int[] range : ranges ) {
+            int offset = range[0];
+            while ( offset < range[1] ) {
+                int length = Math.min(writeLengthMax, range[1] - offset);
+                if ( memory.pageSize > 0 ) {
+                    length = Math.min(length, memory.pageSize - (address + offset) % memory.pageSize);
+                }
+                writes.add(new Write(
+                        address + offset, Arrays.copyOfRange(desiredImage, offset, offset + length)
+                ));
+                offset += length;
+            }
+        }
+        return writes;
+    }
+    
+    private static int getBatchItemLength(Memory memory, Write write) {
+        return BATCH_ITEM_HEADER_LENGTH + memory.addressLength + write.data.length;
+    }
+    
+    // joins writes, which fit together into OS Batch, into transactions
+    private static List<Transaction> createTransactions(Memory memory, List<Write> writes) {
+        List<Transaction> transactions = new ArrayList<>();
+        Transaction transaction = null;
+        for ( Write write : writes ) {
+            int itemLength = getBatchItemLength(memory, write);
+            if ( transaction == null || transaction.length + itemLength > BATCH_CAPACITY ) {
+                transaction = new Transaction();
+                transactions.add(transaction);
+            }
+            transaction.writes.add(write);
+            transaction.length += itemLength;
+        }
+        return transactions;
+    }
+    
+    private static void putWriteData(Memory memory, Write write, short[] request, int pos) {
+        request[pos] = (short)(write.address & 0xFF);
+        if ( memory.addressLength == 2 ) {
+            request[pos + 1] = (short)(write.address >> 8);
+        }
+        System.arraycopy(write.data, 0, request, pos + memory.addressLength, write.data.length);
+    }
+    
+    private static short[] createRequest(int nadr, Memory memory, Transaction transaction) {
+        short[] request;
+        int pos = ProtocolProperties.PDATA_START_POS;
+        if ( transaction.writes.size() == 1 ) {
+            Write write = transaction.writes.get(0);
+            request = new short[pos + memory.addressLength + write.data.length];
+            request[ProtocolProperties.PNUM_POS] = (short)memory.pnum;
+            request[ProtocolProperties.PCMD_POS] = (short)memory.writeCommand;
+            putWriteData(memory, write, request, pos);
+        } else {
+            request = new short[pos + transaction.length + 1];
+            request[ProtocolProperties.PNUM_POS] = (short)OS.PNUM;
+            request[ProtocolProperties.PCMD_POS] = OS.Command.BATCH.asByteValue();
+            for ( Write write : transaction.writes ) {
+                int itemLength = getBatchItemLength(memory, write);
+                request[pos] = (short)itemLength;
+                request[pos + 1] = (short)memory.pnum;
+                request[pos + 2] = (short)memory.writeCommand;
+                request[pos + 3] = 0xFF;
+                request[pos + 4] = 0xFF;
+                putWriteData(memory, write, request, pos + BATCH_ITEM_HEADER_LENGTH);
+                pos += itemLength;
+            }
+        }
+        request[ProtocolProperties.NADR_START] = (short)nadr;
+        request[ProtocolProperties.HWPID_START] = 0xFF;
+        request[ProtocolProperties.HWPID_START + 1] = 0xFF;
+        return request;
+    }
+    
+    // VERIFICATION
+    
+    // joins batched writes, which are close together, into read ranges
+    private static List<Verification> createVerifications(List<Transaction> batches) {
+        List<Verification> verifications = new ArrayList<>();
+        for ( Transaction batch : batches ) {
+            Verification verification = null;
+            for ( Write write : batch.writes ) {
+                int end = write.address + write.data.length;
+                if ( verification == null || write.address < verification.address 
+                        || end - verification.address > READ_LENGTH_MAX 
+                ) {
+                    verification = new Verification(write.address, write.data.length);
+                    verifications.add(verification);
+                } else if ( end > verification.address + verification.length ) {
+                    Verification extended = new Verification(
+                            verification.address, end - verification.address
+                    );
+                    extended.writes.addAll(verification.writes);
+                    verifications.set(verifications.size() - 1, extended);
+                    verification = extended;
+                }
+                verification.writes.add(write);
+            }
+        }
+        return verifications;
+    }
+    
+    private static short[] createReadRequest(int nadr, Memory memory, Verification verification) {
+        int pos = ProtocolProperties.PDATA_START_POS;
+        short[] request = new short[pos + memory.addressLength + 1];
+        request[ProtocolProperties.NADR_START] = (short)nadr;
+        request[ProtocolProperties.PNUM_POS] = (short)memory.pnum;
+        request[ProtocolProperties.PCMD_POS] = (short)memory.readCommand;
+        request[ProtocolProperties.HWPID_START] = 0xFF;
+        request[ProtocolProperties.HWPID_START + 1] = 0xFF;
+        request[pos] = (short)(verification.address & 0xFF);
+        if ( memory.addressLength == 2 ) {
+            request[pos + 1] = (short)(verification.address >> 8);
+        }
+        request[pos + memory.addressLength] = (short)verification.length;
+        return request;
+    }
+    
+    /**
+     * Synchronizes specified region of specified device with desired image.
+     * Only bytes, which differ from known image of the region, are written.
+     * 
+     * @param nadr address of the device
+     * @param memory memory of the region
+     * @param address start address of the region
+     * @param desiredImage desired content of the region
+     * @return statistics of the synchronization - bytes counts written bytes
+     * @throws TransferException if some write failed - known image keeps 
+     *         writes, which succeeded
+     */
+    public TransferStatistics sync(
+            final int nadr, final Memory memory, final int address, short[] desiredImage
+    ) throws TransferException 
+    {
+        checkNadr(nadr);
+        checkRegion(memory, address, desiredImage);
+        logger.debug(
+                "sync - start: nadr={}, memory={}, address={}, length={}", 
+                nadr, memory, address, desiredImage.length
+        );
+        
+        long startTime = clock.nanoTime();
+        String key = getImageKey(nadr, memory, address);
+        short[] knownImage = loadImage(key);
+        
+        int mergeGap = BATCH_ITEM_HEADER_LENGTH + memory.addressLength;
+        List<Write> writes = createWrites(
+                memory, address, desiredImage, getChangedRanges(knownImage, desiredImage, mergeGap)
+        );
+        List<Transaction> transactions = createTransactions(memory, writes);
+        
+        // known image of the whole region is updated by successful writes
+        final short[] newImage = new short[desiredImage.length];
+        final List<Transaction> batches = new ArrayList<>();
+        if ( knownImage != null ) {
+            System.arraycopy(knownImage, 0, newImage, 0, Math.min(knownImage.length, newImage.length));
+        }
+        
+        long bytesNum = 0;
+        for ( Write write : writes ) {
+            bytesNum += write.data.length;
+        }
+        
+        List<Verification> verifications = new ArrayList<>();
+        try {
+            pipeline.run(transactions, new RequestPipeline.Handler<Transaction>() {
+                @Override
+                public short[] createRequest(Transaction transaction) {
+                    return MemoryImageSync.createRequest(nadr, memory, transaction);
+                }
+
+                @Override
+                public String processResponse(Transaction transaction, DPA_Response response) {
+                    if ( transaction.isBatch() ) {
+                        batches.add(transaction);
+                        return null;
+                    }
+                    for ( Write write : transaction.writes ) {
+                        System.arraycopy(
+                                write.data, 0, newImage, write.address - address, write.data.length
+                        );
+                    }
+                    return null;
+                }
+            }, "Synchronization");
+            
+            verifications = createVerifications(batches);
+            pipeline.run(verifications, new RequestPipeline.Handler<Verification>() {
+                @Override
+                public short[] createRequest(Verification verification) {
+                    return createReadRequest(nadr, memory, verification);
+                }
+
+                @Override
+                public String processResponse(Verification verification, DPA_Response response) {
+                    short[] data = response.getData();
+                    if ( data.length != verification.length ) {
+                        return "Unexpected length of data: " + data.length;
+                    }
+                    
+                    // known image gets the real content, even if a write failed
+                    System.arraycopy(
+                            data, 0, newImage, verification.address - address, data.length
+                    );
+                    for ( Write write : verification.writes ) {
+                        int offset = write.address - verification.address;
+                        if ( !Arrays.equals(
+                                write.data, Arrays.copyOfRange(data, offset, offset + write.data.length)
+                        ) ) {
+                            return "Batched write of " + write.data.length + " bytes at " 
+                                    + write.address + " not verified";
+                        }
+                    }
+                    return null;
+                }
+            }, "Verification");
+        } finally {
+            // successful writes are kept even if the synchronization failed
+            if ( knownImage != null ) {
+                storeImage(key, newImage);
+            }
+        }
+        
+        // unknown region becomes known only after it was written completely
+        if ( knownImage == null ) {
+            storeImage(key, newImage);
+        }
+        
+        TransferStatistics statistics = new TransferStatistics(
+                1, transactions.size() + verifications.size(), bytesNum, 
+                (clock.nanoTime() - startTime) / 1000000
+        );
+        logger.info(
+                "Region {} of node {} synchronized, {} of {} bytes written: {}", 
+                key, nadr, bytesNum, desiredImage.length, statistics
+        );
+        logger.debug("sync - end");
+        return statistics;
+    }
+}
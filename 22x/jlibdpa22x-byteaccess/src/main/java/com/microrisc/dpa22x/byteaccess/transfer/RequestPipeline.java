@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.transfer;
+
+import com.microrisc.dpa22x.DPA_Response;
+import com.microrisc.dpa22x.DPA_ResponseCode;
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.byteaccess.accessors.RequestWindow;
+import com.microrisc.dpa22x.byteaccess.accessors.StandardByteAccessor;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends requests of a transfer through the accessor. Several requests are 
+ * queued in the accessor at once by {@link RequestWindow}. Failed request 
+ * is repeated before the waiting ones, up to {@link #ATTEMPTS_NUM} times.
+ * 
+ * @author agent
+ */
+final class RequestPipeline {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(RequestPipeline.class);
+    
+    /** Default number of requests queued in the accessor at once. */
+    static final int DEPTH_DEFAULT = RequestWindow.DEPTH_DEFAULT;
+    
+    /** Number of attempts to send a request. */
+    static final int ATTEMPTS_NUM = 3;
+    
+    
+    /**
+     * Creates requests for transferred items and processes their responses.
+     * 
+     * @param <T> type of transferred items
+     */
+    static interface Handler<T> {
+        
+        /**
+         * @param item transferred item
+         * @return request, which transfers the item
+         */
+        short[] createRequest(T item);
+        
+        /**
+         * Processes successful response of the request of specified item.
+         * 
+         * @param item transferred item
+         * @param response the response
+         * @return description of failure of the item, or {@code null}
+         */
+        String processResponse(T item, DPA_Response response);
+    }
+    
+    
+    // accessor to send requests by
+    private final StandardByteAccessor accessor;
+    
+    // number of requests queued at once
+    private final int depth;
+    
+    
+    private static StandardByteAccessor checkAccessor(StandardByteAccessor accessor) {
+        if ( accessor == null ) {
+            throw new IllegalArgumentException("Accessor cannot be null.");
+        }
+        return accessor;
+    }
+    
+    private static int checkDepth(int depth) {
+        if ( depth <= 0 ) {
+            throw new IllegalArgumentException("Pipeline depth must be positive.");
+        }
+        return depth;
+    }
+    
+    /**
+     * Creates new pipeline.
+     * 
+     * @param accessor accessor to send requests by
+     * @param depth number of requests queued in the accessor at once
+     */
+    RequestPipeline(StandardByteAccessor accessor, int depth) {
+        this.accessor = checkAccessor(accessor);
+        this.depth = checkDepth(depth);
+    }
+    
+    // waits for the next finished request of specified window
+    private static <T> RequestWindow.Completion<T> awaitNext(RequestWindow<T> window) 
+            throws TransferException 
+    {
+        try {
+            return window.next();
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw new TransferException("Transfer interrupted.", ex);
+        } catch ( CancellationException ex ) {
+            throw new TransferException("Transfer cancelled.", ex);
+        }
+    }
+    
+    // returns description of failure of specified result, or null
+    private static String getFailure(RequestResult result) {
+        if ( result.getStatus() != RequestResult.Status.SUCCESSFULLY_COMPLETED ) {
+            return result.getProcessingInfo().toString();
+        }
+        DPA_ResponseCode responseCode = result.getResponse().getResponseCode();
+        return ( responseCode != DPA_ResponseCode.NO_ERROR )? responseCode.toString() : null;
+    }
+    
+    /**
+     * Transfers specified items. 
+     * 
+     * @param <T> type of items
+     * @param items items to transfer
+     * @param handler handler of the items
+     * @param operation name of the operation for messages
+     * @throws TransferException if some item failed in all attempts
+     */
+    <T> void run(List<T> items, Handler<T> handler, String operation) throws TransferException {
+        RequestWindow<T> window = new RequestWindow<>(accessor, depth);
+        for ( T item : items ) {
+            window.add(item, handler.createRequest(item));
+        }
+        Map<T, Integer> attemptsNums = new IdentityHashMap<>();
+        
+        try {
+            while ( !window.isEmpty() ) {
+                RequestWindow.Completion<T> completion = awaitNext(window);
+                T item = completion.getItem();
+                RequestResult result = completion.getResult();
+                String failure = getFailure(result);
+                if ( failure == null ) {
+                    failure = handler.processResponse(item, result.getResponse());
+                }
+                if ( failure == null ) {
+                    continue;
+                }
+                
+                Integer attemptsNum = attemptsNums.get(item);
+                attemptsNum = ( attemptsNum == null )? 1 : attemptsNum + 1;
+                if ( attemptsNum >= ATTEMPTS_NUM ) {
+                    throw new TransferException(operation + " of " + item + " failed: " + failure);
+                }
+                attemptsNums.put(item, attemptsNum);
+                logger.warn("{} of {} failed, repeating: {}", operation, item, failure);
+                window.addFirst(item, handler.createRequest(item));
+            }
+        } finally {
+            window.cancel();
+        }
+    }
+}
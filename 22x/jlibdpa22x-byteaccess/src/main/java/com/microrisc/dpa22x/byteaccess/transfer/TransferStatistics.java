@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.transfer;
+
+/**
+ * Statistics of finished transfer of data - backup, restore or transfer 
+ * of a memory range.
+ * 
+ * @author agent
+ */
+public final class TransferStatistics {
+    
+    // number of transferred targets - devices or memory ranges
+    private final int targetsNum;
+    
+    // number of transferred blocks
+    private final long blocksNum;
+    
+    // number of transferred bytes
+    private final long bytesNum;
+    
+    // duration of the transfer
+    private final long elapsedTime;
+    
+    
+    /**
+     * Creates new statistics.
+     * 
+     * @param targetsNum number of transferred targets - devices or memory ranges
+     * @param blocksNum number of transferred blocks
+     * @param bytesNum number of transferred bytes
+     * @param elapsedTime duration of the transfer [in ms]
+     */
+    public TransferStatistics(int targetsNum, long blocksNum, long bytesNum, long elapsedTime) {
+        this.targetsNum = targetsNum;
+        this.blocksNum = blocksNum;
+        this.bytesNum = bytesNum;
+        this.elapsedTime = elapsedTime;
+    }
+    
+    /**
+     * @return number of targets transferred by this run, targets transferred 
+     *         before resumption are not counted
+     */
+    public int getTargetsNum() {
+        return targetsNum;
+    }
+    
+    /**
+     * @return number of blocks transferred by this run
+     */
+    public long getBlocksNum() {
+        return blocksNum;
+    }
+    
+    /**
+     * @return number of bytes transferred by this run
+     */
+    public long getBytesNum() {
+        return bytesNum;
+    }
+    
+    /**
+     * @return duration of the transfer [in ms]
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+    
+    /**
+     * @return throughput of the transfer [in bytes per second]
+     */
+    public double getThroughput() {
+        return ( elapsedTime > 0 )? bytesNum * 1000.0 / elapsedTime : 0;
+    }
+    
+    /**
+     * @return number of blocks transferred per second
+     */
+    public double getBlocksPerSecond() {
+        return ( elapsedTime > 0 )? blocksNum * 1000.0 / elapsedTime : 0;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format(
+                "{targets=%d, blocks=%d, bytes=%d, elapsedTime=%d ms, throughput=%.1f B/s}",
+                targetsNum, blocksNum, bytesNum, elapsedTime, getThroughput()
+        );
+    }
+}
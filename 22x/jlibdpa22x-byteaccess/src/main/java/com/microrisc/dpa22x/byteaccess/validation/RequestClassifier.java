@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.validation;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.peripherals.Coordinator;
+import com.microrisc.dpa22x.peripherals.EEEPROM;
+import com.microrisc.dpa22x.peripherals.EEPROM;
+import com.microrisc.dpa22x.peripherals.FRC;
+import com.microrisc.dpa22x.peripherals.IO;
+import com.microrisc.dpa22x.peripherals.LEDG;
+import com.microrisc.dpa22x.peripherals.LEDR;
+import com.microrisc.dpa22x.peripherals.Node;
+import com.microrisc.dpa22x.peripherals.OS;
+import com.microrisc.dpa22x.peripherals.RAM;
+import com.microrisc.dpa22x.peripherals.Thermometer;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Classifies requests according to their effect on addressed devices.
+ * <p>
+ * Reads - requests, which do not change state of the device - are looked up
+ * in the table keyed by PNUM and PCMD, which is prefilled with reads of
+ * standard DPA peripherals and can be extended for user peripherals by
+ * {@link Builder#read(int, int)}.
+ * 
+ * @author agent
+ */
+public final class RequestClassifier {
+    
+    /** Classifier with the default table of reads. */
+    public static final RequestClassifier DEFAULT = new Builder().build();
+    
+    
+    // reads keyed by PNUM and PCMD
+    private final Set<Integer> readCommands;
+    
+    // peripherals, whose all commands are reads
+    private final Set<Integer> readPeripherals;
+    
+    
+    /**
+     * Builder of classifiers. The table contains reads of standard DPA
+     * peripherals.
+     */
+    public static final class Builder {
+        private final Set<Integer> readCommands = new HashSet<>();
+        private final Set<Integer> readPeripherals = new HashSet<>();
+        
+        public Builder() {
+            read(ProtocolProperties.PNUM_Properties.DEVICE_EXPLORATION);
+            
+            read(Coordinator.PNUM, Coordinator.Command.GET_ADDRESSING_INFO.asByteValue());
+            read(Coordinator.PNUM, Coordinator.Command.GET_DISCOVERED_NODES.asByteValue());
+            read(Coordinator.PNUM, Coordinator.Command.GET_BONDED_NODES.asByteValue());
+            read(Coordinator.PNUM, Coordinator.Command.DISCOVERY_DATA.asByteValue());
+            read(Coordinator.PNUM, Coordinator.Command.READ_REMOTELY_BONDED_MODULE_ID.asByteValue());
+            
+            read(Node.PNUM, Node.Command.READ.asByteValue());
+            read(Node.PNUM, Node.Command.READ_REMOTELY_BONDED_MODULE_ID.asByteValue());
+            
+            read(OS.PNUM, OS.Command.READ.asByteValue());
+            read(OS.PNUM, OS.Command.READ_HWP_CONFIGURATION.asByteValue());
+            
+            read(EEPROM.PNUM, EEPROM.Command.READ.asByteValue());
+            read(EEEPROM.PNUM, EEEPROM.Command.READ.asByteValue());
+            read(EEEPROM.PNUM, EEEPROM.Command.EXTENDED_READ.asByteValue());
+            read(RAM.PNUM, RAM.Command.READ.asByteValue());
+            
+            read(LEDR.PNUM, LEDR.Command.GET.asByteValue());
+            read(LEDG.PNUM, LEDG.Command.GET.asByteValue());
+            read(IO.PNUM, IO.Command.GET.asByteValue());
+            read(Thermometer.PNUM, Thermometer.Command.READ.asByteValue());
+            
+            read(FRC.PNUM, FRC.Command.EXTRA_RESULT.asByteValue());
+        }
+        
+        /**
+         * Adds specified command into the table of reads.
+         * 
+         * @param pnum PNUM of the command
+         * @param pcmd PCMD of the command
+         */
+        public Builder read(int pnum, int pcmd) {
+            readCommands.add(getCommandKey(pnum, pcmd));
+            return this;
+        }
+        
+        /**
+         * Adds all commands of specified peripheral into the table of reads.
+         * 
+         * @param pnum PNUM of the peripheral
+         */
+        public Builder read(int pnum) {
+            readPeripherals.add(pnum);
+            return this;
+        }
+        
+        public RequestClassifier build() {
+            return new RequestClassifier(this);
+        }
+    }
+    
+    
+    private static int getCommandKey(int pnum, int pcmd) {
+        return (pnum << 8) | pcmd;
+    }
+    
+    private RequestClassifier(Builder builder) {
+        this.readCommands = new HashSet<>(builder.readCommands);
+        this.readPeripherals = new HashSet<>(builder.readPeripherals);
+    }
+    
+    /**
+     * Indicates, whether specified request is a read, which does not change
+     * state of addressed devices.
+     * 
+     * @param request request to classify
+     * @return {@code true} if the request is a read <br>
+     *         {@code false} otherwise
+     */
+    public boolean isRead(short[] request) {
+        int pnum = ProtocolProperties.getPeripheralNumber(request);
+        int pcmd = ProtocolProperties.getCommand(request);
+        return ( readCommands.contains(getCommandKey(pnum, pcmd)) || readPeripherals.contains(pnum) );
+    }
+}
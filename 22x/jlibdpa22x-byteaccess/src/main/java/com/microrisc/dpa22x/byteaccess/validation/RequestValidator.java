@@ -0,0 +1,353 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.validation;
+
+import com.microrisc.dpa22x.ProtocolProperties;
+import com.microrisc.dpa22x.peripherals.Coordinator;
+import com.microrisc.dpa22x.peripherals.EEEPROM;
+import com.microrisc.dpa22x.peripherals.EEPROM;
+import com.microrisc.dpa22x.peripherals.FRC;
+import com.microrisc.dpa22x.peripherals.IO;
+import com.microrisc.dpa22x.peripherals.LEDG;
+import com.microrisc.dpa22x.peripherals.LEDR;
+import com.microrisc.dpa22x.peripherals.Node;
+import com.microrisc.dpa22x.peripherals.OS;
+import com.microrisc.dpa22x.peripherals.PWM;
+import com.microrisc.dpa22x.peripherals.RAM;
+import com.microrisc.dpa22x.peripherals.SPI;
+import com.microrisc.dpa22x.peripherals.Thermometer;
+import com.microrisc.dpa22x.peripherals.UART;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks requests against protocol properties before they are sent into 
+ * the network.
+ * <p>
+ * Each request is checked for: <br>
+ * - length of the foursome and of PData <br>
+ * - values of all items in the range of byte <br>
+ * - NADR, which is not reserved <br>
+ * - PNUM of embedded peripheral, user peripheral or device exploration <br>
+ * - PCMD of request, which is a known command of embedded peripheral <br>
+ * - length of PData of commands with known lengths
+ * <p>
+ * Known commands of embedded peripherals are taken from command enums 
+ * of the peripherals. Lengths of PData are kept in a table keyed by PNUM and 
+ * PCMD, which can be extended for user peripherals by 
+ * {@link Builder#command(int, int, int, int, int)}.
+ * 
+ * @author agent
+ */
+public final class RequestValidator {
+    
+    /** Validator with the default table of commands. */
+    public static final RequestValidator DEFAULT = new Builder().build();
+    
+    // maximal length of a request
+    private static final int REQUEST_MAX_LENGTH = ProtocolProperties.PDATA_START_POS 
+            + ProtocolProperties.PDATA_MAX_LENGTH;
+    
+    // maximal value of an item of a request
+    private static final int BYTE_MAX = 0xFF;
+    
+    // bit of PCMD, which indicates response
+    private static final int RESPONSE_PCMD_MASK = 0x80;
+    
+    // number of the last embedded peripheral
+    private static final int EMBEDDED_PERIPHERAL_END = FRC.PNUM;
+    
+    
+    // allowed lengths of PData of a command
+    private static final class DataLength {
+        final int min;
+        final int max;
+        final int multiple;
+        
+        DataLength(int min, int max, int multiple) {
+            this.min = min;
+            this.max = max;
+            this.multiple = multiple;
+        }
+        
+        boolean isAllowed(int length) {
+            return ( length >= min && length <= max && length % multiple == 0 );
+        }
+        
+        @Override
+        public String toString() {
+            if ( min == max ) {
+                return String.valueOf(min);
+            }
+            return min + "-" + max + (( multiple > 1 )? " (multiple of " + multiple + ")" : "");
+        }
+    }
+    
+    // allowed lengths of PData keyed by command
+    private final Map<Integer, DataLength> dataLengths;
+    
+    
+    /**
+     * Builder of validators. The table contains all commands of embedded 
+     * peripherals, with PData lengths of the commands, whose length is fixed
+     * or bounded by the protocol.
+     */
+    public static final class Builder {
+        private final Map<Integer, DataLength> dataLengths = new HashMap<>();
+        
+        public Builder() {
+            // all commands of embedded peripherals, PData lengths not checked
+            for ( Coordinator.Command command : Coordinator.Command.values() ) {
+                anyDataLength(Coordinator.PNUM, command.asByteValue());
+            }
+            for ( Node.Command command : Node.Command.values() ) {
+                anyDataLength(Node.PNUM, command.asByteValue());
+            }
+            for ( OS.Command command : OS.Command.values() ) {
+                anyDataLength(OS.PNUM, command.asByteValue());
+            }
+            for ( EEPROM.Command command : EEPROM.Command.values() ) {
+                anyDataLength(EEPROM.PNUM, command.asByteValue());
+            }
+            for ( EEEPROM.Command command : EEEPROM.Command.values() ) {
+                anyDataLength(EEEPROM.PNUM, command.asByteValue());
+            }
+            for ( RAM.Command command : RAM.Command.values() ) {
+                anyDataLength(RAM.PNUM, command.asByteValue());
+            }
+            for ( LEDR.Command command : LEDR.Command.values() ) {
+                anyDataLength(LEDR.PNUM, command.asByteValue());
+            }
+            for ( LEDG.Command command : LEDG.Command.values() ) {
+                anyDataLength(LEDG.PNUM, command.asByteValue());
+            }
+            for ( SPI.Command command : SPI.Command.values() ) {
+                anyDataLength(SPI.PNUM, command.asByteValue());
+            }
+            for ( IO.Command command : IO.Command.values() ) {
+                anyDataLength(IO.PNUM, command.asByteValue());
+            }
+            for ( Thermometer.Command command : Thermometer.Command.values() ) {
+                anyDataLength(Thermometer.PNUM, command.asByteValue());
+            }
+            for ( PWM.Command command : PWM.Command.values() ) {
+                anyDataLength(PWM.PNUM, command.asByteValue());
+            }
+            for ( UART.Command command : UART.Command.values() ) {
+                anyDataLength(UART.PNUM, command.asByteValue());
+            }
+            for ( FRC.Command command : FRC.Command.values() ) {
+                anyDataLength(FRC.PNUM, command.asByteValue());
+            }
+            
+            command(Coordinator.PNUM, Coordinator.Command.GET_ADDRESSING_INFO.asByteValue(), 0);
+            command(Coordinator.PNUM, Coordinator.Command.GET_DISCOVERED_NODES.asByteValue(), 0);
+            command(Coordinator.PNUM, Coordinator.Command.GET_BONDED_NODES.asByteValue(), 0);
+            command(Coordinator.PNUM, Coordinator.Command.CLEAR_ALL_BONDS.asByteValue(), 0);
+            command(Coordinator.PNUM, Coordinator.Command.BOND_NODE.asByteValue(), 2);
+            command(Coordinator.PNUM, Coordinator.Command.REMOVE_BONDED_NODE.asByteValue(), 1);
+            command(Coordinator.PNUM, Coordinator.Command.REBOND_NODE.asByteValue(), 1);
+            command(Coordinator.PNUM, Coordinator.Command.RUN_DISCOVERY.asByteValue(), 2);
+            command(Coordinator.PNUM, Coordinator.Command.SET_DPA_PARAM.asByteValue(), 1);
+            command(Coordinator.PNUM, Coordinator.Command.SET_HOPS.asByteValue(), 2);
+            command(Coordinator.PNUM, Coordinator.Command.DISCOVERY_DATA.asByteValue(), 2);
+            command(Coordinator.PNUM, Coordinator.Command.BACKUP.asByteValue(), 1);
+            command(Coordinator.PNUM, Coordinator.Command.RESTORE.asByteValue(), 49);
+            command(Coordinator.PNUM, Coordinator.Command.AUTHORIZE_BOND.asByteValue(), 5);
+            
+            command(Node.PNUM, Node.Command.READ.asByteValue(), 0);
+            command(Node.PNUM, Node.Command.REMOVE_BOND.asByteValue(), 0);
+            
+            command(OS.PNUM, OS.Command.READ.asByteValue(), 0);
+            command(OS.PNUM, OS.Command.RESET.asByteValue(), 0);
+            command(OS.PNUM, OS.Command.READ_HWP_CONFIGURATION.asByteValue(), 0);
+            command(OS.PNUM, OS.Command.RUN_RFPGM.asByteValue(), 0);
+            command(OS.PNUM, OS.Command.SLEEP.asByteValue(), 3);
+            command(OS.PNUM, OS.Command.BATCH.asByteValue(), 1, ProtocolProperties.PDATA_MAX_LENGTH, 1);
+            command(OS.PNUM, OS.Command.SET_USEC.asByteValue(), 2);
+            command(OS.PNUM, OS.Command.RESTART.asByteValue(), 0);
+            command(OS.PNUM, OS.Command.LOAD_CODE.asByteValue(), 7);
+            command(
+                OS.PNUM, OS.Command.WRITE_HWP_CONFIGURATION_BYTE.asByteValue(), 
+                3, ProtocolProperties.PDATA_MAX_LENGTH, 3
+            );
+            
+            // address and length of reads, address and at least one byte of writes
+            command(EEPROM.PNUM, EEPROM.Command.READ.asByteValue(), 2);
+            command(EEPROM.PNUM, EEPROM.Command.WRITE.asByteValue(), 2, ProtocolProperties.PDATA_MAX_LENGTH, 1);
+            command(RAM.PNUM, RAM.Command.READ.asByteValue(), 2);
+            command(RAM.PNUM, RAM.Command.WRITE.asByteValue(), 2, ProtocolProperties.PDATA_MAX_LENGTH, 1);
+            command(EEEPROM.PNUM, EEEPROM.Command.READ.asByteValue(), 2);
+            command(EEEPROM.PNUM, EEEPROM.Command.WRITE.asByteValue(), 2, ProtocolProperties.PDATA_MAX_LENGTH, 1);
+            command(EEEPROM.PNUM, EEEPROM.Command.EXTENDED_READ.asByteValue(), 3);
+            command(
+                EEEPROM.PNUM, EEEPROM.Command.EXTEDNED_WRITE.asByteValue(), 
+                3, ProtocolProperties.PDATA_MAX_LENGTH, 1
+            );
+            
+            for ( int pnum : new int[] { LEDR.PNUM, LEDG.PNUM } ) {
+                command(pnum, LEDR.Command.OFF.asByteValue(), 0);
+                command(pnum, LEDR.Command.ON.asByteValue(), 0);
+                command(pnum, LEDR.Command.GET.asByteValue(), 0);
+                command(pnum, LEDR.Command.PULSE.asByteValue(), 0);
+            }
+            
+            // triplets of port, mask and value
+            command(IO.PNUM, IO.Command.DIRECTION.asByteValue(), 3, ProtocolProperties.PDATA_MAX_LENGTH, 3);
+            command(IO.PNUM, IO.Command.SET.asByteValue(), 3, ProtocolProperties.PDATA_MAX_LENGTH, 3);
+            command(IO.PNUM, IO.Command.GET.asByteValue(), 0);
+            
+            command(Thermometer.PNUM, Thermometer.Command.READ.asByteValue(), 0);
+            
+            command(UART.PNUM, UART.Command.OPEN.asByteValue(), 1);
+            command(UART.PNUM, UART.Command.CLOSE.asByteValue(), 0);
+            
+            command(FRC.PNUM, FRC.Command.SEND.asByteValue(), 1, ProtocolProperties.PDATA_MAX_LENGTH, 1);
+            command(
+                FRC.PNUM, FRC.Command.SEND_SELECTIVE.asByteValue(), 
+                1 + FRC.SELECTED_NODES_LENGTH, ProtocolProperties.PDATA_MAX_LENGTH, 1
+            );
+            command(FRC.PNUM, FRC.Command.EXTRA_RESULT.asByteValue(), 0);
+            command(FRC.PNUM, FRC.Command.SET_FRC_PARAMS.asByteValue(), 1);
+        }
+        
+        private void anyDataLength(int pnum, int pcmd) {
+            command(pnum, pcmd, 0, ProtocolProperties.PDATA_MAX_LENGTH, 1);
+        }
+        
+        /**
+         * Adds specified command into the table or replaces its lengths. 
+         * 
+         * @param pnum PNUM of the command
+         * @param pcmd PCMD of the command
+         * @param minDataLength minimal length of PData
+         * @param maxDataLength maximal length of PData
+         * @param dataLengthMultiple number, whose multiple the length of PData must be 
+         */
+        public Builder command(int pnum, int pcmd, int minDataLength, int maxDataLength, int dataLengthMultiple) {
+            if ( minDataLength < 0 || maxDataLength > ProtocolProperties.PDATA_MAX_LENGTH 
+                    || minDataLength > maxDataLength 
+            ) {
+                throw new IllegalArgumentException(
+                        "Invalid PData lengths: " + minDataLength + "-" + maxDataLength
+                );
+            }
+            if ( dataLengthMultiple <= 0 ) {
+                throw new IllegalArgumentException("PData length multiple must be positive.");
+            }
+            dataLengths.put(
+                    getCommandKey(pnum, pcmd), 
+                    new DataLength(minDataLength, maxDataLength, dataLengthMultiple)
+            );
+            return this;
+        }
+        
+        /**
+         * Adds specified command with fixed length of PData into the table 
+         * or replaces its length. 
+         */
+        public Builder command(int pnum, int pcmd, int dataLength) {
+            return command(pnum, pcmd, dataLength, dataLength, 1);
+        }
+        
+        public RequestValidator build() {
+            return new RequestValidator(this);
+        }
+    }
+    
+    
+    private static int getCommandKey(int pnum, int pcmd) {
+        return (pnum << 8) | pcmd;
+    }
+    
+    private RequestValidator(Builder builder) {
+        this.dataLengths = new HashMap<>(builder.dataLengths);
+    }
+    
+    /**
+     * Returns description of the first violation of protocol properties 
+     * by specified request.
+     * 
+     * @param request request to check
+     * @return description of the violation, or {@code null} if the request 
+     *         is valid
+     */
+    public String getViolation(short[] request) {
+        if ( request == null ) {
+            return "Request is null";
+        }
+        if ( request.length < ProtocolProperties.FOURSOME_LENGTH ) {
+            return "Request too short: " + request.length;
+        }
+        if ( request.length > REQUEST_MAX_LENGTH ) {
+            return "PData too long: " + (request.length - ProtocolProperties.PDATA_START_POS);
+        }
+        
+        for ( int i = 0; i < request.length; i++ ) {
+            if ( request[i] < 0 || request[i] > BYTE_MAX ) {
+                return "Value out of byte range at position " + i + ": " + request[i];
+            }
+        }
+        
+        int nadr = request[ProtocolProperties.NADR_START] 
+                | (request[ProtocolProperties.NADR_START + 1] << 8);
+        if ( ProtocolProperties.NADR_Properties.isReserved(nadr) ) {
+            return "Reserved NADR: " + Integer.toHexString(nadr);
+        }
+        
+        int pnum = request[ProtocolProperties.PNUM_POS];
+        int pcmd = request[ProtocolProperties.PCMD_POS];
+        if ( (pcmd & RESPONSE_PCMD_MASK) != 0 ) {
+            return "PCMD of response: " + Integer.toHexString(pcmd);
+        }
+        
+        int dataLength = request.length - ProtocolProperties.PDATA_START_POS;
+        DataLength allowedDataLength = dataLengths.get(getCommandKey(pnum, pcmd));
+        if ( allowedDataLength != null ) {
+            if ( !allowedDataLength.isAllowed(dataLength) ) {
+                return "Invalid PData length of command " + Integer.toHexString(pnum) 
+                        + "/" + Integer.toHexString(pcmd) + ": " + dataLength 
+                        + ", allowed: " + allowedDataLength;
+            }
+            return null;
+        }
+        
+        if ( pnum <= EMBEDDED_PERIPHERAL_END ) {
+            return "Unknown command of peripheral " + Integer.toHexString(pnum) 
+                    + ": " + Integer.toHexString(pcmd);
+        }
+        if ( pnum == ProtocolProperties.PNUM_Properties.DEVICE_EXPLORATION ) {
+            return null;
+        }
+        if ( pnum < ProtocolProperties.PNUM_Properties.USER_PERIPHERAL_START 
+                || pnum > ProtocolProperties.PNUM_Properties.USER_PERIPHERAL_END 
+        ) {
+            return "Reserved PNUM: " + Integer.toHexString(pnum);
+        }
+        return null;
+    }
+    
+    /**
+     * Indicates, whether specified request is valid.
+     * 
+     * @param request request to check
+     * @return {@code true} if the request is valid <br>
+     *         {@code false} otherwise
+     */
+    public boolean isValid(short[] request) {
+        return ( getViolation(request) == null );
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.byteaccess.validation;
+
+import com.microrisc.dpa22x.byteaccess.ProcessingInfo;
+import com.microrisc.dpa22x.byteaccess.RequestResult;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessor;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorControlInterface;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorDecorator;
+import com.microrisc.dpa22x.byteaccess.accessors.ByteAccessorException;
+import com.microrisc.dpa22x.byteaccess.accessors.StandardByteAccessor;
+import com.microrisc.dpa22x.byteaccess.errors.InvalidRequestError;
+import com.microrisc.dpa22x.byteaccess.metrics.AccessorMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Byte accessor, which checks requests by {@link RequestValidator} before 
+ * they are sent by the underlying accessor.
+ * <p>
+ * Requests, which the validator finds invalid, are not sent and fail with 
+ * {@link InvalidRequestError}.
+ * 
+ * @author agent
+ */
+public final class ValidatingByteAccessor 
+implements ByteAccessorDecorator, ByteAccessorControlInterface {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(ValidatingByteAccessor.class);
+    
+    
+    // underlying accessor
+    private final ByteAccessor accessor;
+    
+    // validator of requests
+    private final RequestValidator requestValidator;
+    
+    // metrics to record rejected requests into, null means no recording
+    private final AccessorMetrics metrics;
+    
+    // default waiting timeout
+    private volatile long defaultWaitingTimeout = ByteAccessor.WAITING_TIMEOUT_NOT_LIMITED;
+    
+    
+    private static ByteAccessor checkAccessor(ByteAccessor accessor) {
+        if ( accessor == null ) {
+            throw new IllegalArgumentException("Accessor cannot be null.");
+        }
+        return accessor;
+    }
+    
+    private static RequestValidator checkRequestValidator(RequestValidator requestValidator) {
+        if ( requestValidator == null ) {
+            throw new IllegalArgumentException("Request validator cannot be null.");
+        }
+        return requestValidator;
+    }
+    
+    
+    /**
+     * Creates new validating accessor.
+     * 
+     * @param accessor underlying accessor
+     * @param requestValidator validator of requests
+     * @param metrics metrics to record rejected requests into,
+     *        {@code null} means no recording
+     */
+    public ValidatingByteAccessor(
+            ByteAccessor accessor, RequestValidator requestValidator, AccessorMetrics metrics
+    ) {
+        this.accessor = checkAccessor(accessor);
+        this.requestValidator = checkRequestValidator(requestValidator);
+        this.metrics = metrics;
+        logger.debug("Validating byte accessor created");
+    }
+    
+    /**
+     * Creates new validating accessor, which checks requests by 
+     * {@link RequestValidator#DEFAULT default validator} and records 
+     * rejected requests into metrics of specified accessor.
+     * 
+     * @param accessor underlying accessor
+     */
+    public ValidatingByteAccessor(StandardByteAccessor accessor) {
+        this(accessor, RequestValidator.DEFAULT, ( accessor != null )? accessor.getMetrics() : null);
+    }
+    
+    @Override
+    public ByteAccessor getAccessor() {
+        return accessor;
+    }
+    
+    /**
+     * @return validator of requests
+     */
+    public RequestValidator getRequestValidator() {
+        return requestValidator;
+    }
+    
+    @Override
+    public void start() throws ByteAccessorException {
+        if ( accessor instanceof ByteAccessorControlInterface ) {
+            ((ByteAccessorControlInterface) accessor).start();
+        }
+    }
+    
+    @Override
+    public RequestResult sendRequest(short[] request, long waitingTimeout) {
+        String violation = requestValidator.getViolation(request);
+        if ( violation == null ) {
+            return accessor.sendRequest(request, waitingTimeout);
+        }
+        
+        logger.info("Invalid request rejected: {}", violation);
+        RequestResult requestResult = new RequestResult(
+                RequestResult.Status.ERROR, null, 
+                new ProcessingInfo( new InvalidRequestError(violation) )
+        );
+        if ( metrics != null ) {
+            metrics.requestRejected(requestResult);
+        }
+        return requestResult;
+    }
+    
+    @Override
+    public RequestResult sendRequest(short[] request) {
+        return sendRequest(request, defaultWaitingTimeout);
+    }
+    
+    @Override
+    public void setDefaultWaitingTimeout(long timeout) {
+        accessor.setDefaultWaitingTimeout(timeout);
+        this.defaultWaitingTimeout = timeout;
+    }
+    
+    @Override
+    public void terminateAndRelease() {
+        if ( accessor instanceof ByteAccessorControlInterface ) {
+            ((ByteAccessorControlInterface) accessor).terminateAndRelease();
+        }
+        logger.info("Validating byte accessor terminated and released");
+    }
+}
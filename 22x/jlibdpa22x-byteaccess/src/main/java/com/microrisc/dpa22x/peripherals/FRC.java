@@ -25,6 +25,23 @@ public final class FRC {
     /** Peripheral number. */
     public static final int PNUM = 0x0D;
     
+    /** 
+     * Predefined FRC command - acknowledged broadcast. Each node executes 
+     * DPA request embedded in user data and returns 2 bits - bit 0 is set 
+     * if the node received the request, bit 1 is set if the request was 
+     * executed without error.
+     */
+    public static final int ACKNOWLEDGED_BROADCAST_BITS = 0x02;
+    
+    /** Length of bitmap of selected nodes in selective FRC. */
+    public static final int SELECTED_NODES_LENGTH = 30;
+    
+    /** Length of FRC data returned by SEND and SEND_SELECTIVE commands. */
+    public static final int DATA_LENGTH = 55;
+    
+    /** Length of FRC data returned by EXTRA_RESULT command. */
+    public static final int EXTRA_RESULT_LENGTH = 9;
+    
     /** Commands. */
     public static enum Command {
         SEND            (0x00),
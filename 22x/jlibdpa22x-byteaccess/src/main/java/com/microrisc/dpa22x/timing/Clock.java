@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.timing;
+
+/**
+ * Source of time and of timed waiting used by the library.
+ * <p>
+ * All timing decisions of byte accessors and of the waiting time counter
+ * go through this interface, which enables to run them in virtual time.
+ * 
+ * @author agent
+ */
+public interface Clock {
+    
+    /**
+     * Returns current time [in ms] since the epoch.
+     * @return current time [in ms]
+     */
+    long currentTimeMillis();
+    
+    /**
+     * Returns current value of high-resolution time source [in ns].
+     * Only differences of returned values are meaningful.
+     * @return current value of high-resolution time source [in ns]
+     */
+    long nanoTime();
+    
+    /**
+     * Suspends the calling thread for specified time.
+     * 
+     * @param millis time to sleep [in ms]
+     * @throws InterruptedException if the calling thread has been interrupted
+     */
+    void sleep(long millis) throws InterruptedException;
+    
+    /**
+     * Waits on specified monitor at maximum for specified time. 
+     * The calling thread must own the monitor. The same as for 
+     * {@link Object#wait(long)}, the waiting can end before the timeout elapses
+     * even if the monitor has not been notified, so the caller must check
+     * the condition it waits for and time it has actually spent by waiting.
+     * 
+     * @param monitor monitor to wait on
+     * @param timeout maximal time to wait [in ms], {@code 0} means unlimited
+     *        waiting
+     * @throws InterruptedException if the calling thread has been interrupted
+     */
+    void waitOn(Object monitor, long timeout) throws InterruptedException;
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.timing;
+
+/**
+ * Clock based on system time, i.e. the wall-clock.
+ * 
+ * @author agent
+ */
+public final class SystemClock implements Clock {
+    
+    /** The only instance. */
+    public static final SystemClock INSTANCE = new SystemClock();
+    
+    
+    private SystemClock() {
+    }
+    
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    @Override
+    public void waitOn(Object monitor, long timeout) throws InterruptedException {
+        monitor.wait(timeout);
+    }
+}
@@ -73,17 +73,17 @@ public final class TimingParamsStorage {
         }
         
         public void setBondedNodesNum(int bondedNodesNum) {
-            changedFromLastReturn = (this.bondedNodesNum != bondedNodesNum);
+            changedFromLastReturn |= (this.bondedNodesNum != bondedNodesNum);
             this.bondedNodesNum = bondedNodesNum;
         }
         
         public void setRfMode(RF_Mode rfMode) {
-            changedFromLastReturn = (this.rfMode != rfMode);
+            changedFromLastReturn |= (this.rfMode != rfMode);
             this.rfMode = rfMode;
         }
         
         public void setResponseTime(FRC_ResponseTime responseTime) {
-            changedFromLastReturn = (this.responseTime != responseTime);
+            changedFromLastReturn |= (this.responseTime != responseTime);
             this.responseTime = responseTime;
         }
         
@@ -233,11 +233,7 @@ public final class TimingParamsStorage {
         
         @Override
         public void update(short[] request, DPA_Response response) {
-            MutableFRC_TimingParams frcTimingParams 
-                = (MutableFRC_TimingParams)timingParamsMap.get(ProtocolProperties.getPeripheralNumber(request));
-            if ( frcTimingParams == null ) {
-                frcTimingParams = new MutableFRC_TimingParams();
-            }
+            MutableFRC_TimingParams frcTimingParams = getMutableFRC_TimingParams();
             
             Coordinator.Command command = getCommand(ProtocolProperties.getCommand(request));
             if ( command == null ) {
@@ -272,11 +268,7 @@ public final class TimingParamsStorage {
 
         @Override
         public void update(short[] request, DPA_Response response) {
-            MutableFRC_TimingParams frcTimingParams 
-                = (MutableFRC_TimingParams)timingParamsMap.get(ProtocolProperties.getPeripheralNumber(request));
-            if ( frcTimingParams == null ) {
-                frcTimingParams = new MutableFRC_TimingParams();
-            }
+            MutableFRC_TimingParams frcTimingParams = getMutableFRC_TimingParams();
             
             int command = ProtocolProperties.getCommand(request);
             
@@ -305,13 +297,12 @@ public final class TimingParamsStorage {
             return null;
         }
         
-        // extracts response time set by the request and checks the response - 
-        // if the response time has been correctly set
+        // extracts response time set by the request
         private FRC_ResponseTime getResponseTime(short[] request, DPA_Response response) {
-            int responseTimeValue = ProtocolProperties.getData(request)[0];
+            int responseTimeValue = ProtocolProperties.getData(request)[0] & FRC_RESPONSE_TIME_MASK;
             
             for ( FRC_ResponseTime respTime : FRC_ResponseTime.values() ) {
-                if ( respTime.getTimeAsInt() == responseTimeValue ) {
+                if ( respTime.getId() == responseTimeValue ) {
                     return respTime;
                 }
             }
@@ -329,11 +320,7 @@ public final class TimingParamsStorage {
         
         @Override
         public void update(short[] request, DPA_Response response) {
-            MutableFRC_TimingParams frcTimingParams 
-                = (MutableFRC_TimingParams)timingParamsMap.get(ProtocolProperties.getPeripheralNumber(request));
-            if ( frcTimingParams == null ) {
-                frcTimingParams = new MutableFRC_TimingParams();
-            }
+            MutableFRC_TimingParams frcTimingParams = getMutableFRC_TimingParams();
 
             FRC.Command command = getCommand(ProtocolProperties.getCommand(request));
             if ( command == null ) {
@@ -351,6 +338,9 @@ public final class TimingParamsStorage {
         }
     }
     
+    // bits of FRC params, which specify response time
+    private static final int FRC_RESPONSE_TIME_MASK = 0x70;
+    
     // timing parameters map - keys are peripheral numbers
     private Map<Short, MutableTimingParams> timingParamsMap;
     
@@ -367,6 +357,11 @@ public final class TimingParamsStorage {
         return networksInitialSettings;
     }
     
+    // returns FRC timing params, which are updated by all updaters
+    private MutableFRC_TimingParams getMutableFRC_TimingParams() {
+        return (MutableFRC_TimingParams)timingParamsMap.get((short)ProtocolProperties.PNUM_Properties.FRC);
+    }
+    
     private void initTimingParamsUpdaters() {
         timingParamsUpdaters = new HashMap<>();
         timingParamsUpdaters.put((short)ProtocolProperties.PNUM_Properties.COORDINATOR, new Coordinator_Updater());
@@ -383,6 +378,33 @@ public final class TimingParamsStorage {
     public TimingParamsStorage() {
         initTimingParamsUpdaters();
         timingParamsMap = new HashMap<>();
+        timingParamsMap.put((short)ProtocolProperties.PNUM_Properties.FRC, new MutableFRC_TimingParams());
+    }
+    
+    /**
+     * Updates timing parameters according to specified request and its response.
+     * 
+     * @param request sent request
+     * @param response response on {@code request}
+     */
+    public synchronized void update(short[] request, DPA_Response response) {
+        TimingParamsUpdater updater 
+                = timingParamsUpdaters.get(ProtocolProperties.getPeripheralNumber(request));
+        if ( updater != null ) {
+            updater.update(request, response);
+        }
+    }
+    
+    /**
+     * Sets FRC timing parameters - for example the ones known from previous run.
+     * 
+     * @param frcTimingParams FRC timing parameters to set
+     */
+    public synchronized void setFRC_TimingParams(FRC_TimingParams frcTimingParams) {
+        MutableFRC_TimingParams mutTimingParams = getMutableFRC_TimingParams();
+        mutTimingParams.setBondedNodesNum(frcTimingParams.getBondedNodesNum());
+        mutTimingParams.setRfMode(frcTimingParams.getRfMode());
+        mutTimingParams.setResponseTime(frcTimingParams.getResponseTime());
     }
     
     /**
@@ -0,0 +1,458 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.dpa22x.timing;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Clock, whose time is advanced only by the program - not by the wall-clock.
+ * <p>
+ * Besides providing time, the clock holds a queue of scheduled tasks. Tasks
+ * are run in the order of their scheduled time (tasks scheduled for the same 
+ * time in the order of scheduling) by the thread, which sleeps or waits on 
+ * the clock - time is moved forward straight to the next scheduled task, so
+ * sleeping and waiting take no real time. Thus, when a byte accessor, its
+ * waiting time counter and a simulated network share the same virtual clock,
+ * the whole communication runs deterministically and as fast as possible.
+ * <p>
+ * When more threads sleep or wait on the clock, the time is not advanced 
+ * beyond the deadline of any of them. Each thread advances the time at 
+ * maximum to the earliest of its own deadline, deadlines of the other 
+ * threads and the next scheduled task. Thread, whose deadline is later than 
+ * the deadline of some other thread, waits in real time, until the other 
+ * thread moves the time forward.
+ * <p>
+ * Threads, which take part in the simulation, can be {@link #register(Thread)
+ * registered}. Then the time is advanced by sleeping and waiting only when all 
+ * alive registered threads sleep or wait on the clock, so that no registered
+ * thread misses the time it is going to wait for. Registered thread must not
+ * block otherwise than by the clock.
+ * <p>
+ * Tasks are run by the thread, which advances the time, while holding 
+ * the monitor it waits on. Tasks must not block.
+ * 
+ * @author agent
+ */
+public final class VirtualClock implements Clock {
+    
+    /** Logger. */
+    private static final Logger logger = LoggerFactory.getLogger(VirtualClock.class);
+    
+    /** 
+     * Maximal real time [in ms] to wait with unlimited timeout, when there is
+     * no task scheduled, or to wait for other thread with earlier deadline. 
+     */
+    public static final long IDLE_WAITING_TIME = 10;
+    
+    private static final long NANOS_IN_MILLIS = 1000000;
+    
+    
+    // scheduled task
+    private static final class ScheduledTask implements Comparable<ScheduledTask> {
+        final long time;
+        final long sequenceNumber;
+        final Runnable task;
+        
+        ScheduledTask(long time, long sequenceNumber, Runnable task) {
+            this.time = time;
+            this.sequenceNumber = sequenceNumber;
+            this.task = task;
+        }
+        
+        @Override
+        public int compareTo(ScheduledTask other) {
+            if ( time != other.time ) {
+                return ( time < other.time )? -1 : 1;
+            }
+            if ( sequenceNumber != other.sequenceNumber ) {
+                return ( sequenceNumber < other.sequenceNumber )? -1 : 1;
+            }
+            return 0;
+        }
+    }
+    
+    // synchronization of access to time and tasks
+    private final Object lock = new Object();
+    
+    // time of epoch start [in ms]
+    private final long epochStartMillis;
+    
+    // current time since creation [in ns]
+    private long currentNanos = 0;
+    
+    // scheduled tasks
+    private final PriorityQueue<ScheduledTask> tasks = new PriorityQueue<>();
+    
+    // sequence number of next task 
+    private long nextSequenceNumber = 0;
+    
+    // deadlines [in ns] of threads, which sleep or wait on the clock
+    private final PriorityQueue<Long> waitingDeadlines = new PriorityQueue<>();
+    
+    // threads, which sleep or wait on the clock
+    private final Set<Thread> waitingThreads = new HashSet<>();
+    
+    // threads, which have to wait on the clock before the time is advanced
+    private final Set<Thread> registeredThreads = new HashSet<>();
+    
+    
+    private static long checkTimeValue(long time) {
+        if ( time < 0 ) {
+            throw new IllegalArgumentException("Time value cannot be negative.");
+        }
+        return time;
+    }
+    
+    private static Runnable checkTask(Runnable task) {
+        if ( task == null ) {
+            throw new IllegalArgumentException("Task cannot be null.");
+        }
+        return task;
+    }
+    
+    // returns scheduled task, which is due not later than specified time 
+    // or null, if there is no such task
+    private ScheduledTask pollTaskDueTill(long time) {
+        synchronized ( lock ) {
+            ScheduledTask nextTask = tasks.peek();
+            if ( nextTask == null || nextTask.time > time ) {
+                return null;
+            }
+            tasks.poll();
+            if ( nextTask.time > currentNanos ) {
+                currentNanos = nextTask.time;
+            }
+            return nextTask;
+        }
+    }
+    
+    // runs all tasks due not later than specified time, then advances the time
+    private void runTasksTill(long time) {
+        ScheduledTask task = null;
+        while ( (task = pollTaskDueTill(time)) != null ) {
+            task.task.run();
+        }
+        synchronized ( lock ) {
+            if ( time > currentNanos ) {
+                currentNanos = time;
+            }
+            lock.notifyAll();
+        }
+    }
+    
+    // runs next scheduled task and all other tasks scheduled for the same time
+    // returns false if there is no task to run
+    private boolean runNextTasks() {
+        long nextTime = 0;
+        synchronized ( lock ) {
+            ScheduledTask nextTask = tasks.peek();
+            if ( nextTask == null ) {
+                return false;
+            }
+            nextTime = nextTask.time;
+        }
+        runTasksTill(nextTime);
+        return true;
+    }
+    
+    // marks the calling thread as waiting on the clock with unlimited timeout
+    private void startWaiting() {
+        synchronized ( lock ) {
+            waitingThreads.add(Thread.currentThread());
+            lock.notifyAll();
+        }
+    }
+    
+    // marks the calling thread as waiting on the clock for specified time
+    // returns deadline of the waiting
+    private long startWaiting(long millis) {
+        synchronized ( lock ) {
+            long deadline = currentNanos + millis * NANOS_IN_MILLIS;
+            waitingDeadlines.add(deadline);
+            waitingThreads.add(Thread.currentThread());
+            lock.notifyAll();
+            return deadline;
+        }
+    }
+    
+    private void finishWaiting() {
+        synchronized ( lock ) {
+            waitingThreads.remove(Thread.currentThread());
+            lock.notifyAll();
+        }
+    }
+    
+    private void finishWaiting(long deadline) {
+        synchronized ( lock ) {
+            waitingDeadlines.remove(deadline);
+            waitingThreads.remove(Thread.currentThread());
+            lock.notifyAll();
+        }
+    }
+    
+    // indicates, whether all alive registered threads wait on the clock
+    private boolean areRegisteredThreadsWaiting() {
+        Iterator<Thread> threadsIter = registeredThreads.iterator();
+        while ( threadsIter.hasNext() ) {
+            Thread thread = threadsIter.next();
+            if ( thread.getState() == Thread.State.TERMINATED ) {
+                threadsIter.remove();
+                continue;
+            }
+            if ( !waitingThreads.contains(thread) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // returns time of the next scheduled task, if it is not later than 
+    // specified time, otherwise the specified time
+    private long getNextTime(long time) {
+        ScheduledTask nextTask = tasks.peek();
+        return ( nextTask != null && nextTask.time < time )? nextTask.time : time;
+    }
+    
+    // indicates, whether the time can be advanced to specified time by 
+    // the calling thread - no other waiting thread has earlier deadline and 
+    // all registered threads wait
+    private boolean canAdvanceTo(long time) {
+        Long earliestDeadline = waitingDeadlines.peek();
+        if ( earliestDeadline != null && earliestDeadline < time ) {
+            return false;
+        }
+        return areRegisteredThreadsWaiting();
+    }
+    
+    // advances the time towards specified deadline of the calling thread - 
+    // to the deadline or to the next task, whichever is earlier; returns false,
+    // if the time cannot be advanced now
+    private boolean advanceTowards(long deadline) {
+        long nextTime = 0;
+        synchronized ( lock ) {
+            nextTime = getNextTime(deadline);
+            if ( !canAdvanceTo(nextTime) ) {
+                return false;
+            }
+        }
+        runTasksTill(nextTime);
+        return true;
+    }
+    
+    
+    /**
+     * Creates new virtual clock with time set to 0.
+     */
+    public VirtualClock() {
+        this(0);
+    }
+    
+    /**
+     * Creates new virtual clock with time set to specified value.
+     * 
+     * @param epochStartMillis initial value of {@link #currentTimeMillis()}
+     */
+    public VirtualClock(long epochStartMillis) {
+        this.epochStartMillis = checkTimeValue(epochStartMillis);
+        logger.debug("Virtual clock created");
+    }
+    
+    /**
+     * Registers specified thread. Time is not advanced by sleeping or waiting
+     * on the clock, till all alive registered threads sleep or wait on it. 
+     * A thread can be registered before it is started. Terminated threads 
+     * are unregistered automatically.
+     * 
+     * @param thread thread to register
+     */
+    public void register(Thread thread) {
+        if ( thread == null ) {
+            throw new IllegalArgumentException("Thread cannot be null.");
+        }
+        synchronized ( lock ) {
+            registeredThreads.add(thread);
+        }
+    }
+    
+    /**
+     * Unregisters specified thread.
+     * 
+     * @param thread thread to unregister
+     */
+    public void unregister(Thread thread) {
+        synchronized ( lock ) {
+            registeredThreads.remove(thread);
+            lock.notifyAll();
+        }
+    }
+    
+    /**
+     * Schedules specified task to run after specified delay.
+     * Can be called from any thread, including the tasks.
+     * 
+     * @param task task to run
+     * @param delay delay [in ms]
+     */
+    public void schedule(Runnable task, long delay) {
+        checkTask(task);
+        checkTimeValue(delay);
+        synchronized ( lock ) {
+            tasks.add( 
+                new ScheduledTask(
+                    currentNanos + delay * NANOS_IN_MILLIS, nextSequenceNumber++, task
+                )
+            );
+        }
+    }
+    
+    /**
+     * Advances time by specified value and runs all tasks scheduled 
+     * in the meantime.
+     * 
+     * @param millis time to advance by [in ms]
+     */
+    public void advance(long millis) {
+        checkTimeValue(millis);
+        long targetTime = 0;
+        synchronized ( lock ) {
+            targetTime = currentNanos + millis * NANOS_IN_MILLIS;
+        }
+        runTasksTill(targetTime);
+    }
+    
+    /**
+     * Runs all scheduled tasks, including the tasks scheduled by the tasks.
+     */
+    public void runAll() {
+        while ( runNextTasks() ) {
+        }
+    }
+    
+    /**
+     * @return number of scheduled, not yet run, tasks
+     */
+    public int getScheduledTasksNum() {
+        synchronized ( lock ) {
+            return tasks.size();
+        }
+    }
+    
+    @Override
+    public long currentTimeMillis() {
+        synchronized ( lock ) {
+            return epochStartMillis + currentNanos / NANOS_IN_MILLIS;
+        }
+    }
+
+    @Override
+    public long nanoTime() {
+        synchronized ( lock ) {
+            return currentNanos;
+        }
+    }
+    
+    /**
+     * Advances time by specified value and runs all tasks scheduled 
+     * in the meantime. If other thread sleeping or waiting on the clock has 
+     * earlier deadline, or some registered thread does not wait on the clock,
+     * the calling thread waits in real time till the time can be advanced.
+     * 
+     * @param millis time to sleep [in ms]
+     * @throws InterruptedException if the calling thread has been interrupted
+     */
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        checkTimeValue(millis);
+        if ( Thread.interrupted() ) {
+            throw new InterruptedException();
+        }
+        
+        long deadline = startWaiting(millis);
+        try {
+            while ( true ) {
+                if ( !advanceTowards(deadline) ) {
+                    synchronized ( lock ) {
+                        lock.wait(IDLE_WAITING_TIME);
+                    }
+                }
+                synchronized ( lock ) {
+                    if ( currentNanos >= deadline ) {
+                        return;
+                    }
+                }
+            }
+        } finally {
+            finishWaiting(deadline);
+        }
+    }
+    
+    /**
+     * Advances time to the nearest scheduled task, runs it and returns.
+     * If there is no task scheduled within the timeout, the time is advanced
+     * by the timeout. 
+     * <p>
+     * The time is not advanced, if other thread sleeping or waiting on 
+     * the clock has deadline earlier than the task or the timeout, or if some
+     * registered thread does not wait on the clock - then, 
+     * as well as when the timeout is unlimited and there is no task 
+     * scheduled, the calling thread really waits on the monitor at maximum 
+     * for {@link #IDLE_WAITING_TIME}, in order to give chance to other threads
+     * to advance the time or to schedule some task.
+     * 
+     * @param monitor monitor to wait on
+     * @param timeout maximal time to wait [in ms], {@code 0} means unlimited
+     *        waiting
+     * @throws InterruptedException if the calling thread has been interrupted
+     */
+    @Override
+    public void waitOn(Object monitor, long timeout) throws InterruptedException {
+        checkTimeValue(timeout);
+        if ( Thread.interrupted() ) {
+            throw new InterruptedException();
+        }
+        
+        if ( timeout == 0 ) {
+            startWaiting();
+            try {
+                boolean isTaskDue = false;
+                synchronized ( lock ) {
+                    ScheduledTask nextTask = tasks.peek();
+                    isTaskDue = ( nextTask != null && canAdvanceTo(nextTask.time) );
+                }
+                if ( !isTaskDue || !runNextTasks() ) {
+                    monitor.wait(IDLE_WAITING_TIME);
+                }
+            } finally {
+                finishWaiting();
+            }
+            return;
+        }
+        
+        long deadline = startWaiting(timeout);
+        try {
+            if ( !advanceTowards(deadline) ) {
+                monitor.wait(IDLE_WAITING_TIME);
+            }
+        } finally {
+            finishWaiting(deadline);
+        }
+    }
+}
@@ -21,6 +21,7 @@ import com.microrisc.dpa22x.ProtocolProperties;
 import com.microrisc.dpa22x.RF_Mode;
 import static com.microrisc.dpa22x.RF_Mode.LP;
 import static com.microrisc.dpa22x.RF_Mode.STD;
+import com.microrisc.dpa22x.peripherals.Coordinator;
 import com.microrisc.dpa22x.peripherals.FRC;
 import com.microrisc.dpa22x.peripherals.UART;
 import java.util.HashMap;
@@ -49,6 +50,12 @@ public final class WaitingTimeCounter {
     /** Safety timeout [ in ms ]. */
     public static final long SAFETY_TIMEOUT = 40;
     
+    /** Maximal time of bonding of a node by the coordinator [ in ms ]. */
+    public static final long MAX_BONDING_TIME = 20000;
+    
+    // number of timeslots needed to discover one address
+    private static final int DISCOVERY_TIMESLOTS_PER_ADDRESS = 10;
+    
     
     // RF mode
     private final RF_Mode rfMode;
@@ -59,6 +66,9 @@ public final class WaitingTimeCounter {
     // time to wait for confirmation
     private final long timeToWaitForConfirmation;
     
+    // clock
+    private final Clock clock;
+    
     
     // timeslot length for DCTR-5xD
     private static int getTimeslotLengthFor_5xD(int pDataLength, RF_Mode rfMode) {
@@ -110,8 +120,16 @@ public final class WaitingTimeCounter {
         }
     }
     
-    // returns timeslot length [in ms]
-    private static int getTimeslotLength(int pDataLength, RF_Mode rfMode, DCTR dctr) {
+    /**
+     * Returns length of timeslot [in ms] used for routing of a message with
+     * PData of specified length.
+     *
+     * @param pDataLength length of PData of the routed message
+     * @param rfMode RF mode
+     * @param dctr DCTR HW type
+     * @return timeslot length [in ms]
+     */
+    public static int getTimeslotLength(int pDataLength, RF_Mode rfMode, DCTR dctr) {
         switch ( dctr ) {
             case DCTR_5xD:
                 return getTimeslotLengthFor_5xD(pDataLength, rfMode);
@@ -144,6 +162,13 @@ public final class WaitingTimeCounter {
         return timeToWaitForConfirmation;
     }
     
+    private static Clock checkClock(Clock clock) {
+        if ( clock == null ) {
+            throw new IllegalArgumentException("Clock cannot be null.");
+        }
+        return clock;
+    }
+    
     
     // base class for all special waiting time for response counters 
     private static abstract class SpecialWaitingTimeForResponseCounter {
@@ -222,8 +247,10 @@ public final class WaitingTimeCounter {
         @Override
         public long count(short[] request, TimingParams timingParams) {
             FRC.Command command = getCommand(ProtocolProperties.getCommand(request));
+            // unknown command - refused by the device at once, no additional time;
+            // it is not an error of the counter, so nothing is thrown out of sending
             if ( command == null ) {
-                throw new IllegalStateException("FRC command not found.");
+                return 0;
             }
             
             if ( (command == FRC.Command.EXTRA_RESULT) || (command == FRC.Command.SET_FRC_PARAMS)) {
@@ -267,8 +294,10 @@ public final class WaitingTimeCounter {
         @Override
         public long count(short[] request, TimingParams timingParams) {
             UART.Command command = getCommand(ProtocolProperties.getCommand(request));
+            // unknown command - refused by the device at once, no additional time;
+            // it is not an error of the counter, so nothing is thrown out of sending
             if ( command == null ) {
-                throw new IllegalStateException("UART method not found.");
+                return 0;
             }
             
             if ( command != UART.Command.WRITE_READ ) {
@@ -308,8 +337,12 @@ public final class WaitingTimeCounter {
     // inits special waitig counters
     private void initSpecialWaitingCounters() {
         specialWaitingTimeCounters = new HashMap<>();
-        specialWaitingTimeCounters.put(Short.MIN_VALUE, new FRC_WaitingTimeForResponseCounter());
-        specialWaitingTimeCounters.put(Short.MIN_VALUE, new UART_WaitingTimeForResponseCounter());
+        specialWaitingTimeCounters.put(
+                (short)ProtocolProperties.PNUM_Properties.FRC, new FRC_WaitingTimeForResponseCounter()
+        );
+        specialWaitingTimeCounters.put(
+                (short)ProtocolProperties.PNUM_Properties.UART, new UART_WaitingTimeForResponseCounter()
+        );
     }
     
     
@@ -320,6 +353,7 @@ public final class WaitingTimeCounter {
         this.rfMode = RF_MODE_DEEFAULT;
         this.dctr = DCTR_DEFAULT;
         this.timeToWaitForConfirmation = TIME_TO_WAIT_FOR_CONFIRMATION_DEFAULT;
+        this.clock = SystemClock.INSTANCE;
         initSpecialWaitingCounters();
     }
     
@@ -331,13 +365,51 @@ public final class WaitingTimeCounter {
      * @param timeToWaitForConfirmation time to wait for confirmation [in ms]
      */
     public WaitingTimeCounter(RF_Mode rfMode, DCTR dctr, long timeToWaitForConfirmation) {
+        this(rfMode, dctr, timeToWaitForConfirmation, SystemClock.INSTANCE);
+    }
+    
+    /**
+     * Creates new object of Waiting Counter with specified settings and clock.
+     * Byte accessors using this counter take their time from the same clock.
+     * 
+     * @param rfMode RF mode
+     * @param dctr DCTR HW type
+     * @param timeToWaitForConfirmation time to wait for confirmation [in ms]
+     * @param clock clock to use
+     */
+    public WaitingTimeCounter(
+            RF_Mode rfMode, DCTR dctr, long timeToWaitForConfirmation, Clock clock
+    ) {
         this.rfMode = checkRfMode(rfMode);
         this.dctr = checkDctr(dctr);
         this.timeToWaitForConfirmation = checkTimeToWaitForConfirmation(timeToWaitForConfirmation);
+        this.clock = checkClock(clock);
         initSpecialWaitingCounters();
     }
     
     
+    /**
+     * @return clock used by this counter
+     */
+    public Clock getClock() {
+        return clock;
+    }
+    
+    /**
+     * @return RF mode
+     */
+    public RF_Mode getRfMode() {
+        return rfMode;
+    }
+    
+    /**
+     * @return DCTR HW type
+     */
+    public DCTR getDctr() {
+        return dctr;
+    }
+    
+    
     /**
      * Returns time to wait for response on specified request.
      * 
@@ -348,7 +420,9 @@ public final class WaitingTimeCounter {
      * @param timingParams timing parameters 
      *        Can be {@code null}, if the waiting time for the request is counted
      *        in a normal way (unlike FRC, UART, ...)
-     * @return waiting time for response on {@code request}
+     * @return waiting time for response on {@code request}; no additional 
+     *         time is counted for FRC or UART request with unknown command,
+     *         which the device refuses at once
      */
     public long getTimeToWaitForResponse(
             short[] request, DPA_Confirmation confirmation, TimingParams timingParams
@@ -395,12 +469,92 @@ public final class WaitingTimeCounter {
         return timeToWaitForConfirmation;
     }
     
+    /**
+     * Returns predicted time [in ms] of IQMESH routing of specified request
+     * and of its response through specified number of hops. The response 
+     * is supposed to be of the same length as the request. Requests for
+     * local device are not routed, so zero is returned for them.
+     * 
+     * @param request request to predict routing time of
+     * @param hops number of hops between coordinator and addressee
+     * @return predicted routing time [in ms]
+     */
+    public long getPredictedRoutingTime(short[] request, int hops) {
+        if ( request == null ) {
+            throw new IllegalArgumentException("Request cannot be null.");
+        }
+        if ( hops < 0 ) {
+            throw new IllegalArgumentException("Number of hops cannot be negative.");
+        }
+        
+        if ( ProtocolProperties.isAddresseeLocalDevice(request) ) {
+            return 0;
+        }
+        
+        int pDataLength = Math.max(0, request.length - ProtocolProperties.PDATA_START_POS);
+        return 2 * (hops + 1) * getTimeslotLength(pDataLength, rfMode, dctr);
+    }
+    
+    /**
+     * Returns predicted time [in ms] of processing of specified FRC request
+     * in the network, i.e. of collecting of FRC data from the nodes. Delay 
+     * of the library is not included. Zero is returned for unknown FRC 
+     * command.
+     * 
+     * @param request FRC request to predict processing time of
+     * @param timingParams FRC timing parameters, number of bonded nodes is
+     *        the number of nodes, which take part in the FRC
+     * @return predicted processing time [in ms]
+     */
+    public long getPredictedFrcTime(short[] request, FRC_TimingParams timingParams) {
+        if ( request == null ) {
+            throw new IllegalArgumentException("Request cannot be null.");
+        }
+        if ( ProtocolProperties.getPeripheralNumber(request) != ProtocolProperties.PNUM_Properties.FRC ) {
+            throw new IllegalArgumentException("Not an FRC request.");
+        }
+        return getAdditionalTimeForSpecialRequest(request, timingParams);
+    }
+    
+    /**
+     * Returns conservative estimate of maximal time [in ms] of processing of 
+     * specified long lasting operation of the coordinator - bonding of a node 
+     * or discovery. Discovery is supposed to go through all addresses up to 
+     * MaxAddr parameter of the request, or through all node addresses, if the 
+     * parameter is missing or zero.
+     * 
+     * @param request bonding or discovery request
+     * @return maximal processing time [in ms]
+     */
+    public long getMaxTimeOfLongLastingOperation(short[] request) {
+        if ( request == null ) {
+            throw new IllegalArgumentException("Request cannot be null.");
+        }
+        if ( ProtocolProperties.getPeripheralNumber(request) != ProtocolProperties.PNUM_Properties.COORDINATOR ) {
+            throw new IllegalArgumentException("Not a coordinator request.");
+        }
+        
+        short command = ProtocolProperties.getCommand(request);
+        if ( command == Coordinator.Command.BOND_NODE.asByteValue() ) {
+            return MAX_BONDING_TIME + LIBRARY_DELAY;
+        }
+        if ( command == Coordinator.Command.RUN_DISCOVERY.asByteValue() ) {
+            int maxAddrPos = ProtocolProperties.PDATA_START_POS + 1;
+            int maxAddr = ( request.length > maxAddrPos && request[maxAddrPos] != 0 )?
+                    request[maxAddrPos] : ProtocolProperties.NADR_Properties.IQMESH_NODE_ADDRESS_MAX;
+            long timeslotLength = getTimeslotLength(ProtocolProperties.PDATA_MAX_LENGTH, rfMode, dctr);
+            return (maxAddr + 1) * DISCOVERY_TIMESLOTS_PER_ADDRESS * timeslotLength + LIBRARY_DELAY;
+        }
+        throw new IllegalArgumentException("Not a long lasting operation.");
+    }
+    
     /**
      * Returns time to wait to finish IQMESH routing.
      * 
      * @param confirmation confirmation
      * @param reponseDataLength length of response's PData
-     * @param confirmRecvTime time the confirmation was received
+     * @param confirmRecvTime time the confirmation was received, as returned
+     *        by {@link Clock#currentTimeMillis()} of the clock of this counter
      * @return time to wait to finish IQMESH routing
      */
     public long getTimeToWaitToFinishIqmeshRouting(
@@ -410,8 +564,8 @@ public final class WaitingTimeCounter {
         long timeToWait = 
             confirmRecvTime
             + (confirmation.getHops() + 1 ) * confirmation.getTimeslotLength() * 10
-            + ( confirmation.getHopsResponse() + 1 ) * actualRespTimeslotLength  * 10
-            - System.currentTimeMillis();
+            + ( confirmation.getHopsResponse() + 1 ) * actualRespTimeslotLength
+            - clock.currentTimeMillis();
         
         if ( timeToWait < 0 ) {
             timeToWait = 0;